@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database;
+
+import android.database.sqlite.SQLiteException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A mutable cursor implementation that stores each column in its own
+ * primitive array: {@code long[]} for {@link #FIELD_TYPE_INTEGER} columns,
+ * {@code double[]} for {@link #FIELD_TYPE_FLOAT}, {@code String[]} for
+ * {@link #FIELD_TYPE_STRING} and {@code byte[][]} for {@link #FIELD_TYPE_BLOB}.
+ * Unlike {@link MatrixCursor}, numbers are never boxed, which makes large
+ * in-memory result sets much smaller and faster to scan.
+ *
+ * <p>Rows can be added one at a time with {@link #addRow(Object[])}, or in
+ * bulk with {@link #addRows(int)} followed by column-wise setters such as
+ * {@link #setLongs}. Automatically expands internal capacity as needed.
+ *
+ * <p>Values are converted when read with a getter of another type, as with
+ * {@link MatrixCursor}, except that numbers and blobs cannot be converted into
+ * each other.
+ */
+public class ColumnarCursor extends AbstractCursor {
+
+    private final String[] columnNames;
+    private final int[] columnTypes;
+    private final int columnCount;
+    private int rowCount = 0;
+    private int capacity;
+
+    /*
+     * One array per column; its type depends on the column type. Integer and
+     * float columns also get a null bitmap once a null is stored in them.
+     */
+    private final Object[] columns;
+    private final long[][] nulls;
+
+    /**
+     * Constructs a new cursor with the given initial capacity.
+     *
+     * @param columnNames names of the columns, the ordering of which
+     *  determines column ordering elsewhere in this cursor
+     * @param columnTypes the type of each column: one of {@link
+     *  #FIELD_TYPE_INTEGER}, {@link #FIELD_TYPE_FLOAT}, {@link
+     *  #FIELD_TYPE_STRING} or {@link #FIELD_TYPE_BLOB}
+     * @param initialCapacity in rows
+     * @throws IllegalArgumentException if the arrays have different lengths,
+     *  or if a column type is not supported
+     */
+    public ColumnarCursor(String[] columnNames, int[] columnTypes, int initialCapacity) {
+        if (columnNames.length != columnTypes.length) {
+            throw new IllegalArgumentException("columnNames.length = "
+                    + columnNames.length + ", columnTypes.length = "
+                    + columnTypes.length);
+        }
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes.clone();
+        this.columnCount = columnNames.length;
+        this.capacity = Math.max(initialCapacity, 1);
+        this.columns = new Object[columnCount];
+        this.nulls = new long[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = newColumn(this.columnTypes[i], capacity);
+        }
+    }
+
+    /**
+     * Constructs a new cursor.
+     *
+     * @param columnNames names of the columns, the ordering of which
+     *  determines column ordering elsewhere in this cursor
+     * @param columnTypes the type of each column
+     */
+    public ColumnarCursor(String[] columnNames, int[] columnTypes) {
+        this(columnNames, columnTypes, 16);
+    }
+
+    private static Object newColumn(int type, int capacity) {
+        switch (type) {
+            case FIELD_TYPE_INTEGER:
+                return new long[capacity];
+            case FIELD_TYPE_FLOAT:
+                return new double[capacity];
+            case FIELD_TYPE_STRING:
+                return new String[capacity];
+            case FIELD_TYPE_BLOB:
+                return new byte[capacity][];
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + type);
+        }
+    }
+
+    /**
+     * Adds {@code count} rows to the end. Until they are set, integer and
+     * float values of the new rows are 0 and string and blob values are null.
+     * Not safe for concurrent use.
+     *
+     * @return the index of the first new row
+     */
+    public int addRows(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count < 0: " + count);
+        }
+        int first = rowCount;
+        ensureCapacity(first + count);
+        rowCount = first + count;
+        return first;
+    }
+
+    /**
+     * Adds a new row to the end with the given column values. Numbers are
+     * converted to the column type, and any other value is stored in string
+     * columns as its {@code toString()}. Not safe for concurrent use.
+     *
+     * @throws IllegalArgumentException if {@code columnValues.length !=
+     *  columnNames.length}, or if a value cannot be stored in its column
+     * @param columnValues in the same order as the the column names specified
+     *  at cursor construction time
+     */
+    public void addRow(Object[] columnValues) {
+        if (columnValues.length != columnCount) {
+            throw new IllegalArgumentException("columnNames.length = "
+                    + columnCount + ", columnValues.length = "
+                    + columnValues.length);
+        }
+
+        int row = addRows(1);
+        try {
+            for (int i = 0; i < columnCount; i++) {
+                set(row, i, columnValues[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            rowCount--;
+            clearRow(row);
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the value at {@code row} and {@code column}, converting it like
+     * {@link #addRow(Object[])}.
+     */
+    public void set(int row, int column, Object value) {
+        if (value == null) {
+            setNull(row, column);
+            return;
+        }
+        switch (columnTypes[checkColumn(column)]) {
+            case FIELD_TYPE_INTEGER:
+                if (value instanceof Number) {
+                    setLong(row, column, ((Number) value).longValue());
+                } else {
+                    setLong(row, column, Long.parseLong(value.toString()));
+                }
+                return;
+            case FIELD_TYPE_FLOAT:
+                if (value instanceof Number) {
+                    setDouble(row, column, ((Number) value).doubleValue());
+                } else {
+                    setDouble(row, column, Double.parseDouble(value.toString()));
+                }
+                return;
+            case FIELD_TYPE_STRING:
+                setString(row, column, value.toString());
+                return;
+            default:
+                if (!(value instanceof byte[])) {
+                    throw new IllegalArgumentException("Not a blob: " + value.getClass());
+                }
+                setBlob(row, column, (byte[]) value);
+                return;
+        }
+    }
+
+    /** Sets the value at {@code row} in an integer or float column. */
+    public void setLong(int row, int column, long value) {
+        checkRow(row);
+        if (columnTypes[checkColumn(column)] == FIELD_TYPE_FLOAT) {
+            ((double[]) columns[column])[row] = value;
+        } else {
+            ((long[]) checkType(column, FIELD_TYPE_INTEGER))[row] = value;
+        }
+        clearNull(row, column);
+    }
+
+    /** Sets the value at {@code row} in a float column. */
+    public void setDouble(int row, int column, double value) {
+        checkRow(row);
+        ((double[]) checkType(column, FIELD_TYPE_FLOAT))[row] = value;
+        clearNull(row, column);
+    }
+
+    /** Sets the value at {@code row} in a string column. */
+    public void setString(int row, int column, String value) {
+        checkRow(row);
+        ((String[]) checkType(column, FIELD_TYPE_STRING))[row] = value;
+    }
+
+    /** Sets the value at {@code row} in a blob column. */
+    public void setBlob(int row, int column, byte[] value) {
+        checkRow(row);
+        ((byte[][]) checkType(column, FIELD_TYPE_BLOB))[row] = value;
+    }
+
+    /** Sets the value at {@code row} and {@code column} to null. */
+    public void setNull(int row, int column) {
+        checkRow(row);
+        switch (columnTypes[checkColumn(column)]) {
+            case FIELD_TYPE_STRING:
+                ((String[]) columns[column])[row] = null;
+                return;
+            case FIELD_TYPE_BLOB:
+                ((byte[][]) columns[column])[row] = null;
+                return;
+            case FIELD_TYPE_INTEGER:
+                ((long[]) columns[column])[row] = 0;
+                break;
+            default:
+                ((double[]) columns[column])[row] = 0;
+                break;
+        }
+        long[] bits = nulls[column];
+        if (bits == null) {
+            bits = new long[(capacity + 63) >> 6];
+            nulls[column] = bits;
+        }
+        bits[row >> 6] |= 1L << row;
+    }
+
+
+    /**
+     * Copies {@code count} values from {@code values}, starting at {@code
+     * offset}, into an integer column, starting at {@code firstRow}.
+     */
+    public void setLongs(int column, int firstRow, long[] values, int offset, int count) {
+        checkRows(firstRow, count);
+        System.arraycopy(values, offset, checkType(column, FIELD_TYPE_INTEGER), firstRow, count);
+        clearNulls(column, firstRow, count);
+    }
+
+    /**
+     * Copies {@code count} values from {@code values}, starting at {@code
+     * offset}, into a float column, starting at {@code firstRow}.
+     */
+    public void setDoubles(int column, int firstRow, double[] values, int offset, int count) {
+        checkRows(firstRow, count);
+        System.arraycopy(values, offset, checkType(column, FIELD_TYPE_FLOAT), firstRow, count);
+        clearNulls(column, firstRow, count);
+    }
+
+    /**
+     * Copies {@code count} values from {@code values}, starting at {@code
+     * offset}, into a string column, starting at {@code firstRow}.
+     */
+    public void setStrings(int column, int firstRow, String[] values, int offset, int count) {
+        checkRows(firstRow, count);
+        System.arraycopy(values, offset, checkType(column, FIELD_TYPE_STRING), firstRow, count);
+    }
+
+    /**
+     * Copies {@code count} values from {@code values}, starting at {@code
+     * offset}, into a blob column, starting at {@code firstRow}.
+     */
+    public void setBlobs(int column, int firstRow, byte[][] values, int offset, int count) {
+        checkRows(firstRow, count);
+        System.arraycopy(values, offset, checkType(column, FIELD_TYPE_BLOB), firstRow, count);
+    }
+
+    private int checkColumn(int column) {
+        if (column < 0 || column >= columnCount) {
+            throw new CursorIndexOutOfBoundsException("Requested column: "
+                    + column + ", # of columns: " +  columnCount);
+        }
+        return column;
+    }
+
+    private Object checkType(int column, int type) {
+        if (columnTypes[checkColumn(column)] != type) {
+            throw new IllegalArgumentException("Column " + column + " has type "
+                    + columnTypes[column] + ", not " + type);
+        }
+        return columns[column];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new CursorIndexOutOfBoundsException(row, rowCount);
+        }
+    }
+
+    private void checkRows(int firstRow, int count) {
+        if (firstRow < 0 || count < 0 || firstRow + count > rowCount) {
+            throw new CursorIndexOutOfBoundsException("Requested rows: " + firstRow
+                    + " to " + (firstRow + count) + ", # of rows: " + rowCount);
+        }
+    }
+
+    private void clearNull(int row, int column) {
+        long[] bits = nulls[column];
+        if (bits != null) {
+            bits[row >> 6] &= ~(1L << row);
+        }
+    }
+
+    private void clearNulls(int column, int firstRow, int count) {
+        if (nulls[column] != null) {
+            for (int row = firstRow; row < firstRow + count; row++) {
+                clearNull(row, column);
+            }
+        }
+    }
+
+    private void clearRow(int row) {
+        for (int i = 0; i < columnCount; i++) {
+            switch (columnTypes[i]) {
+                case FIELD_TYPE_INTEGER:
+                    ((long[]) columns[i])[row] = 0;
+                    break;
+                case FIELD_TYPE_FLOAT:
+                    ((double[]) columns[i])[row] = 0;
+                    break;
+                case FIELD_TYPE_STRING:
+                    ((String[]) columns[i])[row] = null;
+                    break;
+                default:
+                    ((byte[][]) columns[i])[row] = null;
+                    break;
+            }
+            clearNull(row, i);
+        }
+    }
+
+    /** Ensures that this cursor has enough capacity. */
+    private void ensureCapacity(int size) {
+        if (size <= capacity) {
+            return;
+        }
+        int newCapacity = capacity * 2;
+        if (newCapacity < size) {
+            newCapacity = size;
+        }
+        for (int i = 0; i < columnCount; i++) {
+            Object newColumn = newColumn(columnTypes[i], newCapacity);
+            System.arraycopy(columns[i], 0, newColumn, 0, rowCount);
+            columns[i] = newColumn;
+            if (nulls[i] != null) {
+                long[] newBits = new long[(newCapacity + 63) >> 6];
+                System.arraycopy(nulls[i], 0, newBits, 0, nulls[i].length);
+                nulls[i] = newBits;
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * Returns the row index of the current position, after checking the
+     * column and position.
+     */
+    private int row(int column) {
+        checkColumn(column);
+        if (mPos < 0) {
+            throw new CursorIndexOutOfBoundsException("Before first row.");
+        }
+        if (mPos >= rowCount) {
+            throw new CursorIndexOutOfBoundsException("After last row.");
+        }
+        return mPos;
+    }
+
+    private boolean isNull(int row, int column) {
+        long[] bits = nulls[column];
+        return bits != null && (bits[row >> 6] & (1L << row)) != 0;
+    }
+
+    private static SQLiteException conversionError(String from, String to) {
+        return new SQLiteException("Unable to convert " + from + " to " + to);
+    }
+
+    // AbstractCursor implementation.
+
+    @Override
+    public int getCount() {
+        return rowCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        int row = row(column);
+        switch (columnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return isNull(row, column) ? null : Long.toString(((long[]) columns[column])[row]);
+            case FIELD_TYPE_FLOAT:
+                return isNull(row, column)
+                        ? null : Double.toString(((double[]) columns[column])[row]);
+            case FIELD_TYPE_STRING:
+                return ((String[]) columns[column])[row];
+            default:
+                if (((byte[][]) columns[column])[row] == null) {
+                    return null;
+                }
+                throw conversionError("BLOB", "string");
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        int row = row(column);
+        switch (columnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return ((long[]) columns[column])[row];
+            case FIELD_TYPE_FLOAT:
+                return (long) ((double[]) columns[column])[row];
+            case FIELD_TYPE_STRING:
+                String value = ((String[]) columns[column])[row];
+                return value != null ? Long.parseLong(value) : 0;
+            default:
+                if (((byte[][]) columns[column])[row] == null) {
+                    return 0;
+                }
+                throw conversionError("BLOB", "long");
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        int row = row(column);
+        switch (columnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return ((long[]) columns[column])[row];
+            case FIELD_TYPE_FLOAT:
+                return ((double[]) columns[column])[row];
+            case FIELD_TYPE_STRING:
+                String value = ((String[]) columns[column])[row];
+                return value != null ? Double.parseDouble(value) : 0.0d;
+            default:
+                if (((byte[][]) columns[column])[row] == null) {
+                    return 0.0d;
+                }
+                throw conversionError("BLOB", "double");
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        int row = row(column);
+        switch (columnTypes[column]) {
+            case FIELD_TYPE_BLOB:
+                return ((byte[][]) columns[column])[row];
+            case FIELD_TYPE_STRING:
+                String value = ((String[]) columns[column])[row];
+                return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+            default:
+                if (isNull(row, column)) {
+                    return null;
+                }
+                throw conversionError(columnTypes[column] == FIELD_TYPE_INTEGER
+                        ? "INTEGER" : "FLOAT", "blob");
+        }
+    }
+
+    @Override
+    public int getType(int column) {
+        return isNull(column) ? FIELD_TYPE_NULL : columnTypes[column];
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        int row = row(column);
+        switch (columnTypes[column]) {
+            case FIELD_TYPE_STRING:
+                return ((String[]) columns[column])[row] == null;
+            case FIELD_TYPE_BLOB:
+                return ((byte[][]) columns[column])[row] == null;
+            default:
+                return isNull(row, column);
+        }
+    }
+
+    /**
+     * Copies rows into the window directly from the column arrays, without
+     * moving the cursor or checking the type of every value.
+     */
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        if (position < 0 || position >= rowCount) {
+            return;
+        }
+        window.clear();
+        window.setStartPosition(position);
+        window.setNumColumns(columnCount);
+        for (int row = position; row < rowCount; row++) {
+            if (!window.allocRow()) {
+                break;
+            }
+            if (!putRow(window, row)) {
+                window.freeLastRow();
+                break;
+            }
+        }
+    }
+
+    private boolean putRow(CursorWindow window, int row) {
+        for (int i = 0; i < columnCount; i++) {
+            final boolean success;
+            switch (columnTypes[i]) {
+                case FIELD_TYPE_INTEGER:
+                    success = isNull(row, i) ? window.putNull(row, i)
+                            : window.putLong(((long[]) columns[i])[row], row, i);
+                    break;
+                case FIELD_TYPE_FLOAT:
+                    success = isNull(row, i) ? window.putNull(row, i)
+                            : window.putDouble(((double[]) columns[i])[row], row, i);
+                    break;
+                case FIELD_TYPE_STRING: {
+                    String value = ((String[]) columns[i])[row];
+                    success = value != null ? window.putString(value, row, i)
+                            : window.putNull(row, i);
+                    break;
+                }
+                default: {
+                    byte[] value = ((byte[][]) columns[i])[row];
+                    success = value != null ? window.putBlob(value, row, i)
+                            : window.putNull(row, i);
+                    break;
+                }
+            }
+            if (!success) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
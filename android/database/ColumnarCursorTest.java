@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database;
+
+import android.database.sqlite.SQLiteException;
+import android.test.MoreAsserts;
+
+import junit.framework.TestCase;
+
+public class ColumnarCursorTest extends TestCase {
+
+    private static final String[] COLUMN_NAMES = { "long", "double", "string", "blob" };
+    private static final int[] COLUMN_TYPES = { Cursor.FIELD_TYPE_INTEGER,
+            Cursor.FIELD_TYPE_FLOAT, Cursor.FIELD_TYPE_STRING, Cursor.FIELD_TYPE_BLOB };
+
+    public void testEmptyCursor() {
+        Cursor cursor = newColumnarCursor();
+        assertEquals(0, cursor.getCount());
+        assertFalse(cursor.moveToFirst());
+    }
+
+    public void testAddRow() {
+        ColumnarCursor cursor = newColumnarCursor();
+        cursor.addRow(new Object[] { 3, 4.5f, "a", new byte[] {(byte) 0xaa, (byte) 0x55} });
+        cursor.addRow(new Object[] { "7", "8.25", 9L, new byte[0] });
+
+        assertTrue(cursor.moveToFirst());
+        assertEquals(3, cursor.getShort(0));
+        assertEquals(3, cursor.getInt(0));
+        assertEquals(3L, cursor.getLong(0));
+        assertEquals(3.0d, cursor.getDouble(0));
+        assertEquals("3", cursor.getString(0));
+        assertEquals(4.5f, cursor.getFloat(1));
+        assertEquals(4L, cursor.getLong(1));
+        assertEquals("a", cursor.getString(2));
+        MoreAsserts.assertEquals(new byte[] {(byte) 0xaa, (byte) 0x55}, cursor.getBlob(3));
+        assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(0));
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+        assertEquals(Cursor.FIELD_TYPE_STRING, cursor.getType(2));
+        assertEquals(Cursor.FIELD_TYPE_BLOB, cursor.getType(3));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(7L, cursor.getLong(0));
+        assertEquals(8.25d, cursor.getDouble(1));
+        assertEquals("9", cursor.getString(2));
+        assertEquals(9L, cursor.getLong(2));
+        assertEquals(0, cursor.getBlob(3).length);
+        assertFalse(cursor.moveToNext());
+    }
+
+    public void testAddRowRejectsBadValues() {
+        ColumnarCursor cursor = newColumnarCursor();
+        try {
+            cursor.addRow(new Object[0]);
+            fail();
+        } catch (IllegalArgumentException e) { /* expected */ }
+
+        try {
+            cursor.addRow(new Object[] { "x", 1.0, "a", null });
+            fail();
+        } catch (IllegalArgumentException e) { /* expected */ }
+
+        try {
+            cursor.addRow(new Object[] { 1, 1.0, "a", "not a blob" });
+            fail();
+        } catch (IllegalArgumentException e) { /* expected */ }
+
+        assertEquals(0, cursor.getCount());
+    }
+
+    public void testNulls() {
+        ColumnarCursor cursor = newColumnarCursor();
+        cursor.addRow(new Object[] { null, null, null, null });
+        cursor.addRow(new Object[] { 1, 2, "3", new byte[0] });
+
+        assertTrue(cursor.moveToFirst());
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            assertTrue(cursor.isNull(i));
+            assertEquals(Cursor.FIELD_TYPE_NULL, cursor.getType(i));
+            assertNull(cursor.getString(i));
+            assertNull(cursor.getBlob(i));
+        }
+        assertEquals(0L, cursor.getLong(0));
+        assertEquals(0.0d, cursor.getDouble(1));
+        assertEquals(0L, cursor.getLong(2));
+
+        assertTrue(cursor.moveToNext());
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            assertFalse(cursor.isNull(i));
+        }
+
+        cursor.setLong(0, 0, 42);
+        assertTrue(cursor.moveToFirst());
+        assertFalse(cursor.isNull(0));
+        assertEquals(42L, cursor.getLong(0));
+        assertTrue(cursor.isNull(1));
+    }
+
+    public void testBulkAppend() {
+        ColumnarCursor cursor = new ColumnarCursor(COLUMN_NAMES, COLUMN_TYPES, 1);
+        int count = 1000;
+        long[] longs = new long[count];
+        double[] doubles = new double[count];
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            longs[i] = i * 3L;
+            doubles[i] = i * 0.5d;
+            strings[i] = "row" + i;
+        }
+
+        assertEquals(0, cursor.addRows(count / 2));
+        cursor.setLongs(0, 0, longs, 0, count / 2);
+        cursor.setDoubles(1, 0, doubles, 0, count / 2);
+        cursor.setStrings(2, 0, strings, 0, count / 2);
+        cursor.setNull(99, 0);
+
+        assertEquals(count / 2, cursor.addRows(count / 2));
+        cursor.setLongs(0, count / 2, longs, count / 2, count / 2);
+        cursor.setDoubles(1, count / 2, doubles, count / 2, count / 2);
+        cursor.setStrings(2, count / 2, strings, count / 2, count / 2);
+
+        assertEquals(count, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            if (i == 99) {
+                assertTrue(cursor.isNull(0));
+            } else {
+                assertEquals(i * 3L, cursor.getLong(0));
+            }
+            assertEquals(i * 0.5d, cursor.getDouble(1));
+            assertEquals("row" + i, cursor.getString(2));
+            assertTrue(cursor.isNull(3));
+        }
+
+        try {
+            cursor.setLongs(0, count - 1, longs, 0, 2);
+            fail();
+        } catch (CursorIndexOutOfBoundsException e) { /* expected */ }
+
+        try {
+            cursor.setLongs(1, 0, longs, 0, 1);
+            fail();
+        } catch (IllegalArgumentException e) { /* expected */ }
+    }
+
+    public void testNumbersAndBlobsDoNotConvert() {
+        ColumnarCursor cursor = newColumnarCursor();
+        cursor.addRow(new Object[] { 1, 2, "3", new byte[0] });
+        assertTrue(cursor.moveToFirst());
+
+        try {
+            cursor.getBlob(0);
+            fail();
+        } catch (SQLiteException e) { /* expected */ }
+
+        try {
+            cursor.getLong(3);
+            fail();
+        } catch (SQLiteException e) { /* expected */ }
+    }
+
+    public void testUnsupportedColumnType() {
+        try {
+            new ColumnarCursor(new String[] { "a" }, new int[] { Cursor.FIELD_TYPE_NULL });
+            fail();
+        } catch (IllegalArgumentException e) { /* expected */ }
+    }
+
+    public void testFillWindowMatchesMatrixCursor() {
+        ColumnarCursor columnar = newColumnarCursor();
+        MatrixCursor matrix = new MatrixCursor(COLUMN_NAMES);
+        for (int i = 0; i < 10; i++) {
+            Object[] row = { i % 3 == 0 ? null : (long) i, i * 1.5d, "s" + i,
+                    i % 2 == 0 ? null : new byte[] {(byte) i} };
+            columnar.addRow(row);
+            matrix.addRow(row);
+        }
+
+        CursorWindow expected = new CursorWindow("expected");
+        CursorWindow actual = new CursorWindow("actual");
+        try {
+            matrix.fillWindow(4, expected);
+            columnar.fillWindow(4, actual);
+            assertEquals(expected.getStartPosition(), actual.getStartPosition());
+            assertEquals(expected.getNumRows(), actual.getNumRows());
+            for (int row = 4; row < 10; row++) {
+                for (int column = 0; column < COLUMN_NAMES.length; column++) {
+                    assertEquals(expected.getType(row, column), actual.getType(row, column));
+                    assertEquals(expected.getString(row, column),
+                            actual.getString(row, column));
+                }
+            }
+            assertEquals(-1, columnar.getPosition());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private ColumnarCursor newColumnarCursor() {
+        return new ColumnarCursor(COLUMN_NAMES, COLUMN_TYPES);
+    }
+}
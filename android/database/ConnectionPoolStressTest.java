@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDebug;
+import android.database.sqlite.SQLiteDebug.DbStats;
+import android.util.Log;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.Suppress;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hammers the connection pool of a WAL database from many threads at once and
+ * logs the throughput and the pool's wait time histogram.  Readers mostly hit
+ * the pool's lock-free fast path, while writers contend for the primary
+ * connection.
+ */
+// This test suite takes too long to be included in the automated suite.
+@Suppress
+public class ConnectionPoolStressTest extends AndroidTestCase {
+    private static final String TAG = "ConnectionPoolStressTest";
+    private static final int ROWS = 1000;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+
+    private SQLiteDatabase mDatabase;
+    private File mDatabaseFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context c = getContext();
+
+        mDatabaseFile = c.getDatabasePath("connection_pool_test.db");
+        if (mDatabaseFile.exists()) {
+            mDatabaseFile.delete();
+        }
+
+        mDatabase = c.openOrCreateDatabase("connection_pool_test.db", 0, null);
+        assertNotNull(mDatabase);
+        assertTrue(mDatabase.enableWriteAheadLogging());
+
+        mDatabase.execSQL("CREATE TABLE test (_id INTEGER PRIMARY KEY, data TEXT);");
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                mDatabase.execSQL("INSERT INTO test (data) VALUES (?)",
+                        new Object[] { "row " + i });
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDatabase.close();
+        SQLiteDatabase.deleteDatabase(mDatabaseFile);
+        super.tearDown();
+    }
+
+    public void testReadersOnly() throws Exception {
+        runThreads(4, 0);
+    }
+
+    public void testReadersAndWriters() throws Exception {
+        runThreads(8, 2);
+    }
+
+    public void testManyMoreThreadsThanConnections() throws Exception {
+        runThreads(32, 4);
+    }
+
+    private void runThreads(int readers, int writers) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(readers + writers);
+        final AtomicInteger failures = new AtomicInteger();
+
+        for (int i = 0; i < readers + writers; i++) {
+            final boolean writer = i < writers;
+            final int seed = i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                            int id = (j * 31 + seed) % ROWS + 1;
+                            if (writer) {
+                                mDatabase.execSQL("UPDATE test SET data = ? WHERE _id = ?",
+                                        new Object[] { "update " + j, id });
+                            } else {
+                                Cursor cursor = mDatabase.rawQuery(
+                                        "SELECT data FROM test WHERE _id = ?",
+                                        new String[] { Integer.toString(id) });
+                                try {
+                                    if (!cursor.moveToFirst()) {
+                                        failures.incrementAndGet();
+                                    }
+                                } finally {
+                                    cursor.close();
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "exception " + e.getMessage());
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+        assertEquals(0, failures.get());
+        long operations = (long) (readers + writers) * OPERATIONS_PER_THREAD;
+        Log.i(TAG, readers + " readers, " + writers + " writers: " + operations
+                + " operations in " + elapsedMillis + " ms, connection waits "
+                + getConnectionWaits());
+    }
+
+    private String getConnectionWaits() {
+        for (DbStats dbStats : SQLiteDebug.getDatabaseInfo().dbStats) {
+            if (dbStats.connectionWaits != null
+                    && dbStats.dbName.contains("connection_pool_test.db")) {
+                return dbStats.connectionWaits;
+            }
+        }
+        return null;
+    }
+}
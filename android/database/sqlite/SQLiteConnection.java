@@ -101,6 +101,12 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
     private final PreparedStatementCache mPreparedStatementCache;
     private PreparedStatement mPreparedStatementPool;
 
+    // Statistics shared by all connections of the pool.
+    private final SQLiteStatementStats mStatementStats;
+
+    // True while statements are prepared ahead of time to warm up the cache.
+    private boolean mWarmingUp;
+
     // The recent operations log.
     private final OperationLog mRecentOperations = new OperationLog();
 
@@ -165,6 +171,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         mIsReadOnlyConnection = (configuration.openFlags & SQLiteDatabase.OPEN_READONLY) != 0;
         mPreparedStatementCache = new PreparedStatementCache(
                 mConfiguration.maxSqlCacheSize);
+        mStatementStats = pool.getStatementStats();
         mCloseGuard.open("close");
     }
 
@@ -221,6 +228,14 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             SQLiteCustomFunction function = mConfiguration.customFunctions.get(i);
             nativeRegisterCustomFunction(mConnectionPtr, function);
         }
+
+        // Prepare the declared statements, then the statements that the other
+        // connections of the pool reuse most often, using at most half of the cache
+        // for the latter.
+        final ArrayList<String> statements =
+                new ArrayList<String>(mConfiguration.warmUpStatements);
+        mStatementStats.getHotStatements(statements, mConfiguration.maxSqlCacheSize / 2);
+        warmUpPreparedStatementCache(statements);
     }
 
     private void dispose(boolean finalized) {
@@ -412,6 +427,8 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         boolean walModeChanged = ((configuration.openFlags ^ mConfiguration.openFlags)
                 & SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING) != 0;
         boolean localeChanged = !configuration.locale.equals(mConfiguration.locale);
+        boolean warmUpStatementsChanged = !configuration.warmUpStatements.equals(
+                mConfiguration.warmUpStatements);
 
         // Update configuration parameters.
         mConfiguration.updateParametersFrom(configuration);
@@ -433,6 +450,35 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         if (localeChanged) {
             setLocaleFromConfiguration();
         }
+
+        // Prepare the new warm-up statements.
+        if (warmUpStatementsChanged) {
+            warmUpPreparedStatementCache(mConfiguration.warmUpStatements);
+        }
+    }
+
+    private void warmUpPreparedStatementCache(ArrayList<String> statements) {
+        mWarmingUp = true;
+        try {
+            final int count = statements.size();
+            for (int i = 0; i < count
+                    && mPreparedStatementCache.size() < mConfiguration.maxSqlCacheSize; i++) {
+                final String sql = statements.get(i);
+                if (!isCacheable(DatabaseUtils.getSqlStatementType(sql))) {
+                    continue;
+                }
+                try {
+                    releasePreparedStatement(acquirePreparedStatement(sql));
+                } catch (SQLiteException ex) {
+                    // The schema may not exist yet or may have changed since the statement
+                    // was declared or last used.  It will be prepared when executed.
+                    Log.w(TAG, "Could not warm up prepared statement: "
+                            + trimSqlForDisplay(sql), ex);
+                }
+            }
+        } finally {
+            mWarmingUp = false;
+        }
     }
 
     // Called by SQLiteConnectionPool only.
@@ -876,6 +922,9 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         boolean skipCache = false;
         if (statement != null) {
             if (!statement.mInUse) {
+                if (!mWarmingUp) {
+                    statement.mShape.recordHit();
+                }
                 return statement;
             }
             // The statement is already in the cache but is in use (this statement appears
@@ -884,12 +933,16 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
             skipCache = true;
         }
 
+        final long prepareStartTime = System.nanoTime();
         final long statementPtr = nativePrepareStatement(mConnectionPtr, sql);
+        final long prepareNanos = System.nanoTime() - prepareStartTime;
         try {
             final int numParameters = nativeGetParameterCount(mConnectionPtr, statementPtr);
             final int type = DatabaseUtils.getSqlStatementType(sql);
             final boolean readOnly = nativeIsReadOnly(mConnectionPtr, statementPtr);
             statement = obtainPreparedStatement(sql, statementPtr, numParameters, type, readOnly);
+            statement.mShape = mStatementStats.getShape(sql);
+            statement.mShape.recordPrepare(prepareNanos, mWarmingUp);
             if (!skipCache && isCacheable(type)) {
                 mPreparedStatementCache.put(sql, statement);
                 statement.mInCache = true;
@@ -1196,6 +1249,7 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
 
     private void recyclePreparedStatement(PreparedStatement statement) {
         statement.mSql = null;
+        statement.mShape = null;
         statement.mPoolNext = mPreparedStatementPool;
         mPreparedStatementPool = statement;
     }
@@ -1225,6 +1279,9 @@ public final class SQLiteConnection implements CancellationSignal.OnCancelListen
         // The SQL from which the statement was prepared.
         public String mSql;
 
+        // The shape of the statement, in the statistics shared by the pool.
+        public SQLiteStatementStats.Shape mShape;
+
         // The native sqlite3_stmt object pointer.
         // Lifetime is managed explicitly by the connection.
         public long mStatementPtr;
@@ -27,10 +27,13 @@ import android.util.PrefixPrinter;
 import android.util.Printer;
 
 import java.io.Closeable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 
 /**
@@ -50,6 +53,18 @@ import java.util.concurrent.locks.LockSupport;
  * The connection pool is thread-safe (but the connections themselves are not).
  * </p>
  *
+ * <h2>Fast path</h2>
+ * <p>
+ * While nobody is waiting for a non-primary connection, released non-primary
+ * connections are kept in a small array of {@link FastPathEntry fast path entries}
+ * that can be acquired and released with a compare-and-set instead of taking the
+ * pool lock.  As soon as a thread has to wait for one, the fast path is revoked:
+ * idle entries move back to the available connection list, acquired ones become
+ * ordinary acquired connections, and everything goes through the lock until no
+ * such waiter remains.  Fast path entries only hold weak references to acquired
+ * connections, so leaks are still detected.
+ * </p>
+ *
  * <h2>Exception safety</h2>
  * <p>
  * This code attempts to maintain the invariant that opened connections are
@@ -85,8 +100,27 @@ public final class SQLiteConnectionPool implements Closeable {
     private boolean mIsOpen;
     private int mNextConnectionId;
 
+    // Waiters are queued in FIFO order, one queue per priority.  Higher priorities
+    // are served first.
+    private static final int PRIORITY_COUNT = 2;
+    private final ConnectionWaiter[] mConnectionWaiterHeads = new ConnectionWaiter[PRIORITY_COUNT];
+    private final ConnectionWaiter[] mConnectionWaiterTails = new ConnectionWaiter[PRIORITY_COUNT];
+    private int mConnectionWaiterCount;
+    private int mNonPrimaryConnectionWaiterCount;
     private ConnectionWaiter mConnectionWaiterPool;
-    private ConnectionWaiter mConnectionWaiterQueue;
+
+    // How long acquireConnection() had to wait when no connection was available.
+    private final WaitTimeHistogram mWaitTimes = new WaitTimeHistogram();
+
+    // Prepared statement statistics shared by all connections.  Thread-safe.
+    private final SQLiteStatementStats mStatementStats = new SQLiteStatementStats();
+
+    // Non-primary connections that can be acquired and released without the lock.
+    // Both fields are only written while holding the lock.  The array is replaced,
+    // never modified, so readers outside the lock can iterate a snapshot of it.
+    private static final FastPathEntry[] EMPTY_FAST_PATH_ENTRIES = new FastPathEntry[0];
+    private volatile FastPathEntry[] mFastPathEntries = EMPTY_FAST_PATH_ENTRIES;
+    private volatile boolean mFastPathEnabled;
 
     // Strong references to all available connections.
     private final ArrayList<SQLiteConnection> mAvailableNonPrimaryConnections =
@@ -187,6 +221,7 @@ public final class SQLiteConnectionPool implements Closeable {
 
         // Mark the pool as being open for business.
         mIsOpen = true;
+        mFastPathEnabled = true;
         mCloseGuard.open("close");
     }
 
@@ -221,6 +256,7 @@ public final class SQLiteConnectionPool implements Closeable {
             synchronized (mLock) {
                 throwIfClosedLocked();
 
+                revokeFastPathLocked();
                 mIsOpen = false;
 
                 closeAvailableConnectionsAndLogExceptionsLocked();
@@ -259,69 +295,77 @@ public final class SQLiteConnectionPool implements Closeable {
         synchronized (mLock) {
             throwIfClosedLocked();
 
-            boolean walModeChanged = ((configuration.openFlags ^ mConfiguration.openFlags)
-                    & SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING) != 0;
-            if (walModeChanged) {
-                // WAL mode can only be changed if there are no acquired connections
-                // because we need to close all but the primary connection first.
-                if (!mAcquiredConnections.isEmpty()) {
-                    throw new IllegalStateException("Write Ahead Logging (WAL) mode cannot "
-                            + "be enabled or disabled while there are transactions in "
-                            + "progress.  Finish all transactions and release all active "
-                            + "database connections first.");
-                }
-
-                // Close all non-primary connections.  This should happen immediately
-                // because none of them are in use.
-                closeAvailableNonPrimaryConnectionsAndLogExceptionsLocked();
-                assert mAvailableNonPrimaryConnections.isEmpty();
-            }
+            // Take every connection back under the lock so that all of them are
+            // reconfigured below.  The fast path is enabled again by the final wake.
+            revokeFastPathLocked();
+            try {
+                boolean walModeChanged = ((configuration.openFlags ^ mConfiguration.openFlags)
+                        & SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING) != 0;
+                if (walModeChanged) {
+                    // WAL mode can only be changed if there are no acquired connections
+                    // because we need to close all but the primary connection first.
+                    if (!mAcquiredConnections.isEmpty()) {
+                        throw new IllegalStateException("Write Ahead Logging (WAL) mode cannot "
+                                + "be enabled or disabled while there are transactions in "
+                                + "progress.  Finish all transactions and release all active "
+                                + "database connections first.");
+                    }
 
-            boolean foreignKeyModeChanged = configuration.foreignKeyConstraintsEnabled
-                    != mConfiguration.foreignKeyConstraintsEnabled;
-            if (foreignKeyModeChanged) {
-                // Foreign key constraints can only be changed if there are no transactions
-                // in progress.  To make this clear, we throw an exception if there are
-                // any acquired connections.
-                if (!mAcquiredConnections.isEmpty()) {
-                    throw new IllegalStateException("Foreign Key Constraints cannot "
-                            + "be enabled or disabled while there are transactions in "
-                            + "progress.  Finish all transactions and release all active "
-                            + "database connections first.");
+                    // Close all non-primary connections.  This should happen immediately
+                    // because none of them are in use.
+                    closeAvailableNonPrimaryConnectionsAndLogExceptionsLocked();
+                    assert mAvailableNonPrimaryConnections.isEmpty();
                 }
-            }
 
-            if (mConfiguration.openFlags != configuration.openFlags) {
-                // If we are changing open flags and WAL mode at the same time, then
-                // we have no choice but to close the primary connection beforehand
-                // because there can only be one connection open when we change WAL mode.
-                if (walModeChanged) {
-                    closeAvailableConnectionsAndLogExceptionsLocked();
+                boolean foreignKeyModeChanged = configuration.foreignKeyConstraintsEnabled
+                        != mConfiguration.foreignKeyConstraintsEnabled;
+                if (foreignKeyModeChanged) {
+                    // Foreign key constraints can only be changed if there are no transactions
+                    // in progress.  To make this clear, we throw an exception if there are
+                    // any acquired connections.
+                    if (!mAcquiredConnections.isEmpty()) {
+                        throw new IllegalStateException("Foreign Key Constraints cannot "
+                                + "be enabled or disabled while there are transactions in "
+                                + "progress.  Finish all transactions and release all active "
+                                + "database connections first.");
+                    }
                 }
 
-                // Try to reopen the primary connection using the new open flags then
-                // close and discard all existing connections.
-                // This might throw if the database is corrupt or cannot be opened in
-                // the new mode in which case existing connections will remain untouched.
-                SQLiteConnection newPrimaryConnection = openConnectionLocked(configuration,
-                        true /*primaryConnection*/); // might throw
+                if (mConfiguration.openFlags != configuration.openFlags) {
+                    // If we are changing open flags and WAL mode at the same time, then
+                    // we have no choice but to close the primary connection beforehand
+                    // because there can only be one connection open when we change WAL mode.
+                    if (walModeChanged) {
+                        closeAvailableConnectionsAndLogExceptionsLocked();
+                    }
 
-                closeAvailableConnectionsAndLogExceptionsLocked();
-                discardAcquiredConnectionsLocked();
+                    // Try to reopen the primary connection using the new open flags then
+                    // close and discard all existing connections.
+                    // This might throw if the database is corrupt or cannot be opened in
+                    // the new mode in which case existing connections will remain untouched.
+                    SQLiteConnection newPrimaryConnection = openConnectionLocked(configuration,
+                            true /*primaryConnection*/); // might throw
 
-                mAvailablePrimaryConnection = newPrimaryConnection;
-                mConfiguration.updateParametersFrom(configuration);
-                setMaxConnectionPoolSizeLocked();
-            } else {
-                // Reconfigure the database connections in place.
-                mConfiguration.updateParametersFrom(configuration);
-                setMaxConnectionPoolSizeLocked();
+                    closeAvailableConnectionsAndLogExceptionsLocked();
+                    discardAcquiredConnectionsLocked();
 
-                closeExcessConnectionsAndLogExceptionsLocked();
-                reconfigureAllConnectionsLocked();
-            }
+                    mAvailablePrimaryConnection = newPrimaryConnection;
+                    mConfiguration.updateParametersFrom(configuration);
+                    setMaxConnectionPoolSizeLocked();
+                } else {
+                    // Reconfigure the database connections in place.
+                    mConfiguration.updateParametersFrom(configuration);
+                    setMaxConnectionPoolSizeLocked();
+
+                    closeExcessConnectionsAndLogExceptionsLocked();
+                    reconfigureAllConnectionsLocked();
+                }
 
-            wakeConnectionWaitersLocked();
+                wakeConnectionWaitersLocked();
+            } finally {
+                // Nothing else turns the fast path back on if we threw above.
+                enableFastPathIfIdleLocked();
+            }
         }
     }
 
@@ -361,6 +405,10 @@ public final class SQLiteConnectionPool implements Closeable {
      * from this pool or if it has already been released.
      */
     public void releaseConnection(SQLiteConnection connection) {
+        if (tryReleaseFastPathConnection(connection)) {
+            return;
+        }
+
         synchronized (mLock) {
             AcquiredConnectionStatus status = mAcquiredConnections.remove(connection);
             if (status == null) {
@@ -377,17 +425,47 @@ public final class SQLiteConnectionPool implements Closeable {
                     mAvailablePrimaryConnection = connection;
                 }
                 wakeConnectionWaitersLocked();
-            } else if (mAvailableNonPrimaryConnections.size() >= mMaxConnectionPoolSize - 1) {
+            } else if (mAvailableNonPrimaryConnections.size() + countFastPathConnectionsLocked()
+                    >= mMaxConnectionPoolSize - 1) {
                 closeConnectionAndLogExceptionsLocked(connection);
             } else {
                 if (recycleConnectionLocked(connection, status)) {
-                    mAvailableNonPrimaryConnections.add(connection);
+                    if (mFastPathEnabled) {
+                        addFastPathConnectionLocked(connection);
+                    } else {
+                        mAvailableNonPrimaryConnections.add(connection);
+                    }
                 }
                 wakeConnectionWaitersLocked();
             }
         }
     }
 
+    // Can't throw.
+    private boolean tryReleaseFastPathConnection(SQLiteConnection connection) {
+        if (connection == null) {
+            return false;
+        }
+        final FastPathEntry[] entries = mFastPathEntries;
+        for (int i = 0; i < entries.length; i++) {
+            final FastPathEntry entry = entries[i];
+            if (entry.mConnectionRef.get() == connection) {
+                // Anything but an acquired entry is for the slow path to sort out:
+                // either the entry was revoked or the connection was already released.
+                if (entry.mState.get() != FastPathEntry.ACQUIRED) {
+                    return false;
+                }
+                entry.mIdleConnection = connection;
+                if (entry.mState.compareAndSet(FastPathEntry.ACQUIRED, FastPathEntry.IDLE)) {
+                    return true;
+                }
+                entry.mIdleConnection = null;
+                return false;
+            }
+        }
+        return false;
+    }
+
     // Can't throw.
     private boolean recycleConnectionLocked(SQLiteConnection connection,
             AcquiredConnectionStatus status) {
@@ -420,7 +498,7 @@ public final class SQLiteConnectionPool implements Closeable {
      */
     public boolean shouldYieldConnection(SQLiteConnection connection, int connectionFlags) {
         synchronized (mLock) {
-            if (!mAcquiredConnections.containsKey(connection)) {
+            if (!isAcquiredLocked(connection)) {
                 throw new IllegalStateException("Cannot perform this operation "
                         + "because the specified connection was not acquired "
                         + "from this pool or has already been released.");
@@ -442,6 +520,8 @@ public final class SQLiteConnectionPool implements Closeable {
      */
     public void collectDbStats(ArrayList<DbStats> dbStatsList) {
         synchronized (mLock) {
+            final int start = dbStatsList.size();
+
             if (mAvailablePrimaryConnection != null) {
                 mAvailablePrimaryConnection.collectDbStats(dbStatsList);
             }
@@ -453,6 +533,20 @@ public final class SQLiteConnectionPool implements Closeable {
             for (SQLiteConnection connection : mAcquiredConnections.keySet()) {
                 connection.collectDbStatsUnsafe(dbStatsList);
             }
+
+            // Fast path connections may be acquired at any moment, so never touch
+            // them beyond what is safe for acquired connections.
+            for (FastPathEntry entry : mFastPathEntries) {
+                final SQLiteConnection connection = entry.mConnectionRef.get();
+                if (connection != null) {
+                    connection.collectDbStatsUnsafe(dbStatsList);
+                }
+            }
+
+            if (dbStatsList.size() > start) {
+                dbStatsList.get(start).connectionWaits = mWaitTimes.toString();
+                dbStatsList.get(start).statementShapes = mStatementStats.toString();
+            }
         }
     }
 
@@ -464,6 +558,30 @@ public final class SQLiteConnectionPool implements Closeable {
                 connectionId, primaryConnection); // might throw
     }
 
+    // Called by SQLiteConnection only.
+    SQLiteStatementStats getStatementStats() {
+        return mStatementStats;
+    }
+
+    // For testing only.
+    boolean isFastPathEnabled() {
+        return mFastPathEnabled;
+    }
+
+    // For testing only.
+    int getConnectionWaiterCount() {
+        synchronized (mLock) {
+            return mConnectionWaiterCount;
+        }
+    }
+
+    // For testing only.
+    int getMaxConnectionPoolSize() {
+        synchronized (mLock) {
+            return mMaxConnectionPoolSize;
+        }
+    }
+
     void onConnectionLeaked() {
         // This code is running inside of the SQLiteConnection finalizer.
         //
@@ -593,6 +711,19 @@ public final class SQLiteConnectionPool implements Closeable {
         final boolean wantPrimaryConnection =
                 (connectionFlags & CONNECTION_FLAG_PRIMARY_CONNECTION_AFFINITY) != 0;
 
+        // Try the fast path first; it never takes the lock.
+        if (!wantPrimaryConnection && mFastPathEnabled) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+
+            final SQLiteConnection connection = tryAcquireFastPathConnection(
+                    sql, connectionFlags);
+            if (connection != null) {
+                return connection;
+            }
+        }
+
         final ConnectionWaiter waiter;
         final int nonce;
         synchronized (mLock) {
@@ -604,13 +735,16 @@ public final class SQLiteConnectionPool implements Closeable {
             }
 
             // Try to acquire a connection.
-            SQLiteConnection connection = null;
-            if (!wantPrimaryConnection) {
-                connection = tryAcquireNonPrimaryConnectionLocked(
-                        sql, connectionFlags); // might throw
-            }
-            if (connection == null) {
-                connection = tryAcquirePrimaryConnectionLocked(connectionFlags); // might throw
+            SQLiteConnection connection = tryAcquireConnectionLocked(
+                    sql, wantPrimaryConnection, connectionFlags); // might throw
+            if (connection == null && !wantPrimaryConnection && mFastPathEnabled) {
+                // We are about to wait for a non-primary connection.  Revoke the fast
+                // path first so that every connection is released through the lock,
+                // where it can be handed to a waiter.  Connections that were idle in
+                // the fast path in the meantime are available again now, so try once more.
+                revokeFastPathLocked();
+                connection = tryAcquireConnectionLocked(
+                        sql, wantPrimaryConnection, connectionFlags); // might throw
             }
             if (connection != null) {
                 return connection;
@@ -621,21 +755,7 @@ public final class SQLiteConnectionPool implements Closeable {
             final long startTime = SystemClock.uptimeMillis();
             waiter = obtainConnectionWaiterLocked(Thread.currentThread(), startTime,
                     priority, wantPrimaryConnection, sql, connectionFlags);
-            ConnectionWaiter predecessor = null;
-            ConnectionWaiter successor = mConnectionWaiterQueue;
-            while (successor != null) {
-                if (priority > successor.mPriority) {
-                    waiter.mNext = successor;
-                    break;
-                }
-                predecessor = successor;
-                successor = successor.mNext;
-            }
-            if (predecessor != null) {
-                predecessor.mNext = waiter;
-            } else {
-                mConnectionWaiterQueue = waiter;
-            }
+            enqueueConnectionWaiterLocked(waiter);
 
             nonce = waiter.mNonce;
         }
@@ -679,6 +799,9 @@ public final class SQLiteConnectionPool implements Closeable {
                     final SQLiteConnection connection = waiter.mAssignedConnection;
                     final RuntimeException ex = waiter.mException;
                     if (connection != null || ex != null) {
+                        if (connection != null) {
+                            mWaitTimes.record(SystemClock.uptimeMillis() - waiter.mStartTime);
+                        }
                         recycleConnectionWaiterLocked(waiter);
                         if (connection != null) {
                             return connection;
@@ -688,7 +811,7 @@ public final class SQLiteConnectionPool implements Closeable {
 
                     final long now = SystemClock.uptimeMillis();
                     if (now < nextBusyTimeoutTime) {
-                        busyTimeoutMillis = now - nextBusyTimeoutTime;
+                        busyTimeoutMillis = nextBusyTimeoutTime - now;
                     } else {
                         logConnectionPoolBusyLocked(now - waiter.mStartTime, connectionFlags);
                         busyTimeoutMillis = CONNECTION_POOL_BUSY_MILLIS;
@@ -712,18 +835,7 @@ public final class SQLiteConnectionPool implements Closeable {
         }
 
         // Waiter must still be waiting.  Dequeue it.
-        ConnectionWaiter predecessor = null;
-        ConnectionWaiter current = mConnectionWaiterQueue;
-        while (current != waiter) {
-            assert current != null;
-            predecessor = current;
-            current = current.mNext;
-        }
-        if (predecessor != null) {
-            predecessor.mNext = waiter.mNext;
-        } else {
-            mConnectionWaiterQueue = waiter.mNext;
-        }
+        dequeueConnectionWaiterLocked(waiter);
 
         // Send the waiter an exception and unpark it.
         waiter.mException = new OperationCanceledException();
@@ -778,64 +890,78 @@ public final class SQLiteConnectionPool implements Closeable {
 
     // Can't throw.
     private void wakeConnectionWaitersLocked() {
-        // Unpark all waiters that have requests that we can fulfill.
+        // Unpark all waiters that have requests that we can fulfill, highest priority
+        // first and in FIFO order within a priority.
         // This method is designed to not throw runtime exceptions, although we might send
         // a waiter an exception for it to rethrow.
-        ConnectionWaiter predecessor = null;
-        ConnectionWaiter waiter = mConnectionWaiterQueue;
         boolean primaryConnectionNotAvailable = false;
         boolean nonPrimaryConnectionNotAvailable = false;
-        while (waiter != null) {
-            boolean unpark = false;
-            if (!mIsOpen) {
-                unpark = true;
-            } else {
-                try {
-                    SQLiteConnection connection = null;
-                    if (!waiter.mWantPrimaryConnection && !nonPrimaryConnectionNotAvailable) {
-                        connection = tryAcquireNonPrimaryConnectionLocked(
-                                waiter.mSql, waiter.mConnectionFlags); // might throw
-                        if (connection == null) {
-                            nonPrimaryConnectionNotAvailable = true;
+        for (int priority = PRIORITY_COUNT - 1; priority >= 0; priority--) {
+            ConnectionWaiter waiter = mConnectionWaiterHeads[priority];
+            while (waiter != null) {
+                boolean unpark = false;
+                if (!mIsOpen) {
+                    unpark = true;
+                } else {
+                    try {
+                        SQLiteConnection connection = null;
+                        if (!waiter.mWantPrimaryConnection && !nonPrimaryConnectionNotAvailable) {
+                            connection = tryAcquireNonPrimaryConnectionLocked(
+                                    waiter.mSql, waiter.mConnectionFlags); // might throw
+                            if (connection == null) {
+                                nonPrimaryConnectionNotAvailable = true;
+                            }
                         }
-                    }
-                    if (connection == null && !primaryConnectionNotAvailable) {
-                        connection = tryAcquirePrimaryConnectionLocked(
-                                waiter.mConnectionFlags); // might throw
-                        if (connection == null) {
-                            primaryConnectionNotAvailable = true;
+                        if (connection == null && !primaryConnectionNotAvailable) {
+                            connection = tryAcquirePrimaryConnectionLocked(
+                                    waiter.mConnectionFlags); // might throw
+                            if (connection == null) {
+                                primaryConnectionNotAvailable = true;
+                            }
                         }
-                    }
-                    if (connection != null) {
-                        waiter.mAssignedConnection = connection;
+                        if (connection != null) {
+                            waiter.mAssignedConnection = connection;
+                            unpark = true;
+                        } else if (nonPrimaryConnectionNotAvailable
+                                && primaryConnectionNotAvailable) {
+                            // There are no connections available and the pool is still open.
+                            // We cannot fulfill any more connection requests, so stop here.
+                            // The waiters that remain may all want the primary connection,
+                            // in which case the fast path can come back.
+                            enableFastPathIfIdleLocked();
+                            return;
+                        }
+                    } catch (RuntimeException ex) {
+                        // Let the waiter handle the exception from acquiring a connection.
+                        waiter.mException = ex;
                         unpark = true;
-                    } else if (nonPrimaryConnectionNotAvailable && primaryConnectionNotAvailable) {
-                        // There are no connections available and the pool is still open.
-                        // We cannot fulfill any more connection requests, so stop here.
-                        break;
                     }
-                } catch (RuntimeException ex) {
-                    // Let the waiter handle the exception from acquiring a connection.
-                    waiter.mException = ex;
-                    unpark = true;
                 }
-            }
 
-            final ConnectionWaiter successor = waiter.mNext;
-            if (unpark) {
-                if (predecessor != null) {
-                    predecessor.mNext = successor;
-                } else {
-                    mConnectionWaiterQueue = successor;
+                final ConnectionWaiter successor = waiter.mNext;
+                if (unpark) {
+                    dequeueConnectionWaiterLocked(waiter);
+                    LockSupport.unpark(waiter.mThread);
                 }
-                waiter.mNext = null;
-
-                LockSupport.unpark(waiter.mThread);
-            } else {
-                predecessor = waiter;
+                waiter = successor;
             }
-            waiter = successor;
         }
+
+        enableFastPathIfIdleLocked();
+    }
+
+    // Might throw.
+    private SQLiteConnection tryAcquireConnectionLocked(String sql,
+            boolean wantPrimaryConnection, int connectionFlags) {
+        SQLiteConnection connection = null;
+        if (!wantPrimaryConnection) {
+            connection = tryAcquireNonPrimaryConnectionLocked(
+                    sql, connectionFlags); // might throw
+        }
+        if (connection == null) {
+            connection = tryAcquirePrimaryConnectionLocked(connectionFlags); // might throw
+        }
+        return connection;
     }
 
     // Might throw.
@@ -866,8 +992,14 @@ public final class SQLiteConnectionPool implements Closeable {
     // Might throw.
     private SQLiteConnection tryAcquireNonPrimaryConnectionLocked(
             String sql, int connectionFlags) {
+        // A connection may have been released to the fast path since the caller
+        // last looked.
+        SQLiteConnection connection = tryAcquireFastPathConnection(sql, connectionFlags);
+        if (connection != null) {
+            return connection;
+        }
+
         // Try to acquire the next connection in the queue.
-        SQLiteConnection connection;
         final int availableCount = mAvailableNonPrimaryConnections.size();
         if (availableCount > 1 && sql != null) {
             // If we have a choice, then prefer a connection that has the
@@ -889,7 +1021,7 @@ public final class SQLiteConnectionPool implements Closeable {
         }
 
         // Expand the pool if needed.
-        int openConnections = mAcquiredConnections.size();
+        int openConnections = mAcquiredConnections.size() + countFastPathConnectionsLocked();
         if (mAvailablePrimaryConnection != null) {
             openConnections += 1;
         }
@@ -919,26 +1051,199 @@ public final class SQLiteConnectionPool implements Closeable {
 
     private boolean isSessionBlockingImportantConnectionWaitersLocked(
             boolean holdingPrimaryConnection, int connectionFlags) {
-        ConnectionWaiter waiter = mConnectionWaiterQueue;
-        if (waiter != null) {
+        if (mConnectionWaiterCount != 0) {
+            // Only worry about blocked connections that have same or higher priority.
             final int priority = getPriority(connectionFlags);
-            do {
-                // Only worry about blocked connections that have same or lower priority.
-                if (priority > waiter.mPriority) {
+            for (int p = PRIORITY_COUNT - 1; p >= priority; p--) {
+                for (ConnectionWaiter waiter = mConnectionWaiterHeads[p]; waiter != null;
+                        waiter = waiter.mNext) {
+                    // If we are holding the primary connection then we are blocking the waiter.
+                    // Likewise, if we are holding a non-primary connection and the waiter
+                    // would accept a non-primary connection, then we are blocking the waier.
+                    if (holdingPrimaryConnection || !waiter.mWantPrimaryConnection) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isAcquiredLocked(SQLiteConnection connection) {
+        if (connection == null) {
+            return false;
+        }
+        if (mAcquiredConnections.containsKey(connection)) {
+            return true;
+        }
+        for (FastPathEntry entry : mFastPathEntries) {
+            if (entry.mConnectionRef.get() == connection) {
+                return entry.mState.get() == FastPathEntry.ACQUIRED;
+            }
+        }
+        return false;
+    }
+
+    // Can't throw.
+    private SQLiteConnection tryAcquireFastPathConnection(String sql, int connectionFlags) {
+        if (!mFastPathEnabled) {
+            return null;
+        }
+
+        final FastPathEntry[] entries = mFastPathEntries;
+        final int count = entries.length;
+        FastPathEntry acquired = null;
+        if (count > 1 && sql != null) {
+            // If we have a choice, then prefer a connection that has the
+            // prepared statement in its cache.  The cache is synchronized, so it
+            // is safe to look even if another thread acquires the connection first.
+            for (int i = 0; i < count; i++) {
+                final FastPathEntry entry = entries[i];
+                final SQLiteConnection connection = entry.mConnectionRef.get();
+                if (connection != null && entry.mState.get() == FastPathEntry.IDLE
+                        && connection.isPreparedStatementInCache(sql)
+                        && entry.mState.compareAndSet(FastPathEntry.IDLE,
+                                FastPathEntry.ACQUIRED)) {
+                    acquired = entry;
                     break;
                 }
+            }
+        }
+        if (acquired == null) {
+            for (int i = 0; i < count; i++) {
+                final FastPathEntry entry = entries[i];
+                if (entry.mState.get() == FastPathEntry.IDLE
+                        && entry.mState.compareAndSet(FastPathEntry.IDLE,
+                                FastPathEntry.ACQUIRED)) {
+                    acquired = entry;
+                    break;
+                }
+            }
+            if (acquired == null) {
+                return null;
+            }
+        }
 
-                // If we are holding the primary connection then we are blocking the waiter.
-                // Likewise, if we are holding a non-primary connection and the waiter
-                // would accept a non-primary connection, then we are blocking the waier.
-                if (holdingPrimaryConnection || !waiter.mWantPrimaryConnection) {
-                    return true;
+        final SQLiteConnection connection = acquired.mIdleConnection;
+        acquired.mIdleConnection = null;
+        connection.setOnlyAllowReadOnlyOperations(
+                (connectionFlags & CONNECTION_FLAG_READ_ONLY) != 0);
+        return connection;
+    }
+
+    // Can't throw.
+    private void addFastPathConnectionLocked(SQLiteConnection connection) {
+        final FastPathEntry[] entries = mFastPathEntries;
+        final FastPathEntry[] newEntries = new FastPathEntry[entries.length + 1];
+        int count = 0;
+        for (FastPathEntry entry : entries) {
+            if (!entry.isLeaked()) {
+                newEntries[count++] = entry;
+            }
+        }
+        newEntries[count++] = new FastPathEntry(connection);
+        mFastPathEntries = count == newEntries.length
+                ? newEntries : Arrays.copyOf(newEntries, count);
+    }
+
+    // Can't throw.
+    private int countFastPathConnectionsLocked() {
+        int count = 0;
+        for (FastPathEntry entry : mFastPathEntries) {
+            if (!entry.isLeaked()) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    // Can't throw.
+    private void enableFastPathIfIdleLocked() {
+        if (mFastPathEnabled || !mIsOpen || mNonPrimaryConnectionWaiterCount != 0) {
+            return;
+        }
+
+        final int count = mAvailableNonPrimaryConnections.size();
+        final FastPathEntry[] entries = count != 0
+                ? new FastPathEntry[count] : EMPTY_FAST_PATH_ENTRIES;
+        for (int i = 0; i < count; i++) {
+            entries[i] = new FastPathEntry(mAvailableNonPrimaryConnections.get(i));
+        }
+        mAvailableNonPrimaryConnections.clear();
+        mFastPathEntries = entries;
+        mFastPathEnabled = true;
+    }
+
+    // Can't throw.
+    private void revokeFastPathLocked() {
+        // Disable the fast path before emptying it.  A thread that still acquires or
+        // releases an entry of the old array races with the loop below on that entry's
+        // state, and whoever loses falls back to the locked path.
+        mFastPathEnabled = false;
+        final FastPathEntry[] entries = mFastPathEntries;
+        mFastPathEntries = EMPTY_FAST_PATH_ENTRIES;
+
+        for (FastPathEntry entry : entries) {
+            for (;;) {
+                final int state = entry.mState.get();
+                if (state == FastPathEntry.IDLE) {
+                    if (entry.mState.compareAndSet(FastPathEntry.IDLE, FastPathEntry.REVOKED)) {
+                        mAvailableNonPrimaryConnections.add(entry.mIdleConnection);
+                        entry.mIdleConnection = null;
+                        break;
+                    }
+                } else if (state == FastPathEntry.ACQUIRED) {
+                    if (entry.mState.compareAndSet(FastPathEntry.ACQUIRED,
+                            FastPathEntry.REVOKED)) {
+                        final SQLiteConnection connection = entry.mConnectionRef.get();
+                        if (connection != null) {
+                            mAcquiredConnections.put(connection,
+                                    AcquiredConnectionStatus.NORMAL);
+                        }
+                        break;
+                    }
+                } else {
+                    break;
                 }
+            }
+        }
+    }
 
-                waiter = waiter.mNext;
-            } while (waiter != null);
+    private void enqueueConnectionWaiterLocked(ConnectionWaiter waiter) {
+        final int priority = waiter.mPriority;
+        final ConnectionWaiter tail = mConnectionWaiterTails[priority];
+        waiter.mPrev = tail;
+        waiter.mNext = null;
+        if (tail != null) {
+            tail.mNext = waiter;
+        } else {
+            mConnectionWaiterHeads[priority] = waiter;
+        }
+        mConnectionWaiterTails[priority] = waiter;
+        mConnectionWaiterCount += 1;
+        if (!waiter.mWantPrimaryConnection) {
+            mNonPrimaryConnectionWaiterCount += 1;
+        }
+    }
+
+    private void dequeueConnectionWaiterLocked(ConnectionWaiter waiter) {
+        final int priority = waiter.mPriority;
+        if (waiter.mPrev != null) {
+            waiter.mPrev.mNext = waiter.mNext;
+        } else {
+            mConnectionWaiterHeads[priority] = waiter.mNext;
+        }
+        if (waiter.mNext != null) {
+            waiter.mNext.mPrev = waiter.mPrev;
+        } else {
+            mConnectionWaiterTails[priority] = waiter.mPrev;
+        }
+        waiter.mPrev = null;
+        waiter.mNext = null;
+        mConnectionWaiterCount -= 1;
+        if (!waiter.mWantPrimaryConnection) {
+            mNonPrimaryConnectionWaiterCount -= 1;
         }
-        return false;
     }
 
     private static int getPriority(int connectionFlags) {
@@ -983,6 +1288,7 @@ public final class SQLiteConnectionPool implements Closeable {
     }
 
     private void recycleConnectionWaiterLocked(ConnectionWaiter waiter) {
+        waiter.mPrev = null;
         waiter.mNext = mConnectionWaiterPool;
         waiter.mThread = null;
         waiter.mSql = null;
@@ -1034,21 +1340,44 @@ public final class SQLiteConnectionPool implements Closeable {
                 indentedPrinter.println("<none>");
             }
 
+            printer.println("  Fast path connections (" + (mFastPathEnabled
+                    ? "enabled" : "revoked") + "):");
+            final FastPathEntry[] entries = mFastPathEntries;
+            if (entries.length != 0) {
+                for (FastPathEntry entry : entries) {
+                    final SQLiteConnection connection = entry.mConnectionRef.get();
+                    if (connection != null) {
+                        connection.dumpUnsafe(indentedPrinter, verbose);
+                    }
+                    indentedPrinter.println("  State: " + entry);
+                }
+            } else {
+                indentedPrinter.println("<none>");
+            }
+
             printer.println("  Connection waiters:");
-            if (mConnectionWaiterQueue != null) {
+            if (mConnectionWaiterCount != 0) {
                 int i = 0;
                 final long now = SystemClock.uptimeMillis();
-                for (ConnectionWaiter waiter = mConnectionWaiterQueue; waiter != null;
-                        waiter = waiter.mNext, i++) {
-                    indentedPrinter.println(i + ": waited for "
-                            + ((now - waiter.mStartTime) * 0.001f)
-                            + " ms - thread=" + waiter.mThread
-                            + ", priority=" + waiter.mPriority
-                            + ", sql='" + waiter.mSql + "'");
+                for (int priority = PRIORITY_COUNT - 1; priority >= 0; priority--) {
+                    for (ConnectionWaiter waiter = mConnectionWaiterHeads[priority];
+                            waiter != null; waiter = waiter.mNext, i++) {
+                        indentedPrinter.println(i + ": waited for "
+                                + ((now - waiter.mStartTime) * 0.001f)
+                                + " ms - thread=" + waiter.mThread
+                                + ", priority=" + waiter.mPriority
+                                + ", sql='" + waiter.mSql + "'");
+                    }
                 }
             } else {
                 indentedPrinter.println("<none>");
             }
+
+            printer.println("  Connection wait times:");
+            mWaitTimes.dump(indentedPrinter);
+
+            printer.println("  Statement shapes (shapes/hits/misses/warmUps):");
+            mStatementStats.dump(indentedPrinter, verbose);
         }
     }
 
@@ -1058,6 +1387,7 @@ public final class SQLiteConnectionPool implements Closeable {
     }
 
     private static final class ConnectionWaiter {
+        public ConnectionWaiter mPrev;
         public ConnectionWaiter mNext;
         public Thread mThread;
         public long mStartTime;
@@ -1069,4 +1399,81 @@ public final class SQLiteConnectionPool implements Closeable {
         public RuntimeException mException;
         public int mNonce;
     }
+
+    private static final class FastPathEntry {
+        public static final int IDLE = 0;
+        public static final int ACQUIRED = 1;
+        public static final int REVOKED = 2;
+
+        // Weak, so that a connection leaked while acquired can still be detected.
+        public final WeakReference<SQLiteConnection> mConnectionRef;
+        public final AtomicInteger mState = new AtomicInteger(IDLE);
+        // The strong reference while the entry is idle.  Only accessed by the thread
+        // that moved mState to or from IDLE, which publishes it.
+        public SQLiteConnection mIdleConnection;
+
+        public FastPathEntry(SQLiteConnection connection) {
+            mConnectionRef = new WeakReference<SQLiteConnection>(connection);
+            mIdleConnection = connection;
+        }
+
+        // An acquired connection that has been garbage collected can never be released.
+        public boolean isLeaked() {
+            return mState.get() == ACQUIRED && mConnectionRef.get() == null;
+        }
+
+        @Override
+        public String toString() {
+            switch (mState.get()) {
+                case IDLE:
+                    return "IDLE";
+                case ACQUIRED:
+                    return mConnectionRef.get() != null ? "ACQUIRED" : "LEAKED";
+                default:
+                    return "REVOKED";
+            }
+        }
+    }
+
+    // Counts how long acquireConnection() waited when no connection was available,
+    // in buckets of powers of two milliseconds.  Guarded by the pool lock.
+    private static final class WaitTimeHistogram {
+        // Bucket 0 counts waits under 1 ms and bucket i waits under 2^i ms.
+        // The last bucket counts all longer waits.
+        private static final int BUCKET_COUNT = 16;
+
+        private final long[] mCounts = new long[BUCKET_COUNT];
+
+        public void record(long waitMillis) {
+            final int bucket = waitMillis <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(waitMillis);
+            mCounts[Math.min(bucket, BUCKET_COUNT - 1)] += 1;
+        }
+
+        public void dump(Printer printer) {
+            boolean empty = true;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (mCounts[i] != 0) {
+                    printer.println((i < BUCKET_COUNT - 1 ? "< " + (1L << i)
+                            : ">= " + (1L << (i - 1))) + " ms: " + mCounts[i]);
+                    empty = false;
+                }
+            }
+            if (empty) {
+                printer.println("<none>");
+            }
+        }
+
+        // The counts of all buckets separated by slashes, like DbStats.cache.
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (i != 0) {
+                    b.append('/');
+                }
+                b.append(mCounts[i]);
+            }
+            return b.toString();
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SQLiteConnectionPoolTest extends AndroidTestCase {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private File mDatabaseFile;
+    private SQLiteDatabaseConfiguration mConfiguration;
+    private SQLiteConnectionPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        File dbDir = getContext().getDir(getClass().getName(), Context.MODE_PRIVATE);
+        mDatabaseFile = new File(dbDir, "connection_pool_test.db");
+        SQLiteDatabase.deleteDatabase(mDatabaseFile);
+        mConfiguration = new SQLiteDatabaseConfiguration(mDatabaseFile.getPath(),
+                SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        mPool = SQLiteConnectionPool.open(mConfiguration);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPool.close();
+        SQLiteDatabase.deleteDatabase(mDatabaseFile);
+        super.tearDown();
+    }
+
+    public void testFastPathRevokedWhileWaiterQueued() throws Exception {
+        List<SQLiteConnection> held = acquireAll();
+        assertTrue(mPool.isFastPathEnabled());
+
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        Acquirer waiter = new Acquirer("waiter", 0, log);
+        waiter.start();
+        awaitWaiters(1);
+        assertFalse(mPool.isFastPathEnabled());
+
+        mPool.releaseConnection(held.remove(held.size() - 1));
+        waiter.join(TIMEOUT_MILLIS);
+        assertEquals("[waiter]", log.toString());
+        assertTrue(mPool.isFastPathEnabled());
+
+        mPool.releaseConnection(waiter.mConnection);
+        releaseAll(held);
+        assertTrue(mPool.isFastPathEnabled());
+    }
+
+    public void testWaitersAreServedByPriority() throws Exception {
+        List<SQLiteConnection> held = acquireAll();
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        Acquirer[] waiters = new Acquirer[] {
+                new Acquirer("normal1", 0, log),
+                new Acquirer("interactive1",
+                        SQLiteConnectionPool.CONNECTION_FLAG_INTERACTIVE, log),
+                new Acquirer("normal2", 0, log),
+                new Acquirer("interactive2",
+                        SQLiteConnectionPool.CONNECTION_FLAG_INTERACTIVE, log),
+        };
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i].mReleaseImmediately = true;
+            waiters[i].start();
+            awaitWaiters(i + 1);
+        }
+
+        // A single connection is passed from waiter to waiter, so the log records
+        // the order in which they were served.
+        mPool.releaseConnection(held.remove(held.size() - 1));
+        for (Acquirer waiter : waiters) {
+            waiter.join(TIMEOUT_MILLIS);
+        }
+        assertEquals("[interactive1, interactive2, normal1, normal2]", log.toString());
+
+        releaseAll(held);
+        assertTrue(mPool.isFastPathEnabled());
+    }
+
+    public void testFastPathReenabledAfterReconfigure() {
+        SQLiteConnection connection = mPool.acquireConnection(null, 0, null);
+        mPool.releaseConnection(connection);
+        assertTrue(mPool.isFastPathEnabled());
+
+        SQLiteDatabaseConfiguration configuration =
+                new SQLiteDatabaseConfiguration(mConfiguration);
+        configuration.maxSqlCacheSize = 10;
+        mPool.reconfigure(configuration);
+        assertTrue(mPool.isFastPathEnabled());
+        mPool.releaseConnection(mPool.acquireConnection(null, 0, null));
+    }
+
+    public void testFastPathReenabledAfterReconfigureFails() {
+        SQLiteConnection connection = mPool.acquireConnection(null, 0, null);
+        SQLiteDatabaseConfiguration configuration =
+                new SQLiteDatabaseConfiguration(mConfiguration);
+        configuration.openFlags &= ~SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING;
+        try {
+            // Changing WAL mode requires that no connections are acquired.
+            mPool.reconfigure(configuration);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(mPool.isFastPathEnabled());
+
+        mPool.releaseConnection(connection);
+        assertTrue(mPool.isFastPathEnabled());
+        mPool.releaseConnection(mPool.acquireConnection(null, 0, null));
+    }
+
+    private List<SQLiteConnection> acquireAll() {
+        List<SQLiteConnection> connections = new ArrayList<SQLiteConnection>();
+        for (int i = mPool.getMaxConnectionPoolSize(); i > 0; i--) {
+            connections.add(mPool.acquireConnection(null, 0, null));
+        }
+        return connections;
+    }
+
+    private void releaseAll(List<SQLiteConnection> connections) {
+        for (SQLiteConnection connection : connections) {
+            mPool.releaseConnection(connection);
+        }
+        connections.clear();
+    }
+
+    private void awaitWaiters(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mPool.getConnectionWaiterCount() != count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("expected " + count + " waiters but found "
+                        + mPool.getConnectionWaiterCount());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private final class Acquirer extends Thread {
+        final String mName;
+        final int mConnectionFlags;
+        final List<String> mLog;
+        boolean mReleaseImmediately;
+        volatile SQLiteConnection mConnection;
+
+        Acquirer(String name, int connectionFlags, List<String> log) {
+            mName = name;
+            mConnectionFlags = connectionFlags;
+            mLog = log;
+        }
+
+        @Override
+        public void run() {
+            mConnection = mPool.acquireConnection(null, mConnectionFlags, null);
+            mLog.add(mName);
+            if (mReleaseImmediately) {
+                mPool.releaseConnection(mConnection);
+                mConnection = null;
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ import dalvik.system.CloseGuard;
 import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -1803,6 +1804,44 @@ public final class SQLiteDatabase extends SQLiteClosable {
         }
     }
 
+    /**
+     * Sets the statements to prepare ahead of time on every database connection,
+     * so that their first execution on a connection does not have to compile them.
+     * <p>
+     * The statements are prepared on the connections that are already open and
+     * on every connection opened later.  Statements that fail to prepare, for
+     * example because a table does not exist yet, are skipped.  Only queries and
+     * statements that modify the database are cached, and no more than fit in
+     * the cache, see {@link #setMaxSqlCacheSize}.
+     * </p><p>
+     * This method is thread-safe.
+     * </p>
+     *
+     * @param statements The SQL of the statements, most important first.
+     * @hide
+     */
+    public void setWarmUpStatements(String... statements) {
+        if (statements == null) {
+            throw new IllegalArgumentException("statements must not be null.");
+        }
+
+        synchronized (mLock) {
+            throwIfNotOpenLocked();
+
+            final ArrayList<String> oldWarmUpStatements =
+                    new ArrayList<String>(mConfigurationLocked.warmUpStatements);
+            mConfigurationLocked.warmUpStatements.clear();
+            mConfigurationLocked.warmUpStatements.addAll(Arrays.asList(statements));
+            try {
+                mConnectionPoolLocked.reconfigure(mConfigurationLocked);
+            } catch (RuntimeException ex) {
+                mConfigurationLocked.warmUpStatements.clear();
+                mConfigurationLocked.warmUpStatements.addAll(oldWarmUpStatements);
+                throw ex;
+            }
+        }
+    }
+
     /**
      * Sets whether foreign key constraints are enabled for the database.
      * <p>
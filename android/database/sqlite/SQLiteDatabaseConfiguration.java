@@ -89,6 +89,12 @@ public final class SQLiteDatabaseConfiguration {
     public final ArrayList<SQLiteCustomFunction> customFunctions =
             new ArrayList<SQLiteCustomFunction>();
 
+    /**
+     * The SQL of the statements to prepare ahead of time when a connection is opened,
+     * so that their first execution finds them in the prepared statement cache.
+     */
+    public final ArrayList<String> warmUpStatements = new ArrayList<String>();
+
     /**
      * Creates a database configuration with the required parameters for opening a
      * database and default values for all other parameters.
@@ -146,6 +152,8 @@ public final class SQLiteDatabaseConfiguration {
         foreignKeyConstraintsEnabled = other.foreignKeyConstraintsEnabled;
         customFunctions.clear();
         customFunctions.addAll(other.customFunctions);
+        warmUpStatements.clear();
+        warmUpStatements.addAll(other.warmUpStatements);
     }
 
     /**
@@ -133,6 +133,19 @@ public final class SQLiteDebug {
         /** statement cache stats: hits/misses/cachesize */
         public String cache;
 
+        /**
+         * connection pool wait times: counts of waits under 1/2/4/... ms, or null.
+         * @hide
+         */
+        public String connectionWaits;
+
+        /**
+         * prepared statement stats of the whole connection pool, grouped by
+         * statement shape: shapes/hits/misses/warmups, or null.
+         * @hide
+         */
+        public String statementShapes;
+
         public DbStats(String dbName, long pageCount, long pageSize, int lookaside,
             int hits, int misses, int cachesize) {
             this.dbName = dbName;
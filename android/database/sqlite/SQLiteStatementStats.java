@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import android.util.LruCache;
+import android.util.Printer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statement cache statistics of all connections of a connection pool,
+ * grouped by statement shape.
+ * <p>
+ * Two statements have the same shape when their SQL only differs in whitespace,
+ * comments, the case of unquoted words, literal values, parameter names and the
+ * length of parameter lists.  See {@link #normalize}.
+ * </p><p>
+ * Native prepared statements belong to a single sqlite3 connection and cannot be
+ * shared, so each connection still keeps its own cache.  What is shared is the
+ * knowledge of which statements are hot: a connection opened after the pool has
+ * been in use for a while warms its cache with them, see {@link #getHotStatements}.
+ * </p><p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class SQLiteStatementStats {
+    // The maximum number of shapes to remember.  The least recently used shape is
+    // forgotten first.
+    private static final int MAX_SHAPES = 100;
+
+    // Compares hit counts taken before sorting.  Live counts keep changing while
+    // other connections reuse statements, which would break the sort's contract.
+    private static final Comparator<RankedShape> HOTTEST_FIRST = new Comparator<RankedShape>() {
+        @Override
+        public int compare(RankedShape lhs, RankedShape rhs) {
+            return lhs.mHitCount > rhs.mHitCount ? -1 : (lhs.mHitCount < rhs.mHitCount ? 1 : 0);
+        }
+    };
+
+    private final LruCache<String, Shape> mShapes = new LruCache<String, Shape>(MAX_SHAPES) {
+        @Override
+        protected Shape create(String normalizedSql) {
+            return new Shape(normalizedSql);
+        }
+    };
+
+    /**
+     * Gets the shape of a statement, creating it if needed.
+     *
+     * Normalizes the SQL, so only call this when the statement is prepared, not
+     * each time a cached statement is reused.
+     *
+     * @param sql The SQL of the statement.
+     * @return The shape, never null.
+     */
+    public Shape getShape(String sql) {
+        final Shape shape = mShapes.get(normalize(sql));
+        shape.noteSql(sql);
+        return shape;
+    }
+
+    /**
+     * Adds the SQL of the statements that were reused most often to a list, skipping
+     * shapes seen with more than one SQL string since those are not worth caching
+     * ahead of time.
+     *
+     * @param statements The list to add to.
+     * @param maxCount The maximum number of statements to add.
+     */
+    public void getHotStatements(ArrayList<String> statements, int maxCount) {
+        final RankedShape[] shapes = rankHottestFirst(mShapes.snapshot().values());
+        for (int i = 0; i < shapes.length && maxCount > 0; i++) {
+            final String sql = shapes[i].mShape.getReusableSql();
+            if (sql != null && !statements.contains(sql)) {
+                statements.add(sql);
+                maxCount -= 1;
+            }
+        }
+    }
+
+    /**
+     * Dumps the statistics, hottest shapes first.
+     *
+     * @param printer The printer to receive the dump, not null.
+     * @param verbose True to dump every shape, not just the totals.
+     */
+    public void dump(Printer printer, boolean verbose) {
+        final Collection<Shape> shapes = mShapes.snapshot().values();
+        printer.println(summarize(shapes));
+        if (verbose) {
+            final RankedShape[] ranked = rankHottestFirst(shapes);
+            for (int i = 0; i < ranked.length; i++) {
+                printer.println(i + ": " + ranked[i].mShape);
+            }
+        }
+    }
+
+    private static RankedShape[] rankHottestFirst(Collection<Shape> shapes) {
+        final RankedShape[] ranked = new RankedShape[shapes.size()];
+        int i = 0;
+        for (Shape shape : shapes) {
+            ranked[i++] = new RankedShape(shape);
+        }
+        Arrays.sort(ranked, HOTTEST_FIRST);
+        return ranked;
+    }
+
+    // The number of shapes and their total hits, misses and warm-ups separated by
+    // slashes, like DbStats.cache.
+    @Override
+    public String toString() {
+        return summarize(mShapes.snapshot().values());
+    }
+
+    private static String summarize(Iterable<Shape> shapes) {
+        int count = 0;
+        long hits = 0;
+        long misses = 0;
+        long warmUps = 0;
+        for (Shape shape : shapes) {
+            synchronized (shape) {
+                count += 1;
+                hits += shape.mHitCount.get();
+                misses += shape.mMissCount;
+                warmUps += shape.mWarmUpCount;
+            }
+        }
+        return count + "/" + hits + "/" + misses + "/" + warmUps;
+    }
+
+    /**
+     * Normalizes SQL so that statements of the same shape have the same text.
+     * <p>
+     * Whitespace runs become a single space and comments are removed.  Unquoted
+     * words are lowercased, since SQLite folds the case of ASCII letters in
+     * keywords and identifiers alike.  Numeric, string and blob literals and
+     * parameters of any syntax become {@code ?}, and a comma separated list of
+     * parameters becomes a single one so that {@code IN (?, ?)} and
+     * {@code IN (?, ?, ?)} have the same shape.  Quoted identifiers are kept.
+     * </p>
+     *
+     * @param sql The SQL to normalize.
+     * @return The normalized SQL.
+     */
+    public static String normalize(String sql) {
+        final int length = sql.length();
+        final StringBuilder b = new StringBuilder(length);
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < length) {
+            final char c = sql.charAt(i);
+            final char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i += 1;
+                continue;
+            }
+            if (c == '-' && next == '-') {
+                final int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                final int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                pendingSpace = true;
+                continue;
+            }
+
+            if (pendingSpace && b.length() != 0) {
+                b.append(' ');
+            }
+            pendingSpace = false;
+
+            if (c == '"' || c == '`') {
+                final int end = skipQuoted(sql, i, c);
+                b.append(sql, i, end);
+                i = end;
+            } else if (c == '[') {
+                final int end = sql.indexOf(']', i + 1);
+                final int after = end < 0 ? length : end + 1;
+                b.append(sql, i, after);
+                i = after;
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                appendParameter(b);
+            } else if ((c == 'x' || c == 'X') && next == '\'') {
+                i = skipQuoted(sql, i + 1, '\'');
+                appendParameter(b);
+            } else if (c == '?') {
+                i += 1;
+                while (i < length && isDigit(sql.charAt(i))) {
+                    i += 1;
+                }
+                appendParameter(b);
+            } else if ((c == ':' || c == '@' || c == '$') && isWordPart(next)) {
+                i += 1;
+                while (i < length && isWordPart(sql.charAt(i))) {
+                    i += 1;
+                }
+                appendParameter(b);
+            } else if (isWordStart(c)) {
+                while (i < length && isWordPart(sql.charAt(i))) {
+                    final char w = sql.charAt(i);
+                    b.append(w >= 'A' && w <= 'Z' ? (char) (w + ('a' - 'A')) : w);
+                    i += 1;
+                }
+            } else if (isDigit(c) || (c == '.' && isDigit(next))) {
+                i = skipNumber(sql, i);
+                appendParameter(b);
+            } else {
+                b.append(c);
+                i += 1;
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of normalized SQL, used to refer to a shape
+     * compactly in logs and dumps.
+     *
+     * @param normalizedSql The normalized SQL.
+     * @return The fingerprint.
+     */
+    public static long fingerprint(String normalizedSql) {
+        long hash = 0xcbf29ce484222325L;
+        final int length = normalizedSql.length();
+        for (int i = 0; i < length; i++) {
+            hash ^= normalizedSql.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Returns the index after the closing quote.  Doubled quotes are escapes.
+    private static int skipQuoted(String sql, int start, char quote) {
+        final int length = sql.length();
+        int i = start + 1;
+        while (i < length) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i += 1;
+        }
+        return length;
+    }
+
+    // Returns the index after a decimal, real or hexadecimal numeric literal.
+    private static int skipNumber(String sql, int start) {
+        final int length = sql.length();
+        int i = start;
+        if (sql.charAt(i) == '0' && i + 1 < length
+                && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < length && Character.digit(sql.charAt(i), 16) >= 0) {
+                i += 1;
+            }
+            return i;
+        }
+        while (i < length && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+            i += 1;
+        }
+        if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int j = i + 1;
+            if (j < length && (sql.charAt(j) == '+' || sql.charAt(j) == '-')) {
+                j += 1;
+            }
+            if (j < length && isDigit(sql.charAt(j))) {
+                i = j;
+                while (i < length && isDigit(sql.charAt(i))) {
+                    i += 1;
+                }
+            }
+        }
+        return i;
+    }
+
+    // Appends a parameter, unless it continues a comma separated list of them.
+    private static void appendParameter(StringBuilder b) {
+        int end = b.length();
+        while (end > 0 && b.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        if (end > 0 && b.charAt(end - 1) == ',') {
+            int start = end - 1;
+            while (start > 0 && b.charAt(start - 1) == ' ') {
+                start -= 1;
+            }
+            if (start > 0 && b.charAt(start - 1) == '?') {
+                b.setLength(start);
+                return;
+            }
+        }
+        b.append('?');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 0x80;
+    }
+
+    private static boolean isWordPart(char c) {
+        return isWordStart(c) || isDigit(c) || c == '$';
+    }
+
+    /**
+     * A shape with its hit count at the time it was ranked.
+     */
+    private static final class RankedShape {
+        final Shape mShape;
+        final long mHitCount;
+
+        RankedShape(Shape shape) {
+            mShape = shape;
+            mHitCount = shape.getHitCount();
+        }
+    }
+
+    /**
+     * The statistics of one statement shape.  The hit count is atomic since it is
+     * updated each time a cached statement is reused; everything else is guarded
+     * by the shape.
+     */
+    static final class Shape {
+        private final String mNormalizedSql;
+        private final long mFingerprint;
+
+        // The SQL of the first statement of this shape, or null once statements
+        // with different SQL were seen.
+        private String mSql;
+        private boolean mSqlVaries;
+
+        private final AtomicLong mHitCount = new AtomicLong();
+        private long mMissCount;
+        private long mWarmUpCount;
+        private long mPrepareNanos;
+
+        Shape(String normalizedSql) {
+            mNormalizedSql = normalizedSql;
+            mFingerprint = fingerprint(normalizedSql);
+        }
+
+        public long getFingerprint() {
+            return mFingerprint;
+        }
+
+        /**
+         * Counts reusing a cached statement.
+         */
+        public void recordHit() {
+            mHitCount.incrementAndGet();
+        }
+
+        /**
+         * Counts preparing a statement.
+         *
+         * @param prepareNanos How long preparing took.
+         * @param warmUp True if the statement was prepared ahead of time to warm up
+         * a cache rather than because it was about to be executed.
+         */
+        public synchronized void recordPrepare(long prepareNanos, boolean warmUp) {
+            if (warmUp) {
+                mWarmUpCount += 1;
+            } else {
+                mMissCount += 1;
+            }
+            mPrepareNanos += prepareNanos;
+        }
+
+        long getHitCount() {
+            return mHitCount.get();
+        }
+
+        synchronized void noteSql(String sql) {
+            if (mSql == null) {
+                if (!mSqlVaries) {
+                    mSql = sql;
+                }
+            } else if (!mSql.equals(sql)) {
+                mSql = null;
+                mSqlVaries = true;
+            }
+        }
+
+        // Returns the SQL of this shape if it was reused at least once and never
+        // seen with different SQL, otherwise null.
+        synchronized String getReusableSql() {
+            return mHitCount.get() != 0 ? mSql : null;
+        }
+
+        @Override
+        public synchronized String toString() {
+            final long prepares = mMissCount + mWarmUpCount;
+            return "fingerprint=" + Long.toHexString(mFingerprint)
+                    + ", hits=" + mHitCount.get()
+                    + ", misses=" + mMissCount
+                    + ", warmUps=" + mWarmUpCount
+                    + ", avgPrepareTime="
+                    + (prepares != 0 ? mPrepareNanos / prepares / 1000 : 0) + "us"
+                    + ", sql=\"" + mNormalizedSql + "\"";
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.database.sqlite;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class SQLiteStatementStatsTest extends TestCase {
+
+    public void testNormalizeWhitespaceCommentsAndCase() {
+        assertEquals("select * from t where a = ?",
+                SQLiteStatementStats.normalize("  SELECT *\n\tFROM T -- the table\n"
+                        + "WHERE /* column */ A = ?  "));
+    }
+
+    public void testNormalizeLiterals() {
+        assertEquals("select ? from t where a = ? and b = ? and c = ? and d = ?",
+                SQLiteStatementStats.normalize("SELECT 1.5e3 FROM t WHERE a = 'it''s'"
+                        + " AND b = X'00ff' AND c = 0x1F AND d = :name"));
+        assertEquals("select col1, t2.c from t2 where x = ?",
+                SQLiteStatementStats.normalize("select col1, t2.c from t2 where x = 42"));
+    }
+
+    public void testNormalizeKeepsQuotedIdentifiers() {
+        assertEquals("select \"Mixed Case\", [Other], `Third` from t",
+                SQLiteStatementStats.normalize(
+                        "SELECT \"Mixed Case\", [Other], `Third` FROM T"));
+    }
+
+    public void testNormalizeCollapsesParameterLists() {
+        String expected = "select * from t where _id in (?)";
+        assertEquals(expected,
+                SQLiteStatementStats.normalize("SELECT * FROM t WHERE _id IN (?)"));
+        assertEquals(expected,
+                SQLiteStatementStats.normalize("SELECT * FROM t WHERE _id IN (?, ?,?)"));
+        assertEquals(expected,
+                SQLiteStatementStats.normalize("SELECT * FROM t WHERE _id IN (1, 2, 3)"));
+        assertEquals("insert into t (a, b) values (?)",
+                SQLiteStatementStats.normalize("INSERT INTO t (a, b) VALUES (?1, ?2)"));
+    }
+
+    public void testFingerprint() {
+        String a = SQLiteStatementStats.normalize("SELECT a FROM t WHERE b = 1");
+        String b = SQLiteStatementStats.normalize("select a from t where b = 2");
+        String c = SQLiteStatementStats.normalize("select b from t where a = 2");
+        assertEquals(SQLiteStatementStats.fingerprint(a), SQLiteStatementStats.fingerprint(b));
+        assertFalse(SQLiteStatementStats.fingerprint(a) == SQLiteStatementStats.fingerprint(c));
+    }
+
+    public void testShapesAndHotStatements() {
+        SQLiteStatementStats stats = new SQLiteStatementStats();
+
+        SQLiteStatementStats.Shape byId = stats.getShape("SELECT * FROM t WHERE _id = ?");
+        byId.recordPrepare(1000, false);
+        byId.recordHit();
+        byId.recordHit();
+        assertSame(byId, stats.getShape("SELECT * FROM t WHERE _id = ?"));
+
+        SQLiteStatementStats.Shape byName = stats.getShape("SELECT * FROM t WHERE name = 'a'");
+        byName.recordPrepare(1000, false);
+        byName.recordHit();
+        byName.recordHit();
+        byName.recordHit();
+        assertSame(byName, stats.getShape("SELECT * FROM t WHERE name = 'b'"));
+
+        SQLiteStatementStats.Shape cold = stats.getShape("SELECT * FROM u");
+        cold.recordPrepare(1000, true);
+
+        assertEquals("3/5/2/1", stats.toString());
+
+        // Only shapes reused with the same SQL are worth preparing ahead of time.
+        ArrayList<String> statements = new ArrayList<String>();
+        stats.getHotStatements(statements, 10);
+        assertEquals(1, statements.size());
+        assertEquals("SELECT * FROM t WHERE _id = ?", statements.get(0));
+
+        statements.clear();
+        stats.getHotStatements(statements, 0);
+        assertTrue(statements.isEmpty());
+    }
+
+    public void testHotStatementsWhileHitsAreRecorded() throws Exception {
+        final SQLiteStatementStats stats = new SQLiteStatementStats();
+        final SQLiteStatementStats.Shape[] shapes = new SQLiteStatementStats.Shape[64];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = stats.getShape("SELECT * FROM t" + i);
+        }
+
+        // Ranking must not trip over counts that change while it sorts.
+        final int threadCount = 4;
+        final int hitsPerThread = 100000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < hitsPerThread; i++) {
+                            shapes[(i * 31 + seed) % shapes.length].recordHit();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        try {
+            while (done.getCount() != 0) {
+                stats.getHotStatements(new ArrayList<String>(), 10);
+            }
+        } catch (RuntimeException e) {
+            failure.set(e);
+        }
+        done.await();
+        assertNull(failure.get());
+
+        assertEquals(shapes.length + "/" + threadCount * hitsPerThread + "/0/0",
+                stats.toString());
+        ArrayList<String> statements = new ArrayList<String>();
+        stats.getHotStatements(statements, shapes.length);
+        assertEquals(shapes.length, statements.size());
+    }
+}
@@ -30,6 +30,7 @@ import libcore.util.EmptyArray;
 import java.io.CharArrayWriter;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Objects;
 
@@ -85,6 +86,12 @@ public class NetworkStats implements Parcelable {
     private long[] txPackets;
     private long[] operations;
 
+    /**
+     * Row indexes in canonical order, built by {@link #getSortedOrder()} and
+     * cleared whenever a row is added.
+     */
+    private int[] sortedOrder;
+
     public static class Entry {
         public String iface;
         public int uid;
@@ -267,6 +274,7 @@ public class NetworkStats implements Parcelable {
             capacity = newLength;
         }
 
+        sortedOrder = null;
         iface[size] = entry.iface;
         uid[size] = entry.uid;
         set[size] = entry.set;
@@ -411,8 +419,9 @@ public class NetworkStats implements Parcelable {
      * since operation counts are at data layer.
      */
     public void spliceOperationsFrom(NetworkStats stats) {
+        final int[] matches = matchRows(this, stats);
         for (int i = 0; i < size; i++) {
-            final int j = stats.findIndex(iface[i], uid[i], set[i], tag[i]);
+            final int j = matches[i];
             if (j == -1) {
                 operations[i] = 0;
             } else {
@@ -591,6 +600,7 @@ public class NetworkStats implements Parcelable {
         } else {
             result = new NetworkStats(deltaRealtime, left.size);
         }
+        final int[] matches = matchRows(left, right);
         for (int i = 0; i < left.size; i++) {
             entry.iface = left.iface[i];
             entry.uid = left.uid[i];
@@ -598,7 +608,7 @@ public class NetworkStats implements Parcelable {
             entry.tag = left.tag[i];
 
             // find remote row that matches, and subtract
-            final int j = right.findIndexHinted(entry.iface, entry.uid, entry.set, entry.tag, i);
+            final int j = matches[i];
             if (j == -1) {
                 // newly appearing row, return entire value
                 entry.rxBytes = left.rxBytes[i];
@@ -633,6 +643,103 @@ public class NetworkStats implements Parcelable {
         return result;
     }
 
+    /**
+     * Find the row of {@code right} matching each row of {@code left}, or
+     * {@code -1} when missing. Snapshots usually keep their rows in the same
+     * order, which is matched directly; otherwise both sides are merged in
+     * their {@link #getSortedOrder()}, pairing up rows with duplicate keys in
+     * index order.
+     */
+    private static int[] matchRows(NetworkStats left, NetworkStats right) {
+        final int[] matches = new int[left.size];
+        int i = 0;
+        while (i < left.size && i < right.size && compareKeys(left, i, right, i) == 0) {
+            matches[i] = i;
+            i++;
+        }
+        if (i == left.size) return matches;
+
+        final int[] leftOrder = left.getSortedOrder();
+        final int[] rightOrder = right.getSortedOrder();
+        int j = 0;
+        int k = 0;
+        while (k < left.size) {
+            final int first = leftOrder[k];
+            while (j < right.size && compareKeys(right, rightOrder[j], left, first) < 0) {
+                j++;
+            }
+            int end = j;
+            while (end < right.size && compareKeys(right, rightOrder[end], left, first) == 0) {
+                end++;
+            }
+            int r = j;
+            do {
+                if (r < end) {
+                    matches[leftOrder[k]] = rightOrder[r++];
+                } else {
+                    matches[leftOrder[k]] = end > j ? rightOrder[end - 1] : -1;
+                }
+                k++;
+            } while (k < left.size && compareKeys(left, leftOrder[k], left, first) == 0);
+            j = end;
+        }
+        return matches;
+    }
+
+    /**
+     * Return all row indexes in canonical order of {@link #uid}, {@link #set},
+     * {@link #tag} and {@link #iface}, keeping rows with equal keys in index
+     * order. Sorted lazily and cached until another row is added; rows that
+     * are already in order are sorted in linear time.
+     */
+    private int[] getSortedOrder() {
+        if (sortedOrder != null) return sortedOrder;
+
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // bottom-up merge sort, skipping runs that are already in order
+        int[] scratch = null;
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size - width; lo += 2 * width) {
+                final int mid = lo + width;
+                final int hi = Math.min(mid + width, size);
+                if (compareKeys(this, order[mid - 1], this, order[mid]) <= 0) continue;
+
+                if (scratch == null) scratch = new int[size];
+                System.arraycopy(order, lo, scratch, lo, hi - lo);
+                int a = lo;
+                int b = mid;
+                for (int out = lo; out < hi; out++) {
+                    if (b >= hi || (a < mid
+                            && compareKeys(this, scratch[a], this, scratch[b]) <= 0)) {
+                        order[out] = scratch[a++];
+                    } else {
+                        order[out] = scratch[b++];
+                    }
+                }
+            }
+        }
+
+        sortedOrder = order;
+        return order;
+    }
+
+    private static int compareKeys(NetworkStats left, int i, NetworkStats right, int j) {
+        if (left.uid[i] != right.uid[j]) return left.uid[i] < right.uid[j] ? -1 : 1;
+        if (left.set[i] != right.set[j]) return left.set[i] < right.set[j] ? -1 : 1;
+        if (left.tag[i] != right.tag[j]) return left.tag[i] < right.tag[j] ? -1 : 1;
+
+        final String leftIface = left.iface[i];
+        final String rightIface = right.iface[j];
+        if (leftIface == rightIface) return 0;
+        if (leftIface == null) return -1;
+        if (rightIface == null) return 1;
+        return leftIface.compareTo(rightIface);
+    }
+
     /**
      * Return total statistics grouped by {@link #iface}; doesn't mutate the
      * original structure.
@@ -646,16 +753,24 @@ public class NetworkStats implements Parcelable {
         entry.tag = TAG_NONE;
         entry.operations = 0L;
 
+        // only a handful of interfaces, so remember where each one went
+        final HashMap<String, Integer> rows = new HashMap<String, Integer>();
         for (int i = 0; i < size; i++) {
             // skip specific tags, since already counted in TAG_NONE
             if (tag[i] != TAG_NONE) continue;
 
-            entry.iface = iface[i];
-            entry.rxBytes = rxBytes[i];
-            entry.rxPackets = rxPackets[i];
-            entry.txBytes = txBytes[i];
-            entry.txPackets = txPackets[i];
-            stats.combineValues(entry);
+            final Integer row = rows.get(iface[i]);
+            if (row == null) {
+                rows.put(iface[i], stats.size);
+                entry.iface = iface[i];
+                entry.rxBytes = rxBytes[i];
+                entry.rxPackets = rxPackets[i];
+                entry.txBytes = txBytes[i];
+                entry.txPackets = txPackets[i];
+                stats.addValues(entry);
+            } else {
+                stats.addInPlace(row, i, this);
+            }
         }
 
         return stats;
@@ -673,22 +788,51 @@ public class NetworkStats implements Parcelable {
         entry.set = SET_ALL;
         entry.tag = TAG_NONE;
 
+        // rows of the same uid are adjacent in sorted order; point each row at
+        // the first of its uid, which then points at its grouped row
+        final int[] order = getSortedOrder();
+        final int[] leader = new int[size];
+        for (int k = 0; k < size; k++) {
+            final int i = order[k];
+            leader[i] = (k > 0 && uid[order[k - 1]] == uid[i]) ? leader[order[k - 1]] : i;
+        }
+        final int[] rows = new int[size];
+        Arrays.fill(rows, -1);
+
         for (int i = 0; i < size; i++) {
             // skip specific tags, since already counted in TAG_NONE
             if (tag[i] != TAG_NONE) continue;
 
-            entry.uid = uid[i];
-            entry.rxBytes = rxBytes[i];
-            entry.rxPackets = rxPackets[i];
-            entry.txBytes = txBytes[i];
-            entry.txPackets = txPackets[i];
-            entry.operations = operations[i];
-            stats.combineValues(entry);
+            final int row = rows[leader[i]];
+            if (row == -1) {
+                rows[leader[i]] = stats.size;
+                entry.uid = uid[i];
+                entry.rxBytes = rxBytes[i];
+                entry.rxPackets = rxPackets[i];
+                entry.txBytes = txBytes[i];
+                entry.txPackets = txPackets[i];
+                entry.operations = operations[i];
+                stats.addValues(entry);
+            } else {
+                stats.addInPlace(row, i, this);
+                stats.operations[row] += operations[i];
+            }
         }
 
         return stats;
     }
 
+    /**
+     * Add the traffic of row {@code j} of {@code another} to row {@code i},
+     * leaving {@link #operations} untouched.
+     */
+    private void addInPlace(int i, int j, NetworkStats another) {
+        rxBytes[i] += another.rxBytes[j];
+        rxPackets[i] += another.rxPackets[j];
+        txBytes[i] += another.txBytes[j];
+        txPackets[i] += another.txPackets[j];
+    }
+
     /**
      * Return all rows except those attributed to the requested UID; doesn't
      * mutate the original structure.
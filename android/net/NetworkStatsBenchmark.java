@@ -19,14 +19,18 @@ package android.net;
 import com.google.caliper.Param;
 import com.google.caliper.SimpleBenchmark;
 
+import java.util.Random;
+
 public class NetworkStatsBenchmark extends SimpleBenchmark {
     private static final String UNDERLYING_IFACE = "wlan0";
     private static final String TUN_IFACE = "tun0";
     private static final int TUN_UID = 999999999;
+    private static final int POLL_COUNT = 20;
 
-    @Param({"100", "1000"})
+    @Param({"100", "1000", "5000"})
     private int mSize;
     private NetworkStats mNetworkStats;
+    private NetworkStats[] mPolls;
 
     @Override
     protected void setUp() throws Exception {
@@ -60,6 +64,65 @@ public class NetworkStatsBenchmark extends SimpleBenchmark {
         recycle.txPackets = 1200 * mSize;
         recycle.operations = 0;
         mNetworkStats.addValues(recycle);
+
+        mPolls = buildPolls(mNetworkStats, POLL_COUNT);
+    }
+
+    /**
+     * Return a sequence of snapshots starting with {@code first}, where every
+     * poll adds traffic to some rows and, like the kernel reporting a newly
+     * active uid or tag, inserts a few new rows at random positions.
+     */
+    private static NetworkStats[] buildPolls(NetworkStats first, int count) {
+        final Random random = new Random(0);
+        final NetworkStats[] polls = new NetworkStats[count];
+        polls[0] = first;
+        NetworkStats.Entry entry = null;
+        int nextUid = 100000;
+        for (int p = 1; p < count; p++) {
+            final NetworkStats previous = polls[p - 1];
+            final NetworkStats poll = new NetworkStats(previous.getElapsedRealtime() + 1000,
+                    previous.size() + 4);
+            for (int i = 0; i < previous.size(); i++) {
+                if (random.nextInt(previous.size()) < 2) {
+                    poll.addValues(UNDERLYING_IFACE, nextUid++, NetworkStats.SET_DEFAULT,
+                            random.nextInt(4), 1024, 1, 1024, 1, 0);
+                }
+                entry = previous.getValues(i, entry);
+                if (random.nextBoolean()) {
+                    entry.rxBytes += 1500;
+                    entry.rxPackets++;
+                    entry.txBytes += 600;
+                    entry.txPackets++;
+                }
+                poll.addValues(entry);
+            }
+            polls[p] = poll;
+        }
+        return polls;
+    }
+
+    /**
+     * Replays a sequence of polls, subtracting each fresh snapshot from the one
+     * before it and grouping the delta, like NetworkStatsService does.
+     */
+    public void timeSubtractPolls(int reps) {
+        for (int i = 0; i < reps; i++) {
+            NetworkStats previous = mPolls[0].clone();
+            for (int p = 1; p < mPolls.length; p++) {
+                final NetworkStats current = mPolls[p].clone();
+                final NetworkStats delta = NetworkStats.subtract(current, previous, null, null);
+                delta.groupedByIface();
+                delta.groupedByUid();
+                previous = current;
+            }
+        }
+    }
+
+    public void timeGroupedByUid(int reps) {
+        for (int i = 0; i < reps; i++) {
+            mPolls[mPolls.length - 1].clone().groupedByUid();
+        }
     }
 
     public void timeMigrateTun(int reps) {
@@ -22,7 +22,10 @@ import static android.net.NetworkStats.TAG_NONE;
 import static android.net.NetworkStats.UID_ALL;
 import static android.net.NetworkStatsHistory.DataStreamUtils.readFullLongArray;
 import static android.net.NetworkStatsHistory.DataStreamUtils.readVarLongArray;
+import static android.net.NetworkStatsHistory.DataStreamUtils.skipFully;
+import static android.net.NetworkStatsHistory.DataStreamUtils.writeVarLong;
 import static android.net.NetworkStatsHistory.DataStreamUtils.writeVarLongArray;
+import static android.net.NetworkStatsHistory.DataStreamUtils.writeVarLongDeltas;
 import static android.net.NetworkStatsHistory.Entry.UNKNOWN;
 import static android.net.NetworkStatsHistory.ParcelUtils.readLongArray;
 import static android.net.NetworkStatsHistory.ParcelUtils.writeLongArray;
@@ -35,6 +38,7 @@ import android.util.MathUtils;
 
 import com.android.internal.util.IndentingPrintWriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.CharArrayWriter;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -199,6 +203,111 @@ public class NetworkStatsHistory implements Parcelable {
         writeVarLongArray(out, operations, bucketCount);
     }
 
+    /**
+     * Write this history in the columnar format read by
+     * {@link #readColumnarFromStream(DataInputStream, long, long)}. The time range
+     * of the buckets and the length of their encoded series come first, so that
+     * readers can skip a history outside the range they need without decoding it.
+     */
+    public void writeColumnarToStream(DataOutputStream out) throws IOException {
+        // columnar := bucketDuration bucketCount [start end length columns]
+        // columns := startUnit *(startDelta) fields *(series)
+        // series := length *(zigzag value delta)
+        out.writeLong(bucketDuration);
+        out.writeInt(bucketCount);
+        if (bucketCount == 0) return;
+        out.writeLong(getStart());
+        out.writeLong(getEnd());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(bucketCount * 8);
+        final DataOutputStream columns = new DataOutputStream(bytes);
+
+        // bucket starts are usually whole buckets apart
+        long startUnit = bucketDuration > 0 ? bucketDuration : 1;
+        for (int i = 1; i < bucketCount && startUnit != 1; i++) {
+            if ((bucketStart[i] - bucketStart[i - 1]) % startUnit != 0) startUnit = 1;
+        }
+        writeVarLong(columns, startUnit);
+        for (int i = 1; i < bucketCount; i++) {
+            writeVarLong(columns, (bucketStart[i] - bucketStart[i - 1]) / startUnit);
+        }
+
+        int fields = 0;
+        if (activeTime != null) fields |= FIELD_ACTIVE_TIME;
+        if (rxBytes != null) fields |= FIELD_RX_BYTES;
+        if (rxPackets != null) fields |= FIELD_RX_PACKETS;
+        if (txBytes != null) fields |= FIELD_TX_BYTES;
+        if (txPackets != null) fields |= FIELD_TX_PACKETS;
+        if (operations != null) fields |= FIELD_OPERATIONS;
+        columns.writeByte(fields);
+        writeVarLongDeltas(columns, activeTime, bucketCount);
+        writeVarLongDeltas(columns, rxBytes, bucketCount);
+        writeVarLongDeltas(columns, rxPackets, bucketCount);
+        writeVarLongDeltas(columns, txBytes, bucketCount);
+        writeVarLongDeltas(columns, txPackets, bucketCount);
+        writeVarLongDeltas(columns, operations, bucketCount);
+        columns.flush();
+
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Read a history written by {@link #writeColumnarToStream(DataOutputStream)},
+     * keeping only the buckets that overlap the requested time range. A history
+     * outside of the range is skipped without being decoded, and the series of
+     * one that overlaps are only decoded up to the last bucket in the range.
+     */
+    public static NetworkStatsHistory readColumnarFromStream(DataInputStream in, long start,
+            long end) throws IOException {
+        final long bucketDuration = in.readLong();
+        final int bucketCount = in.readInt();
+        if (bucketCount < 0) throw new ProtocolException("negative bucket count");
+        if (bucketCount == 0) return new NetworkStatsHistory(bucketDuration, 0);
+
+        final long historyStart = in.readLong();
+        final long historyEnd = in.readLong();
+        final int length = in.readInt();
+        if (length < 0) throw new ProtocolException("negative columns length");
+        if (historyEnd <= start || historyStart >= end) {
+            skipFully(in, length);
+            return new NetworkStatsHistory(bucketDuration, 0);
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        final VarLongReader columns = new VarLongReader(bytes);
+
+        // decode starts to find the overlapping buckets [first, last)
+        final long startUnit = columns.next();
+        final long[] starts = new long[bucketCount];
+        starts[0] = historyStart;
+        for (int i = 1; i < bucketCount; i++) {
+            starts[i] = starts[i - 1] + columns.next() * startUnit;
+        }
+        int first = 0;
+        while (first < bucketCount && starts[first] + bucketDuration <= start) first++;
+        int last = first;
+        while (last < bucketCount && starts[last] < end) last++;
+
+        final int fields = columns.nextByte();
+        final NetworkStatsHistory history = new NetworkStatsHistory(
+                bucketDuration, last - first, fields);
+        System.arraycopy(starts, first, history.bucketStart, 0, last - first);
+        columns.readDeltas(history.activeTime, first, last);
+        columns.readDeltas(history.rxBytes, first, last);
+        columns.readDeltas(history.rxPackets, first, last);
+        columns.readDeltas(history.txBytes, first, last);
+        columns.readDeltas(history.txPackets, first, last);
+        columns.readDeltas(history.operations, first, last);
+        history.bucketCount = last - first;
+        for (int i = 0; i < history.bucketCount; i++) {
+            history.totalBytes += getLong(history.rxBytes, i, 0L)
+                    + getLong(history.txBytes, i, 0L);
+        }
+        return history;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -663,6 +772,57 @@ public class NetworkStatsHistory implements Parcelable {
         return (int) (size() * getBucketDuration() / newBucketDuration);
     }
 
+    /**
+     * Decodes the columns written by {@link #writeColumnarToStream(DataOutputStream)}.
+     */
+    private static class VarLongReader {
+        private final byte[] bytes;
+        private int position;
+
+        public VarLongReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public int nextByte() throws ProtocolException {
+            if (position >= bytes.length) throw new ProtocolException("truncated columns");
+            return bytes[position++] & 0xFF;
+        }
+
+        public long next() throws ProtocolException {
+            int shift = 0;
+            long result = 0;
+            while (shift < 64) {
+                final int b = nextByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return result;
+                shift += 7;
+            }
+            throw new ProtocolException("malformed long");
+        }
+
+        /**
+         * Decode the values of buckets [first, last) of the next series into
+         * {@code values}, and skip the rest of the series. Does nothing when the
+         * series was not written, which is when {@code values} is null.
+         */
+        public void readDeltas(long[] values, int first, int last) throws ProtocolException {
+            if (values == null) return;
+            final long length = next();
+            if (length < 0 || length > bytes.length - position) {
+                throw new ProtocolException("truncated series");
+            }
+            final int seriesEnd = position + (int) length;
+            long value = 0;
+            for (int i = 0; i < last; i++) {
+                final long zigzag = next();
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (i >= first) values[i - first] = value;
+            }
+            position = seriesEnd;
+        }
+    }
+
     /**
      * Utility methods for interacting with {@link DataInputStream} and
      * {@link DataOutputStream}, mostly dealing with writing partial arrays.
@@ -710,6 +870,61 @@ public class NetworkStatsHistory implements Parcelable {
             }
         }
 
+        /**
+         * Write the first {@code size} values as a series of variable-length
+         * zig-zag encoded differences from the previous value, prefixed by the
+         * length of the series in bytes. Writes nothing when {@code values} is
+         * null.
+         */
+        public static void writeVarLongDeltas(DataOutputStream out, long[] values, int size)
+                throws IOException {
+            if (values == null) return;
+            if (size > values.length) {
+                throw new IllegalArgumentException("size larger than length");
+            }
+            long length = 0;
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                length += varLongSize(zigZag(values[i] - previous));
+                previous = values[i];
+            }
+            writeVarLong(out, length);
+            previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarLong(out, zigZag(values[i] - previous));
+                previous = values[i];
+            }
+        }
+
+        /**
+         * Skip exactly {@code count} bytes of the stream.
+         */
+        public static void skipFully(DataInputStream in, int count) throws IOException {
+            while (count > 0) {
+                final int skipped = in.skipBytes(count);
+                if (skipped <= 0) {
+                    // skipBytes() may give up early; make progress by reading
+                    in.readByte();
+                    count--;
+                } else {
+                    count -= skipped;
+                }
+            }
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static int varLongSize(long value) {
+            int size = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+
         public static long[] readVarLongArray(DataInputStream in) throws IOException {
             final int size = in.readInt();
             if (size == -1) return null;
@@ -396,6 +396,49 @@ public class NetworkStatsHistoryTest extends AndroidTestCase {
         assertFullValues(after, 5 * MINUTE_IN_MILLIS, 1034L, 30L, 2078L, 60L, 54L);
     }
 
+    public void testSerializeColumnar() throws Exception {
+        final NetworkStatsHistory before = new NetworkStatsHistory(MINUTE_IN_MILLIS, 40, FIELD_ALL);
+        before.recordData(0, 4 * MINUTE_IN_MILLIS,
+                new NetworkStats.Entry(1024L, 10L, 2048L, 20L, 4L));
+        before.recordData(DAY_IN_MILLIS, DAY_IN_MILLIS + MINUTE_IN_MILLIS,
+                new NetworkStats.Entry(10L, 20L, 30L, 40L, 50L));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        before.writeColumnarToStream(dataOut);
+        dataOut.writeInt(42);
+        dataOut.close();
+
+        // complete read must be identical
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        NetworkStatsHistory after = NetworkStatsHistory.readColumnarFromStream(
+                in, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(42, in.readInt());
+        assertEquals(5, after.size());
+        assertEquals(1034L + 2078L, after.getTotalBytes());
+        assertFullValues(after, 5 * MINUTE_IN_MILLIS, 1034L, 30L, 2078L, 60L, 54L);
+
+        // partial read only keeps overlapping buckets
+        in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        after = NetworkStatsHistory.readColumnarFromStream(
+                in, MINUTE_IN_MILLIS + SECOND_IN_MILLIS, 3 * MINUTE_IN_MILLIS);
+        assertEquals(42, in.readInt());
+        assertEquals(2, after.size());
+        for (int i = 0; i < after.size(); i++) {
+            final NetworkStatsHistory.Entry entry = before.getValues(i + 1, null);
+            assertEquals(entry.bucketStart, after.getValues(i, null).bucketStart);
+            assertValues(after, i, entry.activeTime, entry.rxBytes, entry.rxPackets,
+                    entry.txBytes, entry.txPackets, entry.operations);
+        }
+
+        // disjoint read is skipped entirely
+        in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        after = NetworkStatsHistory.readColumnarFromStream(
+                in, WEEK_IN_MILLIS, 2 * WEEK_IN_MILLIS);
+        assertEquals(42, in.readInt());
+        assertEquals(0, after.size());
+    }
+
     public void testVarLong() throws Exception {
         assertEquals(0L, performVarLong(0L));
         assertEquals(-1L, performVarLong(-1L));
@@ -183,6 +183,28 @@ public class NetworkStatsTest extends TestCase {
         assertEquals(4L, result.getTotalBytes());
     }
 
+    public void testSubtractReorderedRows() throws Exception {
+        final NetworkStats before = new NetworkStats(TEST_START, 3)
+                .addValues(TEST_IFACE, 102, SET_DEFAULT, TAG_NONE, 1024L, 8L, 0L, 0L, 11)
+                .addValues(TEST_IFACE2, 100, SET_DEFAULT, TAG_NONE, 0L, 0L, 1024L, 8L, 12)
+                .addValues(TEST_IFACE, 100, SET_DEFAULT, TAG_NONE, 512L, 4L, 512L, 4L, 13);
+
+        final NetworkStats after = new NetworkStats(TEST_START, 4)
+                .addValues(TEST_IFACE, 100, SET_DEFAULT, TAG_NONE, 1024L, 8L, 1024L, 8L, 20)
+                .addValues(TEST_IFACE, 101, SET_DEFAULT, TAG_NONE, 64L, 1L, 64L, 1L, 1)
+                .addValues(TEST_IFACE, 102, SET_DEFAULT, TAG_NONE, 2048L, 16L, 0L, 0L, 11)
+                .addValues(TEST_IFACE2, 100, SET_DEFAULT, TAG_NONE, 0L, 0L, 1024L, 8L, 12);
+
+        final NetworkStats result = after.subtract(before);
+
+        // rows are matched regardless of order, and keep the order of after
+        assertEquals(4, result.size());
+        assertValues(result, 0, TEST_IFACE, 100, SET_DEFAULT, TAG_NONE, 512L, 4L, 512L, 4L, 7);
+        assertValues(result, 1, TEST_IFACE, 101, SET_DEFAULT, TAG_NONE, 64L, 1L, 64L, 1L, 1);
+        assertValues(result, 2, TEST_IFACE, 102, SET_DEFAULT, TAG_NONE, 1024L, 8L, 0L, 0L, 0);
+        assertValues(result, 3, TEST_IFACE2, 100, SET_DEFAULT, TAG_NONE, 0L, 0L, 0L, 0L, 0);
+    }
+
     public void testTotalBytes() throws Exception {
         final NetworkStats iface = new NetworkStats(TEST_START, 2)
                 .addValues(TEST_IFACE, UID_ALL, SET_DEFAULT, TAG_NONE, 128L, 0L, 0L, 0L, 0L)
@@ -243,6 +265,22 @@ public class NetworkStatsTest extends TestCase {
         assertValues(grouped, 1, TEST_IFACE2, UID_ALL, SET_ALL, TAG_NONE, 1024L, 64L, 0L, 0L, 0L);
     }
 
+    public void testGroupedByUid() throws Exception {
+        final NetworkStats uidStats = new NetworkStats(TEST_START, 5)
+                .addValues(TEST_IFACE, 101, SET_DEFAULT, TAG_NONE, 128L, 8L, 0L, 2L, 20L)
+                .addValues(TEST_IFACE2, 100, SET_DEFAULT, TAG_NONE, 512L, 32L, 0L, 0L, 4L)
+                .addValues(TEST_IFACE2, 101, SET_DEFAULT, 0xF00D, 64L, 4L, 0L, 0L, 0L)
+                .addValues(TEST_IFACE2, 101, SET_FOREGROUND, TAG_NONE, 512L, 32L, 0L, 0L, 2L)
+                .addValues(TEST_IFACE, 100, SET_FOREGROUND, TAG_NONE, 128L, 8L, 0L, 0L, 1L);
+
+        final NetworkStats grouped = uidStats.groupedByUid();
+
+        // grouped rows are in order of first appearance
+        assertEquals(2, grouped.size());
+        assertValues(grouped, 0, IFACE_ALL, 101, SET_ALL, TAG_NONE, 640L, 40L, 0L, 2L, 22L);
+        assertValues(grouped, 1, IFACE_ALL, 100, SET_ALL, TAG_NONE, 640L, 40L, 0L, 0L, 5L);
+    }
+
     public void testAddAllValues() {
         final NetworkStats first = new NetworkStats(TEST_START, 5)
                 .addValues(TEST_IFACE, 100, SET_DEFAULT, TAG_NONE, 32L, 0L, 0L, 0L, 0L)
@@ -0,0 +1,937 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A variant of {@link LruCache} whose reads never block. It keeps the same
+ * {@link #sizeOf}, {@link #entryRemoved} and {@link #create} contract and the
+ * same statistics, and can be used wherever an {@code LruCache} is read far
+ * more often than it is written.
+ *
+ * <p>Entries live in a {@link ConcurrentHashMap}, so {@link #get} on a cached
+ * key is a plain hash lookup. Instead of reordering the eviction queue on every
+ * hit, the access is recorded in a small per-thread-stripe ring buffer, and
+ * the buffers are replayed against the eviction policy under a single lock the
+ * next time a thread finds a buffer full or writes to the cache. Reads that
+ * find that lock held simply carry on. The buffers are lossy: under heavy
+ * contention some accesses are dropped, which makes the recency order
+ * approximate but never affects which values are returned.
+ *
+ * <p>Writes ({@link #put}, {@link #remove}, misses that {@link #create} a value,
+ * and evictions) are serialized on that lock, as they are in {@code LruCache}.
+ * Unlike {@code LruCache}, synchronizing on the cache does <strong>not</strong>
+ * make a sequence of operations atomic.
+ *
+ * <p>Which entry is evicted is decided by the {@link Policy} passed to the
+ * constructor. {@link Policy#LRU} matches {@code LruCache}. The other policies
+ * trade strict recency for a better hit rate on workloads with scans or a
+ * stable set of popular keys.
+ *
+ * <p>This class does not allow null to be used as a key or value. A return
+ * value of null from {@link #get}, {@link #put} or {@link #remove} is
+ * unambiguous: the key was not in the cache.
+ */
+public class ConcurrentLruCache<K, V> {
+    /**
+     * The eviction policies a {@link ConcurrentLruCache} can use.
+     */
+    public enum Policy {
+        /**
+         * Evicts the least recently accessed entry, like {@link LruCache}.
+         */
+        LRU,
+
+        /**
+         * A 2Q-style segmented LRU. New entries go to a probationary queue and
+         * are promoted to a protected queue, which holds up to 80% of the
+         * cache, on their second access. Victims are taken from the
+         * probationary queue first, so a scan over many keys that are used
+         * once cannot flush the entries that are used repeatedly.
+         */
+        SEGMENTED_LRU,
+
+        /**
+         * Window TinyLFU. New entries go to a small LRU window holding 1% of
+         * the cache, behind which sits a segmented LRU. When the cache is full,
+         * the newest entry to leave the window stays only if it has been
+         * requested more often than the eldest probationary entry it would
+         * displace, as estimated by a compact frequency sketch that is
+         * periodically aged. Frequencies are tracked for keys that are not cached too, so
+         * this policy works best when {@link #get} is called for every lookup.
+         */
+        WINDOW_TINY_LFU
+    }
+
+    /** Number of accesses (and of misses) a read buffer holds before it is drained. */
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    private static final int NUMBER_OF_READ_BUFFERS = readBufferCount();
+
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final EvictionPolicy<K, V> evictionPolicy;
+
+    /** Guards {@link #evictionPolicy}, all writes to {@link #map} and the fields below. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** Size of this cache in units. Not necessarily the number of elements. */
+    private int size;
+    private volatile int maxSize;
+
+    private int putCount;
+    private int createCount;
+    private int evictionCount;
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates a cache that uses the {@link Policy#LRU} eviction policy.
+     *
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, Policy.LRU);
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     * @param policy decides which entries are evicted when the cache is full.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int maxSize, Policy policy) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy == null");
+        }
+        this.maxSize = maxSize;
+        this.map = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, NUMBER_OF_READ_BUFFERS);
+        this.readBuffers = new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer<K, V>();
+        }
+        switch (policy) {
+            case SEGMENTED_LRU:
+                evictionPolicy = new SegmentedLruPolicy<K, V>();
+                break;
+            case WINDOW_TINY_LFU:
+                evictionPolicy = new WindowTinyLfuPolicy<K, V>();
+                break;
+            default:
+                evictionPolicy = new LruPolicy<K, V>();
+                break;
+        }
+        evictionPolicy.setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        evictionLock.lock();
+        try {
+            this.maxSize = maxSize;
+            evictionPolicy.setMaxSize(maxSize);
+        } finally {
+            evictionLock.unlock();
+        }
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be
+     * created by {@code #create}. If a value was returned, the access is
+     * recorded with the eviction policy. This returns null if a value is not
+     * cached and cannot be created.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        ReadBuffer<K, V> buffer = readBuffers[bufferIndex()];
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            V mapValue = node.value;
+            buffer.hitCount.incrementAndGet();
+            recordRead(buffer, node);
+            return mapValue;
+        }
+        missCount.increment();
+        if (evictionPolicy.recordsMisses()) {
+            recordMiss(buffer, key);
+        }
+
+        /*
+         * Attempt to create a value. This may take a long time, and the map
+         * may be different when create() returns. If a conflicting value was
+         * added to the map while create() was working, we leave that value in
+         * the map and release the created value.
+         */
+
+        V createdValue = create(key);
+        if (createdValue == null) {
+            return null;
+        }
+
+        V mapValue;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            createCount++;
+            Node<K, V> existing = map.get(key);
+            if (existing != null) {
+                mapValue = existing.value;
+            } else {
+                mapValue = null;
+                addNode(key, createdValue);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (mapValue != null) {
+            entryRemoved(false, key, createdValue, mapValue);
+            return mapValue;
+        } else {
+            trimToSize(maxSize);
+            return createdValue;
+        }
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The write counts as an access to
+     * {@code key} for the eviction policy.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        V previous;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            putCount++;
+            Node<K, V> existing = map.get(key);
+            if (existing != null) {
+                previous = existing.value;
+                int oldWeight = existing.weight;
+                existing.weight = safeSizeOf(key, value);
+                existing.value = value;
+                size += existing.weight - oldWeight;
+                evictionPolicy.onUpdate(existing, existing.weight - oldWeight);
+            } else {
+                previous = null;
+                addNode(key, value);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+
+        trimToSize(maxSize);
+        return previous;
+    }
+
+    /**
+     * Remove entries chosen by the eviction policy until the total of
+     * remaining entries is at or below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *            to evict even 0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        List<Node<K, V>> evicted = null;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            while (true) {
+                if (size < 0 || (map.isEmpty() && size != 0)) {
+                    throw new IllegalStateException(getClass().getName()
+                            + ".sizeOf() is reporting inconsistent results!");
+                }
+
+                if (size <= maxSize) {
+                    break;
+                }
+
+                Node<K, V> toEvict = evictionPolicy.evict();
+                if (toEvict == null) {
+                    break;
+                }
+
+                map.remove(toEvict.key);
+                toEvict.alive = false;
+                size -= toEvict.weight;
+                evictionCount++;
+                if (evicted == null) {
+                    evicted = new ArrayList<Node<K, V>>();
+                }
+                evicted.add(toEvict);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (evicted != null) {
+            for (int i = 0; i < evicted.size(); i++) {
+                Node<K, V> node = evicted.get(i);
+                entryRemoved(true, node.key, node.value, null);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        V previous = null;
+        evictionLock.lock();
+        try {
+            Node<K, V> node = map.remove(key);
+            if (node != null) {
+                previous = node.value;
+                node.alive = false;
+                size -= node.weight;
+                evictionPolicy.onRemove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without holding any lock: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key.
+     * Returns the computed value or null if no value can be computed. The
+     * default implementation returns null.
+     *
+     * <p>The method is called without holding any lock: other threads may
+     * access the cache while this method is executing.
+     *
+     * <p>If a value for {@code key} exists in the cache when this method
+     * returns, the created value will be released with {@link #entryRemoved}
+     * and discarded. This can occur when multiple threads request the same key
+     * at the same time (causing multiple values to be created), or when one
+     * thread calls {@link #put} while another is creating a value for the same
+     * key.
+     */
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        evictionLock.lock();
+        try {
+            return size;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        int hits = 0;
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            hits += buffer.hitCount.get();
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new
+     * value to be created.
+     */
+    public final int missCount() {
+        return (int) missCount.sum();
+    }
+
+    /**
+     * Returns the number of times {@link #create(Object)} returned a value.
+     */
+    public final int createCount() {
+        evictionLock.lock();
+        try {
+            return createCount;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        evictionLock.lock();
+        try {
+            return putCount;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        evictionLock.lock();
+        try {
+            return evictionCount;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from the
+     * entry that would be evicted first to the one that would be evicted last.
+     * For {@link Policy#LRU} this is least recently to most recently accessed.
+     */
+    public final Map<K, V> snapshot() {
+        Map<K, V> result = new LinkedHashMap<K, V>();
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evictionPolicy.copyInEvictionOrder(result);
+        } finally {
+            evictionLock.unlock();
+        }
+        return result;
+    }
+
+    @Override public final String toString() {
+        int hits = hitCount();
+        int misses = missCount();
+        int accesses = hits + misses;
+        int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
+        return String.format("ConcurrentLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                maxSize, hits, misses, hitPercent);
+    }
+
+    /** Must be called with {@link #evictionLock} held. */
+    private void addNode(K key, V value) {
+        Node<K, V> node = new Node<K, V>(key, value, safeSizeOf(key, value));
+        map.put(key, node);
+        size += node.weight;
+        evictionPolicy.onAdd(node);
+    }
+
+    private void recordRead(ReadBuffer<K, V> buffer, Node<K, V> node) {
+        int slot = (int) (buffer.writeCount.getAndIncrement() & READ_BUFFER_MASK);
+        buffer.nodes.lazySet(slot, node);
+        if (slot == READ_BUFFER_MASK && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void recordMiss(ReadBuffer<K, V> buffer, K key) {
+        int slot = (int) (buffer.missWriteCount.getAndIncrement() & READ_BUFFER_MASK);
+        buffer.missedKeys.lazySet(slot, key);
+        if (slot == READ_BUFFER_MASK && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /** Must be called with {@link #evictionLock} held. */
+    @SuppressWarnings("unchecked")
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            for (int slot = 0; slot < READ_BUFFER_SIZE; slot++) {
+                Object key = buffer.missedKeys.getAndSet(slot, null);
+                if (key != null) {
+                    evictionPolicy.recordMiss((K) key);
+                }
+            }
+            // Start at the slot after the most recent write, which is the oldest one.
+            long start = buffer.writeCount.get();
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                int slot = (int) ((start + i) & READ_BUFFER_MASK);
+                Node<K, V> node = buffer.nodes.getAndSet(slot, null);
+                if (node != null && node.alive) {
+                    evictionPolicy.onAccess(node);
+                }
+            }
+        }
+    }
+
+    private static int bufferIndex() {
+        return (int) (Thread.currentThread().getId() & (NUMBER_OF_READ_BUFFERS - 1));
+    }
+
+    private static int readBufferCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < 2 * processors && count < 64) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    private static final class ReadBuffer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nodes =
+                new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+        final AtomicLong writeCount = new AtomicLong();
+        /** Keys that missed, for policies that track the frequency of uncached keys. */
+        final AtomicReferenceArray<Object> missedKeys =
+                new AtomicReferenceArray<Object>(READ_BUFFER_SIZE);
+        final AtomicLong missWriteCount = new AtomicLong();
+        /** Striped here rather than in one counter so that hits don't contend. */
+        final AtomicInteger hitCount = new AtomicInteger();
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+
+        // The fields below are guarded by evictionLock.
+        int weight;
+        boolean alive = true;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** A doubly linked queue of nodes, from the eldest at the head to the newest at the tail. */
+    private static final class AccessQueue<K, V> {
+        final int id;
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight;
+
+        AccessQueue(int id) {
+            this.id = id;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.queue = id;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (tail != node) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = head;
+            if (node != null) {
+                unlink(node);
+            }
+            return node;
+        }
+
+        void copyTo(Map<K, V> out) {
+            for (Node<K, V> node = head; node != null; node = node.next) {
+                out.put(node.key, node.value);
+            }
+        }
+    }
+
+    /**
+     * Orders entries for eviction. All methods other than {@link #recordsMisses}
+     * are called with the eviction lock held.
+     */
+    private abstract static class EvictionPolicy<K, V> {
+        final AccessQueue<K, V>[] queues;
+
+        @SuppressWarnings("unchecked")
+        EvictionPolicy(int queueCount) {
+            queues = new AccessQueue[queueCount];
+            for (int i = 0; i < queueCount; i++) {
+                queues[i] = new AccessQueue<K, V>(i);
+            }
+        }
+
+        abstract void setMaxSize(int maxSize);
+
+        abstract void onAdd(Node<K, V> node);
+
+        abstract void onAccess(Node<K, V> node);
+
+        /** Unlinks and returns the next entry to evict, or null if there are none. */
+        abstract Node<K, V> evict();
+
+        /**
+         * Returns true if {@link #recordMiss} should be told about keys that
+         * were not cached. Misses are buffered like reads and replayed when the
+         * buffers are drained, so they may be dropped under heavy contention.
+         */
+        boolean recordsMisses() {
+            return false;
+        }
+
+        void recordMiss(K key) {}
+
+        void onUpdate(Node<K, V> node, int weightDelta) {
+            queues[node.queue].weight += weightDelta;
+            onAccess(node);
+        }
+
+        void onRemove(Node<K, V> node) {
+            queues[node.queue].unlink(node);
+        }
+
+        void copyInEvictionOrder(Map<K, V> out) {
+            for (AccessQueue<K, V> queue : queues) {
+                queue.copyTo(out);
+            }
+        }
+    }
+
+    private static final class LruPolicy<K, V> extends EvictionPolicy<K, V> {
+        LruPolicy() {
+            super(1);
+        }
+
+        @Override void setMaxSize(int maxSize) {}
+
+        @Override void onAdd(Node<K, V> node) {
+            queues[0].addLast(node);
+        }
+
+        @Override void onAccess(Node<K, V> node) {
+            queues[0].moveToLast(node);
+        }
+
+        @Override Node<K, V> evict() {
+            return queues[0].pollFirst();
+        }
+    }
+
+    private static class SegmentedLruPolicy<K, V> extends EvictionPolicy<K, V> {
+        static final int PROBATION = 0;
+        static final int PROTECTED = 1;
+
+        long protectedMaxSize;
+
+        SegmentedLruPolicy() {
+            this(2);
+        }
+
+        SegmentedLruPolicy(int queueCount) {
+            super(queueCount);
+        }
+
+        @Override void setMaxSize(int maxSize) {
+            protectedMaxSize = maxSize * 8L / 10;
+        }
+
+        @Override void onAdd(Node<K, V> node) {
+            queues[PROBATION].addLast(node);
+        }
+
+        @Override void onAccess(Node<K, V> node) {
+            if (node.queue == PROTECTED) {
+                queues[PROTECTED].moveToLast(node);
+                return;
+            }
+            queues[PROBATION].unlink(node);
+            queues[PROTECTED].addLast(node);
+            // Demote the eldest protected entries to make room for the promoted one.
+            while (queues[PROTECTED].weight > protectedMaxSize
+                    && queues[PROTECTED].head != node) {
+                queues[PROBATION].addLast(queues[PROTECTED].pollFirst());
+            }
+        }
+
+        @Override Node<K, V> evict() {
+            Node<K, V> victim = queues[PROBATION].pollFirst();
+            return victim != null ? victim : queues[PROTECTED].pollFirst();
+        }
+    }
+
+    private static final class WindowTinyLfuPolicy<K, V> extends SegmentedLruPolicy<K, V> {
+        static final int WINDOW = 2;
+
+        final FrequencySketch sketch = new FrequencySketch();
+        long windowMaxSize;
+
+        WindowTinyLfuPolicy() {
+            super(3);
+        }
+
+        @Override void setMaxSize(int maxSize) {
+            windowMaxSize = Math.max(1, maxSize / 100);
+            protectedMaxSize = (maxSize - windowMaxSize) * 8L / 10;
+            sketch.ensureCapacity(maxSize);
+        }
+
+        @Override boolean recordsMisses() {
+            return true;
+        }
+
+        @Override void recordMiss(K key) {
+            sketch.increment(key.hashCode());
+        }
+
+        @Override void onAdd(Node<K, V> node) {
+            AccessQueue<K, V> window = queues[WINDOW];
+            window.addLast(node);
+            // Entries leaving the window become candidates at the probation tail.
+            while (window.weight > windowMaxSize && window.head != node) {
+                queues[PROBATION].addLast(window.pollFirst());
+            }
+        }
+
+        @Override void onAccess(Node<K, V> node) {
+            sketch.increment(node.key.hashCode());
+            if (node.queue == WINDOW) {
+                queues[WINDOW].moveToLast(node);
+            } else {
+                super.onAccess(node);
+            }
+        }
+
+        @Override Node<K, V> evict() {
+            AccessQueue<K, V> probation = queues[PROBATION];
+            Node<K, V> victim = probation.head;
+            Node<K, V> candidate = probation.tail;
+            if (victim == null) {
+                victim = queues[PROTECTED].pollFirst();
+                return victim != null ? victim : queues[WINDOW].pollFirst();
+            }
+
+            // The newest candidate must have been requested more often than the
+            // eldest probationary entry to displace it.
+            if (candidate != victim) {
+                int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+                int victimFrequency = sketch.frequency(victim.key.hashCode());
+                if (candidateFrequency > victimFrequency) {
+                    probation.unlink(victim);
+                    return victim;
+                }
+            }
+            probation.unlink(candidate);
+            return candidate;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters that estimates how often each key
+     * hash has been seen. Once enough increments have been recorded every
+     * counter is halved, so the estimates favour recent popularity. Guarded
+     * by the eviction lock, like the policy that owns it.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_TABLE_LENGTH = 1 << 14;
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int[] SEEDS = {
+                0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f };
+
+        private long[] table = new long[1];
+        private int sampleSize = 10;
+        private int additions;
+
+        void ensureCapacity(int maximumSize) {
+            int wanted = Math.min(Math.max(maximumSize, 1), MAX_TABLE_LENGTH);
+            int length = 1;
+            while (length < wanted) {
+                length <<= 1;
+            }
+            if (length > table.length) {
+                table = new long[length];
+                additions = 0;
+            }
+            sampleSize = 10 * Math.max(maximumSize, 1);
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                added |= incrementAt(indexOf(hash, i), counterOffset(hash, i));
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int count = (int) ((table[indexOf(hash, i)] >>> counterOffset(hash, i)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private boolean incrementAt(int index, int offset) {
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            int h = (hash ^ (hash >>> 16)) * SEEDS[i];
+            h ^= h >>> 15;
+            return h & (table.length - 1);
+        }
+
+        private static int counterOffset(int hash, int i) {
+            // Each of the four hash functions owns a quarter of the 16 counters in a long.
+            return ((i << 2) + ((hash >>> (i << 3)) & 3)) << 2;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+public final class ConcurrentLruCacheTest extends TestCase {
+
+    public void testStatistics() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(2, cache.putCount());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(0, cache.createCount());
+        assertEquals(0, cache.evictionCount());
+        assertEquals("ConcurrentLruCache[maxSize=3,hits=2,misses=1,hitRate=66%]",
+                cache.toString());
+    }
+
+    public void testLruEvictsLeastRecentlyAccessed() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.get("a");
+        cache.put("d", "D");
+        assertSnapshot(cache, "c", "C", "a", "A", "d", "D");
+        assertEquals(1, cache.evictionCount());
+    }
+
+    public void testCreateOnCacheMiss() {
+        ConcurrentLruCache<String, String> cache = newCreatingCache(ConcurrentLruCache.Policy.LRU);
+        assertEquals("created-aa", cache.get("aa"));
+        assertEquals("created-aa", cache.get("aa"));
+        assertEquals(1, cache.createCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    public void testConstructorDoesNotAllowZeroCacheSize() {
+        try {
+            new ConcurrentLruCache<String, String>(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCannotPutNullKeyOrValue() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3);
+        try {
+            cache.put(null, "A");
+            fail();
+        } catch (NullPointerException expected) {
+        }
+        try {
+            cache.put("a", null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    public void testEvictionWithCustomSizes() {
+        ConcurrentLruCache<String, String> cache = newLengthCache(10);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.put("c", "cc");
+        assertEquals(10, cache.size());
+        cache.put("d", "dd");
+        assertSnapshot(cache, "b", "bbbb", "c", "cc", "d", "dd");
+        assertEquals(8, cache.size());
+        cache.put("b", "b");
+        assertEquals(5, cache.size());
+    }
+
+    public void testEvictionThrowsWhenSizesAreNegative() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(4) {
+            @Override protected int sizeOf(String key, String value) {
+                return -1;
+            }
+        };
+        try {
+            cache.put("a", "A");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testRemoveAndEntryRemovedCallbacks() {
+        final List<String> log = new ArrayList<String>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2) {
+            @Override protected void entryRemoved(
+                    boolean evicted, String key, String oldValue, String newValue) {
+                log.add(key + "=" + oldValue + (evicted ? " evicted" : "")
+                        + (newValue != null ? " -> " + newValue : ""));
+            }
+        };
+        cache.put("a", "A");
+        cache.put("a", "A2");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("B", cache.remove("b"));
+        assertNull(cache.remove("b"));
+        cache.evictAll();
+        assertEquals(Arrays.asList("a=A -> A2", "a=A2 evicted", "b=B", "c=C evicted"), log);
+        assertEquals(0, cache.size());
+    }
+
+    public void testResize() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.resize(1);
+        assertEquals(1, cache.maxSize());
+        assertSnapshot(cache, "c", "C");
+    }
+
+    public void testSegmentedLruSurvivesScan() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(
+                10, ConcurrentLruCache.Policy.SEGMENTED_LRU);
+        cache.put("hot", "HOT");
+        cache.get("hot");
+        for (int i = 0; i < 100; i++) {
+            cache.put("scan" + i, "S");
+        }
+        assertEquals("HOT", cache.get("hot"));
+        assertEquals(10, cache.size());
+    }
+
+    public void testWindowTinyLfuKeepsFrequentKeys() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(
+                100, ConcurrentLruCache.Policy.WINDOW_TINY_LFU);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i) == null) {
+                    cache.put("hot" + i, "H");
+                }
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            if (cache.get("cold" + i) == null) {
+                cache.put("cold" + i, "C");
+            }
+        }
+        int hotRetained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.snapshot().containsKey("hot" + i)) {
+                hotRetained++;
+            }
+        }
+        assertEquals(50, hotRetained);
+        assertEquals(100, cache.size());
+    }
+
+    public void testConcurrentAccessKeepsSizeConsistent() throws Exception {
+        for (final ConcurrentLruCache.Policy policy : ConcurrentLruCache.Policy.values()) {
+            final ConcurrentLruCache<String, String> cache = newCreatingCache(policy);
+            final AtomicInteger failures = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(8);
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                new Thread() {
+                    @Override public void run() {
+                        try {
+                            for (int i = 0; i < 10000; i++) {
+                                String key = Integer.toString((i * 31 + seed) % 200);
+                                if (!("created-" + key).equals(cache.get(key))) {
+                                    failures.incrementAndGet();
+                                }
+                                if (i % 7 == 0) {
+                                    cache.remove(key);
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            done.await();
+            assertEquals(policy.toString(), 0, failures.get());
+            assertEquals(policy.toString(), cache.snapshot().size(), cache.size());
+            assertTrue(policy.toString(), cache.size() <= cache.maxSize());
+        }
+    }
+
+    public void testWindowTinyLfuResizeDuringMisses() throws Exception {
+        final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(
+                1, ConcurrentLruCache.Policy.WINDOW_TINY_LFU);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            cache.get("miss-" + seed + "-" + i);
+                        }
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        for (int size = 2; done.getCount() > 0; size = size < (1 << 15) ? size * 2 : 1) {
+            cache.resize(size);
+        }
+        done.await();
+        assertEquals(0, failures.get());
+        assertEquals(80000, cache.missCount());
+    }
+
+    private static ConcurrentLruCache<String, String> newCreatingCache(
+            ConcurrentLruCache.Policy policy) {
+        return new ConcurrentLruCache<String, String>(50, policy) {
+            @Override protected String create(String key) {
+                return "created-" + key;
+            }
+        };
+    }
+
+    private static ConcurrentLruCache<String, String> newLengthCache(int maxSize) {
+        return new ConcurrentLruCache<String, String>(maxSize) {
+            @Override protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+    }
+
+    private static <T> void assertSnapshot(ConcurrentLruCache<T, T> cache, T... keysAndValues) {
+        List<T> actualKeysAndValues = new ArrayList<T>();
+        for (Map.Entry<T, T> entry : cache.snapshot().entrySet()) {
+            actualKeysAndValues.add(entry.getKey());
+            actualKeysAndValues.add(entry.getValue());
+        }
+        assertEquals(Arrays.asList(keysAndValues), actualKeysAndValues);
+    }
+}
@@ -186,6 +186,12 @@ public final class JsonReader implements Closeable {
     /** True to accept non-spec compliant JSON */
     private boolean lenient = false;
 
+    /**
+     * True if this reads a single element of a larger array, which may be any
+     * value rather than only an object or array.
+     */
+    private final boolean arrayElement;
+
     /**
      * Use a manual buffer to easily read and unread upcoming characters, and
      * also so we can create strings without an intermediate StringBuilder.
@@ -235,6 +241,22 @@ public final class JsonReader implements Closeable {
             throw new NullPointerException("in == null");
         }
         this.in = in;
+        this.arrayElement = false;
+    }
+
+    /**
+     * Creates a new instance that reads a single array element from {@code
+     * in}. The element begins at {@code line} and {@code column} of the
+     * enclosing document, so that syntax errors report positions in it.
+     */
+    JsonReader(Reader in, int line, int column) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in;
+        this.arrayElement = true;
+        this.bufferStartLine = line;
+        this.bufferStartColumn = column;
     }
 
     /**
@@ -332,7 +354,8 @@ public final class JsonReader implements Closeable {
             case EMPTY_DOCUMENT:
                 replaceTop(JsonScope.NONEMPTY_DOCUMENT);
                 JsonToken firstToken = nextValue();
-                if (!lenient && token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
+                if (!lenient && !arrayElement
+                        && token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
                     throw new IOException(
                             "Expected JSON document to start with '[' or '{' but was " + token);
                 }
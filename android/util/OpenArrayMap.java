@@ -0,0 +1,845 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import libcore.util.EmptyArray;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * OpenArrayMap is a generic key->value mapping data structure with the same
+ * array-based storage as {@link ArrayMap}, but with constant time lookups,
+ * inserts and removes.  Like ArrayMap it keeps an integer array of hash codes
+ * and an Object array of the key/value pairs, packed at the start of the
+ * arrays so that they can be iterated with {@link #keyAt} and {@link #valueAt}.
+ * Rather than keeping the entries sorted by hash code and binary searching
+ * them, it finds entries through a small open addressing table of entry
+ * indices that uses linear probing with robin hood insertion.
+ *
+ * <p>This costs up to 12 extra bytes per entry for the table, but unlike ArrayMap
+ * the time to put or remove an item doesn't grow with the size of the map.
+ * Use it instead of ArrayMap for maps that can reach hundreds or thousands of
+ * items.  For small maps ArrayMap is just as fast and slightly smaller.</p>
+ *
+ * <p>Entries are kept in insertion order until an entry is removed: removing
+ * moves the last entry into the removed entry's index.  As with ArrayMap, an
+ * iterator or an index loop that removes the current entry should continue at
+ * the same index.  Also like ArrayMap, this container shrinks its arrays as
+ * items are removed from it.</p>
+ */
+public final class OpenArrayMap<K, V> implements Map<K, V> {
+    private static final boolean DEBUG = false;
+    private static final String TAG = "OpenArrayMap";
+
+    /**
+     * The minimum amount by which the capacity of a OpenArrayMap will increase.
+     * This is tuned to be relatively space-efficient.
+     */
+    private static final int BASE_SIZE = 4;
+
+    /**
+     * Maximum number of entries to have in array caches.
+     */
+    private static final int CACHE_SIZE = 10;
+
+    /**
+     * Caches of small array objects to avoid spamming garbage.  The cache
+     * Object[] variable is a pointer to a linked list of array objects.
+     * The first entry in the array is a pointer to the next array in the
+     * list; the second entry is a pointer to the int[] hash code array for it,
+     * and the third is a pointer to its cleared int[] index table.
+     */
+    static Object[] mBaseCache;
+    static int mBaseCacheSize;
+    static Object[] mTwiceBaseCache;
+    static int mTwiceBaseCacheSize;
+
+    int[] mHashes;
+    Object[] mArray;
+    /**
+     * The open addressing table.  Each slot holds 1 + the index of an entry,
+     * or 0 if it is empty.  Its length is a power of two that is at least
+     * half again the capacity, so that the table is at most 2/3 full.
+     */
+    int[] mTable;
+    int mSize;
+    MapCollections<K, V> mCollections;
+
+    /**
+     * Returns the length of the index table for a capacity of {@code size}.
+     */
+    private static int tableLength(int size) {
+        return Integer.highestOneBit(Math.max(size + (size >> 1), 1) * 2 - 1);
+    }
+
+    /**
+     * Returns the slot in a table of {@code mask + 1} slots where an entry with
+     * {@code hash} would be found if there were no collisions.
+     */
+    private static int homeSlot(int hash, int mask) {
+        final int h = hash * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns how far the entry at {@code slot} has been displaced from its
+     * home slot.
+     */
+    private int probeDistance(int slot, int mask) {
+        return (slot - homeSlot(mHashes[mTable[slot] - 1], mask)) & mask;
+    }
+
+    int indexOf(Object key, int hash) {
+        final int slot = slotOf(key, hash);
+        return slot >= 0 ? mTable[slot] - 1 : -1;
+    }
+
+    /**
+     * Returns the slot that holds the entry for {@code key}, or -1 if there is
+     * no such entry.
+     */
+    private int slotOf(Object key, int hash) {
+        // Important fast case: if nothing is in here, nothing to look for.
+        if (mSize == 0) {
+            return -1;
+        }
+
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int slot = homeSlot(hash, mask);
+        for (int distance = 0; ; distance++) {
+            final int entry = table[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            if (mHashes[entry] == hash) {
+                final Object candidate = mArray[entry << 1];
+                if (key == null ? candidate == null : key.equals(candidate)) {
+                    return slot;
+                }
+            }
+            // Robin hood insertion keeps richer entries ahead of poorer ones,
+            // so the key can't be further along than this.
+            if (probeDistance(slot, mask) < distance) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the slot that holds the entry at {@code index}.
+     */
+    private int slotOf(int index) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int slot = homeSlot(mHashes[index], mask);
+        while (table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Adds the entry at {@code index} to the index table.  Whenever the new
+     * entry is further from its home slot than an entry it passes, they swap
+     * places and the displaced entry continues the search.
+     */
+    private void insertIntoTable(int index) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int slot = homeSlot(mHashes[index], mask);
+        int current = index + 1;
+        for (int distance = 0; ; distance++) {
+            final int occupant = table[slot];
+            if (occupant == 0) {
+                table[slot] = current;
+                return;
+            }
+            final int occupantDistance = probeDistance(slot, mask);
+            if (occupantDistance < distance) {
+                table[slot] = current;
+                current = occupant;
+                distance = occupantDistance;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Empties {@code slot}, shifting the entries after it back towards their
+     * home slots.
+     */
+    private void removeFromTable(int slot) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0 && probeDistance(next, mask) > 0) {
+            table[slot] = table[next];
+            slot = next;
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+    }
+
+    private void rebuildTable() {
+        for (int i = 0; i < mSize; i++) {
+            insertIntoTable(i);
+        }
+    }
+
+    private void allocArrays(final int size) {
+        if (size == (BASE_SIZE*2)) {
+            synchronized (OpenArrayMap.class) {
+                if (mTwiceBaseCache != null) {
+                    final Object[] array = mTwiceBaseCache;
+                    mArray = array;
+                    mTwiceBaseCache = (Object[])array[0];
+                    mHashes = (int[])array[1];
+                    mTable = (int[])array[2];
+                    array[0] = array[1] = array[2] = null;
+                    mTwiceBaseCacheSize--;
+                    if (DEBUG) Log.d(TAG, "Retrieving 2x cache " + mHashes
+                            + " now have " + mTwiceBaseCacheSize + " entries");
+                    return;
+                }
+            }
+        } else if (size == BASE_SIZE) {
+            synchronized (OpenArrayMap.class) {
+                if (mBaseCache != null) {
+                    final Object[] array = mBaseCache;
+                    mArray = array;
+                    mBaseCache = (Object[])array[0];
+                    mHashes = (int[])array[1];
+                    mTable = (int[])array[2];
+                    array[0] = array[1] = array[2] = null;
+                    mBaseCacheSize--;
+                    if (DEBUG) Log.d(TAG, "Retrieving 1x cache " + mHashes
+                            + " now have " + mBaseCacheSize + " entries");
+                    return;
+                }
+            }
+        }
+
+        mHashes = new int[size];
+        mArray = new Object[size<<1];
+        mTable = new int[tableLength(size)];
+    }
+
+    private static void freeArrays(final int[] hashes, final Object[] array, final int[] table,
+            final int size) {
+        if (hashes.length == (BASE_SIZE*2)) {
+            synchronized (OpenArrayMap.class) {
+                if (mTwiceBaseCacheSize < CACHE_SIZE) {
+                    array[0] = mTwiceBaseCache;
+                    array[1] = hashes;
+                    array[2] = table;
+                    for (int i=(size<<1)-1; i>=3; i--) {
+                        array[i] = null;
+                    }
+                    Arrays.fill(table, 0);
+                    mTwiceBaseCache = array;
+                    mTwiceBaseCacheSize++;
+                    if (DEBUG) Log.d(TAG, "Storing 2x cache " + array
+                            + " now have " + mTwiceBaseCacheSize + " entries");
+                }
+            }
+        } else if (hashes.length == BASE_SIZE) {
+            synchronized (OpenArrayMap.class) {
+                if (mBaseCacheSize < CACHE_SIZE) {
+                    array[0] = mBaseCache;
+                    array[1] = hashes;
+                    array[2] = table;
+                    for (int i=(size<<1)-1; i>=3; i--) {
+                        array[i] = null;
+                    }
+                    Arrays.fill(table, 0);
+                    mBaseCache = array;
+                    mBaseCacheSize++;
+                    if (DEBUG) Log.d(TAG, "Storing 1x cache " + array
+                            + " now have " + mBaseCacheSize + " entries");
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the arrays with ones of capacity {@code size}, keeping the
+     * current entries.
+     */
+    private void resize(int size) {
+        final int[] ohashes = mHashes;
+        final Object[] oarray = mArray;
+        final int[] otable = mTable;
+        allocArrays(size);
+        if (mSize > 0) {
+            System.arraycopy(ohashes, 0, mHashes, 0, mSize);
+            System.arraycopy(oarray, 0, mArray, 0, mSize<<1);
+            rebuildTable();
+        }
+        freeArrays(ohashes, oarray, otable, mSize);
+    }
+
+    /**
+     * Create a new empty OpenArrayMap.  The default capacity of an array map is 0,
+     * and will grow once items are added to it.
+     */
+    public OpenArrayMap() {
+        mHashes = EmptyArray.INT;
+        mArray = EmptyArray.OBJECT;
+        mTable = EmptyArray.INT;
+        mSize = 0;
+    }
+
+    /**
+     * Create a new OpenArrayMap with a given initial capacity.  Pre-sizing a
+     * map that will be filled avoids rebuilding its index table as it grows.
+     */
+    public OpenArrayMap(int capacity) {
+        if (capacity == 0) {
+            mHashes = EmptyArray.INT;
+            mArray = EmptyArray.OBJECT;
+            mTable = EmptyArray.INT;
+        } else {
+            allocArrays(capacity);
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Create a new OpenArrayMap with the mappings from the given map.
+     */
+    public OpenArrayMap(Map<? extends K, ? extends V> map) {
+        this();
+        if (map != null) {
+            putAll(map);
+        }
+    }
+
+    /**
+     * Make the array map empty.  All storage is released.
+     */
+    @Override
+    public void clear() {
+        if (mSize > 0) {
+            freeArrays(mHashes, mArray, mTable, mSize);
+            mHashes = EmptyArray.INT;
+            mArray = EmptyArray.OBJECT;
+            mTable = EmptyArray.INT;
+            mSize = 0;
+        }
+    }
+
+    /**
+     * @hide
+     * Like {@link #clear}, but doesn't reduce the capacity of the OpenArrayMap.
+     */
+    public void erase() {
+        if (mSize > 0) {
+            final int N = mSize<<1;
+            final Object[] array = mArray;
+            for (int i=0; i<N; i++) {
+                array[i] = null;
+            }
+            Arrays.fill(mTable, 0);
+            mSize = 0;
+        }
+    }
+
+    /**
+     * Ensure the array map can hold at least <var>minimumCapacity</var>
+     * items.
+     */
+    public void ensureCapacity(int minimumCapacity) {
+        if (mHashes.length < minimumCapacity) {
+            resize(minimumCapacity);
+        }
+    }
+
+    /**
+     * Check whether a key exists in the array.
+     *
+     * @param key The key to search for.
+     * @return Returns true if the key exists, else false.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    /**
+     * Returns the index of a key in the set.
+     *
+     * @param key The key to search for.
+     * @return Returns the index of the key if it exists, else a negative integer.
+     */
+    public int indexOfKey(Object key) {
+        return indexOf(key, key == null ? 0 : key.hashCode());
+    }
+
+    int indexOfValue(Object value) {
+        final int N = mSize*2;
+        final Object[] array = mArray;
+        if (value == null) {
+            for (int i=1; i<N; i+=2) {
+                if (array[i] == null) {
+                    return i>>1;
+                }
+            }
+        } else {
+            for (int i=1; i<N; i+=2) {
+                if (value.equals(array[i])) {
+                    return i>>1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a value exists in the array.  This requires a linear search
+     * through the entire array.
+     *
+     * @param value The value to search for.
+     * @return Returns true if the value exists, else false.
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        return indexOfValue(value) >= 0;
+    }
+
+    /**
+     * Retrieve a value from the array.
+     * @param key The key of the value to retrieve.
+     * @return Returns the value associated with the given key,
+     * or null if there is no such key.
+     */
+    @Override
+    public V get(Object key) {
+        final int index = indexOfKey(key);
+        return index >= 0 ? (V)mArray[(index<<1)+1] : null;
+    }
+
+    /**
+     * Return the key at the given index in the array.
+     * @param index The desired index, must be between 0 and {@link #size()}-1.
+     * @return Returns the key stored at the given index.
+     */
+    public K keyAt(int index) {
+        return (K)mArray[index << 1];
+    }
+
+    /**
+     * Return the value at the given index in the array.
+     * @param index The desired index, must be between 0 and {@link #size()}-1.
+     * @return Returns the value stored at the given index.
+     */
+    public V valueAt(int index) {
+        return (V)mArray[(index << 1) + 1];
+    }
+
+    /**
+     * Set the value at a given index in the array.
+     * @param index The desired index, must be between 0 and {@link #size()}-1.
+     * @param value The new value to store at this index.
+     * @return Returns the previous value at the given index.
+     */
+    public V setValueAt(int index, V value) {
+        index = (index << 1) + 1;
+        V old = (V)mArray[index];
+        mArray[index] = value;
+        return old;
+    }
+
+    /**
+     * Return true if the array map contains no items.
+     */
+    @Override
+    public boolean isEmpty() {
+        return mSize <= 0;
+    }
+
+    /**
+     * Add a new value to the array map.
+     * @param key The key under which to store the value.  If
+     * this key already exists in the array, its value will be replaced.
+     * @param value The value to store for the given key.
+     * @return Returns the old value that was stored for the given key, or null if there
+     * was no such key.
+     */
+    @Override
+    public V put(K key, V value) {
+        final int hash = key == null ? 0 : key.hashCode();
+        int index = indexOf(key, hash);
+        if (index >= 0) {
+            index = (index<<1) + 1;
+            final V old = (V)mArray[index];
+            mArray[index] = value;
+            return old;
+        }
+
+        if (mSize >= mHashes.length) {
+            final int n = mSize >= (BASE_SIZE*2) ? (mSize+(mSize>>1))
+                    : (mSize >= BASE_SIZE ? (BASE_SIZE*2) : BASE_SIZE);
+
+            if (DEBUG) Log.d(TAG, "put: grow from " + mHashes.length + " to " + n);
+
+            resize(n);
+        }
+
+        index = mSize;
+        mHashes[index] = hash;
+        mArray[index<<1] = key;
+        mArray[(index<<1)+1] = value;
+        insertIntoTable(index);
+        mSize++;
+        return null;
+    }
+
+    /**
+     * Perform a {@link #put(Object, Object)} of all key/value pairs in <var>array</var>
+     * @param array The array whose contents are to be retrieved.
+     */
+    public void putAll(OpenArrayMap<? extends K, ? extends V> array) {
+        final int N = array.mSize;
+        ensureCapacity(mSize + N);
+        if (mSize == 0) {
+            if (N > 0) {
+                System.arraycopy(array.mHashes, 0, mHashes, 0, N);
+                System.arraycopy(array.mArray, 0, mArray, 0, N<<1);
+                mSize = N;
+                rebuildTable();
+            }
+        } else {
+            for (int i=0; i<N; i++) {
+                put(array.keyAt(i), array.valueAt(i));
+            }
+        }
+    }
+
+    /**
+     * Remove an existing key from the array map.
+     * @param key The key of the mapping to remove.
+     * @return Returns the value that was stored under the key, or null if there
+     * was no such key.
+     */
+    @Override
+    public V remove(Object key) {
+        final int slot = slotOf(key, key == null ? 0 : key.hashCode());
+        if (slot >= 0) {
+            return removeAt(mTable[slot] - 1, slot);
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove the key/value mapping at the given index.  The last mapping moves
+     * to this index.
+     * @param index The desired index, must be between 0 and {@link #size()}-1.
+     * @return Returns the value that was stored at this index.
+     */
+    public V removeAt(int index) {
+        return removeAt(index, mSize > 1 ? slotOf(index) : -1);
+    }
+
+    private V removeAt(int index, int slot) {
+        final Object old = mArray[(index << 1) + 1];
+        if (mSize <= 1) {
+            // Now empty.
+            if (DEBUG) Log.d(TAG, "remove: shrink from " + mHashes.length + " to 0");
+            freeArrays(mHashes, mArray, mTable, mSize);
+            mHashes = EmptyArray.INT;
+            mArray = EmptyArray.OBJECT;
+            mTable = EmptyArray.INT;
+            mSize = 0;
+            return (V)old;
+        }
+
+        removeFromTable(slot);
+        final int last = mSize - 1;
+        if (index < last) {
+            mTable[slotOf(last)] = index + 1;
+            mHashes[index] = mHashes[last];
+            mArray[index << 1] = mArray[last << 1];
+            mArray[(index << 1) + 1] = mArray[(last << 1) + 1];
+        }
+        mArray[last << 1] = null;
+        mArray[(last << 1) + 1] = null;
+        mSize--;
+
+        if (mHashes.length > (BASE_SIZE*2) && mSize < mHashes.length/3) {
+            // Shrunk enough to reduce size of arrays.  We don't allow it to
+            // shrink smaller than (BASE_SIZE*2) to avoid flapping between
+            // that and BASE_SIZE.
+            final int n = mSize > (BASE_SIZE*2) ? (mSize + (mSize>>1)) : (BASE_SIZE*2);
+
+            if (DEBUG) Log.d(TAG, "remove: shrink from " + mHashes.length + " to " + n);
+
+            resize(n);
+        }
+        return (V)old;
+    }
+
+    /**
+     * Return the number of items in this array map.
+     */
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation returns false if the object is not a map, or
+     * if the maps have different sizes. Otherwise, for each key in this map,
+     * values of both maps are compared. If the values for any key are not
+     * equal, the method returns false, otherwise it returns true.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            if (size() != map.size()) {
+                return false;
+            }
+
+            try {
+                for (int i=0; i<mSize; i++) {
+                    K key = keyAt(i);
+                    V mine = valueAt(i);
+                    Object theirs = map.get(key);
+                    if (mine == null) {
+                        if (theirs != null || !map.containsKey(key)) {
+                            return false;
+                        }
+                    } else if (!mine.equals(theirs)) {
+                        return false;
+                    }
+                }
+            } catch (NullPointerException ignored) {
+                return false;
+            } catch (ClassCastException ignored) {
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        final int[] hashes = mHashes;
+        final Object[] array = mArray;
+        int result = 0;
+        for (int i = 0, v = 1, s = mSize; i < s; i++, v+=2) {
+            Object value = array[v];
+            result += hashes[i] ^ (value == null ? 0 : value.hashCode());
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation composes a string by iterating over its mappings. If
+     * this map contains itself as a key or a value, the string "(this Map)"
+     * will appear in its place.
+     */
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "{}";
+        }
+
+        StringBuilder buffer = new StringBuilder(mSize * 28);
+        buffer.append('{');
+        for (int i=0; i<mSize; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            Object key = keyAt(i);
+            if (key != this) {
+                buffer.append(key);
+            } else {
+                buffer.append("(this Map)");
+            }
+            buffer.append('=');
+            Object value = valueAt(i);
+            if (value != this) {
+                buffer.append(value);
+            } else {
+                buffer.append("(this Map)");
+            }
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Interop with traditional Java containers.  Not as efficient as using
+    // specialized collection APIs.
+    // ------------------------------------------------------------------------
+
+    private MapCollections<K, V> getCollection() {
+        if (mCollections == null) {
+            mCollections = new MapCollections<K, V>() {
+                @Override
+                protected int colGetSize() {
+                    return mSize;
+                }
+
+                @Override
+                protected Object colGetEntry(int index, int offset) {
+                    return mArray[(index<<1) + offset];
+                }
+
+                @Override
+                protected int colIndexOfKey(Object key) {
+                    return indexOfKey(key);
+                }
+
+                @Override
+                protected int colIndexOfValue(Object value) {
+                    return indexOfValue(value);
+                }
+
+                @Override
+                protected Map<K, V> colGetMap() {
+                    return OpenArrayMap.this;
+                }
+
+                @Override
+                protected void colPut(K key, V value) {
+                    put(key, value);
+                }
+
+                @Override
+                protected V colSetValue(int index, V value) {
+                    return setValueAt(index, value);
+                }
+
+                @Override
+                protected void colRemoveAt(int index) {
+                    removeAt(index);
+                }
+
+                @Override
+                protected void colClear() {
+                    clear();
+                }
+            };
+        }
+        return mCollections;
+    }
+
+    /**
+     * Determine if the array map contains all of the keys in the given collection.
+     * @param collection The collection whose contents are to be checked against.
+     * @return Returns true if this array map contains a key for every entry
+     * in <var>collection</var>, else returns false.
+     */
+    public boolean containsAll(Collection<?> collection) {
+        return MapCollections.containsAllHelper(this, collection);
+    }
+
+    /**
+     * Perform a {@link #put(Object, Object)} of all key/value pairs in <var>map</var>
+     * @param map The map whose contents are to be retrieved.
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        ensureCapacity(mSize + map.size());
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove all keys in the array map that exist in the given collection.
+     * @param collection The collection whose contents are to be used to remove keys.
+     * @return Returns true if any keys were removed from the array map, else false.
+     */
+    public boolean removeAll(Collection<?> collection) {
+        return MapCollections.removeAllHelper(this, collection);
+    }
+
+    /**
+     * Remove all keys in the array map that do <b>not</b> exist in the given collection.
+     * @param collection The collection whose contents are to be used to determine which
+     * keys to keep.
+     * @return Returns true if any keys were removed from the array map, else false.
+     */
+    public boolean retainAll(Collection<?> collection) {
+        return MapCollections.retainAllHelper(this, collection);
+    }
+
+    /**
+     * Return a {@link java.util.Set} for iterating over and interacting with all mappings
+     * in the array map.
+     *
+     * <p><b>Note:</b> this is a very inefficient way to access the array contents, it
+     * requires generating a number of temporary objects and allocates additional state
+     * information associated with the container that will remain for the life of the container.</p>
+     *
+     * <p><b>Note:</b></p> the semantics of this
+     * Set are subtly different than that of a {@link java.util.HashMap}: most important,
+     * the {@link java.util.Map.Entry Map.Entry} object returned by its iterator is a single
+     * object that exists for the entire iterator, so you can <b>not</b> hold on to it
+     * after calling {@link java.util.Iterator#next() Iterator.next}.</p>
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return getCollection().getEntrySet();
+    }
+
+    /**
+     * Return a {@link java.util.Set} for iterating over and interacting with all keys
+     * in the array map.
+     *
+     * <p><b>Note:</b> this is a fairly inefficient way to access the array contents, it
+     * requires generating a number of temporary objects and allocates additional state
+     * information associated with the container that will remain for the life of the container.</p>
+     */
+    @Override
+    public Set<K> keySet() {
+        return getCollection().getKeySet();
+    }
+
+    /**
+     * Return a {@link java.util.Collection} for iterating over and interacting with all values
+     * in the array map.
+     *
+     * <p><b>Note:</b> this is a fairly inefficient way to access the array contents, it
+     * requires generating a number of temporary objects and allocates additional state
+     * information associated with the container that will remain for the life of the container.</p>
+     */
+    @Override
+    public Collection<V> values() {
+        return getCollection().getValues();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public final class OpenArrayMapTest extends TestCase {
+
+    public void testPutGetRemove() {
+        OpenArrayMap<String, String> map = new OpenArrayMap<String, String>();
+        assertNull(map.put("a", "A"));
+        assertNull(map.put("b", "B"));
+        assertEquals("A", map.put("a", "A2"));
+        assertEquals(2, map.size());
+        assertEquals("A2", map.get("a"));
+        assertEquals("B", map.remove("b"));
+        assertNull(map.remove("b"));
+        assertNull(map.get("b"));
+        assertEquals(1, map.size());
+        assertEquals("{a=A2}", map.toString());
+    }
+
+    public void testNullKeyAndValue() {
+        OpenArrayMap<String, String> map = new OpenArrayMap<String, String>();
+        map.put(null, "null key");
+        map.put("null value", null);
+        assertEquals("null key", map.get(null));
+        assertTrue(map.containsKey("null value"));
+        assertTrue(map.containsValue(null));
+        assertEquals("null key", map.remove(null));
+        assertFalse(map.containsKey(null));
+    }
+
+    public void testIndexedIterationSeesInsertionOrder() {
+        OpenArrayMap<Integer, String> map = new OpenArrayMap<Integer, String>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 7919, "v" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 7919, (int) map.keyAt(i));
+            assertEquals("v" + i, map.valueAt(i));
+            assertEquals(i, map.indexOfKey(i * 7919));
+        }
+    }
+
+    public void testRemoveAtMovesLastEntry() {
+        OpenArrayMap<String, String> map = new OpenArrayMap<String, String>();
+        map.put("a", "A");
+        map.put("b", "B");
+        map.put("c", "C");
+        assertEquals("A", map.removeAt(0));
+        assertEquals("c", map.keyAt(0));
+        assertEquals("b", map.keyAt(1));
+        assertEquals(0, map.indexOfKey("c"));
+    }
+
+    public void testIteratorRemove() {
+        OpenArrayMap<Integer, Integer> map = new OpenArrayMap<Integer, Integer>();
+        for (int i = 0; i < 50; i++) {
+            map.put(i, i);
+        }
+        for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator();
+                it.hasNext(); ) {
+            if (it.next().getKey() % 3 != 0) {
+                it.remove();
+            }
+        }
+        assertEquals(17, map.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i % 3 == 0, map.containsKey(i));
+        }
+    }
+
+    public void testCollidingHashCodes() {
+        OpenArrayMap<Colliding, Integer> map = new OpenArrayMap<Colliding, Integer>();
+        for (int i = 0; i < 40; i++) {
+            map.put(new Colliding(i), i);
+        }
+        for (int i = 0; i < 40; i += 2) {
+            assertEquals(i, (int) map.remove(new Colliding(i)));
+        }
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(new Colliding(i)));
+        }
+    }
+
+    public void testMatchesHashMap() {
+        Random random = new Random(0);
+        OpenArrayMap<Integer, Integer> map = new OpenArrayMap<Integer, Integer>();
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            Integer key = random.nextInt(i < 50000 ? 5000 : 50);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected, new OpenArrayMap<Integer, Integer>(map));
+    }
+
+    public void testEraseKeepsCapacity() {
+        OpenArrayMap<String, String> map = new OpenArrayMap<String, String>(100);
+        map.put("a", "A");
+        map.erase();
+        assertEquals(0, map.size());
+        assertNull(map.get("a"));
+        map.put("b", "B");
+        assertEquals("B", map.get("b"));
+        assertEquals(100, map.mHashes.length);
+    }
+
+    private static final class Colliding {
+        private final int value;
+
+        Colliding(int value) {
+            this.value = value;
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).value == value;
+        }
+
+        @Override public int hashCode() {
+            return value % 3;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.io.CharArrayReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the elements of a top-level JSON array in parallel. This is
+ * intended for large documents of independent records, such as exports, whose
+ * decoding would otherwise be bound by a single core.
+ *
+ * <p>The document is first scanned sequentially for the boundaries of the
+ * array's elements. The scan only tracks strings and nesting depth, which is
+ * much cheaper than tokenizing. The elements are then decoded concurrently on
+ * a {@link ForkJoinPool}, each by its own {@link JsonReader} that is handed to
+ * the caller's {@link ElementReader}. The decoded elements are returned in
+ * document order.
+ *
+ * <p>For example, to read a list of messages like the one in the {@link
+ * JsonReader} documentation: <pre>   {@code
+ *
+ *   List<Message> messages = ParallelJsonArrayReader.readArray(json,
+ *       new ParallelJsonArrayReader.ElementReader<Message>() {
+ *         public Message read(JsonReader reader) throws IOException {
+ *           return readMessage(reader);
+ *         }
+ *       });
+ * }</pre>
+ *
+ * <p>The document must be strict JSON (<a
+ * href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>). Each element must
+ * be read completely by the element reader: exactly one value, no more and no
+ * less.
+ *
+ * @hide
+ */
+public final class ParallelJsonArrayReader {
+
+    /**
+     * Elements are decoded in batches of at least this many characters, so
+     * that tiny elements don't cost a task each.
+     */
+    private static final int MIN_BATCH_CHARS = 8192;
+
+    /**
+     * Decodes a single array element. Implementations are called concurrently
+     * and must be thread safe.
+     */
+    public interface ElementReader<T> {
+        /**
+         * Reads one value from {@code reader}. The reader contains only the
+         * element, so the element may be any JSON value and not just an object
+         * or array.
+         */
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private ParallelJsonArrayReader() {
+    }
+
+    /**
+     * Returns the decoded elements of the array {@code json}, using the
+     * common fork/join pool.
+     */
+    public static <T> List<T> readArray(CharSequence json, ElementReader<? extends T> elementReader)
+            throws IOException {
+        return readArray(json, ForkJoinPool.commonPool(), elementReader);
+    }
+
+    /**
+     * Returns the decoded elements of the array {@code json}, using {@code pool}
+     * to decode them.
+     *
+     * @throws MalformedJsonException if the array itself is malformed, or if
+     *     an element is. In the latter case the line and column are those of
+     *     the whole document.
+     * @throws IOException the exception thrown by {@code elementReader} for
+     *     the earliest element it failed on.
+     * @throws IllegalStateException if {@code elementReader} doesn't read an
+     *     element completely.
+     */
+    public static <T> List<T> readArray(CharSequence json, ForkJoinPool pool,
+            ElementReader<? extends T> elementReader) throws IOException {
+        if (pool == null) {
+            throw new NullPointerException("pool == null");
+        }
+        if (elementReader == null) {
+            throw new NullPointerException("elementReader == null");
+        }
+
+        char[] chars = toCharArray(json);
+        int[] elements = findElements(chars);
+        Object[] results = new Object[elements.length / 4];
+        if (results.length > 0) {
+            Failure failure = new Failure();
+            pool.invoke(new DecodeTask(chars, elements, results, elementReader,
+                    0, results.length, failure));
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+
+        @SuppressWarnings("unchecked") // every result was returned by elementReader
+        List<T> list = (List<T>) Arrays.asList(results);
+        return list;
+    }
+
+    private static char[] toCharArray(CharSequence json) {
+        if (json == null) {
+            throw new NullPointerException("json == null");
+        }
+        if (json instanceof String) {
+            return ((String) json).toCharArray();
+        }
+        int length = json.length();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = json.charAt(i);
+        }
+        return chars;
+    }
+
+    /**
+     * Returns the elements of the top-level array in {@code chars}, as groups
+     * of 4 ints: start offset, end offset, line and column. The elements
+     * themselves are validated when they are decoded.
+     */
+    static int[] findElements(char[] chars) throws IOException {
+        int[] elements = new int[64];
+        int size = 0;
+        int length = chars.length;
+        int line = 1;
+        int lineStart = 0;
+
+        int i = 0;
+        if (length > 0 && chars[0] == '\ufeff') {
+            i++;
+            lineStart++;
+        }
+
+        // find the opening bracket
+        for (; i < length && chars[i] != '['; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                throw syntaxError("Expected a JSON array", line, i - lineStart + 1);
+            }
+        }
+        if (i == length) {
+            throw new EOFException("End of input");
+        }
+        i++;
+
+        int depth = 0;
+        boolean inString = false;
+        boolean inElement = false;
+        for (; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+                continue;
+            }
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                    elements[size - 3] = i + 1;
+                }
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                continue;
+            }
+
+            if (depth == 0 && (c == ',' || c == ']')) {
+                if (!inElement && (c == ',' || size > 0)) {
+                    throw syntaxError("Expected a value", line, i - lineStart + 1);
+                }
+                inElement = false;
+                if (c == ']') {
+                    break;
+                }
+                continue;
+            }
+
+            if (!inElement) {
+                inElement = true;
+                if (size == elements.length) {
+                    elements = Arrays.copyOf(elements, size * 2);
+                }
+                elements[size++] = i;
+                elements[size++] = i;
+                elements[size++] = line;
+                elements[size++] = i - lineStart + 1;
+            }
+
+            if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                if (--depth < 0) {
+                    throw syntaxError("Unexpected '" + c + "'", line, i - lineStart + 1);
+                }
+            }
+            elements[size - 3] = i + 1;
+        }
+
+        if (i >= length) {
+            throw new EOFException("End of input");
+        }
+        for (i++; i < length; i++) {
+            char c = chars[i];
+            if (c == '\n') {
+                line++;
+                lineStart = i + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                throw syntaxError("Expected EOF", line, i - lineStart + 1);
+            }
+        }
+        return Arrays.copyOf(elements, size);
+    }
+
+    private static MalformedJsonException syntaxError(String message, int line, int column) {
+        return new MalformedJsonException(message + " at line " + line + " column " + column);
+    }
+
+    /**
+     * The exception of the earliest failing element. Once an element fails,
+     * later elements are not decoded.
+     */
+    static final class Failure {
+        private volatile int index = Integer.MAX_VALUE;
+        private IOException exception;
+
+        synchronized void offer(int index, IOException exception) {
+            if (index < this.index) {
+                this.index = index;
+                this.exception = exception;
+            }
+        }
+
+        boolean isBefore(int index) {
+            return this.index < index;
+        }
+
+        synchronized IOException get() {
+            return exception;
+        }
+    }
+
+    /**
+     * Decodes the elements in {@code [from, to)}, splitting the range in half
+     * while it is larger than a batch.
+     */
+    static final class DecodeTask extends RecursiveAction {
+        private final char[] chars;
+        private final int[] elements;
+        private final Object[] results;
+        private final ElementReader<?> elementReader;
+        private final int from;
+        private final int to;
+        final Failure failure;
+
+        DecodeTask(char[] chars, int[] elements, Object[] results, ElementReader<?> elementReader,
+                int from, int to, Failure failure) {
+            this.chars = chars;
+            this.elements = elements;
+            this.results = results;
+            this.elementReader = elementReader;
+            this.from = from;
+            this.to = to;
+            this.failure = failure;
+        }
+
+        @Override protected void compute() {
+            int charCount = elements[(to - 1) * 4 + 1] - elements[from * 4];
+            if (to - from > 1 && charCount > MIN_BATCH_CHARS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(
+                        new DecodeTask(chars, elements, results, elementReader, from, mid, failure),
+                        new DecodeTask(chars, elements, results, elementReader, mid, to, failure));
+                return;
+            }
+
+            for (int index = from; index < to; index++) {
+                if (failure.isBefore(index)) {
+                    return;
+                }
+                try {
+                    results[index] = decode(index);
+                } catch (IOException e) {
+                    failure.offer(index, e);
+                    return;
+                }
+            }
+        }
+
+        private Object decode(int index) throws IOException {
+            int start = elements[index * 4];
+            int end = elements[index * 4 + 1];
+            JsonReader reader = new JsonReader(new CharArrayReader(chars, start, end - start),
+                    elements[index * 4 + 2], elements[index * 4 + 3]);
+            Object result = elementReader.read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalStateException("Element " + index + " was not read completely");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.TestCase;
+
+public final class ParallelJsonArrayReaderTest extends TestCase {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Override protected void tearDown() throws Exception {
+        pool.shutdown();
+        super.tearDown();
+    }
+
+    public void testElementsAreReturnedInOrder() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                json.append(",\n");
+            }
+            json.append("{\"id\":").append(i).append(",\"tags\":[\"a]\",\"}{\\\"\"]}");
+            expected.add(i + "a]}{\"");
+        }
+        json.append("]");
+        assertEquals(expected, ParallelJsonArrayReader.readArray(json, pool, RECORD_READER));
+    }
+
+    public void testAnyValueIsAnElement() throws IOException {
+        List<String> values = ParallelJsonArrayReader.readArray(
+                " [1, \"two\", true, null, [3], {\"four\": 4}] ", pool, SKIPPING_READER);
+        assertEquals(Arrays.asList("NUMBER", "STRING", "BOOLEAN", "NULL", "BEGIN_ARRAY",
+                "BEGIN_OBJECT"), values);
+    }
+
+    public void testEmptyArray() throws IOException {
+        assertEquals(Collections.emptyList(),
+                ParallelJsonArrayReader.readArray("[ ]", pool, SKIPPING_READER));
+    }
+
+    public void testMalformedArray() throws IOException {
+        assertMalformed("{}");
+        assertMalformed("[1,]");
+        assertMalformed("[,1]");
+        assertMalformed("[1,,2]");
+        assertMalformed("[1] 2");
+        assertMalformed("[1}]");
+        try {
+            ParallelJsonArrayReader.readArray("[1, 2", pool, SKIPPING_READER);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testMalformedElementReportsDocumentPosition() throws IOException {
+        try {
+            ParallelJsonArrayReader.readArray("[1,\n  {\"a\": 1 \"b\": 2}]", pool, SKIPPING_READER);
+            fail();
+        } catch (MalformedJsonException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("at line 2"));
+        }
+    }
+
+    public void testEarliestFailureIsReported() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 10000; i++) {
+            json.append(i == 0 ? "" : ",").append(i % 1000 == 999 ? "\"bad" + i + "\"" : "0");
+        }
+        json.append("]");
+        try {
+            ParallelJsonArrayReader.readArray(json, pool,
+                    new ParallelJsonArrayReader.ElementReader<Integer>() {
+                        public Integer read(JsonReader reader) throws IOException {
+                            if (reader.peek() == JsonToken.STRING) {
+                                throw new IOException(reader.nextString());
+                            }
+                            return reader.nextInt();
+                        }
+                    });
+            fail();
+        } catch (IOException expected) {
+            assertEquals("bad999", expected.getMessage());
+        }
+    }
+
+    public void testElementMustBeReadCompletely() throws IOException {
+        try {
+            ParallelJsonArrayReader.readArray("[[1, 2]]", pool,
+                    new ParallelJsonArrayReader.ElementReader<Integer>() {
+                        public Integer read(JsonReader reader) throws IOException {
+                            reader.beginArray();
+                            return reader.nextInt();
+                        }
+                    });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testMatchesSequentialReader() throws IOException {
+        String json = "[{\"id\": 1, \"tags\": [\"x\"]}, {\"id\": 2, \"tags\": []}]";
+        JsonReader reader = new JsonReader(new StringReader(json));
+        List<String> sequential = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sequential.add(RECORD_READER.read(reader));
+        }
+        reader.endArray();
+        assertEquals(sequential, ParallelJsonArrayReader.readArray(json, pool, RECORD_READER));
+    }
+
+    private void assertMalformed(String json) throws IOException {
+        try {
+            ParallelJsonArrayReader.readArray(json, pool, SKIPPING_READER);
+            fail(json);
+        } catch (MalformedJsonException expected) {
+        }
+    }
+
+    private static final ParallelJsonArrayReader.ElementReader<String> SKIPPING_READER
+            = new ParallelJsonArrayReader.ElementReader<String>() {
+        public String read(JsonReader reader) throws IOException {
+            String token = reader.peek().toString();
+            reader.skipValue();
+            return token;
+        }
+    };
+
+    private static final ParallelJsonArrayReader.ElementReader<String> RECORD_READER
+            = new ParallelJsonArrayReader.ElementReader<String>() {
+        public String read(JsonReader reader) throws IOException {
+            StringBuilder result = new StringBuilder();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    result.append(reader.nextInt());
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        result.append(reader.nextString());
+                    }
+                    reader.endArray();
+                }
+            }
+            reader.endObject();
+            return result.toString();
+        }
+    };
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import android.util.ArrayMap;
+import android.util.OpenArrayMap;
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where do ArrayMap, OpenArrayMap and HashMap cross over? Each rep builds a
+ * map of {@code size} entries, looks every key up and removes every key.
+ */
+public class ArrayMapBenchmark extends SimpleBenchmark {
+
+    public enum Implementation {
+        ARRAY_MAP {
+            @Override Map<String, String> create() {
+                return new ArrayMap<String, String>();
+            }
+        },
+        OPEN_ARRAY_MAP {
+            @Override Map<String, String> create() {
+                return new OpenArrayMap<String, String>();
+            }
+        },
+        HASH_MAP {
+            @Override Map<String, String> create() {
+                return new HashMap<String, String>();
+            }
+        };
+
+        abstract Map<String, String> create();
+    }
+
+    @Param({"4", "16", "64", "256", "1024", "4096", "16384"}) int size;
+    @Param Implementation implementation;
+
+    private String[] keys;
+
+    @Override protected void setUp() throws Exception {
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key" + i;
+        }
+    }
+
+    public int timePut(int reps) {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            Map<String, String> map = implementation.create();
+            for (String key : keys) {
+                map.put(key, key);
+            }
+            result += map.size();
+        }
+        return result;
+    }
+
+    public int timeGet(int reps) {
+        Map<String, String> map = implementation.create();
+        for (String key : keys) {
+            map.put(key, key);
+        }
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            for (String key : keys) {
+                if (map.get(key) != null) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public int timePutRemove(int reps) {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            Map<String, String> map = implementation.create();
+            for (String key : keys) {
+                map.put(key, key);
+            }
+            for (String key : keys) {
+                if (map.remove(key) != null) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static void main(String[] args) {
+        Runner.main(ArrayMapBenchmark.class, args);
+    }
+}
@@ -22,16 +22,25 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 public final class BufferedZipFileBenchmark extends SimpleBenchmark {
+    private static final int THREADS = 4;
+
     @Param({"128", "1024", "8192", "65536"}) int compressedSize;
     @Param({"4", "32", "128"}) int readSize;
 
     private File file;
+    private ExecutorService executor;
 
     @Override protected void setUp() throws Exception {
         file = File.createTempFile(getClass().getName(), ".zip");
@@ -49,6 +58,12 @@ public final class BufferedZipFileBenchmark extends SimpleBenchmark {
             written += toWrite;
         }
         out.close();
+
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        executor.shutdown();
     }
 
     public void timeUnbufferedRead(int reps) throws Exception {
@@ -76,4 +91,40 @@ public final class BufferedZipFileBenchmark extends SimpleBenchmark {
             zipFile.close();
         }
     }
+
+    public void timeConcurrentRead(int reps) throws Exception {
+        readConcurrently(reps, ZipFile.OPEN_READ);
+    }
+
+    public void timeConcurrentMappedRead(int reps) throws Exception {
+        readConcurrently(reps, ZipFile.OPEN_READ | ZipFile.OPEN_MAPPED);
+    }
+
+    /**
+     * Reads the entry {@code reps} times on each of {@code THREADS} threads, all sharing
+     * one {@code ZipFile}.
+     */
+    private void readConcurrently(final int reps, int mode) throws Exception {
+        final ZipFile zipFile = new ZipFile(file, mode);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    byte[] buffer = new byte[readSize];
+                    for (int i = 0; i < reps; i++) {
+                        ZipEntry entry = zipFile.getEntry("entry.data");
+                        InputStream in = new BufferedInputStream(zipFile.getInputStream(entry));
+                        while (in.read(buffer) != -1) {
+                        }
+                        in.close();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        zipFile.close();
+    }
 }
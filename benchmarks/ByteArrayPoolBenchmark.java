@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import com.android.volley.toolbox.ByteArrayPool;
+import com.android.volley.toolbox.SizeClassByteArrayPool;
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures contended borrow/return cycles on Volley's byte array pools, with a request size
+ * mix resembling what BasicNetwork and PoolingByteArrayOutputStream ask for.
+ */
+public final class ByteArrayPoolBenchmark extends SimpleBenchmark {
+    @Param({"4", "16", "64"}) int threads;
+    @Param Implementation implementation;
+
+    private static final int POOL_SIZE = 4096 * 16;
+    private static final int[] SIZES = { 256, 1024, 1024, 4096, 4096, 16384 };
+
+    enum Implementation {
+        LOCKED {
+            @Override ByteArrayPool newPool() {
+                return new ByteArrayPool(POOL_SIZE);
+            }
+        },
+        SIZE_CLASS {
+            @Override ByteArrayPool newPool() {
+                return new SizeClassByteArrayPool(POOL_SIZE);
+            }
+        };
+
+        abstract ByteArrayPool newPool();
+    }
+
+    private ByteArrayPool pool;
+
+    @Override protected void setUp() throws Exception {
+        pool = implementation.newPool();
+    }
+
+    /** Each rep is one getBuf/returnBuf pair, split evenly across the threads. */
+    public void timeGetReturn(final int reps) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    int perThread = reps / threads;
+                    for (int i = 0; i < perThread; i++) {
+                        byte[] buf = pool.getBuf(SIZES[(i + offset) % SIZES.length]);
+                        buf[0] = (byte) i;
+                        pool.returnBuf(buf);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+    }
+}
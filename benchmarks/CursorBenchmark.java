@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import android.database.AbstractCursor;
+import android.database.ColumnarCursor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+/**
+ * Compares MatrixCursor and ColumnarCursor on a result set of a long, a
+ * double and a string column: building it, scanning the numeric columns and
+ * the heap it retains.
+ */
+public class CursorBenchmark extends SimpleBenchmark {
+
+    private static final String[] COLUMN_NAMES = { "_id", "score", "title" };
+    private static final int[] COLUMN_TYPES = { Cursor.FIELD_TYPE_INTEGER,
+            Cursor.FIELD_TYPE_FLOAT, Cursor.FIELD_TYPE_STRING };
+
+    public enum Implementation {
+        MATRIX_CURSOR {
+            @Override AbstractCursor create(String[] titles) {
+                MatrixCursor cursor = new MatrixCursor(COLUMN_NAMES, titles.length);
+                for (int i = 0; i < titles.length; i++) {
+                    cursor.newRow().add((long) i).add(i * 0.5d).add(titles[i]);
+                }
+                return cursor;
+            }
+        },
+        COLUMNAR_CURSOR {
+            @Override AbstractCursor create(String[] titles) {
+                ColumnarCursor cursor = new ColumnarCursor(COLUMN_NAMES, COLUMN_TYPES);
+                int first = cursor.addRows(titles.length);
+                for (int i = 0; i < titles.length; i++) {
+                    cursor.setLong(first + i, 0, i);
+                    cursor.setDouble(first + i, 1, i * 0.5d);
+                }
+                cursor.setStrings(2, first, titles, 0, titles.length);
+                return cursor;
+            }
+        };
+
+        abstract AbstractCursor create(String[] titles);
+    }
+
+    @Param({"1000", "100000"}) int rows;
+    @Param Implementation implementation;
+
+    private String[] titles;
+    private AbstractCursor cursor;
+
+    @Override protected void setUp() throws Exception {
+        titles = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            titles[i] = "title " + i;
+        }
+        cursor = implementation.create(titles);
+    }
+
+    public int timeBuild(int reps) {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            result += implementation.create(titles).getCount();
+        }
+        return result;
+    }
+
+    public long timeScanLong(int reps) {
+        long result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                result += cursor.getLong(0);
+            }
+        }
+        return result;
+    }
+
+    public double timeScanDouble(int reps) {
+        double result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                result += cursor.getDouble(1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the heap retained by a cursor of {@code rows} rows, not counting
+     * the shared title strings.
+     */
+    static long retainedBytes(Implementation implementation, int rows) {
+        String[] titles = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            titles[i] = "title " + i;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        AbstractCursor cursor = implementation.create(titles);
+        runtime.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        if (cursor.getCount() != rows) {
+            throw new AssertionError();
+        }
+        return after - before;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (Implementation implementation : Implementation.values()) {
+            System.out.println(implementation + " retains about "
+                    + retainedBytes(implementation, 100000) / 100000 + " bytes per row");
+        }
+        Runner.main(CursorBenchmark.class, args);
+    }
+}
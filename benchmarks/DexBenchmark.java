@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import com.android.dex.Dex;
+import com.android.dex.SizeOf;
+import com.android.dex.TableOfContents;
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares reading a large synthetic dex file from the heap and through a
+ * memory mapping: opening it, looking up types and scanning its strings.
+ */
+public class DexBenchmark extends SimpleBenchmark {
+
+    public enum Mode {
+        HEAP {
+            @Override Dex open(File file) throws IOException {
+                return new Dex(file);
+            }
+        },
+        MAPPED {
+            @Override Dex open(File file) throws IOException {
+                return Dex.map(file);
+            }
+        };
+
+        abstract Dex open(File file) throws IOException;
+    }
+
+    private static final int LOOKUPS = 1000;
+
+    // The size and five entries of header, string ids, type ids, string data and map.
+    private static final int MAP_LIST_SIZE = SizeOf.UINT + 5 * SizeOf.MAP_ITEM;
+
+    @Param({"1000", "100000"}) int typeCount;
+    @Param Mode mode;
+
+    private File file;
+    private Dex dex;
+    private String[] descriptors;
+
+    @Override protected void setUp() throws Exception {
+        file = File.createTempFile("DexBenchmark", ".dex");
+        file.deleteOnExit();
+        syntheticDex(typeCount).writeTo(file);
+        dex = mode.open(file);
+
+        Random random = new Random(0);
+        descriptors = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            descriptors[i] = descriptor(random.nextInt(typeCount));
+        }
+    }
+
+    @Override protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /** Opens the file and looks up a single type, like build tools do per input. */
+    public int timeOpen(int reps) throws IOException {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            result += mode.open(file).findTypeIndex(descriptors[rep % LOOKUPS]);
+        }
+        return result;
+    }
+
+    public int timeFindTypeIndex(int reps) {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            for (String descriptor : descriptors) {
+                result += dex.findTypeIndex(descriptor);
+            }
+        }
+        return result;
+    }
+
+    public int timeScanStrings(int reps) {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            for (String s : dex.strings()) {
+                result += s.length();
+            }
+        }
+        return result;
+    }
+
+    private static String descriptor(int i) {
+        return String.format("Lcom/example/generated/Class%07d;", i);
+    }
+
+    /**
+     * Returns a dex with {@code typeCount} types and their descriptor strings, and
+     * no classes.
+     */
+    static Dex syntheticDex(int typeCount) throws IOException {
+        String[] descriptors = new String[typeCount];
+        int stringDataSize = 0;
+        for (int i = 0; i < typeCount; i++) {
+            descriptors[i] = descriptor(i);
+            // One byte each for the ULEB128 length and the terminating zero.
+            stringDataSize += descriptors[i].length() + 2;
+        }
+
+        Dex dex = new Dex(SizeOf.HEADER_ITEM + typeCount * (SizeOf.STRING_ID_ITEM
+                + SizeOf.TYPE_ID_ITEM) + ((stringDataSize + 3) & ~3) + MAP_LIST_SIZE);
+        TableOfContents contents = dex.getTableOfContents();
+        contents.header.off = 0;
+        contents.header.size = 1;
+        contents.stringIds.off = SizeOf.HEADER_ITEM;
+        contents.stringIds.size = typeCount;
+        contents.typeIds.off = contents.stringIds.off + typeCount * SizeOf.STRING_ID_ITEM;
+        contents.typeIds.size = typeCount;
+        contents.stringDatas.off = contents.typeIds.off + typeCount * SizeOf.TYPE_ID_ITEM;
+        contents.stringDatas.size = typeCount;
+
+        Dex.Section stringIds = dex.open(contents.stringIds.off);
+        Dex.Section typeIds = dex.open(contents.typeIds.off);
+        Dex.Section stringData = dex.open(contents.stringDatas.off);
+        for (int i = 0; i < typeCount; i++) {
+            stringIds.writeInt(stringData.getPosition());
+            stringData.writeStringData(descriptors[i]);
+            typeIds.writeInt(i);
+        }
+        stringData.alignToFourBytesWithZeroFill();
+
+        contents.mapList.off = stringData.getPosition();
+        contents.mapList.size = 1;
+        Arrays.sort(contents.sections);
+        Dex.Section mapList = dex.open(contents.mapList.off);
+        contents.writeMap(mapList);
+        contents.fileSize = mapList.getPosition();
+        contents.dataOff = contents.stringDatas.off;
+        contents.dataSize = contents.fileSize - contents.dataOff;
+        contents.writeHeader(dex.open(0));
+        dex.writeHashes();
+        return new Dex(dex.getBytes());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Runner.main(DexBenchmark.class, args);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONReader;
+import org.json.JSONTokener;
+
+/**
+ * Compares JSONTokener.nextValue() with the streaming and lazy modes of JSONReader on a
+ * generated API response: an array of records, each with a few strings, numbers and a nested
+ * object. Each method reads the "id" of every record, which is all many callers need.
+ */
+public class JSONParseBenchmark extends SimpleBenchmark {
+
+    @Param({"100", "10000"}) int records;
+
+    private String json;
+
+    @Override protected void setUp() throws Exception {
+        Random random = new Random(0);
+        StringBuilder out = new StringBuilder("{\"status\":\"ok\",\"results\":[");
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"id\":").append(i)
+                    .append(",\"name\":\"record ").append(random.nextInt()).append('"')
+                    .append(",\"score\":").append(random.nextDouble())
+                    .append(",\"tags\":[\"a\",\"b\",\"c\"]")
+                    .append(",\"location\":{\"lat\":").append(random.nextDouble() * 90)
+                    .append(",\"lng\":").append(random.nextDouble() * 180).append("}}");
+        }
+        out.append("]}");
+        json = out.toString();
+    }
+
+    public long timeTokenerNextValue(int reps) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONObject object = (JSONObject) new JSONTokener(json).nextValue();
+            JSONArray results = object.getJSONArray("results");
+            for (int r = 0, length = results.length(); r < length; r++) {
+                sum += results.getJSONObject(r).getLong("id");
+            }
+        }
+        return sum;
+    }
+
+    public long timeReaderEvents(int reps) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONReader reader = new JSONReader(new StringReader(json));
+            JSONReader.Event event;
+            boolean id = false;
+            while ((event = reader.next()) != JSONReader.Event.END_DOCUMENT) {
+                if (event == JSONReader.Event.NAME) {
+                    id = reader.getString().equals("id");
+                } else if (event == JSONReader.Event.NUMBER && id) {
+                    sum += reader.getLong();
+                    id = false;
+                }
+            }
+        }
+        return sum;
+    }
+
+    public long timeReaderReadValue(int reps) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONReader reader = new JSONReader(new StringReader(json));
+            reader.next();
+            JSONArray results = ((JSONObject) reader.readValue()).getJSONArray("results");
+            for (int r = 0, length = results.length(); r < length; r++) {
+                sum += results.getJSONObject(r).getLong("id");
+            }
+        }
+        return sum;
+    }
+
+    public long timeReaderLazyValue(int reps) throws Exception {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONReader reader = new JSONReader(CharBuffer.wrap(json));
+            reader.next();
+            JSONArray results = ((JSONObject) reader.readLazyValue()).getJSONArray("results");
+            for (int r = 0, length = results.length(); r < length; r++) {
+                sum += results.getJSONObject(r).getLong("id");
+            }
+        }
+        return sum;
+    }
+
+    /** Reads a single top-level field, which is where lazy values pay off. */
+    public int timeTokenerOneField(int reps) throws Exception {
+        int length = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONObject object = (JSONObject) new JSONTokener(json).nextValue();
+            length += object.getString("status").length();
+        }
+        return length;
+    }
+
+    public int timeReaderLazyOneField(int reps) throws Exception {
+        int length = 0;
+        for (int i = 0; i < reps; i++) {
+            JSONReader reader = new JSONReader(CharBuffer.wrap(json));
+            reader.next();
+            length += ((JSONObject) reader.readLazyValue()).getString("status").length();
+        }
+        return length;
+    }
+
+    public static void main(String[] args) {
+        Runner.main(JSONParseBenchmark.class, args);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import android.util.ConcurrentLruCache;
+import android.util.LruCache;
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures contended lookups on LruCache and ConcurrentLruCache. Keys are drawn from a skewed
+ * distribution so most lookups hit, as they do in image and metadata caches; misses put.
+ */
+public final class LruCacheBenchmark extends SimpleBenchmark {
+    @Param({"1", "4", "16"}) int threads;
+    @Param Implementation implementation;
+
+    private static final int CACHE_SIZE = 1024;
+    private static final int KEY_COUNT = 4 * CACHE_SIZE;
+
+    enum Implementation {
+        SYNCHRONIZED {
+            @Override Cache newCache() {
+                final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(CACHE_SIZE);
+                return new Cache() {
+                    @Override public Integer get(Integer key) {
+                        return cache.get(key);
+                    }
+                    @Override public void put(Integer key, Integer value) {
+                        cache.put(key, value);
+                    }
+                };
+            }
+        },
+        CONCURRENT_LRU {
+            @Override Cache newCache() {
+                return newConcurrentCache(ConcurrentLruCache.Policy.LRU);
+            }
+        },
+        CONCURRENT_WINDOW_TINY_LFU {
+            @Override Cache newCache() {
+                return newConcurrentCache(ConcurrentLruCache.Policy.WINDOW_TINY_LFU);
+            }
+        };
+
+        abstract Cache newCache();
+    }
+
+    interface Cache {
+        Integer get(Integer key);
+        void put(Integer key, Integer value);
+    }
+
+    private static Cache newConcurrentCache(ConcurrentLruCache.Policy policy) {
+        final ConcurrentLruCache<Integer, Integer> cache =
+                new ConcurrentLruCache<Integer, Integer>(CACHE_SIZE, policy);
+        return new Cache() {
+            @Override public Integer get(Integer key) {
+                return cache.get(key);
+            }
+            @Override public void put(Integer key, Integer value) {
+                cache.put(key, value);
+            }
+        };
+    }
+
+    private Cache cache;
+    private Integer[] keys;
+
+    @Override protected void setUp() throws Exception {
+        cache = implementation.newCache();
+        // Squaring a uniform sample skews it towards small keys.
+        Random random = new Random(0);
+        keys = new Integer[8192];
+        for (int i = 0; i < keys.length; i++) {
+            double d = random.nextDouble();
+            keys[i] = (int) (d * d * KEY_COUNT);
+        }
+        for (Integer key : keys) {
+            cache.put(key, key);
+        }
+    }
+
+    /** Each rep is one lookup, split evenly across the threads. */
+    public void timeGet(final int reps) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 997;
+            new Thread() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    int perThread = reps / threads;
+                    for (int i = 0; i < perThread; i++) {
+                        Integer key = keys[(i + offset) & (keys.length - 1)];
+                        if (cache.get(key) == null) {
+                            cache.put(key, key);
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import android.util.ConcurrentLruCache;
+import android.util.LruCache;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Replays a recorded key trace against LruCache and each ConcurrentLruCache policy and prints
+ * the hit ratio of each. A trace is a text file with one key per line, in request order; a
+ * lookup that misses is followed by a put, as a read-through cache would do.
+ *
+ * <pre>
+ *   java benchmarks.LruCacheSimulator trace.txt 100 1000 10000
+ * </pre>
+ */
+public final class LruCacheSimulator {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: LruCacheSimulator <trace file> <cache size>...");
+            System.exit(1);
+        }
+
+        List<String> trace = readTrace(args[0]);
+        System.out.printf("%d requests, %d distinct keys%n",
+                trace.size(), new HashSet<String>(trace).size());
+        System.out.printf("%10s %14s", "size", "LruCache");
+        for (ConcurrentLruCache.Policy policy : ConcurrentLruCache.Policy.values()) {
+            System.out.printf(" %16s", policy);
+        }
+        System.out.println();
+
+        for (int i = 1; i < args.length; i++) {
+            int size = Integer.parseInt(args[i]);
+            System.out.printf("%10d %13.2f%%", size, simulateLruCache(trace, size));
+            for (ConcurrentLruCache.Policy policy : ConcurrentLruCache.Policy.values()) {
+                System.out.printf(" %15.2f%%", simulate(trace, size, policy));
+            }
+            System.out.println();
+        }
+    }
+
+    private static double simulateLruCache(List<String> trace, int size) {
+        LruCache<String, String> cache = new LruCache<String, String>(size);
+        for (String key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return 100.0 * cache.hitCount() / trace.size();
+    }
+
+    private static double simulate(List<String> trace, int size,
+            ConcurrentLruCache.Policy policy) {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(
+                size, policy);
+        for (String key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return 100.0 * cache.hitCount() / trace.size();
+    }
+
+    private static List<String> readTrace(String path) throws IOException {
+        List<String> trace = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    trace.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return trace;
+    }
+}
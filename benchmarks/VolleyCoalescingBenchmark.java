@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Measures a burst of uncacheable GETs through a {@link RequestQueue} against a loopback HTTP
+ * server that answers each request after a fixed delay, with and without coalescing of
+ * identical in-flight requests.
+ */
+public final class VolleyCoalescingBenchmark extends SimpleBenchmark {
+    @Param({"false", "true"}) boolean coalesce;
+    /** Number of distinct URLs in each burst; the rest of the burst repeats them. */
+    @Param({"1", "8", "64"}) int distinctUrls;
+    @Param({"256"}) int burstSize;
+    @Param({"4"}) int threads;
+
+    private static final int SERVER_DELAY_MILLIS = 5;
+    private static final byte[] BODY = new byte[2048];
+
+    private ServerSocket serverSocket;
+    private RequestQueue queue;
+
+    @Override protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 256, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread("loopback-http") {
+            @Override public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        new Thread() {
+                            @Override public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        Executor direct = new Executor() {
+            @Override public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        queue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), threads,
+                new ExecutorDelivery(direct));
+        queue.setCoalescingEnabled(coalesce);
+        queue.start();
+    }
+
+    @Override protected void tearDown() throws Exception {
+        queue.stop();
+        serverSocket.close();
+    }
+
+    /**
+     * Answers keep-alive HTTP/1.1 requests on one connection until the client closes it.
+     */
+    private static void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() != 0) {
+                    continue; // Request and header lines; GETs have no body.
+                }
+                Thread.sleep(SERVER_DELAY_MILLIS);
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: "
+                        + BODY.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                out.write(BODY);
+                out.flush();
+            }
+        } catch (Exception ignored) {
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public void timeBurst(int reps) throws Exception {
+        String base = "http://127.0.0.1:" + serverSocket.getLocalPort() + "/item/";
+        for (int i = 0; i < reps; i++) {
+            final CountDownLatch done = new CountDownLatch(burstSize);
+            Response.Listener<String> listener = new Response.Listener<String>() {
+                @Override public void onResponse(String response) {
+                    done.countDown();
+                }
+            };
+            Response.ErrorListener errorListener = new Response.ErrorListener() {
+                @Override public void onErrorResponse(VolleyError error) {
+                    done.countDown();
+                }
+            };
+            for (int j = 0; j < burstSize; j++) {
+                Request<String> request = new StringRequest(
+                        base + (j % distinctUrls), listener, errorListener);
+                request.setShouldCache(false);
+                queue.add(request);
+            }
+            done.await();
+        }
+    }
+}
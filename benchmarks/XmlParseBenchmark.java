@@ -23,7 +23,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
 import javax.xml.parsers.DocumentBuilder;
@@ -31,6 +34,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.w3c.dom.Document;
+import org.kxml2.io.KXmlParser;
 import org.w3c.dom.Node;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -41,6 +45,8 @@ public class XmlParseBenchmark extends SimpleBenchmark {
 
     @Param String xmlFile;
     ByteArrayInputStream inputStream;
+    ByteBuffer byteBuffer;
+    ByteBuffer mappedBuffer;
 
     static List<String> xmlFileValues = Arrays.asList(
             "/etc/apns-conf.xml",
@@ -58,6 +64,14 @@ public class XmlParseBenchmark extends SimpleBenchmark {
         byte[] xmlBytes = getXmlBytes();
         inputStream = new ByteArrayInputStream(xmlBytes);
         inputStream.mark(xmlBytes.length);
+        byteBuffer = ByteBuffer.wrap(xmlBytes);
+
+        RandomAccessFile file = new RandomAccessFile(xmlFile, "r");
+        try {
+            mappedBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
 
         SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         saxParser = saxParserFactory.newSAXParser();
@@ -130,6 +144,56 @@ public class XmlParseBenchmark extends SimpleBenchmark {
         return testXmlPull(kxmlConstructor, reps);
     }
 
+    public int timeKxmlByteBuffer(int reps) throws Exception {
+        return testKxmlByteBuffer(byteBuffer, reps, false);
+    }
+
+    public int timeKxmlMappedFile(int reps) throws Exception {
+        return testKxmlByteBuffer(mappedBuffer, reps, false);
+    }
+
+    public int timeKxmlAttributeStrings(int reps) throws Exception {
+        return testKxmlByteBuffer(byteBuffer, reps, true);
+    }
+
+    public int timeKxmlAttributeChars(int reps) throws Exception {
+        int attributeLength = 0;
+        for (int i = 0; i < reps; i++) {
+            KXmlParser parser = new KXmlParser();
+            parser.setInput(byteBuffer);
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == XmlPullParser.START_TAG) {
+                    for (int a = 0; a < parser.getAttributeCount(); a++) {
+                        attributeLength += parser.getAttributeValueChars(a).length();
+                    }
+                }
+            }
+        }
+        return attributeLength;
+    }
+
+    private int testKxmlByteBuffer(ByteBuffer input, int reps, boolean readAttributes)
+            throws Exception {
+        int elementCount = 0;
+        for (int i = 0; i < reps; i++) {
+            KXmlParser parser = new KXmlParser();
+            parser.setInput(input);
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == XmlPullParser.START_TAG) {
+                    elementCount++;
+                    if (readAttributes) {
+                        for (int a = 0; a < parser.getAttributeCount(); a++) {
+                            elementCount += parser.getAttributeValue(a).length();
+                        }
+                    }
+                }
+            }
+        }
+        return elementCount;
+    }
+
     private int testXmlPull(Constructor<? extends XmlPullParser> constructor, int reps)
             throws Exception {
         int elementCount = 0;
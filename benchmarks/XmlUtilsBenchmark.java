@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks;
+
+import com.android.internal.util.XmlUtils;
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares writing and reading a SharedPreferences-like map as XML and with the
+ * binary encoding of {@link XmlUtils#writeMapBinary}.
+ */
+public class XmlUtilsBenchmark extends SimpleBenchmark {
+
+    public enum Format {
+        XML {
+            @Override void write(Map<String, Object> map, ByteArrayOutputStream out)
+                    throws Exception {
+                XmlUtils.writeMapXml(map, out);
+            }
+        },
+        BINARY {
+            @Override void write(Map<String, Object> map, ByteArrayOutputStream out)
+                    throws IOException {
+                XmlUtils.writeMapBinary(map, out);
+            }
+        };
+
+        abstract void write(Map<String, Object> map, ByteArrayOutputStream out)
+                throws Exception;
+    }
+
+    @Param({"20", "200", "2000"}) int entryCount;
+    @Param Format format;
+
+    private Map<String, Object> map;
+    private byte[] bytes;
+
+    @Override protected void setUp() throws Exception {
+        map = preferences(entryCount);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(map, out);
+        bytes = out.toByteArray();
+    }
+
+    public int timeWrite(int reps) throws Exception {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            format.write(map, out);
+            result += out.size();
+        }
+        return result;
+    }
+
+    public int timeRead(int reps) throws Exception {
+        int result = 0;
+        for (int rep = 0; rep < reps; rep++) {
+            result += XmlUtils.readMapXml(new ByteArrayInputStream(bytes)).size();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a map with the mix of value types apps usually keep in their
+     * preferences: mostly strings and booleans, some numbers and string sets.
+     */
+    static Map<String, Object> preferences(int entryCount) {
+        Random random = new Random(0);
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < entryCount; i++) {
+            String key = "pref_key_" + i;
+            switch (i % 8) {
+                case 0:
+                case 1:
+                case 2:
+                    map.put(key, "value " + Long.toHexString(random.nextLong()));
+                    break;
+                case 3:
+                case 4:
+                    map.put(key, random.nextBoolean());
+                    break;
+                case 5:
+                    map.put(key, random.nextInt());
+                    break;
+                case 6:
+                    map.put(key, random.nextLong());
+                    break;
+                default:
+                    Set<String> set = new HashSet<String>();
+                    for (int j = 0; j < 4; j++) {
+                        set.add("item" + random.nextInt(1000));
+                    }
+                    map.put(key, set);
+                    break;
+            }
+        }
+        return map;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Runner.main(XmlUtilsBenchmark.class, args);
+    }
+}
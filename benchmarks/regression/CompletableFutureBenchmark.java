@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks.regression;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fans out {@code calls} small tasks and fans their results back in, either by
+ * blocking in {@link Future#get} on each one or by chaining the continuation
+ * onto {@link CompletableFuture#allOf}.
+ */
+public class CompletableFutureBenchmark extends SimpleBenchmark {
+    @Param({"1", "16", "256"}) int calls;
+    @Param({"2", "8"}) int threads;
+
+    private ExecutorService executor;
+
+    @Override protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    public long timeFutureGet(int reps) throws Exception {
+        long sum = 0;
+        @SuppressWarnings("unchecked")
+        Future<Integer>[] futures = new Future[calls];
+        for (int rep = 0; rep < reps; rep++) {
+            for (int i = 0; i < calls; i++) {
+                final int value = i;
+                futures[i] = executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        return value;
+                    }
+                });
+            }
+            for (int i = 0; i < calls; i++) {
+                sum += futures[i].get();
+            }
+        }
+        return sum;
+    }
+
+    public long timeCompletableFutureAllOf(int reps) throws Exception {
+        long sum = 0;
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[calls];
+        for (int rep = 0; rep < reps; rep++) {
+            for (int i = 0; i < calls; i++) {
+                final int value = i;
+                futures[i] = CompletableFuture.supplyAsync(new Supplier<Integer>() {
+                    public Integer get() {
+                        return value;
+                    }
+                }, executor);
+            }
+            sum += CompletableFuture.allOf(futures).thenApply(new Function<Void, Long>() {
+                public Long apply(Void ignored) {
+                    long total = 0;
+                    for (CompletableFuture<?> future : futures) {
+                        total += (Integer) future.join();
+                    }
+                    return total;
+                }
+            }).join();
+        }
+        return sum;
+    }
+}
@@ -17,7 +17,16 @@
 package benchmarks.regression;
 
 import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.*;
+import java.util.zip.ZipFile;
 import com.google.caliper.Param;
 import com.google.caliper.SimpleBenchmark;
 
@@ -29,12 +38,52 @@ public class JarFileBenchmark extends SimpleBenchmark {
     })
     private String filename;
 
+    @Param({"false", "true"})
+    private boolean mapped;
+
+    private static final int THREADS = 4;
+
+    private int mode() {
+        return mapped ? (ZipFile.OPEN_READ | ZipFile.OPEN_MAPPED) : ZipFile.OPEN_READ;
+    }
+
     public void time(int reps) throws Exception {
         File f = new File(filename);
         for (int i = 0; i < reps; ++i) {
-            JarFile jf = new JarFile(f);
+            JarFile jf = new JarFile(f, true, mode());
             Manifest m = jf.getManifest();
             jf.close();
         }
     }
+
+    /**
+     * Reads every entry of one shared {@code JarFile} on {@code THREADS} threads.
+     */
+    public void timeConcurrentReadAll(final int reps) throws Exception {
+        final JarFile jf = new JarFile(new File(filename), false, mode());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    byte[] buffer = new byte[8192];
+                    for (int i = 0; i < reps; ++i) {
+                        Enumeration<JarEntry> entries = jf.entries();
+                        while (entries.hasMoreElements()) {
+                            InputStream in = jf.getInputStream(entries.nextElement());
+                            while (in.read(buffer) != -1) {
+                            }
+                            in.close();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        jf.close();
+    }
 }
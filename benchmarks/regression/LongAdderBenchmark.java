@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks.regression;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares a contended {@link AtomicLong} with a {@link LongAdder}. Each rep is
+ * one increment; the reps are split evenly across the threads.
+ */
+public class LongAdderBenchmark extends SimpleBenchmark {
+    public enum Counter {
+        ATOMIC_LONG {
+            @Override Runnable incrementer(final int count) {
+                final AtomicLong counter = new AtomicLong();
+                return new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            counter.incrementAndGet();
+                        }
+                    }
+                };
+            }
+        },
+        LONG_ADDER {
+            @Override Runnable incrementer(final int count) {
+                final LongAdder counter = new LongAdder();
+                return new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            counter.increment();
+                        }
+                    }
+                };
+            }
+        };
+
+        /**
+         * Returns a task that increments a counter shared by all runs of the task
+         * {@code count} times.
+         */
+        abstract Runnable incrementer(int count);
+    }
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"}) int threads;
+    @Param Counter counter;
+
+    private ExecutorService executor;
+
+    @Override protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    public void timeIncrement(int reps) throws Exception {
+        final Runnable incrementer = counter.incrementer(Math.max(1, reps / threads));
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    incrementer.run();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package benchmarks.regression;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Compares a {@link ReentrantReadWriteLock} with a {@link StampedLock} guarding
+ * a two-field point under a read-mostly mix. Each rep is one read or one write;
+ * the reps are split evenly across the threads.
+ */
+public class StampedLockBenchmark extends SimpleBenchmark {
+    public enum Guard {
+        READ_WRITE_LOCK {
+            @Override Point newPoint() {
+                return new Point() {
+                    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+                    @Override long read() {
+                        lock.readLock().lock();
+                        try {
+                            return x + y;
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+
+                    @Override void write() {
+                        lock.writeLock().lock();
+                        try {
+                            x++;
+                            y--;
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                };
+            }
+        },
+        STAMPED_LOCK_READ {
+            @Override Point newPoint() {
+                return new StampedPoint() {
+                    @Override long read() {
+                        long stamp = lock.readLock();
+                        try {
+                            return x + y;
+                        } finally {
+                            lock.unlockRead(stamp);
+                        }
+                    }
+                };
+            }
+        },
+        STAMPED_LOCK_OPTIMISTIC {
+            @Override Point newPoint() {
+                return new StampedPoint() {
+                    @Override long read() {
+                        long stamp = lock.tryOptimisticRead();
+                        long currentX = x;
+                        long currentY = y;
+                        if (!lock.validate(stamp)) {
+                            stamp = lock.readLock();
+                            try {
+                                currentX = x;
+                                currentY = y;
+                            } finally {
+                                lock.unlockRead(stamp);
+                            }
+                        }
+                        return currentX + currentY;
+                    }
+                };
+            }
+        };
+
+        abstract Point newPoint();
+    }
+
+    static abstract class Point {
+        long x;
+        long y;
+
+        abstract long read();
+        abstract void write();
+    }
+
+    static abstract class StampedPoint extends Point {
+        final StampedLock lock = new StampedLock();
+
+        @Override void write() {
+            long stamp = lock.writeLock();
+            try {
+                x++;
+                y--;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Param({"90", "99", "100"}) int readPercent;
+    @Param({"1", "2", "4", "8"}) int threads;
+    @Param Guard guard;
+
+    private ExecutorService executor;
+
+    @Override protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    public void timeAccess(int reps) throws Exception {
+        final Point point = guard.newPoint();
+        final int count = Math.max(1, reps / threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    long sink = 0;
+                    for (int i = 0; i < count; i++) {
+                        if (i % 100 < readPercent) {
+                            sink += point.read();
+                        } else {
+                            point.write();
+                        }
+                    }
+                    if (sink == 42) {
+                        System.out.println(sink);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
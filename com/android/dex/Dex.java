@@ -29,17 +29,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.Adler32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -53,9 +60,16 @@ public final class Dex {
     private static final int CHECKSUM_SIZE = 4;
     private static final int SIGNATURE_OFFSET = CHECKSUM_OFFSET + CHECKSUM_SIZE;
     private static final int SIGNATURE_SIZE = 20;
+    // The size of the chunks that are checksummed concurrently.
+    private static final int CHECKSUM_CHUNK_SIZE = 1024 * 1024;
+    // The modulus of Adler-32.
+    private static final int ADLER_BASE = 65521;
     // Provided as a convenience to avoid a memory allocation to benefit Dalvik.
     // Note: libcore.util.EmptyArray cannot be accessed when this code isn't run on Dalvik.
     static final short[] EMPTY_SHORT_ARRAY = new short[0];
+    // A read-only dex builds a hash index of its N strings or types after N / 32
+    // lookups, roughly when binary searches would have decoded as many strings.
+    private static final int LOOKUPS_PER_INDEXED_VALUE = 32;
 
     private ByteBuffer data;
     private final TableOfContents tableOfContents = new TableOfContents();
@@ -67,6 +81,16 @@ public final class Dex {
     private final FieldIdTable fieldIds = new FieldIdTable();
     private final MethodIdTable methodIds = new MethodIdTable();
 
+    // Only set for read-only dex files, see map(). Strings are decoded at most once.
+    // The hash indices decode every string, so they are only built once binary
+    // searches would have decoded a fair share of them. Racing threads may decode a
+    // string or build an index twice, or miscount lookups, which is harmless.
+    private String[] stringCache;
+    private volatile int[] stringIndex;
+    private volatile int[] typeIndex;
+    private int stringLookups;
+    private int typeLookups;
+
     /**
      * Creates a new dex that reads from {@code data}. It is an error to modify
      * {@code data} after using it to create a dex buffer.
@@ -79,6 +103,9 @@ public final class Dex {
         this.data = data;
         this.data.order(ByteOrder.LITTLE_ENDIAN);
         this.tableOfContents.readFrom(this);
+        if (data.isReadOnly()) {
+            this.stringCache = new String[tableOfContents.stringIds.size];
+        }
     }
 
     /**
@@ -123,6 +150,36 @@ public final class Dex {
      * to access the buffer after calling this method.
      */
     public static Dex create(ByteBuffer data) throws IOException {
+        return new Dex(dexSection(data));
+    }
+
+    /**
+     * Creates a new read-only dex from the dex file {@code file}. A {@code .dex}
+     * or {@code .odex} file is memory mapped rather than read into the heap;
+     * archives are read into the heap since their entries are compressed.
+     *
+     * <p>Unlike other dex instances, the returned dex decodes each string at most
+     * once, and {@link #findStringIndex} and {@link #findTypeIndex} use hash
+     * indices built on first use instead of binary searching. Writing to it
+     * throws {@link java.nio.ReadOnlyBufferException}.
+     */
+    public static Dex map(File file) throws IOException {
+        if (FileUtils.hasArchiveSuffix(file.getName())) {
+            Dex dex = new Dex(file);
+            return new Dex(dex.data.asReadOnlyBuffer());
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping remains valid after the channel is closed.
+            return new Dex(dexSection(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size())));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer dexSection(ByteBuffer data) {
         data.order(ByteOrder.LITTLE_ENDIAN);
 
         // if it's an .odex file, set position and limit to the .dex section
@@ -138,7 +195,7 @@ public final class Dex {
             data = data.slice();
         }
 
-        return new Dex(data);
+        return data;
     }
 
     private void loadFrom(InputStream in) throws IOException {
@@ -307,11 +364,57 @@ public final class Dex {
      * Returns the checksum of all but the first 12 bytes of {@code dex}.
      */
     public int computeChecksum() throws IOException {
+        return adler32(CHECKSUM_OFFSET + CHECKSUM_SIZE, data.capacity());
+    }
+
+    /**
+     * Returns the checksum of all but the first 12 bytes of {@code dex},
+     * checksumming chunks of it concurrently on {@code executor}.
+     */
+    public int computeChecksum(ExecutorService executor) throws IOException {
+        return adler32(executor, CHECKSUM_OFFSET + CHECKSUM_SIZE, data.capacity());
+    }
+
+    /**
+     * Generates the signature and checksum of the dex file {@code out} and
+     * writes them to the file.
+     */
+    public void writeHashes() throws IOException {
+        open(SIGNATURE_OFFSET).write(computeSignature());
+        open(CHECKSUM_OFFSET).writeInt(computeChecksum());
+    }
+
+    /**
+     * Generates the signature and checksum of the dex file {@code out} and
+     * writes them to the file, hashing on {@code executor}.
+     *
+     * <p>SHA-1 cannot be split, so the signature is computed on one thread
+     * while chunks of the checksum are computed on others. The checksum covers
+     * the signature, whose 20 bytes are checksummed and combined last.
+     */
+    public void writeHashes(ExecutorService executor) throws IOException {
+        int signatureEnd = SIGNATURE_OFFSET + SIGNATURE_SIZE;
+        Future<byte[]> signature = executor.submit(new Callable<byte[]>() {
+            @Override public byte[] call() throws IOException {
+                return computeSignature();
+            }
+        });
+        int afterSignature = adler32(executor, signatureEnd, data.capacity());
+        open(SIGNATURE_OFFSET).write(await(signature));
+        int checksum = adler32Combine(adler32(CHECKSUM_OFFSET + CHECKSUM_SIZE, signatureEnd),
+                afterSignature, data.capacity() - signatureEnd);
+        open(CHECKSUM_OFFSET).writeInt(checksum);
+    }
+
+    /**
+     * Returns the Adler-32 of the bytes from {@code start} to {@code end}.
+     */
+    private int adler32(int start, int end) {
         Adler32 adler32 = new Adler32();
-        byte[] buffer = new byte[8192];
+        byte[] buffer = new byte[Math.min(8192, end - start)];
         ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
-        data.limit(data.capacity());
-        data.position(CHECKSUM_OFFSET + CHECKSUM_SIZE);
+        data.limit(end);
+        data.position(start);
         while (data.hasRemaining()) {
             int count = Math.min(buffer.length, data.remaining());
             data.get(buffer, 0, count);
@@ -321,12 +424,85 @@ public final class Dex {
     }
 
     /**
-     * Generates the signature and checksum of the dex file {@code out} and
-     * writes them to the file.
+     * Returns the Adler-32 of the bytes from {@code start} to {@code end},
+     * computing the checksums of chunks of them concurrently on {@code executor}.
      */
-    public void writeHashes() throws IOException {
-        open(SIGNATURE_OFFSET).write(computeSignature());
-        open(CHECKSUM_OFFSET).writeInt(computeChecksum());
+    private int adler32(ExecutorService executor, int start, final int end)
+            throws IOException {
+        List<Future<Integer>> chunks = new ArrayList<Future<Integer>>();
+        for (int chunkStart = start; chunkStart < end; chunkStart += CHECKSUM_CHUNK_SIZE) {
+            final int from = chunkStart;
+            chunks.add(executor.submit(new Callable<Integer>() {
+                @Override public Integer call() {
+                    return adler32(from, Math.min(from + CHECKSUM_CHUNK_SIZE, end));
+                }
+            }));
+        }
+
+        int result = 1; // the Adler-32 of no bytes
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkStart = start + i * CHECKSUM_CHUNK_SIZE;
+            int chunkLength = Math.min(CHECKSUM_CHUNK_SIZE, end - chunkStart);
+            result = adler32Combine(result, await(chunks.get(i)), chunkLength);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Adler-32 of the concatenation of two byte sequences, given the
+     * checksum of each and the length of the second, like zlib's adler32_combine.
+     */
+    private static int adler32Combine(int adler1, int adler2, int length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return (int) (sum1 | (sum2 << 16));
+    }
+
+    /**
+     * Returns the result of {@code future}, rethrowing what its task threw.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DexException(cause);
+        }
+    }
+
+    /**
+     * Copies the first {@code byteCount} bytes of this dex to {@code out}.
+     */
+    void copyTo(Section out, int byteCount) {
+        ByteBuffer data = this.data.duplicate(); // positioned ByteBuffers aren't thread safe
+        data.limit(byteCount);
+        data.position(0);
+        out.data.put(data);
     }
 
     /**
@@ -342,13 +518,74 @@ public final class Dex {
     }
 
     public int findStringIndex(String s) {
+        if (stringCache != null) {
+            int[] index = stringIndex;
+            if (index == null && ++stringLookups > strings.size() / LOOKUPS_PER_INDEXED_VALUE) {
+                stringIndex = index = buildHashIndex(strings);
+            }
+            if (index != null) {
+                int result = findInHashIndex(index, strings, s);
+                if (result != -1) {
+                    return result;
+                }
+                // Fall through for the insertion point.
+            }
+        }
         return Collections.binarySearch(strings, s);
     }
 
     public int findTypeIndex(String descriptor) {
+        if (stringCache != null) {
+            int[] index = typeIndex;
+            if (index == null && ++typeLookups > typeNames.size() / LOOKUPS_PER_INDEXED_VALUE) {
+                typeIndex = index = buildHashIndex(typeNames);
+            }
+            if (index != null) {
+                int result = findInHashIndex(index, typeNames, descriptor);
+                if (result != -1) {
+                    return result;
+                }
+                // Fall through for the insertion point.
+            }
+        }
         return Collections.binarySearch(typeNames, descriptor);
     }
 
+    /**
+     * Returns an open addressing hash table of the indices of {@code values},
+     * plus one so that zero marks an empty slot. The table is at most half full.
+     */
+    private static int[] buildHashIndex(List<String> values) {
+        int size = values.size();
+        int[] table = new int[Integer.highestOneBit(Math.max(size * 4 - 1, 1))];
+        int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = spread(values.get(i).hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        return table;
+    }
+
+    private static int findInHashIndex(int[] table, List<String> values, String value) {
+        int mask = table.length - 1;
+        for (int slot = spread(value.hashCode()) & mask; table[slot] != 0;
+                slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (values.get(index).equals(value)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
     public int findFieldIndex(FieldId fieldId) {
         return Collections.binarySearch(fieldIds, fieldId);
     }
@@ -890,8 +1127,16 @@ public final class Dex {
     private final class StringTable extends AbstractList<String> implements RandomAccess {
         @Override public String get(int index) {
             checkBounds(index, tableOfContents.stringIds.size);
-            return open(tableOfContents.stringIds.off + (index * SizeOf.STRING_ID_ITEM))
-                    .readString();
+            String[] cache = stringCache;
+            String result = cache != null ? cache[index] : null;
+            if (result == null) {
+                result = open(tableOfContents.stringIds.off + (index * SizeOf.STRING_ID_ITEM))
+                        .readString();
+                if (cache != null) {
+                    cache[index] = result;
+                }
+            }
+            return result;
         }
         @Override public int size() {
             return tableOfContents.stringIds.size;
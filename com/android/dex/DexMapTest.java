@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public final class DexMapTest extends TestCase {
+    private static final int TYPE_COUNT = 500;
+
+    // The size and five entries of header, string ids, type ids, string data and map.
+    private static final int MAP_LIST_SIZE = SizeOf.UINT + 5 * SizeOf.MAP_ITEM;
+
+    private File file;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("DexMapTest", ".dex");
+        syntheticDex(TYPE_COUNT).writeTo(file);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testMappedStringsMatchHeap() throws IOException {
+        Dex heap = new Dex(file);
+        Dex mapped = Dex.map(file);
+        assertEquals(heap.strings(), mapped.strings());
+        assertEquals(heap.typeNames(), mapped.typeNames());
+        assertTrue(Arrays.equals(heap.computeSignature(), mapped.computeSignature()));
+    }
+
+    public void testMappedLookupsMatchHeap() throws IOException {
+        Dex heap = new Dex(file);
+        Dex mapped = Dex.map(file);
+        // Look everything up twice so that the second round is answered by the
+        // hash indices, which are built after enough lookups.
+        for (int round = 0; round < 2; round++) {
+            assertSameLookups(heap, mapped);
+        }
+    }
+
+    public void testMappedLookupsMatchHeapBeforeIndexIsBuilt() throws IOException {
+        Dex heap = new Dex(file);
+        Dex mapped = Dex.map(file);
+        assertSameLookup(heap, mapped, descriptor(0));
+        assertSameLookup(heap, mapped, descriptor(1));
+        assertSameLookup(heap, mapped, "Z");
+    }
+
+    public void testMappedOdexMatchesHeap() throws IOException {
+        byte[] dexBytes = syntheticDex(TYPE_COUNT).getBytes();
+        int offset = 40;
+        byte[] odex = new byte[offset + dexBytes.length];
+        odex[0] = 'd';
+        odex[1] = 'e';
+        odex[2] = 'y';
+        odex[3] = '\n';
+        writeLittleEndianInt(odex, 8, offset);
+        writeLittleEndianInt(odex, 12, dexBytes.length);
+        System.arraycopy(dexBytes, 0, odex, offset, dexBytes.length);
+
+        File odexFile = File.createTempFile("DexMapTest", ".odex");
+        try {
+            FileOutputStream out = new FileOutputStream(odexFile);
+            try {
+                out.write(odex);
+            } finally {
+                out.close();
+            }
+            Dex heap = new Dex(file);
+            Dex mapped = Dex.map(odexFile);
+            assertEquals(heap.strings(), mapped.strings());
+            assertSameLookups(heap, mapped);
+        } finally {
+            odexFile.delete();
+        }
+    }
+
+    public void testMappedDexIsReadOnly() throws IOException {
+        Dex mapped = Dex.map(file);
+        try {
+            mapped.open(0).writeInt(0);
+            fail();
+        } catch (ReadOnlyBufferException expected) {
+        }
+    }
+
+    private static void assertSameLookups(Dex heap, Dex mapped) {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            assertSameLookup(heap, mapped, descriptor(2 * i));
+            // Odd numbers are missing and fall between two present descriptors.
+            assertSameLookup(heap, mapped, descriptor(2 * i + 1));
+        }
+        // Misses before the first and after the last entry.
+        assertSameLookup(heap, mapped, "A");
+        assertSameLookup(heap, mapped, "Z");
+    }
+
+    private static void assertSameLookup(Dex heap, Dex mapped, String s) {
+        int stringIndex = heap.findStringIndex(s);
+        assertEquals(s, stringIndex, mapped.findStringIndex(s));
+        int typeIndex = heap.findTypeIndex(s);
+        assertEquals(s, typeIndex, mapped.findTypeIndex(s));
+        if (heap.strings().contains(s)) {
+            assertTrue(s, stringIndex >= 0);
+            assertTrue(s, typeIndex >= 0);
+        } else {
+            assertTrue(s, stringIndex < 0);
+            assertTrue(s, typeIndex < 0);
+        }
+    }
+
+    private static void writeLittleEndianInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static String descriptor(int i) {
+        return String.format("Lcom/example/Class%05d;", i);
+    }
+
+    /**
+     * Returns a dex with {@code typeCount} types named by the even descriptors,
+     * and no classes.
+     */
+    private static Dex syntheticDex(int typeCount) throws IOException {
+        String[] descriptors = new String[typeCount];
+        int stringDataSize = 0;
+        for (int i = 0; i < typeCount; i++) {
+            descriptors[i] = descriptor(2 * i);
+            // One byte each for the ULEB128 length and the terminating zero.
+            stringDataSize += descriptors[i].length() + 2;
+        }
+
+        Dex dex = new Dex(SizeOf.HEADER_ITEM + typeCount * (SizeOf.STRING_ID_ITEM
+                + SizeOf.TYPE_ID_ITEM) + ((stringDataSize + 3) & ~3) + MAP_LIST_SIZE);
+        TableOfContents contents = dex.getTableOfContents();
+        contents.header.off = 0;
+        contents.header.size = 1;
+        contents.stringIds.off = SizeOf.HEADER_ITEM;
+        contents.stringIds.size = typeCount;
+        contents.typeIds.off = contents.stringIds.off + typeCount * SizeOf.STRING_ID_ITEM;
+        contents.typeIds.size = typeCount;
+        contents.stringDatas.off = contents.typeIds.off + typeCount * SizeOf.TYPE_ID_ITEM;
+        contents.stringDatas.size = typeCount;
+
+        Dex.Section stringIds = dex.open(contents.stringIds.off);
+        Dex.Section typeIds = dex.open(contents.typeIds.off);
+        Dex.Section stringData = dex.open(contents.stringDatas.off);
+        for (int i = 0; i < typeCount; i++) {
+            stringIds.writeInt(stringData.getPosition());
+            stringData.writeStringData(descriptors[i]);
+            typeIds.writeInt(i);
+        }
+        stringData.alignToFourBytesWithZeroFill();
+
+        contents.mapList.off = stringData.getPosition();
+        contents.mapList.size = 1;
+        Arrays.sort(contents.sections);
+        Dex.Section mapList = dex.open(contents.mapList.off);
+        contents.writeMap(mapList);
+        contents.fileSize = mapList.getPosition();
+        contents.dataOff = contents.stringDatas.off;
+        contents.dataSize = contents.fileSize - contents.dataOff;
+        contents.writeHeader(dex.open(0));
+        dex.writeHashes();
+        return new Dex(dex.getBytes());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Writes independent sections of a dex, like string data, type lists, code or
+ * annotations, concurrently. Each section is written by its own task into a
+ * private scratch buffer, and {@link #appendTo} then copies the sections into
+ * the dex in the order they were added.
+ *
+ * <p>A task does not know where its section will end up, so offsets it writes
+ * into the data sections are relative to the start of a section. It records the
+ * position of each such offset with {@link Relocations#add}, and
+ * {@link #appendTo} adds the final offset of the referenced section once all
+ * sections are placed. Offsets encoded as ULEB128, like the code offsets in
+ * class data, cannot be relocated in place; write those sections with a later
+ * writer once the sections they refer to have been appended.
+ */
+public final class ParallelSectionWriter {
+    /**
+     * Writes the contents of a section.
+     */
+    public interface SectionTask {
+        /**
+         * Writes a section to {@code out}, which starts at position 0 of a scratch
+         * buffer. May be called on any thread.
+         */
+        void write(Dex.Section out, Relocations relocations) throws IOException;
+    }
+
+    /**
+     * The positions of section-relative offsets written by a {@link SectionTask}.
+     */
+    public static final class Relocations {
+        private int[] positions = new int[16];
+        private int[] targets = new int[16];
+        private int size;
+
+        private Relocations() {
+        }
+
+        /**
+         * Records that the int at {@code position} of this section is an offset
+         * relative to the start of section {@code targetSection}, as returned by
+         * {@link ParallelSectionWriter#add}.
+         */
+        public void add(int position, int targetSection) {
+            if (size == positions.length) {
+                int[] newPositions = new int[size * 2];
+                int[] newTargets = new int[size * 2];
+                System.arraycopy(positions, 0, newPositions, 0, size);
+                System.arraycopy(targets, 0, newTargets, 0, size);
+                positions = newPositions;
+                targets = newTargets;
+            }
+            positions[size] = position;
+            targets[size] = targetSection;
+            size++;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Future<Written>> futures = new ArrayList<Future<Written>>();
+    private boolean appended;
+
+    /**
+     * Creates a writer that runs its section tasks on {@code executor}.
+     */
+    public ParallelSectionWriter(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts writing a section of at most {@code maxByteCount} bytes and returns
+     * its index, to be used as a relocation target and in the result of
+     * {@link #appendTo}.
+     */
+    public int add(String name, final int maxByteCount, final SectionTask task) {
+        if (appended) {
+            throw new IllegalStateException("Sections were already appended");
+        }
+        if (maxByteCount <= 0) {
+            throw new IllegalArgumentException("maxByteCount=" + maxByteCount);
+        }
+        names.add(name);
+        futures.add(executor.submit(new Callable<Written>() {
+            @Override public Written call() throws Exception {
+                Dex scratch = new Dex(maxByteCount);
+                Dex.Section out = scratch.open(0);
+                Relocations relocations = new Relocations();
+                task.write(out, relocations);
+                return new Written(scratch, out.used(), relocations);
+            }
+        }));
+        return futures.size() - 1;
+    }
+
+    /**
+     * Waits for all sections, appends them to {@code dex} in the order they were
+     * added, each aligned to four bytes, and applies their relocations.
+     *
+     * @return the offset of each section in {@code dex}.
+     */
+    public int[] appendTo(Dex dex) throws IOException {
+        appended = true;
+        int count = futures.size();
+        Written[] written = new Written[count];
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            written[i] = Dex.await(futures.get(i));
+            int byteCount = (written[i].byteCount + 3) & ~3;
+            Dex.Section out = dex.appendSection(byteCount, names.get(i));
+            offsets[i] = out.getPosition();
+            written[i].scratch.copyTo(out, written[i].byteCount);
+        }
+
+        for (int i = 0; i < count; i++) {
+            Relocations relocations = written[i].relocations;
+            for (int r = 0; r < relocations.size; r++) {
+                int position = offsets[i] + relocations.positions[r];
+                int relativeOffset = dex.open(position).readInt();
+                dex.open(position).writeInt(offsets[relocations.targets[r]] + relativeOffset);
+            }
+        }
+        return offsets;
+    }
+
+    private static final class Written {
+        final Dex scratch;
+        final int byteCount;
+        final Relocations relocations;
+
+        Written(Dex scratch, int byteCount, Relocations relocations) {
+            this.scratch = scratch;
+            this.byteCount = byteCount;
+            this.relocations = relocations;
+        }
+    }
+}
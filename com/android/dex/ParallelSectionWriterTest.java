@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dex;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+
+public final class ParallelSectionWriterTest extends TestCase {
+    private ExecutorService executor;
+
+    @Override protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testAppendToPlacesSectionsAndRelocates() throws IOException {
+        Dex dex = new Dex(64);
+        dex.appendSection(8, "header");
+
+        ParallelSectionWriter writer = new ParallelSectionWriter(executor);
+        final int strings = writer.add("strings", 16, new ParallelSectionWriter.SectionTask() {
+            @Override public void write(Dex.Section out,
+                    ParallelSectionWriter.Relocations relocations) {
+                out.writeByte(1);
+                out.writeByte(2);
+                out.writeByte(3);
+            }
+        });
+        int offsets = writer.add("offsets", 16, new ParallelSectionWriter.SectionTask() {
+            @Override public void write(Dex.Section out,
+                    ParallelSectionWriter.Relocations relocations) {
+                relocations.add(out.getPosition(), strings);
+                out.writeInt(1);
+                relocations.add(out.getPosition(), strings);
+                out.writeInt(2);
+            }
+        });
+
+        int[] placed = writer.appendTo(dex);
+        assertEquals(8, placed[strings]);
+        assertEquals(12, placed[offsets]);
+        assertEquals(20, dex.getNextSectionStart());
+        assertEquals(1, dex.open(8).readByte());
+        assertEquals(9, dex.open(12).readInt());
+        assertEquals(10, dex.open(16).readInt());
+        assertEquals(3, dex.open(dex.open(16).readInt()).readByte());
+    }
+
+    public void testTaskExceptionIsRethrown() {
+        ParallelSectionWriter writer = new ParallelSectionWriter(executor);
+        writer.add("broken", 4, new ParallelSectionWriter.SectionTask() {
+            @Override public void write(Dex.Section out,
+                    ParallelSectionWriter.Relocations relocations) throws IOException {
+                throw new IOException("broken");
+            }
+        });
+        try {
+            writer.appendTo(new Dex(16));
+            fail();
+        } catch (IOException expected) {
+            assertEquals("broken", expected.getMessage());
+        }
+    }
+
+    public void testConcurrentHashesMatchSequentialHashes() throws IOException {
+        // Not a multiple of the checksum chunk size.
+        byte[] bytes = new byte[3 * 1024 * 1024 + 1234];
+        new Random(0).nextBytes(bytes);
+
+        Dex sequential = new Dex(bytes.length);
+        sequential.open(0).write(bytes);
+        Dex concurrent = new Dex(bytes.length);
+        concurrent.open(0).write(bytes);
+        assertEquals(sequential.computeChecksum(), concurrent.computeChecksum(executor));
+
+        sequential.writeHashes();
+        concurrent.writeHashes(executor);
+
+        assertTrue(Arrays.equals(sequential.getBytes(), concurrent.getBytes()));
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.internal.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary form of the values written by
+ * {@link XmlUtils#writeValueXml}, with the same
+ * supported types and the same collection types when read back. Streams start
+ * with {@link #MAGIC}, which can never start an XML document, so that
+ * {@link XmlUtils#readMapXml} can tell both formats apart.
+ */
+final class BinaryValueUtils {
+    /** Stream header: a NUL byte, "AB" and the format version. */
+    static final byte[] MAGIC = { 0, 'A', 'B', 1 };
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_BOOLEAN_TRUE = 6;
+    private static final int TYPE_BOOLEAN_FALSE = 7;
+    private static final int TYPE_BYTE_ARRAY = 8;
+    private static final int TYPE_INT_ARRAY = 9;
+    private static final int TYPE_LONG_ARRAY = 10;
+    private static final int TYPE_DOUBLE_ARRAY = 11;
+    private static final int TYPE_STRING_ARRAY = 12;
+    private static final int TYPE_BOOLEAN_ARRAY = 13;
+    private static final int TYPE_MAP = 14;
+    private static final int TYPE_LIST = 15;
+    private static final int TYPE_SET = 16;
+
+    /**
+     * Largest number of bytes a single string, array or collection may take.
+     * Lengths read back are checked against it before anything is allocated,
+     * so that a corrupt length fails with a {@link ProtocolException}, as a
+     * corrupt XML file does, rather than with an OutOfMemoryError.
+     */
+    static final int MAX_LENGTH_BYTES = 16 * 1024 * 1024;
+
+    private BinaryValueUtils() {
+    }
+
+    /**
+     * Test if the given header, as read from the start of a stream, is
+     * {@link #MAGIC}.
+     */
+    static boolean isMagic(byte[] header, int length) {
+        if (length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    static void writeValue(Object v, DataOutputStream out) throws IOException {
+        if (v == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (v instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString((String) v, out);
+        } else if (v instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) v);
+        } else if (v instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) v);
+        } else if (v instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) v);
+        } else if (v instanceof Boolean) {
+            out.writeByte((Boolean) v ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+        } else if (v instanceof byte[]) {
+            final byte[] val = (byte[]) v;
+            out.writeByte(TYPE_BYTE_ARRAY);
+            writeLength(val.length, 1, out);
+            out.write(val);
+        } else if (v instanceof int[]) {
+            final int[] val = (int[]) v;
+            out.writeByte(TYPE_INT_ARRAY);
+            writeLength(val.length, 4, out);
+            for (int i = 0; i < val.length; i++) {
+                out.writeInt(val[i]);
+            }
+        } else if (v instanceof long[]) {
+            final long[] val = (long[]) v;
+            out.writeByte(TYPE_LONG_ARRAY);
+            writeLength(val.length, 8, out);
+            for (int i = 0; i < val.length; i++) {
+                out.writeLong(val[i]);
+            }
+        } else if (v instanceof double[]) {
+            final double[] val = (double[]) v;
+            out.writeByte(TYPE_DOUBLE_ARRAY);
+            writeLength(val.length, 8, out);
+            for (int i = 0; i < val.length; i++) {
+                out.writeDouble(val[i]);
+            }
+        } else if (v instanceof String[]) {
+            final String[] val = (String[]) v;
+            out.writeByte(TYPE_STRING_ARRAY);
+            writeLength(val.length, 4, out);
+            for (int i = 0; i < val.length; i++) {
+                writeString(val[i], out);
+            }
+        } else if (v instanceof boolean[]) {
+            final boolean[] val = (boolean[]) v;
+            out.writeByte(TYPE_BOOLEAN_ARRAY);
+            writeLength(val.length, 1, out);
+            for (int i = 0; i < val.length; i++) {
+                out.writeBoolean(val[i]);
+            }
+        } else if (v instanceof Map) {
+            final Map val = (Map) v;
+            out.writeByte(TYPE_MAP);
+            writeLength(val.size(), 1, out);
+            final Iterator i = val.entrySet().iterator();
+            while (i.hasNext()) {
+                final Map.Entry e = (Map.Entry) i.next();
+                writeString((String) e.getKey(), out);
+                writeValue(e.getValue(), out);
+            }
+        } else if (v instanceof List) {
+            final List val = (List) v;
+            out.writeByte(TYPE_LIST);
+            final int N = val.size();
+            writeLength(N, 1, out);
+            for (int i = 0; i < N; i++) {
+                writeValue(val.get(i), out);
+            }
+        } else if (v instanceof Set) {
+            final Set val = (Set) v;
+            out.writeByte(TYPE_SET);
+            writeLength(val.size(), 1, out);
+            for (Object item : val) {
+                writeValue(item, out);
+            }
+        } else if (v instanceof CharSequence) {
+            // like writeValueXml(), drops any styling
+            out.writeByte(TYPE_STRING);
+            writeString(v.toString(), out);
+        } else {
+            throw new RuntimeException("writeValue: unable to write value " + v);
+        }
+    }
+
+    static Object readValue(DataInputStream in) throws IOException {
+        final int type = in.readUnsignedByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN_TRUE:
+                return Boolean.TRUE;
+            case TYPE_BOOLEAN_FALSE:
+                return Boolean.FALSE;
+            case TYPE_BYTE_ARRAY: {
+                final byte[] val = new byte[readLength(in, 1)];
+                in.readFully(val);
+                return val;
+            }
+            case TYPE_INT_ARRAY: {
+                final int[] val = new int[readLength(in, 4)];
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = in.readInt();
+                }
+                return val;
+            }
+            case TYPE_LONG_ARRAY: {
+                final long[] val = new long[readLength(in, 8)];
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = in.readLong();
+                }
+                return val;
+            }
+            case TYPE_DOUBLE_ARRAY: {
+                final double[] val = new double[readLength(in, 8)];
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = in.readDouble();
+                }
+                return val;
+            }
+            case TYPE_STRING_ARRAY: {
+                final String[] val = new String[readLength(in, 4)];
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = readString(in);
+                }
+                return val;
+            }
+            case TYPE_BOOLEAN_ARRAY: {
+                final boolean[] val = new boolean[readLength(in, 1)];
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = in.readBoolean();
+                }
+                return val;
+            }
+            case TYPE_MAP: {
+                final int N = readLength(in, 1);
+                final HashMap<String, Object> val = new HashMap<String, Object>();
+                for (int i = 0; i < N; i++) {
+                    final String key = readString(in);
+                    val.put(key, readValue(in));
+                }
+                return val;
+            }
+            case TYPE_LIST: {
+                final int N = readLength(in, 1);
+                final ArrayList<Object> val = new ArrayList<Object>();
+                for (int i = 0; i < N; i++) {
+                    val.add(readValue(in));
+                }
+                return val;
+            }
+            case TYPE_SET: {
+                final int N = readLength(in, 1);
+                final HashSet<Object> val = new HashSet<Object>();
+                for (int i = 0; i < N; i++) {
+                    val.add(readValue(in));
+                }
+                return val;
+            }
+            default:
+                throw new ProtocolException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * Write a string, or {@code null}, as its UTF-8 length and bytes.
+     */
+    private static void writeString(String s, DataOutputStream out) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeLength(bytes.length, 1, out);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) return null;
+        if (length < 0) throw new ProtocolException("Negative string length: " + length);
+        if (length > MAX_LENGTH_BYTES) {
+            throw new ProtocolException("String length too large: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the length of a string, array or collection whose elements take
+     * {@code elementSize} bytes each, refusing any that could not be read back.
+     */
+    private static void writeLength(int length, int elementSize, DataOutputStream out)
+            throws IOException {
+        if (length > MAX_LENGTH_BYTES / elementSize) {
+            throw new RuntimeException("writeValue: length too large: " + length);
+        }
+        out.writeInt(length);
+    }
+
+    /**
+     * Read the length of an array or collection whose elements take
+     * {@code elementSize} bytes each.
+     */
+    private static int readLength(DataInputStream in, int elementSize) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) throw new ProtocolException("Negative length: " + length);
+        if (length > MAX_LENGTH_BYTES / elementSize) {
+            throw new ProtocolException("Length too large: " + length);
+        }
+        return length;
+    }
+}
@@ -21,12 +21,19 @@ import android.util.Slog;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -46,6 +53,11 @@ import libcore.io.Streams;
  * <p>
  * Users must periodically call {@link #maybeRotate(long)} to perform actual
  * rotation. Not inherently thread safe.
+ * <p>
+ * Instead of rewriting the active file, users may also append records to its
+ * journal with {@link #appendActive(Writer, long)}. Journal records are read
+ * after the file they belong to, and are compacted into that file whenever it
+ * is rewritten, including by {@link #maybeRotate(Rewriter, long)}.
  */
 public class FileRotator {
     private static final String TAG = "FileRotator";
@@ -58,8 +70,7 @@ public class FileRotator {
 
     private static final String SUFFIX_BACKUP = ".backup";
     private static final String SUFFIX_NO_BACKUP = ".no_backup";
-
-    // TODO: provide method to append to active file
+    private static final String SUFFIX_JOURNAL = ".journal";
 
     /**
      * External class that reads data from a given {@link InputStream}. May be
@@ -104,11 +115,39 @@ public class FileRotator {
         // ensure that base path exists
         mBasePath.mkdirs();
 
+        // recover journals of any interrupted rewrite before their files
+        for (String name : mBasePath.list()) {
+            if (!name.startsWith(mPrefix)) continue;
+
+            if (name.endsWith(SUFFIX_JOURNAL + SUFFIX_BACKUP)) {
+                if (LOGD) Slog.d(TAG, "recovering " + name);
+
+                final String journalName = name.substring(
+                        0, name.length() - SUFFIX_BACKUP.length());
+                final String fileName = journalName.substring(
+                        0, journalName.length() - SUFFIX_JOURNAL.length());
+                final File journalBackupFile = new File(mBasePath, name);
+
+                if (new File(mBasePath, fileName + SUFFIX_BACKUP).exists()
+                        || new File(mBasePath, fileName + SUFFIX_NO_BACKUP).exists()) {
+                    // rewrite failed; journal is still needed
+                    journalBackupFile.renameTo(new File(mBasePath, journalName));
+                } else {
+                    // rewrite succeeded; journal was already compacted
+                    journalBackupFile.delete();
+                }
+            }
+        }
+
         // recover any backup files
         for (String name : mBasePath.list()) {
             if (!name.startsWith(mPrefix)) continue;
 
-            if (name.endsWith(SUFFIX_BACKUP)) {
+            if (name.endsWith(SUFFIX_JOURNAL + SUFFIX_BACKUP)) {
+                // already recovered above
+                continue;
+
+            } else if (name.endsWith(SUFFIX_BACKUP)) {
                 if (LOGD) Slog.d(TAG, "recovering " + name);
 
                 final File backupFile = new File(mBasePath, name);
@@ -130,6 +169,55 @@ public class FileRotator {
                 file.delete();
             }
         }
+
+        recoverJournals();
+    }
+
+    /**
+     * Reattach journals that were separated from their file by an interrupted
+     * rename, and drop any partial record at the end of a journal left by an
+     * interrupted append.
+     */
+    private void recoverJournals() {
+        final FileInfo info = new FileInfo(mPrefix);
+        final String[] names = mBasePath.list();
+        for (String name : names) {
+            if (!isJournal(info, name)) continue;
+
+            File journalFile = new File(mBasePath, name);
+            final String fileName = name.substring(0, name.length() - SUFFIX_JOURNAL.length());
+            if (!new File(mBasePath, fileName).exists()) {
+                // look for the file with the same start, which was renamed
+                final long startMillis = info.startMillis;
+                String renamedName = null;
+                for (String other : names) {
+                    if (info.parse(other) && info.startMillis == startMillis) {
+                        renamedName = other;
+                    }
+                }
+
+                if (renamedName == null) {
+                    if (LOGD) Slog.d(TAG, "deleting orphaned " + name);
+                    journalFile.delete();
+                    continue;
+                }
+
+                if (LOGD) Slog.d(TAG, "recovering " + name);
+                final File renamedJournalFile = new File(mBasePath, renamedName + SUFFIX_JOURNAL);
+                journalFile.renameTo(renamedJournalFile);
+                journalFile = renamedJournalFile;
+            }
+
+            try {
+                final long validLength = readJournal(journalFile, null);
+                if (validLength < journalFile.length()) {
+                    if (LOGD) Slog.d(TAG, "truncating " + name + " to " + validLength);
+                    truncateJournal(journalFile, validLength);
+                }
+            } catch (IOException e) {
+                Slog.w(TAG, "problem recovering " + name, e);
+            }
+        }
     }
 
     /**
@@ -138,7 +226,7 @@ public class FileRotator {
     public void deleteAll() {
         final FileInfo info = new FileInfo(mPrefix);
         for (String name : mBasePath.list()) {
-            if (info.parse(name)) {
+            if (info.parse(name) || isJournal(info, name)) {
                 // delete each file that matches parser
                 new File(mBasePath, name).delete();
             }
@@ -153,7 +241,7 @@ public class FileRotator {
         try {
             final FileInfo info = new FileInfo(mPrefix);
             for (String name : mBasePath.list()) {
-                if (info.parse(name)) {
+                if (info.parse(name) || isJournal(info, name)) {
                     final ZipEntry entry = new ZipEntry(name);
                     zos.putNextEntry(entry);
 
@@ -184,6 +272,71 @@ public class FileRotator {
         rewriteSingle(rewriter, activeName);
     }
 
+    /**
+     * Append a record to the journal of the currently active file, instead of
+     * rewriting the entire file. The first record of a new active file is
+     * written as the file itself. A record is either appended completely or
+     * not at all.
+     */
+    public void appendActive(final Writer writer, long currentTimeMillis) throws IOException {
+        final String activeName = getActiveName(currentTimeMillis);
+        final File file = new File(mBasePath, activeName);
+        if (!file.exists()) {
+            rewriteSingle(new Rewriter() {
+                @Override
+                public void reset() {
+                    // ignored
+                }
+
+                @Override
+                public void read(InputStream in) throws IOException {
+                    // ignored
+                }
+
+                @Override
+                public boolean shouldWrite() {
+                    return true;
+                }
+
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    writer.write(out);
+                }
+            }, activeName);
+            return;
+        }
+
+        if (LOGD) Slog.d(TAG, "appending to " + activeName);
+
+        final File journalFile = new File(mBasePath, activeName + SUFFIX_JOURNAL);
+        final long validLength = journalFile.length();
+        FileOutputStream fos = null;
+        try {
+            final ByteArrayOutputStream record = new ByteArrayOutputStream();
+            writer.write(record);
+            final byte[] bytes = record.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+
+            // record := length crc32 bytes
+            fos = new FileOutputStream(journalFile, true);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(bytes.length);
+            out.writeInt((int) crc.getValue());
+            out.write(bytes);
+            out.flush();
+            FileUtils.sync(fos);
+        } catch (Throwable t) {
+            // append failed, drop any partial record
+            IoUtils.closeQuietly(fos);
+            fos = null;
+            truncateJournal(journalFile, validLength);
+            throw rethrowAsIoException(t);
+        } finally {
+            IoUtils.closeQuietly(fos);
+        }
+    }
+
     @Deprecated
     public void combineActive(final Reader reader, final Writer writer, long currentTimeMillis)
             throws IOException {
@@ -227,7 +380,7 @@ public class FileRotator {
     /**
      * Process a single file atomically, first reading any existing data, then
      * writing modified data. Maintains a backup during write, which is restored
-     * if the write fails.
+     * if the write fails. Any journal is compacted into the written file.
      */
     private void rewriteSingle(Rewriter rewriter, String name) throws IOException {
         if (LOGD) Slog.d(TAG, "rewriting " + name);
@@ -238,25 +391,32 @@ public class FileRotator {
         rewriter.reset();
 
         if (file.exists()) {
-            // read existing data
+            // read existing data, including journal
             readFile(file, rewriter);
 
             // skip when rewriter has nothing to write
             if (!rewriter.shouldWrite()) return;
 
-            // backup existing data during write
+            // backup existing data during write; deleting backupFile is the
+            // point where the journal is considered compacted
             backupFile = new File(mBasePath, name + SUFFIX_BACKUP);
+            final File journalFile = new File(mBasePath, name + SUFFIX_JOURNAL);
+            final File journalBackupFile = new File(
+                    mBasePath, name + SUFFIX_JOURNAL + SUFFIX_BACKUP);
             file.renameTo(backupFile);
+            journalFile.renameTo(journalBackupFile);
 
             try {
                 writeFile(file, rewriter);
 
-                // write success, delete backup
+                // write success, delete backups
                 backupFile.delete();
+                journalBackupFile.delete();
             } catch (Throwable t) {
-                // write failed, delete file and restore backup
+                // write failed, delete file and restore backups
                 file.delete();
                 backupFile.renameTo(file);
+                journalBackupFile.renameTo(journalFile);
                 throw rethrowAsIoException(t);
             }
 
@@ -332,6 +492,21 @@ public class FileRotator {
      * age matches the configured thresholds.
      */
     public void maybeRotate(long currentTimeMillis) {
+        try {
+            maybeRotate(null, currentTimeMillis);
+        } catch (IOException e) {
+            // only thrown when compacting, which requires a Rewriter
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Examine all files managed by this rotator, renaming or deleting if their
+     * age matches the configured thresholds. Active files with a journal are
+     * first compacted with the given {@link Rewriter}, when provided, so that
+     * rotated files don't carry a journal.
+     */
+    public void maybeRotate(Rewriter compactor, long currentTimeMillis) throws IOException {
         final long rotateBefore = currentTimeMillis - mRotateAgeMillis;
         final long deleteBefore = currentTimeMillis - mDeleteAgeMillis;
 
@@ -349,11 +524,17 @@ public class FileRotator {
                     // found active file; rotate if old enough
                     if (LOGD) Slog.d(TAG, "rotating " + name);
 
+                    final File journalFile = new File(mBasePath, name + SUFFIX_JOURNAL);
+                    if (compactor != null && journalFile.exists()) {
+                        rewriteSingle(compactor, name);
+                    }
+
                     info.endMillis = currentTimeMillis;
 
                     final File file = new File(mBasePath, name);
-                    final File destFile = new File(mBasePath, info.build());
-                    file.renameTo(destFile);
+                    final String destName = info.build();
+                    journalFile.renameTo(new File(mBasePath, destName + SUFFIX_JOURNAL));
+                    file.renameTo(new File(mBasePath, destName));
                 }
             } else if (info.endMillis <= deleteBefore) {
                 // found rotated file; delete if old enough
@@ -361,6 +542,7 @@ public class FileRotator {
 
                 final File file = new File(mBasePath, name);
                 file.delete();
+                new File(mBasePath, name + SUFFIX_JOURNAL).delete();
             }
         }
     }
@@ -373,6 +555,72 @@ public class FileRotator {
         } finally {
             IoUtils.closeQuietly(bis);
         }
+
+        final File journalFile = new File(file.getPath() + SUFFIX_JOURNAL);
+        if (journalFile.exists()) {
+            readJournal(journalFile, reader);
+        }
+    }
+
+    /**
+     * Pass each complete record of the given journal to the {@link Reader},
+     * when provided, stopping at the first partial or corrupt record.
+     *
+     * @return Length of the journal up to the end of the last complete record.
+     */
+    private static long readJournal(File journalFile, Reader reader) throws IOException {
+        final long length = journalFile.length();
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)));
+        long validLength = 0;
+        try {
+            final CRC32 crc = new CRC32();
+            while (validLength + 8 <= length) {
+                final int recordLength = in.readInt();
+                final int recordCrc = in.readInt();
+                if (recordLength < 0 || recordLength > length - validLength - 8) break;
+
+                final byte[] bytes = new byte[recordLength];
+                in.readFully(bytes);
+                crc.reset();
+                crc.update(bytes, 0, recordLength);
+                if ((int) crc.getValue() != recordCrc) break;
+
+                if (reader != null) {
+                    reader.read(new ByteArrayInputStream(bytes));
+                }
+                validLength += 8 + recordLength;
+            }
+            return validLength;
+        } catch (EOFException e) {
+            // journal was truncated underneath us; treat like a partial record
+            return validLength;
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    private static void truncateJournal(File journalFile, long length) throws IOException {
+        if (length == 0) {
+            journalFile.delete();
+            return;
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            IoUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Test if the given filename is the journal of a file managed by this
+     * rotator, leaving the parsed file details in {@link FileInfo}.
+     */
+    private static boolean isJournal(FileInfo info, String name) {
+        return name.endsWith(SUFFIX_JOURNAL)
+                && info.parse(name.substring(0, name.length() - SUFFIX_JOURNAL.length()));
     }
 
     private static void writeFile(File file, Writer writer) throws IOException {
@@ -38,6 +38,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.ProtocolException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -369,6 +370,186 @@ public class FileRotatorTest extends AndroidTestCase {
         assertReadAll(rotate, "bar");
     }
 
+    public void testAppend() throws Exception {
+        final FileRotator rotate = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+
+        long currentTime = TEST_TIME;
+
+        // first append writes the active file itself
+        rotate.appendActive(writer("foo"), currentTime);
+        assertReadAll(rotate, "foo");
+
+        // later appends go to the journal, without touching the active file
+        currentTime += MINUTE_IN_MILLIS;
+        rotate.appendActive(writer("bar"), currentTime);
+        rotate.appendActive(writer("baz"), currentTime);
+        assertReadAll(rotate, "foo", "bar", "baz");
+
+        // rewriting compacts the journal into the active file
+        final RecordingReader reader = new RecordingReader();
+        rotate.combineActive(reader, writer("qux"), currentTime);
+        reader.assertRead("foo", "bar", "baz");
+        assertReadAll(rotate, "qux");
+    }
+
+    public void testAppendCompactsOnRotate() throws Exception {
+        final FileRotator rotate = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+
+        long currentTime = TEST_TIME;
+        rotate.appendActive(writer("foo"), currentTime);
+        rotate.appendActive(writer("bar"), currentTime);
+
+        // not old enough to rotate, so journal is left alone
+        final RecordingReader reader = new RecordingReader();
+        rotate.maybeRotate(compactor(reader, "compact"), currentTime);
+        reader.assertRead();
+        assertReadAll(rotate, "foo", "bar");
+
+        // rotating compacts the journal first
+        currentTime += DAY_IN_MILLIS + SECOND_IN_MILLIS;
+        rotate.maybeRotate(compactor(reader, "compact"), currentTime);
+        reader.assertRead("foo", "bar");
+        assertReadAll(rotate, "compact");
+        assertEquals(1, mBasePath.list().length);
+
+        // next append starts a new active file
+        rotate.appendActive(writer("baz"), currentTime);
+        assertReadAll(rotate, "compact", "baz");
+    }
+
+    public void testCompactThrowRestoresJournal() throws Exception {
+        final FileRotator rotate = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+
+        long currentTime = TEST_TIME;
+        rotate.appendActive(writer("foo"), currentTime);
+        rotate.appendActive(writer("bar"), currentTime);
+
+        currentTime += DAY_IN_MILLIS + SECOND_IN_MILLIS;
+        final RecordingReader reader = new RecordingReader();
+        try {
+            rotate.maybeRotate(new FileRotator.Rewriter() {
+                public void reset() {
+                    reader.reset();
+                }
+
+                public void read(InputStream in) throws IOException {
+                    reader.read(in);
+                }
+
+                public boolean shouldWrite() {
+                    return true;
+                }
+
+                public void write(OutputStream out) throws IOException {
+                    new DataOutputStream(out).writeUTF("compact");
+                    throw new NullPointerException("yikes");
+                }
+            }, currentTime);
+
+            fail("woah, somehow able to compact exception");
+        } catch (IOException e) {
+            // expected from above
+        }
+
+        // file and journal are both intact, and still active
+        reader.assertRead("foo", "bar");
+        assertReadAll(rotate, "foo", "bar");
+        rotate.appendActive(writer("baz"), currentTime);
+        assertReadAll(rotate, "foo", "bar", "baz");
+
+        // the next compaction is reset before reading everything again
+        rotate.maybeRotate(new FileRotator.Rewriter() {
+            public void reset() {
+                reader.reset();
+            }
+
+            public void read(InputStream in) throws IOException {
+                reader.read(in);
+            }
+
+            public boolean shouldWrite() {
+                return true;
+            }
+
+            public void write(OutputStream out) throws IOException {
+                new DataOutputStream(out).writeUTF("compact");
+            }
+        }, currentTime);
+        reader.assertRead("foo", "bar", "baz");
+        assertReadAll(rotate, "compact");
+    }
+
+    public void testAppendThrowDropsRecord() throws Exception {
+        final FileRotator rotate = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+
+        rotate.appendActive(writer("foo"), TEST_TIME);
+        rotate.appendActive(writer("bar"), TEST_TIME);
+
+        try {
+            rotate.appendActive(new Writer() {
+                public void write(OutputStream out) throws IOException {
+                    new DataOutputStream(out).writeUTF("baz");
+                    throw new NullPointerException("yikes");
+                }
+            }, TEST_TIME);
+
+            fail("woah, somehow able to append exception");
+        } catch (IOException e) {
+            // expected from above
+        }
+
+        assertReadAll(rotate, "foo", "bar");
+    }
+
+    public void testRecoverJournal() throws Exception {
+        write("rotator.1024-", "foo");
+        final FileRotator first = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+        first.appendActive(writer("bar"), 2048);
+        first.appendActive(writer("baz"), 2048);
+
+        // simulate a crash halfway through the last append
+        final File journal = new File(mBasePath, "rotator.1024-.journal");
+        final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        raf.setLength(raf.length() - 2);
+        raf.close();
+
+        final FileRotator second = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+        assertReadAll(second, "foo", "bar");
+
+        // appending after recovery keeps earlier records readable
+        second.appendActive(writer("qux"), 2048);
+        assertReadAll(second, "foo", "bar", "qux");
+    }
+
+    public void testRecoverJournalAtomic() throws Exception {
+        final FileRotator rotate = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+        rotate.appendActive(writer("foo"), 1024);
+        rotate.appendActive(writer("bar"), 1024);
+        final File journal = new File(mBasePath, "rotator.1024-.journal");
+
+        // crash while compacting; backup is restored along with journal
+        final File journalBackup = new File(mBasePath, "rotator.1024-.journal.backup");
+        journal.renameTo(journalBackup);
+        new File(mBasePath, "rotator.1024-").renameTo(new File(mBasePath, "rotator.1024-.backup"));
+        write("rotator.1024-", "partial");
+        assertReadAll(new FileRotator(mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS),
+                "foo", "bar");
+
+        // crash after compacting; journal is already part of the file
+        journal.renameTo(journalBackup);
+        write("rotator.1024-", "compact");
+        assertReadAll(new FileRotator(mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS),
+                "compact");
+        assertFalse(journalBackup.exists());
+    }
+
     public void testFileSystemInaccessible() throws Exception {
         File inaccessibleDir = null;
         String dirPath = getContext().getFilesDir() + File.separator + "inaccessible";
@@ -401,6 +582,26 @@ public class FileRotatorTest extends AndroidTestCase {
         };
     }
 
+    private static FileRotator.Rewriter compactor(final Reader reader, final String value) {
+        return new FileRotator.Rewriter() {
+            public void reset() {
+                // ignored
+            }
+
+            public void read(InputStream in) throws IOException {
+                reader.read(in);
+            }
+
+            public boolean shouldWrite() {
+                return true;
+            }
+
+            public void write(OutputStream out) throws IOException {
+                new DataOutputStream(out).writeUTF(value);
+            }
+        };
+    }
+
     private static void assertReadAll(FileRotator rotate, String... expected) throws IOException {
         assertReadMatching(rotate, Long.MIN_VALUE, Long.MAX_VALUE, expected);
     }
@@ -29,7 +29,11 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -216,6 +220,46 @@ public class XmlUtils {
         serializer.endDocument();
     }
 
+    /**
+     * Flatten a Map into an output stream using a compact binary encoding
+     * of the same types as {@link #writeValueXml}.  The map can later be
+     * read back with readMapXml(), which detects the encoding.
+     *
+     * @param val The map to be flattened.
+     * @param out Where to write the data.
+     *
+     * @see #writeMapXml(Map, OutputStream)
+     * @see #readMapXml
+     */
+    public static final void writeMapBinary(Map val, OutputStream out)
+            throws java.io.IOException {
+        writeValueBinary(val, out);
+    }
+
+    /**
+     * Flatten a List into an output stream using a compact binary encoding
+     * of the same types as {@link #writeValueXml}.  The list can later be
+     * read back with readListXml(), which detects the encoding.
+     *
+     * @param val The list to be flattened.
+     * @param out Where to write the data.
+     *
+     * @see #writeListXml(List, OutputStream)
+     * @see #readListXml
+     */
+    public static final void writeListBinary(List val, OutputStream out)
+            throws java.io.IOException {
+        writeValueBinary(val, out);
+    }
+
+    private static void writeValueBinary(Object val, OutputStream out)
+            throws java.io.IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.write(BinaryValueUtils.MAGIC);
+        BinaryValueUtils.writeValue(val, data);
+        data.flush();
+    }
+
     /**
      * Flatten a Map into an XmlSerializer.  The map can later be read back
      * with readThisMapXml().
@@ -720,7 +764,7 @@ public class XmlUtils {
 
     /**
      * Read a HashMap from an InputStream containing XML.  The stream can
-     * previously have been written by writeMapXml().
+     * previously have been written by writeMapXml() or writeMapBinary().
      *
      * @param in The InputStream from which to read.
      *
@@ -735,14 +779,12 @@ public class XmlUtils {
     public static final HashMap<String, ?> readMapXml(InputStream in)
     throws XmlPullParserException, java.io.IOException
     {
-        XmlPullParser   parser = Xml.newPullParser();
-        parser.setInput(in, StandardCharsets.UTF_8.name());
-        return (HashMap<String, ?>) readValueXml(parser, new String[1]);
+        return (HashMap<String, ?>) readValueStream(in, StandardCharsets.UTF_8.name());
     }
 
     /**
      * Read an ArrayList from an InputStream containing XML.  The stream can
-     * previously have been written by writeListXml().
+     * previously have been written by writeListXml() or writeListBinary().
      *
      * @param in The InputStream from which to read.
      *
@@ -756,9 +798,7 @@ public class XmlUtils {
     public static final ArrayList readListXml(InputStream in)
     throws XmlPullParserException, java.io.IOException
     {
-        XmlPullParser   parser = Xml.newPullParser();
-        parser.setInput(in, StandardCharsets.UTF_8.name());
-        return (ArrayList)readValueXml(parser, new String[1]);
+        return (ArrayList) readValueStream(in, StandardCharsets.UTF_8.name());
     }
     
     
@@ -779,9 +819,35 @@ public class XmlUtils {
      */
     public static final HashSet readSetXml(InputStream in)
             throws XmlPullParserException, java.io.IOException {
+        return (HashSet) readValueStream(in, null);
+    }
+
+    /**
+     * Read the top-level value of a stream, using the binary decoder if the
+     * stream starts with the header written by writeMapBinary() or
+     * writeListBinary(), and the XML parser otherwise.
+     */
+    private static Object readValueStream(InputStream in, String inputEncoding)
+            throws XmlPullParserException, java.io.IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        final byte[] header = new byte[BinaryValueUtils.MAGIC.length];
+        in.mark(header.length);
+        int length = 0;
+        while (length < header.length) {
+            final int read = in.read(header, length, header.length - length);
+            if (read == -1) break;
+            length += read;
+        }
+        if (BinaryValueUtils.isMagic(header, length)) {
+            return BinaryValueUtils.readValue(new DataInputStream(in));
+        }
+        in.reset();
+
         XmlPullParser parser = Xml.newPullParser();
-        parser.setInput(in, null);
-        return (HashSet) readValueXml(parser, new String[1]);
+        parser.setInput(in, inputEncoding);
+        return readValueXml(parser, new String[1]);
     }
 
     /**
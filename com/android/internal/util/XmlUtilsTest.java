@@ -19,8 +19,14 @@ package com.android.internal.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import junit.framework.TestCase;
 
 public class XmlUtilsTest extends TestCase {
@@ -38,4 +44,141 @@ public class XmlUtilsTest extends TestCase {
         assertEquals("nullValue", deserialized.get(null));
         assertEquals("fooValue", deserialized.get("foo"));
     }
+
+    public void testMapBinaryRoundTrip() throws Exception {
+        Set<String> set = new HashSet<String>();
+        set.add("a");
+        set.add("b");
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add(null);
+        list.add("two");
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("nested", 3L);
+
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(null, "nullValue");
+        map.put("null", null);
+        map.put("string", "caf\u00e9 \ud83d\ude00");
+        map.put("int", Integer.MIN_VALUE);
+        map.put("long", Long.MAX_VALUE);
+        map.put("float", 1.5f);
+        map.put("double", Math.PI);
+        map.put("true", true);
+        map.put("false", false);
+        map.put("bytes", new byte[] { 0, -1, 127 });
+        map.put("ints", new int[] { 1, -2, 3 });
+        map.put("longs", new long[] { Long.MIN_VALUE, 0 });
+        map.put("doubles", new double[] { 0.5, -1 });
+        map.put("strings", new String[] { "x", "", "y" });
+        map.put("booleans", new boolean[] { true, false });
+        map.put("set", set);
+        map.put("list", list);
+        map.put("map", nested);
+        map.put("charSequence", new StringBuilder("chars"));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        XmlUtils.writeMapBinary(map, baos);
+        HashMap<String, ?> deserialized =
+                XmlUtils.readMapXml(new ByteArrayInputStream(baos.toByteArray()));
+
+        assertEquals(map.size(), deserialized.size());
+        assertEquals("nullValue", deserialized.get(null));
+        assertTrue(deserialized.containsKey("null"));
+        assertNull(deserialized.get("null"));
+        assertEquals("caf\u00e9 \ud83d\ude00", deserialized.get("string"));
+        assertEquals(Integer.MIN_VALUE, deserialized.get("int"));
+        assertEquals(Long.MAX_VALUE, deserialized.get("long"));
+        assertEquals(1.5f, deserialized.get("float"));
+        assertEquals(Math.PI, deserialized.get("double"));
+        assertEquals(Boolean.TRUE, deserialized.get("true"));
+        assertEquals(Boolean.FALSE, deserialized.get("false"));
+        assertTrue(Arrays.equals((byte[]) map.get("bytes"), (byte[]) deserialized.get("bytes")));
+        assertTrue(Arrays.equals((int[]) map.get("ints"), (int[]) deserialized.get("ints")));
+        assertTrue(Arrays.equals((long[]) map.get("longs"), (long[]) deserialized.get("longs")));
+        assertTrue(Arrays.equals((double[]) map.get("doubles"),
+                (double[]) deserialized.get("doubles")));
+        assertTrue(Arrays.equals((String[]) map.get("strings"),
+                (String[]) deserialized.get("strings")));
+        assertTrue(Arrays.equals((boolean[]) map.get("booleans"),
+                (boolean[]) deserialized.get("booleans")));
+        assertEquals(set, deserialized.get("set"));
+        assertTrue(deserialized.get("set") instanceof HashSet);
+        assertEquals(list, deserialized.get("list"));
+        assertTrue(deserialized.get("list") instanceof ArrayList);
+        assertEquals(nested, deserialized.get("map"));
+        assertTrue(deserialized.get("map") instanceof HashMap);
+        assertEquals("chars", deserialized.get("charSequence"));
+    }
+
+    public void testListBinaryRoundTrip() throws Exception {
+        List<Object> list = new ArrayList<Object>();
+        list.add("first");
+        list.add(2);
+        list.add(new ArrayList<Object>());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        XmlUtils.writeListBinary(list, baos);
+        assertEquals(list, XmlUtils.readListXml(new ByteArrayInputStream(baos.toByteArray())));
+    }
+
+    public void testBinaryUnsupportedValue() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("object", new Object());
+        try {
+            XmlUtils.writeMapBinary(map, new ByteArrayOutputStream());
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    public void testBinaryCorruptLength() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("k", new long[] { 1, 2 });
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        XmlUtils.writeMapBinary(map, baos);
+        final byte[] good = baos.toByteArray();
+
+        // Magic, map type and size, then the key "k" and the array type and length.
+        final int keyLength = 4 + 1 + 4;
+        final int arrayLength = keyLength + 4 + 1 + 1;
+        assertEquals(2, readInt(good, arrayLength));
+        assertEquals(1, readInt(good, keyLength));
+
+        final byte[] corrupt = good.clone();
+        corrupt[arrayLength] = 0x7f;
+        assertReadFails(corrupt);
+
+        final byte[] corruptKey = good.clone();
+        corruptKey[keyLength] = 0x7f;
+        assertReadFails(corruptKey);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static void assertReadFails(byte[] bytes) throws Exception {
+        try {
+            XmlUtils.readMapXml(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (ProtocolException expected) {
+        }
+    }
+
+    public void testReadMapDetectsFormat() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("foo", "fooValue");
+        map.put("bar", 42);
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream(1024);
+        XmlUtils.writeMapXml(map, xml);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream(1024);
+        XmlUtils.writeMapBinary(map, binary);
+        assertTrue(binary.size() < xml.size());
+
+        assertEquals(map, XmlUtils.readMapXml(new ByteArrayInputStream(xml.toByteArray())));
+        assertEquals(map, XmlUtils.readMapXml(new ByteArrayInputStream(binary.toByteArray())));
+    }
 }
@@ -77,6 +77,7 @@ public class NetworkStatsCollection implements FileRotator.Reader {
     private static final int VERSION_UID_WITH_SET = 4;
 
     private static final int VERSION_UNIFIED_INIT = 16;
+    private static final int VERSION_UNIFIED_COLUMNAR = 17;
 
     private ArrayMap<Key, NetworkStatsHistory> mStats = new ArrayMap<>();
 
@@ -296,6 +297,16 @@ public class NetworkStatsCollection implements FileRotator.Reader {
     }
 
     public void read(DataInputStream in) throws IOException {
+        read(in, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read stats from the given stream, only keeping buckets that overlap the
+     * requested time range. Files written with {@link #VERSION_UNIFIED_COLUMNAR}
+     * record their time range up front, so files outside of the range are not
+     * decoded at all; older files are read in full.
+     */
+    public void read(DataInputStream in, long start, long end) throws IOException {
         // verify file magic header intact
         final int magic = in.readInt();
         if (magic != FILE_MAGIC) {
@@ -323,6 +334,30 @@ public class NetworkStatsCollection implements FileRotator.Reader {
                 }
                 break;
             }
+            case VERSION_UNIFIED_COLUMNAR: {
+                // uid := start end size *(NetworkIdentitySet size *(uid set tag columnar))
+                final long fileStart = in.readLong();
+                final long fileEnd = in.readLong();
+                if (fileEnd <= start || fileStart >= end) break;
+
+                final int identSize = in.readInt();
+                for (int i = 0; i < identSize; i++) {
+                    final NetworkIdentitySet ident = new NetworkIdentitySet(in);
+
+                    final int size = in.readInt();
+                    for (int j = 0; j < size; j++) {
+                        final int uid = in.readInt();
+                        final int set = in.readInt();
+                        final int tag = in.readInt();
+
+                        final Key key = new Key(ident, uid, set, tag);
+                        final NetworkStatsHistory history =
+                                NetworkStatsHistory.readColumnarFromStream(in, start, end);
+                        recordHistory(key, history);
+                    }
+                }
+                break;
+            }
             default: {
                 throw new ProtocolException("unexpected version: " + version);
             }
@@ -342,7 +377,9 @@ public class NetworkStatsCollection implements FileRotator.Reader {
         }
 
         out.writeInt(FILE_MAGIC);
-        out.writeInt(VERSION_UNIFIED_INIT);
+        out.writeInt(VERSION_UNIFIED_COLUMNAR);
+        out.writeLong(mStartMillis);
+        out.writeLong(mEndMillis);
 
         out.writeInt(keysByIdent.size());
         for (NetworkIdentitySet ident : keysByIdent.keySet()) {
@@ -355,7 +392,7 @@ public class NetworkStatsCollection implements FileRotator.Reader {
                 out.writeInt(key.uid);
                 out.writeInt(key.set);
                 out.writeInt(key.tag);
-                history.writeToStream(out);
+                history.writeColumnarToStream(out);
             }
         }
 
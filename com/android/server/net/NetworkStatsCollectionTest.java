@@ -33,6 +33,7 @@ import com.android.frameworks.servicestests.R;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -151,6 +152,32 @@ public class NetworkStatsCollectionTest extends AndroidTestCase {
         assertEquals(2 * HOUR_IN_MILLIS, collection.getEndMillis());
     }
 
+    public void testReadPartialRange() throws Exception {
+        final NetworkStatsCollection collection = new NetworkStatsCollection(HOUR_IN_MILLIS);
+        final NetworkIdentitySet ident = new NetworkIdentitySet();
+        collection.recordData(ident, UID_ALL, SET_DEFAULT, TAG_NONE, 0, HOUR_IN_MILLIS,
+                new NetworkStats.Entry(1024L, 8L, 2048L, 16L, 0L));
+        collection.recordData(ident, UID_ALL, SET_DEFAULT, TAG_NONE, 5 * HOUR_IN_MILLIS,
+                6 * HOUR_IN_MILLIS, new NetworkStats.Entry(64L, 1L, 128L, 2L, 0L));
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        collection.write(new DataOutputStream(bos));
+
+        // only the overlapping bucket is read back
+        NetworkStatsCollection partial = new NetworkStatsCollection(HOUR_IN_MILLIS);
+        partial.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())),
+                4 * HOUR_IN_MILLIS, 8 * HOUR_IN_MILLIS);
+        assertEquals(5 * HOUR_IN_MILLIS, partial.getStartMillis());
+        assertEquals(6 * HOUR_IN_MILLIS, partial.getEndMillis());
+        assertEquals(64L + 128L, partial.getTotalBytes());
+
+        // nothing is read outside of the file range
+        partial = new NetworkStatsCollection(HOUR_IN_MILLIS);
+        partial.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())),
+                8 * HOUR_IN_MILLIS, 9 * HOUR_IN_MILLIS);
+        assertTrue(partial.isEmpty());
+    }
+
     /**
      * Copy a {@link Resources#openRawResource(int)} into {@link File} for
      * testing purposes.
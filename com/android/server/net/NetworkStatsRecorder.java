@@ -37,6 +37,7 @@ import com.android.internal.util.IndentingPrintWriter;
 import com.google.android.collect.Sets;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -77,12 +78,14 @@ public class NetworkStatsRecorder {
     private final boolean mOnlyTags;
 
     private long mPersistThresholdBytes = 2 * MB_IN_BYTES;
+    private boolean mJournalEnabled;
     private NetworkStats mLastSnapshot;
 
     private final NetworkStatsCollection mPending;
     private final NetworkStatsCollection mSinceBoot;
 
     private final CombiningRewriter mPendingRewriter;
+    private final CompactRewriter mCompactRewriter;
 
     private WeakReference<NetworkStatsCollection> mComplete;
 
@@ -100,6 +103,7 @@ public class NetworkStatsRecorder {
         mSinceBoot = new NetworkStatsCollection(bucketDuration);
 
         mPendingRewriter = new CombiningRewriter(mPending);
+        mCompactRewriter = new CompactRewriter(bucketDuration);
     }
 
     public void setPersistThreshold(long thresholdBytes) {
@@ -108,6 +112,16 @@ public class NetworkStatsRecorder {
                 thresholdBytes, 1 * KB_IN_BYTES, 100 * MB_IN_BYTES);
     }
 
+    /**
+     * When enabled, persisting appends pending deltas to a journal instead of
+     * rewriting the entire active file, and the journal is only compacted into
+     * the active file when it rotates.
+     */
+    public void setJournalEnabled(boolean enabled) {
+        if (LOGV) Slog.v(TAG, "setJournalEnabled() with " + enabled);
+        mJournalEnabled = enabled;
+    }
+
     public void resetLocked() {
         mLastSnapshot = null;
         mPending.reset();
@@ -142,11 +156,17 @@ public class NetworkStatsRecorder {
         return res;
     }
 
-    private NetworkStatsCollection loadLocked(long start, long end) {
+    private NetworkStatsCollection loadLocked(final long start, final long end) {
         if (LOGD) Slog.d(TAG, "loadLocked() reading from disk for " + mCookie);
         final NetworkStatsCollection res = new NetworkStatsCollection(mBucketDuration);
         try {
-            mRotator.readMatching(res, start, end);
+            // only decode buckets inside the requested window
+            mRotator.readMatching(new FileRotator.Reader() {
+                @Override
+                public void read(InputStream in) throws IOException {
+                    res.read(new DataInputStream(in), start, end);
+                }
+            }, start, end);
             res.recordCollection(mPending);
         } catch (IOException e) {
             Log.wtf(TAG, "problem completely reading network stats", e);
@@ -234,7 +254,15 @@ public class NetworkStatsRecorder {
         if (pendingBytes >= mPersistThresholdBytes) {
             forcePersistLocked(currentTimeMillis);
         } else {
-            mRotator.maybeRotate(currentTimeMillis);
+            try {
+                maybeRotateLocked(currentTimeMillis);
+            } catch (IOException e) {
+                Log.wtf(TAG, "problem compacting stats", e);
+                recoverFromWtf();
+            } catch (OutOfMemoryError e) {
+                Log.wtf(TAG, "problem compacting stats", e);
+                recoverFromWtf();
+            }
         }
     }
 
@@ -245,8 +273,12 @@ public class NetworkStatsRecorder {
         if (mPending.isDirty()) {
             if (LOGD) Slog.d(TAG, "forcePersistLocked() writing for " + mCookie);
             try {
-                mRotator.rewriteActive(mPendingRewriter, currentTimeMillis);
-                mRotator.maybeRotate(currentTimeMillis);
+                if (mJournalEnabled) {
+                    mRotator.appendActive(mPendingRewriter, currentTimeMillis);
+                } else {
+                    mRotator.rewriteActive(mPendingRewriter, currentTimeMillis);
+                }
+                maybeRotateLocked(currentTimeMillis);
                 mPending.reset();
             } catch (IOException e) {
                 Log.wtf(TAG, "problem persisting pending stats", e);
@@ -258,6 +290,14 @@ public class NetworkStatsRecorder {
         }
     }
 
+    private void maybeRotateLocked(long currentTimeMillis) throws IOException {
+        if (mJournalEnabled) {
+            mRotator.maybeRotate(mCompactRewriter, currentTimeMillis);
+        } else {
+            mRotator.maybeRotate(currentTimeMillis);
+        }
+    }
+
     /**
      * Remove the given UID from all {@link FileRotator} history, migrating it
      * to {@link TrafficStats#UID_REMOVED}.
@@ -323,6 +363,40 @@ public class NetworkStatsRecorder {
         }
     }
 
+    /**
+     * Rewriter that compacts a file and its journal into a single file. Unlike
+     * {@link CombiningRewriter}, it is reset before each file, so anything left
+     * over from a compaction that failed is never written again.
+     */
+    static class CompactRewriter implements FileRotator.Rewriter {
+        private final NetworkStatsCollection mTemp;
+
+        public CompactRewriter(long bucketDuration) {
+            mTemp = new NetworkStatsCollection(bucketDuration);
+        }
+
+        @Override
+        public void reset() {
+            mTemp.reset();
+        }
+
+        @Override
+        public void read(InputStream in) throws IOException {
+            mTemp.read(in);
+        }
+
+        @Override
+        public boolean shouldWrite() {
+            return true;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            mTemp.write(new DataOutputStream(out));
+            mTemp.reset();
+        }
+    }
+
     /**
      * Rewriter that will remove any {@link NetworkStatsHistory} attributed to
      * the requested UID, only writing data back when modified.
@@ -416,6 +490,9 @@ public class NetworkStatsRecorder {
      * {@link DropBoxManager} and deleting contents.
      */
     private void recoverFromWtf() {
+        // drop anything a failed compaction left behind
+        mCompactRewriter.reset();
+
         if (DUMP_BEFORE_DELETE) {
             final ByteArrayOutputStream os = new ByteArrayOutputStream();
             try {
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.net;
+
+import static android.net.NetworkStats.SET_DEFAULT;
+import static android.net.NetworkStats.TAG_NONE;
+import static android.net.NetworkStats.UID_ALL;
+import static android.text.format.DateUtils.DAY_IN_MILLIS;
+import static android.text.format.DateUtils.HOUR_IN_MILLIS;
+import static android.text.format.DateUtils.SECOND_IN_MILLIS;
+import static android.text.format.DateUtils.WEEK_IN_MILLIS;
+
+import android.net.NetworkStats;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.util.FileRotator;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import libcore.io.IoUtils;
+
+/**
+ * Tests for {@link NetworkStatsRecorder}.
+ */
+@SmallTest
+public class NetworkStatsRecorderTest extends AndroidTestCase {
+    private static final String PREFIX = "recorder";
+    private static final long TEST_TIME = 1300000000000L;
+
+    private File mBasePath;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        mBasePath = new File(getContext().getFilesDir(), "recorder_test");
+        mBasePath.mkdirs();
+        IoUtils.deleteContents(mBasePath);
+    }
+
+    public void testCompactAfterFailedCompactDoesNotDoubleCount() throws Exception {
+        final FileRotator rotator = new FileRotator(
+                mBasePath, PREFIX, DAY_IN_MILLIS, WEEK_IN_MILLIS);
+
+        // active file plus one journal record
+        long currentTime = TEST_TIME;
+        rotator.appendActive(writer(collection(1024L, 2048L)), currentTime);
+        rotator.appendActive(writer(collection(100L, 200L)), currentTime);
+        assertTotalBytes(rotator, 3372L);
+
+        // compaction fails after reading everything
+        final NetworkStatsRecorder.CompactRewriter compactor =
+                new NetworkStatsRecorder.CompactRewriter(HOUR_IN_MILLIS);
+        currentTime += DAY_IN_MILLIS + SECOND_IN_MILLIS;
+        try {
+            rotator.maybeRotate(new FileRotator.Rewriter() {
+                @Override
+                public void reset() {
+                    compactor.reset();
+                }
+
+                @Override
+                public void read(InputStream in) throws IOException {
+                    compactor.read(in);
+                }
+
+                @Override
+                public boolean shouldWrite() {
+                    return compactor.shouldWrite();
+                }
+
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    throw new IOException("disk full");
+                }
+            }, currentTime);
+            fail("compaction should have failed");
+        } catch (IOException expected) {
+        }
+        assertTotalBytes(rotator, 3372L);
+
+        // retrying must not write what the failed attempt read a second time
+        rotator.maybeRotate(compactor, currentTime);
+        assertTotalBytes(rotator, 3372L);
+        assertEquals(1, mBasePath.list().length);
+    }
+
+    private static NetworkStatsCollection collection(long rxBytes, long txBytes) {
+        final NetworkStatsCollection collection = new NetworkStatsCollection(HOUR_IN_MILLIS);
+        collection.recordData(new NetworkIdentitySet(), UID_ALL, SET_DEFAULT, TAG_NONE,
+                TEST_TIME, TEST_TIME + HOUR_IN_MILLIS,
+                new NetworkStats.Entry(rxBytes, 1L, txBytes, 1L, 0L));
+        return collection;
+    }
+
+    private static FileRotator.Writer writer(final NetworkStatsCollection collection) {
+        return new FileRotator.Writer() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                collection.write(new DataOutputStream(out));
+            }
+        };
+    }
+
+    private static void assertTotalBytes(FileRotator rotator, long expected) throws IOException {
+        final NetworkStatsCollection collection = new NetworkStatsCollection(HOUR_IN_MILLIS);
+        rotator.readMatching(collection, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(expected, collection.getTotalBytes());
+    }
+}
@@ -345,9 +345,11 @@ public class NetworkStatsService extends INetworkStatsService.Stub {
             String prefix, NetworkStatsSettings.Config config, boolean includeTags) {
         final DropBoxManager dropBox = (DropBoxManager) mContext.getSystemService(
                 Context.DROPBOX_SERVICE);
-        return new NetworkStatsRecorder(new FileRotator(
+        final NetworkStatsRecorder recorder = new NetworkStatsRecorder(new FileRotator(
                 mBaseDir, prefix, config.rotateAgeMillis, config.deleteAgeMillis),
                 mNonMonotonicObserver, dropBox, prefix, config.bucketDuration, includeTags);
+        recorder.setJournalEnabled(true);
+        return recorder;
     }
 
     private void shutdownLocked() {
@@ -23,6 +23,8 @@ import static android.content.pm.PackageManager.COMPONENT_ENABLED_STATE_ENABLED;
 
 import android.content.Context;
 import android.content.pm.PackageParser;
+import android.content.pm.Signature;
+import android.os.FileUtils;
 import android.test.AndroidTestCase;
 import android.util.ArrayMap;
 import android.util.ArraySet;
@@ -182,6 +184,21 @@ public class PackageManagerSettingsTests extends AndroidTestCase {
                 new File(getContext().getFilesDir(), "user"));
     }
 
+    private void verifySignatures(Settings settings) {
+        final Signature certA = new Signature(KeySetStrings.ctsKeySetCertA);
+        final Signature certB = new Signature(KeySetStrings.ctsKeySetCertB);
+        assertSignatures(certA, settings.peekPackageLPr(PACKAGE_NAME_1).signatures);
+        assertSignatures(certA, settings.peekPackageLPr(PACKAGE_NAME_2).signatures);
+        assertSignatures(certB, settings.peekPackageLPr(PACKAGE_NAME_3).signatures);
+        assertSignatures(certB, settings.mSharedUsers.get("com.android.shared1").signatures);
+    }
+
+    private static void assertSignatures(Signature expected, PackageSignatures signatures) {
+        assertNotNull(signatures.mSignatures);
+        assertEquals(1, signatures.mSignatures.length);
+        assertEquals(expected, signatures.mSignatures[0]);
+    }
+
     private void verifyKeySetMetaData(Settings settings)
             throws ReflectiveOperationException, IllegalAccessException {
         ArrayMap<String, PackageSetting> packages = settings.mPackages;
@@ -335,4 +352,106 @@ public class PackageManagerSettingsTests extends AndroidTestCase {
         hasEnabled = ps.getEnabledComponents(0) != null && ps.getEnabledComponents(0).size() > 0;
         assertEquals(false, hasEnabled);
     }
+
+    /* write only a changed package, and read it back over packages.xml */
+    public void testWriteChangedPackageSegment() throws Exception {
+        writeOldFiles();
+        createUserManagerServiceRef();
+        Settings settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        settings.writeLPr();
+
+        File settingsFile = new File(getContext().getFilesDir(), "system/packages.xml");
+        File segmentsDir = new File(getContext().getFilesDir(), "system/packages-segments");
+        String compacted = FileUtils.readTextFile(settingsFile, 0, null);
+
+        settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName = PACKAGE_NAME_2;
+        settings.writeLPr();
+        assertEquals(compacted, FileUtils.readTextFile(settingsFile, 0, null));
+        /* the segment and the commit file naming it */
+        assertEquals(2, segmentsDir.list().length);
+
+        settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        assertEquals(PACKAGE_NAME_2, settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName);
+        verifyKeySetMetaData(settings);
+        verifySignatures(settings);
+
+        /* the next full write folds the segment back in */
+        settings.writeLPr();
+        assertEquals(0, segmentsDir.list().length);
+        settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        assertEquals(PACKAGE_NAME_2, settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName);
+    }
+
+    /* segments written before a crash but never committed are ignored */
+    public void testUncommittedSegmentIgnored() throws Exception {
+        writeOldFiles();
+        createUserManagerServiceRef();
+        Settings settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        settings.writeLPr();
+
+        File segmentsDir = new File(getContext().getFilesDir(), "system/packages-segments");
+        settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName = PACKAGE_NAME_2;
+        settings.writeLPr();
+        ArrayMap<String, String> committed = new ArrayMap<String, String>();
+        for (File file : segmentsDir.listFiles()) {
+            committed.put(file.getName(), FileUtils.readTextFile(file, 0, null));
+        }
+
+        /* crash after writing the new segments, before replacing the commit file */
+        settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName = PACKAGE_NAME_3;
+        settings.peekPackageLPr(PACKAGE_NAME_2).installerPackageName = PACKAGE_NAME_3;
+        settings.writeLPr();
+        for (int i = 0; i < committed.size(); i++) {
+            FileUtils.stringToFile(new File(segmentsDir, committed.keyAt(i)).getPath(),
+                    committed.valueAt(i));
+        }
+        assertEquals(4, segmentsDir.list().length);
+
+        settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        assertEquals(PACKAGE_NAME_2, settings.peekPackageLPr(PACKAGE_NAME_1).installerPackageName);
+        assertNull(settings.peekPackageLPr(PACKAGE_NAME_2).installerPackageName);
+        assertEquals(2, segmentsDir.list().length);
+        verifySignatures(settings);
+    }
+
+    /* certificates defined by a superseded package are still known to the rest of packages.xml */
+    public void testChangedPackageSegmentKeepsSignatures() throws Exception {
+        for (String packageName : new String[] { PACKAGE_NAME_1, PACKAGE_NAME_2, PACKAGE_NAME_3 }) {
+            writeOldFiles();
+            createUserManagerServiceRef();
+            Settings settings = new Settings(getContext().getFilesDir(), new Object());
+            assertEquals(true, settings.readLPw(null, null, 0, false));
+            settings.writeLPr();
+
+            settings.peekPackageLPr(packageName).installerPackageName = PACKAGE_NAME_1;
+            settings.writeLPr();
+
+            settings = new Settings(getContext().getFilesDir(), new Object());
+            assertEquals(true, settings.readLPw(null, null, 0, false));
+            assertEquals(PACKAGE_NAME_1, settings.peekPackageLPr(packageName).installerPackageName);
+            verifySignatures(settings);
+        }
+    }
+
+    public void testWriteRemovedPackageSegment() throws Exception {
+        writeOldFiles();
+        createUserManagerServiceRef();
+        Settings settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        settings.writeLPr();
+
+        settings.removePackageLPw(PACKAGE_NAME_3);
+        settings.writeLPr();
+
+        settings = new Settings(getContext().getFilesDir(), new Object());
+        assertEquals(true, settings.readLPw(null, null, 0, false));
+        assertNull(settings.peekPackageLPr(PACKAGE_NAME_3));
+        assertNotNull(settings.peekPackageLPr(PACKAGE_NAME_1));
+        assertNotNull(settings.peekPackageLPr(PACKAGE_NAME_2));
+    }
 }
@@ -27,6 +27,7 @@ import static android.content.pm.PackageManager.INTENT_FILTER_DOMAIN_VERIFICATIO
 import static android.content.pm.PackageManager.INTENT_FILTER_DOMAIN_VERIFICATION_STATUS_UNDEFINED;
 import static android.os.Process.SYSTEM_UID;
 import static android.os.Process.PACKAGE_INFO_GID;
+import static android.system.OsConstants.O_RDONLY;
 import static com.android.server.pm.PackageManagerService.DEBUG_DOMAIN_VERIFICATION;
 
 import android.content.IntentFilter;
@@ -47,6 +48,8 @@ import android.os.UserHandle;
 import android.os.UserManager;
 import android.os.storage.StorageManager;
 import android.os.storage.VolumeInfo;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.AtomicFile;
 import android.text.TextUtils;
 import android.util.LogPrinter;
@@ -93,12 +96,17 @@ import android.util.SparseIntArray;
 import android.util.Xml;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -160,6 +168,35 @@ final class Settings {
 
     private static final String RUNTIME_PERMISSIONS_FILE_NAME = "runtime-permissions.xml";
 
+    /**
+     * Segment holding everything in packages.xml that is not a package
+     * record. Package names can't contain '@'.
+     */
+    private static final String SEGMENT_GLOBAL = "@global";
+
+    /**
+     * Always allow this many segments before compacting them into
+     * packages.xml, regardless of the number of packages.
+     */
+    private static final int MIN_SEGMENTS_BEFORE_COMPACT = 16;
+
+    /**
+     * Compact segments into packages.xml once they hold more than this
+     * fraction (1/N) of all records.
+     */
+    private static final int SEGMENT_COMPACT_DIVISOR = 4;
+
+    private static final String TAG_SEGMENT = "segment";
+    private static final String TAG_SEGMENT_HEAD = "head";
+    private static final String TAG_SEGMENT_TAIL = "tail";
+    private static final String TAG_SEGMENTS = "segments";
+
+    /**
+     * Lists the segment files in effect. Segment files are only applied once
+     * it names them, so that each write of segments lands all or nothing.
+     */
+    private static final String SEGMENTS_COMMIT_FILENAME = "commit";
+
     private static final String TAG_READ_EXTERNAL_STORAGE = "read-external-storage";
     private static final String ATTR_ENFORCEMENT = "enforcement";
 
@@ -204,6 +241,8 @@ final class Settings {
     private static final String ATTR_VOLUME_UUID = "volumeUuid";
     private static final String ATTR_SDK_VERSION = "sdkVersion";
     private static final String ATTR_DATABASE_VERSION = "databaseVersion";
+    private static final String ATTR_GENERATION = "generation";
+    private static final String ATTR_FILE = "file";
 
     private final Object mLock;
 
@@ -211,6 +250,7 @@ final class Settings {
 
     private final File mSettingsFilename;
     private final File mBackupSettingsFilename;
+    private final File mSettingsSegmentsDir;
     private final File mPackageListFilename;
     private final File mStoppedPackagesFilename;
     private final File mBackupStoppedPackagesFilename;
@@ -297,6 +337,30 @@ final class Settings {
     private final ArrayMap<Long, Integer> mKeySetRefs =
             new ArrayMap<Long, Integer>();
 
+    /**
+     * Generation of packages.xml. Segments written since it was last compacted
+     * are named after it, so that segments left over from an older generation
+     * are never applied to a newer one.
+     */
+    private int mSettingsGeneration;
+
+    /**
+     * Digest of each record as last persisted, keyed by package name or
+     * {@link #SEGMENT_GLOBAL}. Null until packages.xml has been fully written
+     * by this process, since only then is it known what is on disk.
+     */
+    private ArrayMap<String, byte[]> mPersistedRecordDigests;
+
+    // Segment file in effect for each record persisted as a segment of the
+    // current generation.
+    private final ArrayMap<String, String> mWrittenSegments = new ArrayMap<String, String>();
+
+    // Number of times segments were written in the current generation.
+    private int mSegmentSequence;
+
+    // Digest of the contents of packages.list as last written.
+    private byte[] mPackageListDigest;
+
     // Mapping from permission names to info about them.
     final ArrayMap<String, BasePermission> mPermissions =
             new ArrayMap<String, BasePermission>();
@@ -353,6 +417,7 @@ final class Settings {
                 -1, -1);
         mSettingsFilename = new File(mSystemDir, "packages.xml");
         mBackupSettingsFilename = new File(mSystemDir, "packages-backup.xml");
+        mSettingsSegmentsDir = new File(mSystemDir, "packages-segments");
         mPackageListFilename = new File(mSystemDir, "packages.list");
         FileUtils.setPermissions(mPackageListFilename, 0640, SYSTEM_UID, PACKAGE_INFO_GID);
 
@@ -2041,6 +2106,16 @@ final class Settings {
     void writeLPr() {
         //Debug.startMethodTracing("/data/system/packageprof", 8 * 1024 * 1024);
 
+        // Usually only a few records changed since the last write; persist
+        // just those if we can.
+        final ArrayMap<String, byte[]> digests = new ArrayMap<String, byte[]>();
+        if (writeDirtySegmentsLPr(digests)) {
+            writePackageListLPr();
+            writeAllUsersPackageRestrictionsLPr();
+            writeAllRuntimePermissionsLPr();
+            return;
+        }
+
         // Keep the old settings around until we know the new ones have
         // been successfully written.
         if (mSettingsFilename.exists()) {
@@ -2074,43 +2149,9 @@ final class Settings {
             serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
 
             serializer.startTag(null, "packages");
+            XmlUtils.writeIntAttribute(serializer, ATTR_GENERATION, mSettingsGeneration + 1);
 
-            for (int i = 0; i < mVersion.size(); i++) {
-                final String volumeUuid = mVersion.keyAt(i);
-                final VersionInfo ver = mVersion.valueAt(i);
-
-                serializer.startTag(null, TAG_VERSION);
-                XmlUtils.writeStringAttribute(serializer, ATTR_VOLUME_UUID, volumeUuid);
-                XmlUtils.writeIntAttribute(serializer, ATTR_SDK_VERSION, ver.sdkVersion);
-                XmlUtils.writeIntAttribute(serializer, ATTR_DATABASE_VERSION, ver.databaseVersion);
-                XmlUtils.writeStringAttribute(serializer, ATTR_FINGERPRINT, ver.fingerprint);
-                serializer.endTag(null, TAG_VERSION);
-            }
-
-            if (mVerifierDeviceIdentity != null) {
-                serializer.startTag(null, "verifier");
-                serializer.attribute(null, "device", mVerifierDeviceIdentity.toString());
-                serializer.endTag(null, "verifier");
-            }
-
-            if (mReadExternalStorageEnforced != null) {
-                serializer.startTag(null, TAG_READ_EXTERNAL_STORAGE);
-                serializer.attribute(
-                        null, ATTR_ENFORCEMENT, mReadExternalStorageEnforced ? "1" : "0");
-                serializer.endTag(null, TAG_READ_EXTERNAL_STORAGE);
-            }
-
-            serializer.startTag(null, "permission-trees");
-            for (BasePermission bp : mPermissionTrees.values()) {
-                writePermissionLPr(serializer, bp);
-            }
-            serializer.endTag(null, "permission-trees");
-
-            serializer.startTag(null, "permissions");
-            for (BasePermission bp : mPermissions.values()) {
-                writePermissionLPr(serializer, bp);
-            }
-            serializer.endTag(null, "permissions");
+            writeGlobalHeadLPr(serializer);
 
             for (final PackageSetting pkg : mPackages.values()) {
                 writePackageLPr(serializer, pkg);
@@ -2120,55 +2161,7 @@ final class Settings {
                 writeDisabledSysPackageLPr(serializer, pkg);
             }
 
-            for (final SharedUserSetting usr : mSharedUsers.values()) {
-                serializer.startTag(null, "shared-user");
-                serializer.attribute(null, ATTR_NAME, usr.name);
-                serializer.attribute(null, "userId",
-                        Integer.toString(usr.userId));
-                usr.signatures.writeXml(serializer, "sigs", mPastSignatures);
-                writePermissionsLPr(serializer, usr.getPermissionsState()
-                        .getInstallPermissionStates());
-                serializer.endTag(null, "shared-user");
-            }
-
-            if (mPackagesToBeCleaned.size() > 0) {
-                for (PackageCleanItem item : mPackagesToBeCleaned) {
-                    final String userStr = Integer.toString(item.userId);
-                    serializer.startTag(null, "cleaning-package");
-                    serializer.attribute(null, ATTR_NAME, item.packageName);
-                    serializer.attribute(null, ATTR_CODE, item.andCode ? "true" : "false");
-                    serializer.attribute(null, ATTR_USER, userStr);
-                    serializer.endTag(null, "cleaning-package");
-                }
-            }
-
-            if (mRenamedPackages.size() > 0) {
-                for (Map.Entry<String, String> e : mRenamedPackages.entrySet()) {
-                    serializer.startTag(null, "renamed-package");
-                    serializer.attribute(null, "new", e.getKey());
-                    serializer.attribute(null, "old", e.getValue());
-                    serializer.endTag(null, "renamed-package");
-                }
-            }
-
-            final int numIVIs = mRestoredIntentFilterVerifications.size();
-            if (numIVIs > 0) {
-                if (DEBUG_DOMAIN_VERIFICATION) {
-                    Slog.i(TAG, "Writing restored-ivi entries to packages.xml");
-                }
-                serializer.startTag(null, "restored-ivi");
-                for (int i = 0; i < numIVIs; i++) {
-                    IntentFilterVerificationInfo ivi = mRestoredIntentFilterVerifications.valueAt(i);
-                    writeDomainVerificationsLPr(serializer, ivi);
-                }
-                serializer.endTag(null, "restored-ivi");
-            } else {
-                if (DEBUG_DOMAIN_VERIFICATION) {
-                    Slog.i(TAG, "  no restored IVI entries to write");
-                }
-            }
-
-            mKeySetManagerService.writeKeySetManagerServiceLPr(serializer);
+            writeGlobalTailLPr(serializer);
 
             serializer.endTag(null, "packages");
 
@@ -2186,6 +2179,11 @@ final class Settings {
                     |FileUtils.S_IRGRP|FileUtils.S_IWGRP,
                     -1, -1);
 
+            // Segments of the previous generation are now folded in.
+            mSettingsGeneration++;
+            deleteSegmentsLPr();
+            mPersistedRecordDigests = digests.isEmpty() ? null : digests;
+
             writePackageListLPr();
             writeAllUsersPackageRestrictionsLPr();
             writeAllRuntimePermissionsLPr();
@@ -2198,6 +2196,7 @@ final class Settings {
             Slog.wtf(PackageManagerService.TAG, "Unable to write package manager settings, "
                     + "current changes will be lost at reboot", e);
         }
+        mPersistedRecordDigests = null;
         // Clean up partially written files
         if (mSettingsFilename.exists()) {
             if (!mSettingsFilename.delete()) {
@@ -2208,6 +2207,400 @@ final class Settings {
         //Debug.stopMethodTracing();
     }
 
+    /**
+     * Writes the records that packages.xml holds besides packages, which need
+     * to be read before any package.
+     */
+    private void writeGlobalHeadLPr(XmlSerializer serializer)
+            throws XmlPullParserException, IOException {
+        for (int i = 0; i < mVersion.size(); i++) {
+            final String volumeUuid = mVersion.keyAt(i);
+            final VersionInfo ver = mVersion.valueAt(i);
+
+            serializer.startTag(null, TAG_VERSION);
+            XmlUtils.writeStringAttribute(serializer, ATTR_VOLUME_UUID, volumeUuid);
+            XmlUtils.writeIntAttribute(serializer, ATTR_SDK_VERSION, ver.sdkVersion);
+            XmlUtils.writeIntAttribute(serializer, ATTR_DATABASE_VERSION, ver.databaseVersion);
+            XmlUtils.writeStringAttribute(serializer, ATTR_FINGERPRINT, ver.fingerprint);
+            serializer.endTag(null, TAG_VERSION);
+        }
+
+        if (mVerifierDeviceIdentity != null) {
+            serializer.startTag(null, "verifier");
+            serializer.attribute(null, "device", mVerifierDeviceIdentity.toString());
+            serializer.endTag(null, "verifier");
+        }
+
+        if (mReadExternalStorageEnforced != null) {
+            serializer.startTag(null, TAG_READ_EXTERNAL_STORAGE);
+            serializer.attribute(
+                    null, ATTR_ENFORCEMENT, mReadExternalStorageEnforced ? "1" : "0");
+            serializer.endTag(null, TAG_READ_EXTERNAL_STORAGE);
+        }
+
+        serializer.startTag(null, "permission-trees");
+        for (BasePermission bp : mPermissionTrees.values()) {
+            writePermissionLPr(serializer, bp);
+        }
+        serializer.endTag(null, "permission-trees");
+
+        serializer.startTag(null, "permissions");
+        for (BasePermission bp : mPermissions.values()) {
+            writePermissionLPr(serializer, bp);
+        }
+        serializer.endTag(null, "permissions");
+    }
+
+    /**
+     * Writes the records that packages.xml holds besides packages, which need
+     * to be read after all packages.
+     */
+    private void writeGlobalTailLPr(XmlSerializer serializer)
+            throws XmlPullParserException, IOException {
+        for (final SharedUserSetting usr : mSharedUsers.values()) {
+            serializer.startTag(null, "shared-user");
+            serializer.attribute(null, ATTR_NAME, usr.name);
+            serializer.attribute(null, "userId",
+                    Integer.toString(usr.userId));
+            usr.signatures.writeXml(serializer, "sigs", mPastSignatures);
+            writePermissionsLPr(serializer, usr.getPermissionsState()
+                    .getInstallPermissionStates());
+            serializer.endTag(null, "shared-user");
+        }
+
+        if (mPackagesToBeCleaned.size() > 0) {
+            for (PackageCleanItem item : mPackagesToBeCleaned) {
+                final String userStr = Integer.toString(item.userId);
+                serializer.startTag(null, "cleaning-package");
+                serializer.attribute(null, ATTR_NAME, item.packageName);
+                serializer.attribute(null, ATTR_CODE, item.andCode ? "true" : "false");
+                serializer.attribute(null, ATTR_USER, userStr);
+                serializer.endTag(null, "cleaning-package");
+            }
+        }
+
+        if (mRenamedPackages.size() > 0) {
+            for (Map.Entry<String, String> e : mRenamedPackages.entrySet()) {
+                serializer.startTag(null, "renamed-package");
+                serializer.attribute(null, "new", e.getKey());
+                serializer.attribute(null, "old", e.getValue());
+                serializer.endTag(null, "renamed-package");
+            }
+        }
+
+        final int numIVIs = mRestoredIntentFilterVerifications.size();
+        if (numIVIs > 0) {
+            if (DEBUG_DOMAIN_VERIFICATION) {
+                Slog.i(TAG, "Writing restored-ivi entries to packages.xml");
+            }
+            serializer.startTag(null, "restored-ivi");
+            for (int i = 0; i < numIVIs; i++) {
+                IntentFilterVerificationInfo ivi = mRestoredIntentFilterVerifications.valueAt(i);
+                writeDomainVerificationsLPr(serializer, ivi);
+            }
+            serializer.endTag(null, "restored-ivi");
+        } else {
+            if (DEBUG_DOMAIN_VERIFICATION) {
+                Slog.i(TAG, "  no restored IVI entries to write");
+            }
+        }
+
+        mKeySetManagerService.writeKeySetManagerServiceLPr(serializer);
+    }
+
+    /**
+     * Serializes every record of packages.xml on its own to compute its digest
+     * into {@code outDigests}: one per package name, covering both its
+     * {@code <package>} and {@code <updated-package>}, and one for everything
+     * else. If packages.xml was fully written by this process, writes just the
+     * records that changed since as segments next to it, unless that would
+     * leave too many segments around.
+     *
+     * @return whether all changes were persisted; otherwise the caller needs
+     *         to write and compact the full packages.xml.
+     */
+    private boolean writeDirtySegmentsLPr(ArrayMap<String, byte[]> outDigests) {
+        final boolean canWriteSegments = mPersistedRecordDigests != null
+                && mSettingsFilename.exists() && !mBackupSettingsFilename.exists();
+        final ArrayMap<String, byte[]> dirty = new ArrayMap<String, byte[]>();
+        try {
+            final MessageDigest digester = MessageDigest.getInstance("SHA-1");
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+            final ArraySet<String> names = new ArraySet<String>(mPackages.keySet());
+            names.addAll(mDisabledSysPackages.keySet());
+            names.add(SEGMENT_GLOBAL);
+            for (int i = 0; i < names.size(); i++) {
+                final String name = names.valueAt(i);
+                buf.reset();
+                writeSegmentLPr(buf, name);
+                final byte[] data = buf.toByteArray();
+                final byte[] digest = digester.digest(data);
+                outDigests.put(name, digest);
+                if (canWriteSegments
+                        && !Arrays.equals(digest, mPersistedRecordDigests.get(name))) {
+                    dirty.put(name, data);
+                }
+            }
+
+            if (!canWriteSegments) {
+                return false;
+            }
+            // Records that are gone need an empty segment to hide them.
+            for (int i = 0; i < mPersistedRecordDigests.size(); i++) {
+                final String name = mPersistedRecordDigests.keyAt(i);
+                if (!outDigests.containsKey(name)) {
+                    buf.reset();
+                    writeSegmentLPr(buf, name);
+                    dirty.put(name, buf.toByteArray());
+                }
+            }
+        } catch (NoSuchAlgorithmException | XmlPullParserException | IOException e) {
+            Slog.w(PackageManagerService.TAG, "Unable to serialize package manager settings", e);
+            outDigests.clear();
+            return false;
+        }
+
+        int segmentCount = mWrittenSegments.size();
+        for (int i = 0; i < dirty.size(); i++) {
+            if (!mWrittenSegments.containsKey(dirty.keyAt(i))) {
+                segmentCount++;
+            }
+        }
+        if (segmentCount > Math.max(MIN_SEGMENTS_BEFORE_COMPACT,
+                outDigests.size() / SEGMENT_COMPACT_DIVISOR)) {
+            return false;
+        }
+        if (dirty.isEmpty()) {
+            mPersistedRecordDigests = outDigests;
+            return true;
+        }
+
+        // Segment files never overwrite each other, so the ones in effect stay
+        // intact until the commit file naming their replacements is in place.
+        final int sequence = mSegmentSequence + 1;
+        final ArrayMap<String, String> committed = new ArrayMap<String, String>(mWrittenSegments);
+        final ArrayList<String> written = new ArrayList<String>();
+        try {
+            if (!mSettingsSegmentsDir.exists()) {
+                mSettingsSegmentsDir.mkdirs();
+                FileUtils.setPermissions(mSettingsSegmentsDir.toString(),
+                        FileUtils.S_IRWXU|FileUtils.S_IRWXG, -1, -1);
+            }
+            for (int i = 0; i < dirty.size(); i++) {
+                final String fileName = mSettingsGeneration + "-" + sequence + "-" + dirty.keyAt(i);
+                writeSegmentFileLPr(fileName, dirty.valueAt(i));
+                written.add(fileName);
+                committed.put(dirty.keyAt(i), fileName);
+            }
+            syncSegmentsDirLPr();
+            writeSegmentFileLPr(SEGMENTS_COMMIT_FILENAME, writeSegmentsCommitLPr(committed));
+        } catch (XmlPullParserException | IOException e) {
+            // Nothing of this write is in effect; a full write supersedes it.
+            Slog.w(PackageManagerService.TAG, "Unable to write package manager settings segment",
+                    e);
+            for (int i = 0; i < written.size(); i++) {
+                new File(mSettingsSegmentsDir, written.get(i)).delete();
+            }
+            return false;
+        }
+
+        final ArrayMap<String, String> superseded = new ArrayMap<String, String>(mWrittenSegments);
+        mWrittenSegments.clear();
+        mWrittenSegments.putAll(committed);
+        mSegmentSequence = sequence;
+        mPersistedRecordDigests = outDigests;
+        try {
+            syncSegmentsDirLPr();
+        } catch (IOException e) {
+            Slog.w(PackageManagerService.TAG, "Unable to sync package manager settings segments",
+                    e);
+            return false;
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            final String fileName = superseded.get(dirty.keyAt(i));
+            if (fileName != null) {
+                new File(mSettingsSegmentsDir, fileName).delete();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serializes the commit file listing {@code segments}, the segment file
+     * of each record.
+     */
+    private byte[] writeSegmentsCommitLPr(ArrayMap<String, String> segments)
+            throws XmlPullParserException, IOException {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        XmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(buf, StandardCharsets.UTF_8.name());
+        serializer.startDocument(null, true);
+        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        serializer.startTag(null, TAG_SEGMENTS);
+        XmlUtils.writeIntAttribute(serializer, ATTR_GENERATION, mSettingsGeneration);
+        for (int i = 0; i < segments.size(); i++) {
+            serializer.startTag(null, TAG_SEGMENT);
+            serializer.attribute(null, ATTR_NAME, segments.keyAt(i));
+            serializer.attribute(null, ATTR_FILE, segments.valueAt(i));
+            serializer.endTag(null, TAG_SEGMENT);
+        }
+        serializer.endTag(null, TAG_SEGMENTS);
+        serializer.endDocument();
+        return buf.toByteArray();
+    }
+
+    /**
+     * Writes the record {@code name} of packages.xml as a segment document,
+     * which is empty if there is no such record anymore.
+     */
+    private void writeSegmentLPr(OutputStream out, String name)
+            throws XmlPullParserException, IOException {
+        // Every segment stands alone, so it can't share signatures.
+        mPastSignatures.clear();
+
+        XmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(out, StandardCharsets.UTF_8.name());
+        serializer.startDocument(null, true);
+        serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
+        serializer.startTag(null, TAG_SEGMENT);
+
+        if (SEGMENT_GLOBAL.equals(name)) {
+            serializer.startTag(null, TAG_SEGMENT_HEAD);
+            writeGlobalHeadLPr(serializer);
+            serializer.endTag(null, TAG_SEGMENT_HEAD);
+            serializer.startTag(null, TAG_SEGMENT_TAIL);
+            writeGlobalTailLPr(serializer);
+            serializer.endTag(null, TAG_SEGMENT_TAIL);
+        } else {
+            final PackageSetting pkg = mPackages.get(name);
+            if (pkg != null) {
+                writePackageLPr(serializer, pkg);
+            }
+            final PackageSetting disabledPkg = mDisabledSysPackages.get(name);
+            if (disabledPkg != null) {
+                writeDisabledSysPackageLPr(serializer, disabledPkg);
+            }
+        }
+
+        serializer.endTag(null, TAG_SEGMENT);
+        serializer.endDocument();
+        mPastSignatures.clear();
+    }
+
+    /**
+     * Atomically replaces the file {@code fileName} in the segments directory.
+     */
+    private void writeSegmentFileLPr(String fileName, byte[] data) throws IOException {
+        final File file = new File(mSettingsSegmentsDir, fileName);
+        final File tempFile = new File(mSettingsSegmentsDir, file.getName() + ".tmp");
+        FileOutputStream fstr = null;
+        try {
+            fstr = new FileOutputStream(tempFile);
+            fstr.write(data);
+            FileUtils.sync(fstr);
+            fstr.close();
+            fstr = null;
+            FileUtils.setPermissions(tempFile.toString(),
+                    FileUtils.S_IRUSR|FileUtils.S_IWUSR
+                    |FileUtils.S_IRGRP|FileUtils.S_IWGRP,
+                    -1, -1);
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile + " to " + file);
+            }
+        } finally {
+            IoUtils.closeQuietly(fstr);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Flushes the names of the files in the segments directory to disk.
+     */
+    private void syncSegmentsDirLPr() throws IOException {
+        FileDescriptor fd = null;
+        try {
+            fd = Os.open(mSettingsSegmentsDir.getAbsolutePath(), O_RDONLY, 0);
+            Os.fsync(fd);
+        } catch (ErrnoException e) {
+            throw e.rethrowAsIOException();
+        } finally {
+            IoUtils.closeQuietly(fd);
+        }
+    }
+
+    /**
+     * Returns the segment files that the commit file lists for generation
+     * {@code generation} of packages.xml, keyed by record, and deletes all
+     * others.
+     */
+    private ArrayMap<String, File> readSegmentIndexLPr(int generation) {
+        final ArrayMap<String, File> segments = new ArrayMap<String, File>();
+        final File[] files = mSettingsSegmentsDir.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        final File commitFile = new File(mSettingsSegmentsDir, SEGMENTS_COMMIT_FILENAME);
+        FileInputStream str = null;
+        try {
+            str = new FileInputStream(commitFile);
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(str, StandardCharsets.UTF_8.name());
+
+            int type;
+            while ((type = parser.next()) != XmlPullParser.START_TAG
+                    && type != XmlPullParser.END_DOCUMENT) {
+                ;
+            }
+            if (type == XmlPullParser.START_TAG
+                    && XmlUtils.readIntAttribute(parser, ATTR_GENERATION, -1) == generation) {
+                final int outerDepth = parser.getDepth();
+                while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
+                        && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth)) {
+                    if (type == XmlPullParser.END_TAG || type == XmlPullParser.TEXT) {
+                        continue;
+                    }
+                    if (parser.getName().equals(TAG_SEGMENT)) {
+                        segments.put(parser.getAttributeValue(null, ATTR_NAME),
+                                new File(mSettingsSegmentsDir,
+                                        parser.getAttributeValue(null, ATTR_FILE)));
+                    }
+                    XmlUtils.skipCurrentTag(parser);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // No segments were committed.
+        } catch (XmlPullParserException | IOException e) {
+            Slog.wtf(PackageManagerService.TAG, "Error reading package manager settings segments",
+                    e);
+            segments.clear();
+        } finally {
+            IoUtils.closeQuietly(str);
+        }
+
+        // Anything else was superseded, or never committed.
+        for (File file : files) {
+            if (!segments.containsValue(file)
+                    && !(file.equals(commitFile) && !segments.isEmpty())) {
+                Slog.i(PackageManagerService.TAG, "Deleting stale settings segment "
+                        + file.getName());
+                file.delete();
+            }
+        }
+        return segments;
+    }
+
+    private void deleteSegmentsLPr() {
+        mWrittenSegments.clear();
+        mSegmentSequence = 0;
+        final File[] files = mSettingsSegmentsDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
     void writePackageListLPr() {
         writePackageListLPr(-1);
     }
@@ -2223,18 +2616,11 @@ final class Settings {
             userIds = ArrayUtils.appendInt(userIds, creatingUserId);
         }
 
-        // Write package list file now, use a JournaledFile.
-        File tempFile = new File(mPackageListFilename.getAbsolutePath() + ".tmp");
-        JournaledFile journal = new JournaledFile(mPackageListFilename, tempFile);
-
-        final File writeTarget = journal.chooseForWrite();
-        FileOutputStream fstr = null;
-        BufferedOutputStream str = null;
+        // Build the package list first, most changes to settings leave it
+        // as it is.
+        final ByteArrayOutputStream list = new ByteArrayOutputStream();
+        final byte[] digest;
         try {
-            fstr = new FileOutputStream(writeTarget);
-            str = new BufferedOutputStream(fstr);
-            FileUtils.setPermissions(fstr.getFD(), 0640, SYSTEM_UID, PACKAGE_INFO_GID);
-
             StringBuilder sb = new StringBuilder();
             for (final PackageSetting pkg : mPackages.values()) {
                 if (pkg.pkg == null || pkg.pkg.applicationInfo == null) {
@@ -2288,12 +2674,36 @@ final class Settings {
                     sb.append("none");
                 }
                 sb.append("\n");
-                str.write(sb.toString().getBytes());
+                list.write(sb.toString().getBytes());
             }
+            digest = MessageDigest.getInstance("SHA-1").digest(list.toByteArray());
+        } catch (Exception e) {
+            Slog.wtf(TAG, "Failed to write packages.list", e);
+            return;
+        }
+        if (Arrays.equals(digest, mPackageListDigest) && mPackageListFilename.exists()) {
+            return;
+        }
+
+        // Write package list file now, use a JournaledFile.
+        File tempFile = new File(mPackageListFilename.getAbsolutePath() + ".tmp");
+        JournaledFile journal = new JournaledFile(mPackageListFilename, tempFile);
+
+        final File writeTarget = journal.chooseForWrite();
+        FileOutputStream fstr = null;
+        BufferedOutputStream str = null;
+        mPackageListDigest = null;
+        try {
+            fstr = new FileOutputStream(writeTarget);
+            str = new BufferedOutputStream(fstr);
+            FileUtils.setPermissions(fstr.getFD(), 0640, SYSTEM_UID, PACKAGE_INFO_GID);
+
+            list.writeTo(str);
             str.flush();
             FileUtils.sync(fstr);
             str.close();
             journal.commit();
+            mPackageListDigest = digest;
         } catch (Exception e) {
             Slog.wtf(TAG, "Failed to write packages.list", e);
             IoUtils.closeQuietly(str);
@@ -2508,6 +2918,10 @@ final class Settings {
         mPendingPackages.clear();
         mPastSignatures.clear();
         mKeySetRefs.clear();
+        // What is on disk is unknown until the next full write.
+        mPersistedRecordDigests = null;
+        mWrittenSegments.clear();
+        mSegmentSequence = 0;
 
         try {
             if (str == null) {
@@ -2541,6 +2955,18 @@ final class Settings {
                 return false;
             }
 
+            // Records written since packages.xml was last compacted replace
+            // their counterparts in it. Segments are read in the same order
+            // as packages.xml: permissions before packages, and shared users
+            // and key sets after them.
+            mSettingsGeneration = XmlUtils.readIntAttribute(parser, ATTR_GENERATION, 0);
+            final ArrayMap<String, File> segments = readSegmentIndexLPr(mSettingsGeneration);
+            final File globalSegment = segments.remove(SEGMENT_GLOBAL);
+            boolean packageSegmentsRead = false;
+            if (globalSegment != null) {
+                readSegmentLPw(globalSegment, TAG_SEGMENT_HEAD);
+            }
+
             int outerDepth = parser.getDepth();
             while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
                     && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth)) {
@@ -2548,111 +2974,35 @@ final class Settings {
                     continue;
                 }
 
-                String tagName = parser.getName();
-                if (tagName.equals("package")) {
-                    readPackageLPw(parser);
-                } else if (tagName.equals("permissions")) {
-                    readPermissionsLPw(mPermissions, parser);
-                } else if (tagName.equals("permission-trees")) {
-                    readPermissionsLPw(mPermissionTrees, parser);
-                } else if (tagName.equals("shared-user")) {
-                    readSharedUserLPw(parser);
-                } else if (tagName.equals("preferred-packages")) {
-                    // no longer used.
-                } else if (tagName.equals("preferred-activities")) {
-                    // Upgrading from old single-user implementation;
-                    // these are the preferred activities for user 0.
-                    readPreferredActivitiesLPw(parser, 0);
-                } else if (tagName.equals(TAG_PERSISTENT_PREFERRED_ACTIVITIES)) {
-                    // TODO: check whether this is okay! as it is very
-                    // similar to how preferred-activities are treated
-                    readPersistentPreferredActivitiesLPw(parser, 0);
-                } else if (tagName.equals(TAG_CROSS_PROFILE_INTENT_FILTERS)) {
-                    // TODO: check whether this is okay! as it is very
-                    // similar to how preferred-activities are treated
-                    readCrossProfileIntentFiltersLPw(parser, 0);
-                } else if (tagName.equals(TAG_DEFAULT_BROWSER)) {
-                    readDefaultAppsLPw(parser, 0);
-                } else if (tagName.equals("updated-package")) {
-                    readDisabledSysPackageLPw(parser);
-                } else if (tagName.equals("cleaning-package")) {
-                    String name = parser.getAttributeValue(null, ATTR_NAME);
-                    String userStr = parser.getAttributeValue(null, ATTR_USER);
-                    String codeStr = parser.getAttributeValue(null, ATTR_CODE);
-                    if (name != null) {
-                        int userId = 0;
-                        boolean andCode = true;
-                        try {
-                            if (userStr != null) {
-                                userId = Integer.parseInt(userStr);
-                            }
-                        } catch (NumberFormatException e) {
-                        }
-                        if (codeStr != null) {
-                            andCode = Boolean.parseBoolean(codeStr);
-                        }
-                        addPackageToCleanLPw(new PackageCleanItem(userId, name, andCode));
+                final String tagName = parser.getName();
+                if (isPackageElement(tagName)) {
+                    // Superseded by a segment, no need to parse it.
+                    if (segments.containsKey(parser.getAttributeValue(null, ATTR_NAME))) {
+                        skipSupersededPackageLPw(parser);
+                        continue;
                     }
-                } else if (tagName.equals("renamed-package")) {
-                    String nname = parser.getAttributeValue(null, "new");
-                    String oname = parser.getAttributeValue(null, "old");
-                    if (nname != null && oname != null) {
-                        mRenamedPackages.put(nname, oname);
+                } else {
+                    if (!packageSegmentsRead && isGlobalTailElement(tagName)) {
+                        readPackageSegmentsLPw(segments);
+                        packageSegmentsRead = true;
                     }
-                } else if (tagName.equals("restored-ivi")) {
-                    readRestoredIntentFilterVerifications(parser);
-                } else if (tagName.equals("last-platform-version")) {
-                    // Upgrade from older XML schema
-                    final VersionInfo internal = findOrCreateVersion(
-                            StorageManager.UUID_PRIVATE_INTERNAL);
-                    final VersionInfo external = findOrCreateVersion(
-                            StorageManager.UUID_PRIMARY_PHYSICAL);
-
-                    internal.sdkVersion = XmlUtils.readIntAttribute(parser, "internal", 0);
-                    external.sdkVersion = XmlUtils.readIntAttribute(parser, "external", 0);
-                    internal.fingerprint = external.fingerprint =
-                            XmlUtils.readStringAttribute(parser, "fingerprint");
-
-                } else if (tagName.equals("database-version")) {
-                    // Upgrade from older XML schema
-                    final VersionInfo internal = findOrCreateVersion(
-                            StorageManager.UUID_PRIVATE_INTERNAL);
-                    final VersionInfo external = findOrCreateVersion(
-                            StorageManager.UUID_PRIMARY_PHYSICAL);
-
-                    internal.databaseVersion = XmlUtils.readIntAttribute(parser, "internal", 0);
-                    external.databaseVersion = XmlUtils.readIntAttribute(parser, "external", 0);
-
-                } else if (tagName.equals("verifier")) {
-                    final String deviceIdentity = parser.getAttributeValue(null, "device");
-                    try {
-                        mVerifierDeviceIdentity = VerifierDeviceIdentity.parse(deviceIdentity);
-                    } catch (IllegalArgumentException e) {
-                        Slog.w(PackageManagerService.TAG, "Discard invalid verifier device id: "
-                                + e.getMessage());
+                    if (globalSegment != null) {
+                        XmlUtils.skipCurrentTag(parser);
+                        continue;
                     }
-                } else if (TAG_READ_EXTERNAL_STORAGE.equals(tagName)) {
-                    final String enforcement = parser.getAttributeValue(null, ATTR_ENFORCEMENT);
-                    mReadExternalStorageEnforced = "1".equals(enforcement);
-                } else if (tagName.equals("keyset-settings")) {
-                    mKeySetManagerService.readKeySetsLPw(parser, mKeySetRefs);
-                } else if (TAG_VERSION.equals(tagName)) {
-                    final String volumeUuid = XmlUtils.readStringAttribute(parser,
-                            ATTR_VOLUME_UUID);
-                    final VersionInfo ver = findOrCreateVersion(volumeUuid);
-                    ver.sdkVersion = XmlUtils.readIntAttribute(parser, ATTR_SDK_VERSION);
-                    ver.databaseVersion = XmlUtils.readIntAttribute(parser, ATTR_SDK_VERSION);
-                    ver.fingerprint = XmlUtils.readStringAttribute(parser, ATTR_FINGERPRINT);
-
-                } else {
-                    Slog.w(PackageManagerService.TAG, "Unknown element under <packages>: "
-                            + parser.getName());
-                    XmlUtils.skipCurrentTag(parser);
                 }
+                readSettingsElementLPw(parser, tagName);
             }
 
             str.close();
 
+            if (!packageSegmentsRead) {
+                readPackageSegmentsLPw(segments);
+            }
+            if (globalSegment != null) {
+                readSegmentLPw(globalSegment, TAG_SEGMENT_TAIL);
+            }
+
         } catch (XmlPullParserException e) {
             mReadMessages.append("Error reading: " + e.toString());
             PackageManagerService.reportSettingsProblem(Log.ERROR, "Error reading settings: " + e);
@@ -2757,6 +3107,210 @@ final class Settings {
         return true;
     }
 
+    /**
+     * Reads a single element directly under {@code <packages>}, or under the
+     * root of a segment.
+     */
+    private void readSettingsElementLPw(XmlPullParser parser, String tagName)
+            throws XmlPullParserException, IOException {
+        if (tagName.equals("package")) {
+            readPackageLPw(parser);
+        } else if (tagName.equals("permissions")) {
+            readPermissionsLPw(mPermissions, parser);
+        } else if (tagName.equals("permission-trees")) {
+            readPermissionsLPw(mPermissionTrees, parser);
+        } else if (tagName.equals("shared-user")) {
+            readSharedUserLPw(parser);
+        } else if (tagName.equals("preferred-packages")) {
+            // no longer used.
+        } else if (tagName.equals("preferred-activities")) {
+            // Upgrading from old single-user implementation;
+            // these are the preferred activities for user 0.
+            readPreferredActivitiesLPw(parser, 0);
+        } else if (tagName.equals(TAG_PERSISTENT_PREFERRED_ACTIVITIES)) {
+            // TODO: check whether this is okay! as it is very
+            // similar to how preferred-activities are treated
+            readPersistentPreferredActivitiesLPw(parser, 0);
+        } else if (tagName.equals(TAG_CROSS_PROFILE_INTENT_FILTERS)) {
+            // TODO: check whether this is okay! as it is very
+            // similar to how preferred-activities are treated
+            readCrossProfileIntentFiltersLPw(parser, 0);
+        } else if (tagName.equals(TAG_DEFAULT_BROWSER)) {
+            readDefaultAppsLPw(parser, 0);
+        } else if (tagName.equals("updated-package")) {
+            readDisabledSysPackageLPw(parser);
+        } else if (tagName.equals("cleaning-package")) {
+            String name = parser.getAttributeValue(null, ATTR_NAME);
+            String userStr = parser.getAttributeValue(null, ATTR_USER);
+            String codeStr = parser.getAttributeValue(null, ATTR_CODE);
+            if (name != null) {
+                int userId = 0;
+                boolean andCode = true;
+                try {
+                    if (userStr != null) {
+                        userId = Integer.parseInt(userStr);
+                    }
+                } catch (NumberFormatException e) {
+                }
+                if (codeStr != null) {
+                    andCode = Boolean.parseBoolean(codeStr);
+                }
+                addPackageToCleanLPw(new PackageCleanItem(userId, name, andCode));
+            }
+        } else if (tagName.equals("renamed-package")) {
+            String nname = parser.getAttributeValue(null, "new");
+            String oname = parser.getAttributeValue(null, "old");
+            if (nname != null && oname != null) {
+                mRenamedPackages.put(nname, oname);
+            }
+        } else if (tagName.equals("restored-ivi")) {
+            readRestoredIntentFilterVerifications(parser);
+        } else if (tagName.equals("last-platform-version")) {
+            // Upgrade from older XML schema
+            final VersionInfo internal = findOrCreateVersion(
+                    StorageManager.UUID_PRIVATE_INTERNAL);
+            final VersionInfo external = findOrCreateVersion(
+                    StorageManager.UUID_PRIMARY_PHYSICAL);
+
+            internal.sdkVersion = XmlUtils.readIntAttribute(parser, "internal", 0);
+            external.sdkVersion = XmlUtils.readIntAttribute(parser, "external", 0);
+            internal.fingerprint = external.fingerprint =
+                    XmlUtils.readStringAttribute(parser, "fingerprint");
+
+        } else if (tagName.equals("database-version")) {
+            // Upgrade from older XML schema
+            final VersionInfo internal = findOrCreateVersion(
+                    StorageManager.UUID_PRIVATE_INTERNAL);
+            final VersionInfo external = findOrCreateVersion(
+                    StorageManager.UUID_PRIMARY_PHYSICAL);
+
+            internal.databaseVersion = XmlUtils.readIntAttribute(parser, "internal", 0);
+            external.databaseVersion = XmlUtils.readIntAttribute(parser, "external", 0);
+
+        } else if (tagName.equals("verifier")) {
+            final String deviceIdentity = parser.getAttributeValue(null, "device");
+            try {
+                mVerifierDeviceIdentity = VerifierDeviceIdentity.parse(deviceIdentity);
+            } catch (IllegalArgumentException e) {
+                Slog.w(PackageManagerService.TAG, "Discard invalid verifier device id: "
+                        + e.getMessage());
+            }
+        } else if (TAG_READ_EXTERNAL_STORAGE.equals(tagName)) {
+            final String enforcement = parser.getAttributeValue(null, ATTR_ENFORCEMENT);
+            mReadExternalStorageEnforced = "1".equals(enforcement);
+        } else if (tagName.equals("keyset-settings")) {
+            mKeySetManagerService.readKeySetsLPw(parser, mKeySetRefs);
+        } else if (TAG_VERSION.equals(tagName)) {
+            final String volumeUuid = XmlUtils.readStringAttribute(parser,
+                    ATTR_VOLUME_UUID);
+            final VersionInfo ver = findOrCreateVersion(volumeUuid);
+            ver.sdkVersion = XmlUtils.readIntAttribute(parser, ATTR_SDK_VERSION);
+            ver.databaseVersion = XmlUtils.readIntAttribute(parser, ATTR_SDK_VERSION);
+            ver.fingerprint = XmlUtils.readStringAttribute(parser, ATTR_FINGERPRINT);
+
+        } else {
+            Slog.w(PackageManagerService.TAG, "Unknown element under <packages>: "
+                    + parser.getName());
+            XmlUtils.skipCurrentTag(parser);
+        }
+    }
+
+    /**
+     * Skips a package element of packages.xml that a segment supersedes, except
+     * for its signatures: each certificate is only written in full the first
+     * time it appears, and later elements refer to it by index.
+     */
+    private void skipSupersededPackageLPw(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        final int outerDepth = parser.getDepth();
+        int type;
+        while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
+                && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth)) {
+            if (type == XmlPullParser.END_TAG || type == XmlPullParser.TEXT) {
+                continue;
+            }
+
+            if (parser.getName().equals("sigs")) {
+                new PackageSignatures().readXml(parser, mPastSignatures);
+            } else {
+                XmlUtils.skipCurrentTag(parser);
+            }
+        }
+    }
+
+    private static boolean isPackageElement(String tagName) {
+        return tagName.equals("package") || tagName.equals("updated-package");
+    }
+
+    /**
+     * Whether the element needs to be read after all packages, see
+     * {@link #writeGlobalTailLPr}.
+     */
+    private static boolean isGlobalTailElement(String tagName) {
+        return tagName.equals("shared-user") || tagName.equals("cleaning-package")
+                || tagName.equals("renamed-package") || tagName.equals("restored-ivi")
+                || tagName.equals("keyset-settings");
+    }
+
+    private void readPackageSegmentsLPw(ArrayMap<String, File> segments)
+            throws XmlPullParserException, IOException {
+        for (int i = 0; i < segments.size(); i++) {
+            readSegmentLPw(segments.valueAt(i), null);
+        }
+    }
+
+    /**
+     * Reads the elements of a segment written by {@link #writeSegmentLPr}, or
+     * if {@code section} is not null, only those inside that section.
+     */
+    private void readSegmentLPw(File file, String section)
+            throws XmlPullParserException, IOException {
+        // Segments don't share signatures with packages.xml or each other.
+        final ArrayList<Signature> pastSignatures = new ArrayList<Signature>(mPastSignatures);
+        mPastSignatures.clear();
+        FileInputStream str = null;
+        try {
+            str = new FileInputStream(file);
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(str, StandardCharsets.UTF_8.name());
+
+            int type;
+            while ((type = parser.next()) != XmlPullParser.START_TAG
+                    && type != XmlPullParser.END_DOCUMENT) {
+                ;
+            }
+            if (type != XmlPullParser.START_TAG) {
+                throw new XmlPullParserException("No start tag found in " + file);
+            }
+            readSegmentElementsLPw(parser, section);
+        } finally {
+            IoUtils.closeQuietly(str);
+            mPastSignatures.clear();
+            mPastSignatures.addAll(pastSignatures);
+        }
+    }
+
+    private void readSegmentElementsLPw(XmlPullParser parser, String section)
+            throws XmlPullParserException, IOException {
+        final int outerDepth = parser.getDepth();
+        int type;
+        while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
+                && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth)) {
+            if (type == XmlPullParser.END_TAG || type == XmlPullParser.TEXT) {
+                continue;
+            }
+
+            final String tagName = parser.getName();
+            if (section == null) {
+                readSettingsElementLPw(parser, tagName);
+            } else if (section.equals(tagName)) {
+                readSegmentElementsLPw(parser, null);
+            } else {
+                XmlUtils.skipCurrentTag(parser);
+            }
+        }
+    }
+
     void applyDefaultPreferredAppsLPw(PackageManagerService service, int userId) {
         // First pull data from any pre-installed apps.
         for (PackageSetting ps : mPackages.values()) {
@@ -16,6 +16,7 @@
 
 package com.android.volley;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -68,6 +69,12 @@ public interface Cache {
         /** The data returned from cache. */
         public byte[] data;
 
+        /**
+         * Read-only view of the data, set instead of {@link #data} by caches that serve
+         * entries straight from memory-mapped files. Null if {@link #data} holds the data.
+         */
+        public ByteBuffer dataBuffer;
+
         /** ETag for cache coherency. */
         public String etag;
 
@@ -95,6 +102,33 @@ public interface Cache {
         public boolean refreshNeeded() {
             return this.softTtl < System.currentTimeMillis();
         }
+
+        /** Returns the length of the data in bytes. */
+        public int getDataLength() {
+            return data != null ? data.length : dataBuffer.remaining();
+        }
+
+        /**
+         * Returns the data as a byte array, copying it out of {@link #dataBuffer} if the
+         * entry has no array.
+         */
+        public byte[] getData() {
+            if (data != null || dataBuffer == null) {
+                return data;
+            }
+            ByteBuffer buffer = dataBuffer.duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        /** Returns a read-only view of the data without copying it. */
+        public ByteBuffer getDataBuffer() {
+            if (dataBuffer != null) {
+                return dataBuffer.duplicate();
+            }
+            return data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+        }
     }
 
 }
@@ -115,8 +115,15 @@ public class CacheDispatcher extends Thread {
 
                 // We have a cache hit; parse its data for delivery back to the request.
                 request.addMarker("cache-hit");
-                Response<?> response = request.parseNetworkResponse(
-                        new NetworkResponse(entry.data, entry.responseHeaders));
+                NetworkResponse cachedResponse;
+                if (entry.data == null && request.acceptsDataBuffer()) {
+                    // Hand the mapped body straight to the request without copying it.
+                    cachedResponse = NetworkResponse.forDataBuffer(
+                            entry.getDataBuffer(), entry.responseHeaders);
+                } else {
+                    cachedResponse = new NetworkResponse(entry.getData(), entry.responseHeaders);
+                }
+                Response<?> response = request.parseNetworkResponse(cachedResponse);
                 request.addMarker("cache-hit-parsed");
 
                 if (!entry.refreshNeeded()) {
@@ -22,6 +22,7 @@ import android.os.Build;
 import android.os.Process;
 import android.os.SystemClock;
 
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -41,6 +42,8 @@ public class NetworkDispatcher extends Thread {
     private final Cache mCache;
     /** For posting responses and errors. */
     private final ResponseDelivery mDelivery;
+    /** Tracks coalesced in-flight requests, or null if coalescing is disabled. */
+    private final RequestCoalescer mCoalescer;
     /** Used for telling us to die. */
     private volatile boolean mQuit = false;
 
@@ -56,10 +59,28 @@ public class NetworkDispatcher extends Thread {
     public NetworkDispatcher(BlockingQueue<Request<?>> queue,
             Network network, Cache cache,
             ResponseDelivery delivery) {
+        this(queue, network, cache, delivery, null);
+    }
+
+    /**
+     * Creates a new network dispatcher thread that shares each network response with the
+     * requests coalesced behind it.  You must call {@link #start()} in order to begin
+     * processing.
+     *
+     * @param queue Queue of incoming requests for triage
+     * @param network Network interface to use for performing requests
+     * @param cache Cache interface to use for writing responses to cache
+     * @param delivery Delivery interface to use for posting responses
+     * @param coalescer Coalesced request tracker shared with the owning queue, or null
+     */
+    NetworkDispatcher(BlockingQueue<Request<?>> queue,
+            Network network, Cache cache,
+            ResponseDelivery delivery, RequestCoalescer coalescer) {
         mQueue = queue;
         mNetwork = network;
         mCache = cache;
         mDelivery = delivery;
+        mCoalescer = coalescer;
     }
 
     /**
@@ -103,14 +124,26 @@ public class NetworkDispatcher extends Thread {
                 // network request.
                 if (request.isCanceled()) {
                     request.finish("network-discard-cancelled");
+                    redispatchCoalesced(request);
                     continue;
                 }
 
                 addTrafficStatsTag(request);
 
                 // Perform the network request.
-                NetworkResponse networkResponse = mNetwork.performRequest(request);
+                NetworkResponse networkResponse;
+                try {
+                    networkResponse = mNetwork.performRequest(request);
+                } catch (VolleyError volleyError) {
+                    volleyError.setNetworkTimeMs(SystemClock.elapsedRealtime() - startTimeMs);
+                    deliverToCoalesced(request, null, volleyError);
+                    throw volleyError;
+                } catch (RuntimeException e) {
+                    deliverToCoalesced(request, null, new VolleyError(e));
+                    throw e;
+                }
                 request.addMarker("network-http-complete");
+                deliverToCoalesced(request, networkResponse, null);
 
                 // If the server returned 304 AND we delivered a response already,
                 // we're done -- don't deliver a second identical response.
@@ -145,6 +178,54 @@ public class NetworkDispatcher extends Thread {
         }
     }
 
+    /**
+     * Hands the outcome of a leader's round trip to the requests coalesced behind it. Each
+     * request parses the shared response itself, since identical URLs may still be requested
+     * through different Request types.
+     */
+    private void deliverToCoalesced(Request<?> leader, NetworkResponse networkResponse,
+            VolleyError error) {
+        if (mCoalescer == null) {
+            return;
+        }
+        List<Request<?>> waiting = mCoalescer.drain(leader);
+        for (Request<?> request : waiting) {
+            request.addMarker("network-coalesced");
+            if (request.isCanceled()) {
+                request.finish("network-discard-cancelled");
+                continue;
+            }
+            if (error != null) {
+                parseAndDeliverNetworkError(request, error);
+                continue;
+            }
+            try {
+                Response<?> response = request.parseNetworkResponse(networkResponse);
+                request.addMarker("network-parse-complete");
+                request.markDelivered();
+                mDelivery.postResponse(request, response);
+            } catch (Exception e) {
+                VolleyLog.e(e, "Unhandled exception %s", e.toString());
+                mDelivery.postError(request, new VolleyError(e));
+            }
+        }
+    }
+
+    /**
+     * Sends the requests coalesced behind a canceled leader back out; the first of them that
+     * is still identical to nothing in flight becomes the new leader.
+     */
+    private void redispatchCoalesced(Request<?> leader) {
+        if (mCoalescer == null) {
+            return;
+        }
+        for (Request<?> request : mCoalescer.drain(leader)) {
+            if (!mCoalescer.offer(request)) {
+                mQueue.add(request);
+            }
+        }
+    }
+
     private void parseAndDeliverNetworkError(Request<?> request, VolleyError error) {
         error = request.parseNetworkError(error);
         mDelivery.postError(request, error);
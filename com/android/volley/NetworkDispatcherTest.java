@@ -97,4 +97,25 @@ public class NetworkDispatcherTest {
         assertTrue(Arrays.equals(mCache.entryPut.data, CANNED_DATA));
         assertEquals("bananaphone", mCache.keyPut);
     }
+
+    @Test public void coalescedRequestsShareResponse() throws Exception {
+        mDispatcher.quit();
+        mDispatcher.join();
+        RequestCoalescer coalescer = new RequestCoalescer();
+        mDispatcher = new NetworkDispatcher(mNetworkQueue, mNetwork, mCache, mDelivery,
+                coalescer);
+        mDispatcher.start();
+
+        mNetwork.setDataToReturn(CANNED_DATA);
+        mRequest.setShouldCache(false);
+        MockRequest follower = new MockRequest();
+        follower.setShouldCache(false);
+        assertFalse(coalescer.offer(mRequest));
+        assertTrue(coalescer.offer(follower));
+        mNetworkQueue.add(mRequest);
+        mNetworkQueue.waitUntilEmpty(TIMEOUT_MILLIS);
+        assertTrue(follower.parseResponse_called);
+        assertTrue(follower.hasHadResponseDelivered());
+        assertSame(mRequest, mNetwork.requestHandled);
+    }
 }
@@ -18,6 +18,7 @@ package com.android.volley;
 
 import org.apache.http.HttpStatus;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -35,11 +36,7 @@ public class NetworkResponse {
      */
     public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
             boolean notModified, long networkTimeMs) {
-        this.statusCode = statusCode;
-        this.data = data;
-        this.headers = headers;
-        this.notModified = notModified;
-        this.networkTimeMs = networkTimeMs;
+        this(statusCode, data, null, headers, notModified, networkTimeMs);
     }
 
     public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
@@ -55,12 +52,57 @@ public class NetworkResponse {
         this(HttpStatus.SC_OK, data, headers, false, 0);
     }
 
+    private NetworkResponse(int statusCode, byte[] data, ByteBuffer dataBuffer,
+            Map<String, String> headers, boolean notModified, long networkTimeMs) {
+        this.statusCode = statusCode;
+        this.data = data;
+        this.dataBuffer = dataBuffer;
+        this.headers = headers;
+        this.notModified = notModified;
+        this.networkTimeMs = networkTimeMs;
+    }
+
+    /**
+     * Creates a new network response whose body is a read-only buffer, typically a mapped
+     * cache file. {@link #data} is null for such responses; they are only handed to requests
+     * that return true from {@link Request#acceptsDataBuffer()}.
+     * @param statusCode the HTTP status code
+     * @param dataBuffer Response body
+     * @param headers Headers returned with this response, or null for none
+     * @param notModified True if the server returned a 304 and the data was already in cache
+     * @param networkTimeMs Round-trip network time to receive network response
+     */
+    public static NetworkResponse forDataBuffer(int statusCode, ByteBuffer dataBuffer,
+            Map<String, String> headers, boolean notModified, long networkTimeMs) {
+        return new NetworkResponse(
+                statusCode, null, dataBuffer, headers, notModified, networkTimeMs);
+    }
+
+    public static NetworkResponse forDataBuffer(ByteBuffer dataBuffer,
+            Map<String, String> headers) {
+        return forDataBuffer(HttpStatus.SC_OK, dataBuffer, headers, false, 0);
+    }
+
+    /**
+     * Returns a read-only view of the response body without copying it, or null if the
+     * response has no body.
+     */
+    public ByteBuffer getDataBuffer() {
+        if (dataBuffer != null) {
+            return dataBuffer.duplicate();
+        }
+        return data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+    }
+
     /** The HTTP status code. */
     public final int statusCode;
 
-    /** Raw data from this response. */
+    /** Raw data from this response; null if the body is held in {@link #dataBuffer}. */
     public final byte[] data;
 
+    /** Read-only body of a response served from a mapped cache file, or null. */
+    public final ByteBuffer dataBuffer;
+
     /** Response headers. */
     public final Map<String, String> headers;
 
@@ -545,6 +545,18 @@ public abstract class Request<T> implements Comparable<Request<T>> {
      */
     abstract protected Response<T> parseNetworkResponse(NetworkResponse response);
 
+    /**
+     * Returns true if {@link #parseNetworkResponse(NetworkResponse)} can consume a response
+     * whose body is only available through {@link NetworkResponse#getDataBuffer()}. Such
+     * responses are served from memory-mapped cache files without copying the body; other
+     * requests get a copy in {@link NetworkResponse#data}.
+     *
+     * <p>The default implementation returns false.</p>
+     */
+    public boolean acceptsDataBuffer() {
+        return false;
+    }
+
     /**
      * Subclasses can override this method to parse 'networkError' and return a more specific error.
      *
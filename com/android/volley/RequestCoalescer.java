@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks uncacheable GET requests that are in flight so identical ones can share a single
+ * network round trip.
+ *
+ * <p>The first request for a given URL and header set becomes the leader and is dispatched as
+ * usual. Identical requests added while the leader is in flight are parked behind it; when the
+ * leader's network call completes, {@link NetworkDispatcher} drains them and hands each one the
+ * same {@link NetworkResponse} (or error) to parse and deliver on its own.
+ *
+ * <p>Cacheable requests never go through here; {@link RequestQueue} already stages those by
+ * cache key.
+ */
+class RequestCoalescer {
+
+    /** In-flight leaders and the requests waiting on them, by coalescing key. */
+    private final Map<String, List<Request<?>>> mInFlight =
+            new HashMap<String, List<Request<?>>>();
+
+    /**
+     * Coalescing key of each in-flight leader. Kept so that draining does not depend on
+     * {@link Request#getHeaders()} returning the same headers twice. Guarded by mInFlight.
+     */
+    private final Map<Request<?>, String> mLeaderKeys =
+            new IdentityHashMap<Request<?>, String>();
+
+    /**
+     * Registers a request about to be dispatched to the network.
+     *
+     * @return true if the request was parked behind an identical in-flight request and must not
+     *         be dispatched, false if the caller should dispatch it
+     */
+    boolean offer(Request<?> request) {
+        String key = getCoalescingKey(request);
+        if (key == null) {
+            return false;
+        }
+        synchronized (mInFlight) {
+            List<Request<?>> waiting = mInFlight.get(key);
+            if (waiting == null) {
+                mInFlight.put(key, new ArrayList<Request<?>>());
+                mLeaderKeys.put(request, key);
+                return false;
+            }
+            waiting.add(request);
+            request.addMarker("coalesced");
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("Request for url=%s is in flight, coalescing.", request.getUrl());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Ends the in-flight period of a leader and returns the requests that were parked behind
+     * it. Requests added after this call start a new round trip. Returns an empty list if the
+     * request is not a leader.
+     */
+    List<Request<?>> drain(Request<?> leader) {
+        synchronized (mInFlight) {
+            String key = mLeaderKeys.remove(leader);
+            if (key == null) {
+                return Collections.emptyList();
+            }
+            return mInFlight.remove(key);
+        }
+    }
+
+    /**
+     * Returns the key under which identical requests are coalesced, or null if the request
+     * must always get its own round trip: anything but an uncacheable GET, or a request whose
+     * headers cannot be determined up front.
+     */
+    static String getCoalescingKey(Request<?> request) {
+        if (request.getMethod() != Request.Method.GET || request.shouldCache()) {
+            return null;
+        }
+        Map<String, String> headers;
+        try {
+            headers = request.getHeaders();
+        } catch (AuthFailureError e) {
+            return null;
+        }
+        if (headers == null || headers.isEmpty()) {
+            return request.getUrl();
+        }
+        // Requests that differ only in header order are still identical.
+        StringBuilder key = new StringBuilder(request.getUrl());
+        for (Map.Entry<String, String> header :
+                new TreeMap<String, String>(headers).entrySet()) {
+            key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import com.android.volley.mock.MockRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class RequestCoalescerTest {
+
+    @Test public void identicalUncacheableGetsCoalesce() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        MockRequest leader = newUncachedRequest("http://foo.com/a");
+        MockRequest follower = newUncachedRequest("http://foo.com/a");
+        MockRequest other = newUncachedRequest("http://foo.com/b");
+
+        assertFalse(coalescer.offer(leader));
+        assertTrue(coalescer.offer(follower));
+        assertFalse(coalescer.offer(other));
+
+        List<Request<?>> waiting = coalescer.drain(leader);
+        assertEquals(1, waiting.size());
+        assertSame(follower, waiting.get(0));
+        assertTrue(coalescer.drain(other).isEmpty());
+
+        // Once drained, the next identical request starts a new round trip.
+        assertFalse(coalescer.offer(newUncachedRequest("http://foo.com/a")));
+    }
+
+    @Test public void cacheableRequestsAreNotCoalesced() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        MockRequest first = new MockRequest("http://foo.com/a", null);
+        MockRequest second = new MockRequest("http://foo.com/a", null);
+        assertNull(RequestCoalescer.getCoalescingKey(first));
+        assertFalse(coalescer.offer(first));
+        assertFalse(coalescer.offer(second));
+    }
+
+    @Test public void drainOfNonLeaderIsEmpty() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        MockRequest leader = newUncachedRequest("http://foo.com/a");
+        MockRequest follower = newUncachedRequest("http://foo.com/a");
+        coalescer.offer(leader);
+        coalescer.offer(follower);
+        assertTrue(coalescer.drain(follower).isEmpty());
+        assertEquals(1, coalescer.drain(leader).size());
+    }
+
+    private static MockRequest newUncachedRequest(String url) {
+        MockRequest request = new MockRequest(url, null);
+        request.setShouldCache(false);
+        return request;
+    }
+}
@@ -94,6 +94,12 @@ public class RequestQueue {
     /** The cache dispatcher. */
     private CacheDispatcher mCacheDispatcher;
 
+    /** Whether {@link #start()} should enable coalescing of uncacheable GETs. */
+    private boolean mCoalescingEnabled = false;
+
+    /** Tracks coalesced uncacheable GETs for the running dispatchers, or null. */
+    private volatile RequestCoalescer mCoalescer;
+
     private List<RequestFinishedListener> mFinishedListeners =
             new ArrayList<RequestFinishedListener>();
 
@@ -135,11 +141,22 @@ public class RequestQueue {
         this(cache, network, DEFAULT_NETWORK_THREAD_POOL_SIZE);
     }
 
+    /**
+     * Enables or disables coalescing of identical uncacheable GET requests. While enabled, a
+     * GET with {@link Request#shouldCache()} false that has the same URL and headers as one
+     * already in flight does not go out to the network; it receives the in-flight request's
+     * response instead. Disabled by default. Takes effect on the next {@link #start()}.
+     */
+    public void setCoalescingEnabled(boolean enabled) {
+        mCoalescingEnabled = enabled;
+    }
+
     /**
      * Starts the dispatchers in this queue.
      */
     public void start() {
         stop();  // Make sure any currently running dispatchers are stopped.
+        mCoalescer = mCoalescingEnabled ? new RequestCoalescer() : null;
         // Create the cache dispatcher and start it.
         mCacheDispatcher = new CacheDispatcher(mCacheQueue, mNetworkQueue, mCache, mDelivery);
         mCacheDispatcher.start();
@@ -147,7 +164,7 @@ public class RequestQueue {
         // Create network dispatchers (and corresponding threads) up to the pool size.
         for (int i = 0; i < mDispatchers.length; i++) {
             NetworkDispatcher networkDispatcher = new NetworkDispatcher(mNetworkQueue, mNetwork,
-                    mCache, mDelivery);
+                    mCache, mDelivery, mCoalescer);
             mDispatchers[i] = networkDispatcher;
             networkDispatcher.start();
         }
@@ -235,8 +252,13 @@ public class RequestQueue {
         request.setSequence(getSequenceNumber());
         request.addMarker("add-to-queue");
 
-        // If the request is uncacheable, skip the cache queue and go straight to the network.
+        // If the request is uncacheable, skip the cache queue and go straight to the network,
+        // unless an identical request is already on its way.
         if (!request.shouldCache()) {
+            RequestCoalescer coalescer = mCoalescer;
+            if (coalescer != null && coalescer.offer(request)) {
+                return request;
+            }
             mNetworkQueue.add(request);
             return request;
         }
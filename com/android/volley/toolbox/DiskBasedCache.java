@@ -30,6 +30,9 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -55,6 +58,12 @@ public class DiskBasedCache implements Cache {
     /** The maximum size of the cache in bytes. */
     private final int mMaxCacheSizeInBytes;
 
+    /**
+     * Entries whose data is at least this many bytes are served as read-only mapped buffers
+     * instead of being read into a byte array. Negative to never map entries.
+     */
+    private final int mMapThresholdInBytes;
+
     /** Default maximum disk usage in bytes. */
     private static final int DEFAULT_DISK_USAGE_BYTES = 5 * 1024 * 1024;
 
@@ -70,8 +79,28 @@ public class DiskBasedCache implements Cache {
      * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
      */
     public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
+        this(rootDirectory, maxCacheSizeInBytes, -1);
+    }
+
+    /**
+     * Constructs an instance of the DiskBasedCache at the specified directory that serves
+     * large entries from memory-mapped files.
+     *
+     * <p>Entries with at least {@code mapThresholdInBytes} bytes of data are returned with
+     * {@link Entry#data} set to null and {@link Entry#dataBuffer} set to a read-only view of
+     * the mapped file, so a cache hit costs neither a copy nor a heap allocation proportional
+     * to the entry size. Smaller entries are read as usual, since mapping a file has a fixed
+     * cost that only pays off for large bodies. In this mode entries are replaced by writing a
+     * new file and renaming it over the old one, so buffers handed out earlier stay valid.
+     * @param rootDirectory The root directory of the cache.
+     * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
+     * @param mapThresholdInBytes Minimum data size of entries to map, or a negative value to
+     *         never map entries.
+     */
+    public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes, int mapThresholdInBytes) {
         mRootDirectory = rootDirectory;
         mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+        mMapThresholdInBytes = mapThresholdInBytes;
     }
 
     /**
@@ -113,9 +142,17 @@ public class DiskBasedCache implements Cache {
         File file = getFileForKey(key);
         CountingInputStream cis = null;
         try {
-            cis = new CountingInputStream(new FileInputStream(file));
+            FileInputStream fis = new FileInputStream(file);
+            cis = new CountingInputStream(fis);
             CacheHeader.readHeader(cis); // eat header
-            byte[] data = streamToBytes(cis, (int) (file.length() - cis.bytesRead));
+            long dataLength = file.length() - cis.bytesRead;
+            if (mMapThresholdInBytes >= 0 && dataLength >= mMapThresholdInBytes) {
+                // The mapping stays valid after the stream is closed.
+                MappedByteBuffer buffer = fis.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, cis.bytesRead, dataLength);
+                return entry.toCacheEntry(buffer);
+            }
+            byte[] data = streamToBytes(cis, (int) dataLength);
             return entry.toCacheEntry(data);
         } catch (IOException e) {
             VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
@@ -150,6 +187,11 @@ public class DiskBasedCache implements Cache {
             return;
         }
         for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                // Left behind by a put() that did not complete.
+                file.delete();
+                continue;
+            }
             BufferedInputStream fis = null;
             try {
                 fis = new BufferedInputStream(new FileInputStream(file));
@@ -193,10 +235,14 @@ public class DiskBasedCache implements Cache {
      */
     @Override
     public synchronized void put(String key, Entry entry) {
-        pruneIfNeeded(entry.data.length);
+        pruneIfNeeded(entry.getDataLength());
         File file = getFileForKey(key);
+        // Never truncate a file that may be mapped; write aside and rename over it instead.
+        File target = mMapThresholdInBytes >= 0
+                ? new File(mRootDirectory, getFilenameForKey(key) + ".tmp")
+                : file;
         try {
-            FileOutputStream fos = new FileOutputStream(file);
+            FileOutputStream fos = new FileOutputStream(target);
             CacheHeader e = new CacheHeader(key, entry);
             boolean success = e.writeHeader(fos);
             if (!success) {
@@ -204,12 +250,19 @@ public class DiskBasedCache implements Cache {
                 VolleyLog.d("Failed to write header for %s", file.getAbsolutePath());
                 throw new IOException();
             }
-            fos.write(entry.data);
+            writeData(fos, entry);
             fos.close();
+            if (target != file && !target.renameTo(file)) {
+                VolleyLog.d("Could not rename %s", target.getAbsolutePath());
+                throw new IOException();
+            }
             putEntry(key, e);
             return;
         } catch (IOException e) {
         }
+        if (target != file) {
+            target.delete();
+        }
         boolean deleted = file.delete();
         if (!deleted) {
             VolleyLog.d("Could not clean up file %s", file.getAbsolutePath());
@@ -318,7 +371,7 @@ public class DiskBasedCache implements Cache {
     /**
      * Reads the contents of an InputStream into a byte[].
      * */
-    private static byte[] streamToBytes(InputStream in, int length) throws IOException {
+    static byte[] streamToBytes(InputStream in, int length) throws IOException {
         byte[] bytes = new byte[length];
         int count;
         int pos = 0;
@@ -331,6 +384,21 @@ public class DiskBasedCache implements Cache {
         return bytes;
     }
 
+    /**
+     * Writes the data of an entry, from its array or, without copying, from its buffer.
+     */
+    static void writeData(FileOutputStream fos, Entry entry) throws IOException {
+        if (entry.data != null) {
+            fos.write(entry.data);
+            return;
+        }
+        ByteBuffer buffer = entry.getDataBuffer();
+        FileChannel channel = fos.getChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
     /**
      * Handles holding onto the cache headers for an entry.
      */
@@ -370,7 +438,7 @@ public class DiskBasedCache implements Cache {
          */
         public CacheHeader(String key, Entry entry) {
             this.key = key;
-            this.size = entry.data.length;
+            this.size = entry.getDataLength();
             this.etag = entry.etag;
             this.serverDate = entry.serverDate;
             this.lastModified = entry.lastModified;
@@ -409,8 +477,22 @@ public class DiskBasedCache implements Cache {
          * Creates a cache entry for the specified data.
          */
         public Entry toCacheEntry(byte[] data) {
-            Entry e = new Entry();
+            Entry e = toCacheEntry();
             e.data = data;
+            return e;
+        }
+
+        /**
+         * Creates a cache entry whose data is held in a read-only buffer.
+         */
+        public Entry toCacheEntry(ByteBuffer dataBuffer) {
+            Entry e = toCacheEntry();
+            e.dataBuffer = dataBuffer.asReadOnlyBuffer();
+            return e;
+        }
+
+        private Entry toCacheEntry() {
+            Entry e = new Entry();
             e.etag = etag;
             e.serverDate = serverDate;
             e.lastModified = lastModified;
@@ -444,10 +526,10 @@ public class DiskBasedCache implements Cache {
 
     }
 
-    private static class CountingInputStream extends FilterInputStream {
-        private int bytesRead = 0;
+    static class CountingInputStream extends FilterInputStream {
+        int bytesRead = 0;
 
-        private CountingInputStream(InputStream in) {
+        CountingInputStream(InputStream in) {
             super(in);
         }
 
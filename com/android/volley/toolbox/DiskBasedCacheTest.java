@@ -18,7 +18,10 @@ package com.android.volley.toolbox;
 
 import com.android.volley.Cache;
 import com.android.volley.toolbox.DiskBasedCache.CacheHeader;
+import com.android.volley.utils.CacheTestUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -30,6 +33,8 @@ import static org.junit.Assert.*;
 
 public class DiskBasedCacheTest {
 
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     // Simple end-to-end serialize/deserialize test.
     @Test public void cacheHeaderSerialization() throws Exception {
         Cache.Entry e = new Cache.Entry();
@@ -125,11 +130,44 @@ public class DiskBasedCacheTest {
         assertEquals(DiskBasedCache.readStringStringMap(bais), emptyValue);
     }
 
+    @Test public void mappedEntriesRoundTrip() throws Exception {
+        File root = temporaryFolder.newFolder();
+        DiskBasedCache cache = new DiskBasedCache(root, 1024 * 1024, 64);
+        cache.initialize();
+        byte[] small = new byte[] { 1, 2, 3 };
+        byte[] large = new byte[4096];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        cache.put("small", CacheTestUtils.makeRandomCacheEntry(small));
+        cache.put("large", CacheTestUtils.makeRandomCacheEntry(large));
+
+        Cache.Entry smallEntry = cache.get("small");
+        assertArrayEquals(small, smallEntry.data);
+        assertNull(smallEntry.dataBuffer);
+
+        Cache.Entry largeEntry = cache.get("large");
+        assertNull(largeEntry.data);
+        assertTrue(largeEntry.dataBuffer.isReadOnly());
+        assertEquals(large.length, largeEntry.getDataLength());
+        assertArrayEquals(large, largeEntry.getData());
+
+        // Replacing an entry must not disturb a buffer that was already handed out.
+        cache.put("large", CacheTestUtils.makeRandomCacheEntry(new byte[128]));
+        assertArrayEquals(large, largeEntry.getData());
+        assertEquals(128, cache.get("large").getDataLength());
+
+        // Buffer-backed entries can be written back, e.g. by invalidate().
+        cache.put("copy", largeEntry);
+        assertArrayEquals(large, cache.get("copy").getData());
+    }
+
     @Test
     public void publicMethods() throws Exception {
         // Catch-all test to find API-breaking changes.
         assertNotNull(DiskBasedCache.class.getConstructor(File.class, int.class));
         assertNotNull(DiskBasedCache.class.getConstructor(File.class));
+        assertNotNull(DiskBasedCache.class.getConstructor(File.class, int.class, int.class));
 
         assertNotNull(DiskBasedCache.class.getMethod("getFileForKey", String.class));
     }
@@ -0,0 +1,631 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import android.os.SystemClock;
+
+import com.android.volley.Cache;
+import com.android.volley.VolleyLog;
+import com.android.volley.toolbox.DiskBasedCache.CacheHeader;
+import com.android.volley.toolbox.DiskBasedCache.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache implementation that spreads entries over a fixed number of independently locked
+ * shards, each living in its own subdirectory of the root directory.
+ *
+ * <p>Unlike {@link DiskBasedCache}, a lookup only contends with other operations on the same
+ * shard, so one slow disk read does not stall every dispatcher. Each shard also keeps an
+ * append-only journal of the headers it holds; {@link #initialize()} replays the journals with
+ * one sequential read per shard instead of opening every cache file. If a journal is missing
+ * or unreadable the shard falls back to scanning its files the way {@link DiskBasedCache}
+ * does and then rewrites the journal.
+ *
+ * <p>The cache size budget is split evenly between shards and each shard tracks its own size
+ * incrementally, so pruning never needs to look at other shards.
+ */
+public class ShardedDiskBasedCache implements Cache {
+
+    /** Default maximum disk usage in bytes. */
+    private static final int DEFAULT_DISK_USAGE_BYTES = 5 * 1024 * 1024;
+
+    /** Default number of shards. */
+    private static final int DEFAULT_SHARD_COUNT = 8;
+
+    /** High water mark percentage for each shard. */
+    private static final float HYSTERESIS_FACTOR = 0.9f;
+
+    /** Magic number for the current version of the journal file format. */
+    private static final int JOURNAL_MAGIC = 0x20150901;
+
+    /** Name of the journal file inside each shard directory. */
+    static final String JOURNAL_FILE_NAME = "journal";
+
+    /** Journal record adding or replacing the header for a key. */
+    private static final int OP_PUT = 1;
+
+    /** Journal record removing a key. */
+    private static final int OP_REMOVE = 2;
+
+    /**
+     * Minimum number of journal records before the journal is considered for compaction;
+     * keeps small caches from rewriting their journal on every other operation.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 512;
+
+    /** The root directory to use for the cache. */
+    private final File mRootDirectory;
+
+    /** The shards; a key always maps to the same shard. */
+    private final Shard[] mShards;
+
+    /**
+     * Constructs an instance of the ShardedDiskBasedCache at the specified directory.
+     * @param rootDirectory The root directory of the cache.
+     * @param maxCacheSizeInBytes The maximum size of the cache in bytes, split evenly
+     *         between shards.
+     * @param shardCount The number of independently locked shards.
+     */
+    public ShardedDiskBasedCache(File rootDirectory, int maxCacheSizeInBytes, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount <= 0");
+        }
+        mRootDirectory = rootDirectory;
+        mShards = new Shard[shardCount];
+        int shardSize = maxCacheSizeInBytes / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            mShards[i] = new Shard(new File(rootDirectory, "shard-" + i), shardSize);
+        }
+    }
+
+    /**
+     * Constructs an instance of the ShardedDiskBasedCache at the specified directory using
+     * the default number of shards.
+     * @param rootDirectory The root directory of the cache.
+     * @param maxCacheSizeInBytes The maximum size of the cache in bytes.
+     */
+    public ShardedDiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
+        this(rootDirectory, maxCacheSizeInBytes, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Constructs an instance of the ShardedDiskBasedCache at the specified directory using
+     * the default maximum cache size of 5MB and the default number of shards.
+     * @param rootDirectory The root directory of the cache.
+     */
+    public ShardedDiskBasedCache(File rootDirectory) {
+        this(rootDirectory, DEFAULT_DISK_USAGE_BYTES, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Clears the cache. Deletes all cached files and journals from disk.
+     */
+    @Override
+    public void clear() {
+        for (Shard shard : mShards) {
+            shard.clear();
+        }
+        VolleyLog.d("Cache cleared.");
+    }
+
+    /**
+     * Returns the cache entry with the specified key if it exists, null otherwise.
+     */
+    @Override
+    public Entry get(String key) {
+        return shardFor(key).get(key);
+    }
+
+    /**
+     * Initializes the cache by replaying each shard's journal. Creates the root directory
+     * if necessary.
+     */
+    @Override
+    public void initialize() {
+        if (!mRootDirectory.exists() && !mRootDirectory.mkdirs()) {
+            VolleyLog.e("Unable to create cache dir %s", mRootDirectory.getAbsolutePath());
+            return;
+        }
+        for (Shard shard : mShards) {
+            shard.initialize();
+        }
+    }
+
+    /**
+     * Invalidates an entry in the cache.
+     * @param key Cache key
+     * @param fullExpire True to fully expire the entry, false to soft expire
+     */
+    @Override
+    public void invalidate(String key, boolean fullExpire) {
+        shardFor(key).invalidate(key, fullExpire);
+    }
+
+    /**
+     * Puts the entry with the specified key into the cache.
+     */
+    @Override
+    public void put(String key, Entry entry) {
+        shardFor(key).put(key, entry);
+    }
+
+    /**
+     * Removes the specified key from the cache if it exists.
+     */
+    @Override
+    public void remove(String key) {
+        shardFor(key).remove(key);
+    }
+
+    /**
+     * Returns a file object for the given cache key.
+     */
+    public File getFileForKey(String key) {
+        return shardFor(key).getFileForKey(key);
+    }
+
+    /**
+     * Returns the total amount of space currently used by the cache in bytes.
+     */
+    public long getTotalSize() {
+        long total = 0;
+        for (Shard shard : mShards) {
+            total += shard.getTotalSize();
+        }
+        return total;
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        // Spread the high bits down; String hash codes of similar URLs differ mostly at the end.
+        h ^= (h >>> 16);
+        return mShards[(h & 0x7fffffff) % mShards.length];
+    }
+
+    /**
+     * Creates a pseudo-unique filename for the specified cache key. Matches the naming used
+     * by {@link DiskBasedCache}.
+     */
+    private static String getFilenameForKey(String key) {
+        int firstHalfLength = key.length() / 2;
+        String localFilename = String.valueOf(key.substring(0, firstHalfLength).hashCode());
+        localFilename += String.valueOf(key.substring(firstHalfLength).hashCode());
+        return localFilename;
+    }
+
+    /**
+     * One independently locked slice of the cache with its own directory, size budget and
+     * journal. All state is guarded by the shard's monitor.
+     */
+    private static class Shard {
+        /** Map of the Key, CacheHeader pairs, in access order. */
+        private final Map<String, CacheHeader> mEntries =
+                new LinkedHashMap<String, CacheHeader>(16, .75f, true);
+
+        private final File mDirectory;
+        private final File mJournalFile;
+        private final int mMaxSizeInBytes;
+
+        /** Total amount of space currently used by this shard in bytes. */
+        private long mTotalSize = 0;
+
+        /** Open journal, or null if it could not be opened; the shard then runs unjournaled. */
+        private OutputStream mJournal;
+
+        /** Number of records in the journal, used to decide when to compact it. */
+        private int mJournalRecords;
+
+        Shard(File directory, int maxSizeInBytes) {
+            mDirectory = directory;
+            mJournalFile = new File(directory, JOURNAL_FILE_NAME);
+            mMaxSizeInBytes = maxSizeInBytes;
+        }
+
+        File getFileForKey(String key) {
+            return new File(mDirectory, getFilenameForKey(key));
+        }
+
+        synchronized long getTotalSize() {
+            return mTotalSize;
+        }
+
+        synchronized void initialize() {
+            mEntries.clear();
+            mTotalSize = 0;
+            if (!mDirectory.exists()) {
+                if (!mDirectory.mkdirs()) {
+                    VolleyLog.e("Unable to create cache dir %s", mDirectory.getAbsolutePath());
+                    return;
+                }
+                rewriteJournal();
+                return;
+            }
+
+            if (!replayJournal()) {
+                mEntries.clear();
+                mTotalSize = 0;
+                scanFiles();
+            }
+            rewriteJournal();
+        }
+
+        /**
+         * Rebuilds the index from the journal. Returns false if there is no usable journal.
+         * A truncated final record (from a crash mid-append) is ignored.
+         */
+        private boolean replayJournal() {
+            if (!mJournalFile.exists()) {
+                return false;
+            }
+            InputStream is = null;
+            try {
+                is = new BufferedInputStream(new FileInputStream(mJournalFile));
+                if (DiskBasedCache.readInt(is) != JOURNAL_MAGIC) {
+                    return false;
+                }
+                while (true) {
+                    int op = is.read();
+                    if (op == -1) {
+                        break;
+                    }
+                    try {
+                        if (op == OP_PUT) {
+                            long size = DiskBasedCache.readLong(is);
+                            CacheHeader header = CacheHeader.readHeader(is);
+                            header.size = size;
+                            putEntry(header.key, header);
+                        } else if (op == OP_REMOVE) {
+                            removeEntry(DiskBasedCache.readString(is));
+                        } else {
+                            VolleyLog.d("Bad journal record %d in %s", op,
+                                    mJournalFile.getAbsolutePath());
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                VolleyLog.d("%s: %s", mJournalFile.getAbsolutePath(), e.toString());
+                return false;
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (IOException ignored) { }
+                }
+            }
+            deleteUnindexedFiles();
+            return true;
+        }
+
+        /**
+         * Deletes files that the journal does not know about, e.g. because the process died
+         * between writing an entry and journaling it. Only lists the directory; no file is
+         * opened.
+         */
+        private void deleteUnindexedFiles() {
+            File[] files = mDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            Set<String> indexed = new HashSet<String>(mEntries.size() * 2);
+            for (String key : mEntries.keySet()) {
+                indexed.add(getFilenameForKey(key));
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.equals(JOURNAL_FILE_NAME) && !indexed.contains(name)) {
+                    file.delete();
+                }
+            }
+        }
+
+        /**
+         * Rebuilds the index by reading the header of every file in the shard directory.
+         */
+        private void scanFiles() {
+            File[] files = mDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.getName().equals(JOURNAL_FILE_NAME)) {
+                    continue;
+                }
+                BufferedInputStream fis = null;
+                try {
+                    fis = new BufferedInputStream(new FileInputStream(file));
+                    CacheHeader entry = CacheHeader.readHeader(fis);
+                    entry.size = file.length();
+                    putEntry(entry.key, entry);
+                } catch (IOException e) {
+                    file.delete();
+                } finally {
+                    try {
+                        if (fis != null) {
+                            fis.close();
+                        }
+                    } catch (IOException ignored) { }
+                }
+            }
+        }
+
+        synchronized Entry get(String key) {
+            CacheHeader entry = mEntries.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            File file = getFileForKey(key);
+            CountingInputStream cis = null;
+            try {
+                cis = new CountingInputStream(new FileInputStream(file));
+                CacheHeader.readHeader(cis); // eat header
+                byte[] data = DiskBasedCache.streamToBytes(
+                        cis, (int) (file.length() - cis.bytesRead));
+                return entry.toCacheEntry(data);
+            } catch (IOException e) {
+                VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
+                remove(key);
+                return null;
+            } finally {
+                if (cis != null) {
+                    try {
+                        cis.close();
+                    } catch (IOException ignored) { }
+                }
+            }
+        }
+
+        synchronized void invalidate(String key, boolean fullExpire) {
+            Entry entry = get(key);
+            if (entry != null) {
+                entry.softTtl = 0;
+                if (fullExpire) {
+                    entry.ttl = 0;
+                }
+                put(key, entry);
+            }
+        }
+
+        synchronized void put(String key, Entry entry) {
+            pruneIfNeeded(entry.getDataLength());
+            File file = getFileForKey(key);
+            try {
+                FileOutputStream fos = new FileOutputStream(file);
+                CacheHeader e = new CacheHeader(key, entry);
+                boolean success = e.writeHeader(fos);
+                if (!success) {
+                    fos.close();
+                    VolleyLog.d("Failed to write header for %s", file.getAbsolutePath());
+                    throw new IOException();
+                }
+                DiskBasedCache.writeData(fos, entry);
+                fos.close();
+                e.size = file.length();
+                putEntry(key, e);
+                journalPut(e);
+                return;
+            } catch (IOException e) {
+            }
+            boolean deleted = file.delete();
+            if (!deleted) {
+                VolleyLog.d("Could not clean up file %s", file.getAbsolutePath());
+            }
+            // Drop any previous version of the entry; its file is gone.
+            if (mEntries.containsKey(key)) {
+                removeEntry(key);
+                journalRemove(key);
+            }
+        }
+
+        synchronized void remove(String key) {
+            boolean deleted = getFileForKey(key).delete();
+            if (removeEntry(key)) {
+                journalRemove(key);
+            }
+            if (!deleted) {
+                VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
+                        key, getFilenameForKey(key));
+            }
+        }
+
+        synchronized void clear() {
+            closeJournal();
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            mEntries.clear();
+            mTotalSize = 0;
+            if (mDirectory.exists()) {
+                rewriteJournal();
+            }
+        }
+
+        /**
+         * Prunes the shard to fit the amount of bytes specified.
+         * @param neededSpace The amount of bytes we are trying to fit into the shard.
+         */
+        private void pruneIfNeeded(int neededSpace) {
+            if ((mTotalSize + neededSpace) < mMaxSizeInBytes) {
+                return;
+            }
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("Pruning old cache entries.");
+            }
+
+            long before = mTotalSize;
+            int prunedFiles = 0;
+            long startTime = SystemClock.elapsedRealtime();
+
+            Iterator<Map.Entry<String, CacheHeader>> iterator = mEntries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                CacheHeader e = iterator.next().getValue();
+                boolean deleted = getFileForKey(e.key).delete();
+                if (!deleted) {
+                    VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
+                            e.key, getFilenameForKey(e.key));
+                }
+                mTotalSize -= e.size;
+                iterator.remove();
+                journalRemove(e.key);
+                prunedFiles++;
+
+                if ((mTotalSize + neededSpace) < mMaxSizeInBytes * HYSTERESIS_FACTOR) {
+                    break;
+                }
+            }
+
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("pruned %d files, %d bytes, %d ms", prunedFiles,
+                        (mTotalSize - before), SystemClock.elapsedRealtime() - startTime);
+            }
+        }
+
+        private void putEntry(String key, CacheHeader entry) {
+            CacheHeader oldEntry = mEntries.put(key, entry);
+            mTotalSize += entry.size;
+            if (oldEntry != null) {
+                mTotalSize -= oldEntry.size;
+            }
+        }
+
+        /** Returns true if there was an entry for the key. */
+        private boolean removeEntry(String key) {
+            CacheHeader entry = mEntries.remove(key);
+            if (entry != null) {
+                mTotalSize -= entry.size;
+                return true;
+            }
+            return false;
+        }
+
+        private void journalPut(CacheHeader header) {
+            if (mJournal == null) {
+                return;
+            }
+            try {
+                mJournal.write(OP_PUT);
+                DiskBasedCache.writeLong(mJournal, header.size);
+                // writeHeader() flushes the journal once the record is complete.
+                if (!header.writeHeader(mJournal)) {
+                    throw new IOException("Failed to journal header for " + header.key);
+                }
+                onJournalRecordWritten();
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+
+        private void journalRemove(String key) {
+            if (mJournal == null) {
+                return;
+            }
+            try {
+                mJournal.write(OP_REMOVE);
+                DiskBasedCache.writeString(mJournal, key);
+                mJournal.flush();
+                onJournalRecordWritten();
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+
+        private void onJournalRecordWritten() {
+            mJournalRecords++;
+            if (mJournalRecords >= MIN_COMPACTION_RECORDS
+                    && mJournalRecords > 2 * mEntries.size()) {
+                rewriteJournal();
+            }
+        }
+
+        /**
+         * A journal that could not be appended to no longer describes the shard. Delete it so
+         * the next initialize() rebuilds the index by scanning files.
+         */
+        private void journalFailed(IOException e) {
+            VolleyLog.d("%s: %s", mJournalFile.getAbsolutePath(), e.toString());
+            closeJournal();
+            mJournalFile.delete();
+        }
+
+        /**
+         * Writes a compact journal holding one record per live entry and reopens it for
+         * appending. The new journal is written aside and renamed into place, so a crash
+         * leaves either the old or the new journal intact.
+         */
+        private void rewriteJournal() {
+            closeJournal();
+            File tmp = new File(mDirectory, JOURNAL_FILE_NAME + ".tmp");
+            OutputStream os = null;
+            try {
+                os = new BufferedOutputStream(new FileOutputStream(tmp));
+                DiskBasedCache.writeInt(os, JOURNAL_MAGIC);
+                for (CacheHeader header : mEntries.values()) {
+                    os.write(OP_PUT);
+                    DiskBasedCache.writeLong(os, header.size);
+                    if (!header.writeHeader(os)) {
+                        throw new IOException("Failed to journal header for " + header.key);
+                    }
+                }
+                os.close();
+                os = null;
+                if (!tmp.renameTo(mJournalFile)) {
+                    throw new IOException("Could not rename " + tmp.getAbsolutePath());
+                }
+                mJournal = new BufferedOutputStream(new FileOutputStream(mJournalFile, true));
+                mJournalRecords = mEntries.size();
+            } catch (IOException e) {
+                VolleyLog.d("%s: %s", mJournalFile.getAbsolutePath(), e.toString());
+                if (os != null) {
+                    try {
+                        os.close();
+                    } catch (IOException ignored) { }
+                }
+                tmp.delete();
+                mJournalFile.delete();
+            }
+        }
+
+        private void closeJournal() {
+            if (mJournal != null) {
+                try {
+                    mJournal.close();
+                } catch (IOException ignored) { }
+                mJournal = null;
+            }
+        }
+    }
+}
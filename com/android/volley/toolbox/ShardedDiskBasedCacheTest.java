@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.utils.CacheTestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ShardedDiskBasedCacheTest {
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test public void putGetRemove() throws Exception {
+        ShardedDiskBasedCache cache = newCache(1024 * 1024);
+        Cache.Entry entry = CacheTestUtils.makeRandomCacheEntry(new byte[] { 1, 2, 3 });
+        cache.put("key", entry);
+
+        Cache.Entry read = cache.get("key");
+        assertNotNull(read);
+        assertArrayEquals(entry.data, read.data);
+        assertEquals(entry.etag, read.etag);
+
+        cache.remove("key");
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getTotalSize());
+    }
+
+    @Test public void initializeReplaysJournal() throws Exception {
+        File root = temporaryFolder.newFolder();
+        ShardedDiskBasedCache cache = new ShardedDiskBasedCache(root, 1024 * 1024, 4);
+        cache.initialize();
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, CacheTestUtils.makeRandomCacheEntry(new byte[i + 1]));
+        }
+        cache.remove("key3");
+        long size = cache.getTotalSize();
+
+        ShardedDiskBasedCache reopened = new ShardedDiskBasedCache(root, 1024 * 1024, 4);
+        reopened.initialize();
+        assertEquals(size, reopened.getTotalSize());
+        assertNull(reopened.get("key3"));
+        assertEquals(8, reopened.get("key7").data.length);
+    }
+
+    @Test public void initializeFallsBackToScanWithoutJournal() throws Exception {
+        File root = temporaryFolder.newFolder();
+        ShardedDiskBasedCache cache = new ShardedDiskBasedCache(root, 1024 * 1024, 2);
+        cache.initialize();
+        cache.put("a", CacheTestUtils.makeRandomCacheEntry(new byte[10]));
+        cache.put("b", CacheTestUtils.makeRandomCacheEntry(new byte[20]));
+        long size = cache.getTotalSize();
+
+        for (int i = 0; i < 2; i++) {
+            File journal = new File(new File(root, "shard-" + i),
+                    ShardedDiskBasedCache.JOURNAL_FILE_NAME);
+            // Corrupt rather than delete, so the magic check is exercised too.
+            FileOutputStream fos = new FileOutputStream(journal);
+            fos.write(new byte[] { 0, 1, 2, 3 });
+            fos.close();
+        }
+
+        ShardedDiskBasedCache reopened = new ShardedDiskBasedCache(root, 1024 * 1024, 2);
+        reopened.initialize();
+        assertEquals(size, reopened.getTotalSize());
+        assertEquals(20, reopened.get("b").data.length);
+    }
+
+    @Test public void initializeDeletesUnjournaledFiles() throws Exception {
+        File root = temporaryFolder.newFolder();
+        ShardedDiskBasedCache cache = new ShardedDiskBasedCache(root, 1024 * 1024, 1);
+        cache.initialize();
+        File stray = new File(new File(root, "shard-0"), "stray");
+        FileOutputStream fos = new FileOutputStream(stray);
+        fos.write(new byte[16]);
+        fos.close();
+
+        new ShardedDiskBasedCache(root, 1024 * 1024, 1).initialize();
+        assertFalse(stray.exists());
+    }
+
+    @Test public void pruneKeepsShardWithinBudget() throws Exception {
+        ShardedDiskBasedCache cache = newCache(4096);
+        for (int i = 0; i < 64; i++) {
+            cache.put("key" + i, CacheTestUtils.makeRandomCacheEntry(new byte[256]));
+        }
+        assertTrue(cache.getTotalSize() <= 4096);
+        assertNotNull(cache.get("key63"));
+    }
+
+    @Test public void clearEmptiesCache() throws Exception {
+        ShardedDiskBasedCache cache = newCache(1024 * 1024);
+        cache.put("key", CacheTestUtils.makeRandomCacheEntry(null));
+        cache.clear();
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getTotalSize());
+    }
+
+    @Test
+    public void publicMethods() throws Exception {
+        // Catch-all test to find API-breaking changes.
+        assertNotNull(ShardedDiskBasedCache.class.getConstructor(File.class, int.class, int.class));
+        assertNotNull(ShardedDiskBasedCache.class.getConstructor(File.class, int.class));
+        assertNotNull(ShardedDiskBasedCache.class.getConstructor(File.class));
+
+        assertNotNull(ShardedDiskBasedCache.class.getMethod("getFileForKey", String.class));
+        assertNotNull(ShardedDiskBasedCache.class.getMethod("getTotalSize"));
+    }
+
+    private ShardedDiskBasedCache newCache(int maxSize) throws Exception {
+        ShardedDiskBasedCache cache =
+                new ShardedDiskBasedCache(temporaryFolder.newFolder(), maxSize, 2);
+        cache.initialize();
+        return cache;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link ByteArrayPool} that never takes a lock. Use it in place of ByteArrayPool when many
+ * network dispatchers share one pool.
+ * <p>
+ * Buffers are bucketed into power-of-two size classes: class {@code i} holds buffers of at
+ * least {@code 2^i} bytes, so a request for {@code len} bytes is served from the first
+ * non-empty class at or above {@code ceil(log2(len))} without any searching or sorting. Newly
+ * allocated buffers are rounded up to their class size so they can be reused by any request
+ * in that class. Each class is a lock-free stack.
+ * <p>
+ * Every thread also keeps one small buffer per size class to itself, so a dispatcher that
+ * repeatedly borrows and returns the same kind of buffer does not touch shared state at all;
+ * even its hits are counted per thread and only summed when the statistics are read.
+ * Those thread-local buffers are at most {@link #THREAD_CACHE_MAX_SIZE} bytes each and are not
+ * counted against the pool's size limit.
+ * <p>
+ * The shared stacks never hold more than the size limit. When a returned buffer would exceed
+ * it, buffers are evicted from the largest classes first instead of in least-recently-used
+ * order as ByteArrayPool does; if that is not enough the returned buffer is dropped.
+ */
+public class SizeClassByteArrayPool extends ByteArrayPool {
+    /** Smallest size class; smaller requests are rounded up to it. */
+    private static final int MIN_CLASS = 6; // 64 bytes
+
+    /** Number of size classes; covers every non-negative int length. */
+    private static final int CLASS_COUNT = 32;
+
+    /** Largest buffer kept in a per-thread cache. */
+    public static final int THREAD_CACHE_MAX_SIZE = 8 * 1024;
+
+    /** Size class of {@link #THREAD_CACHE_MAX_SIZE}. */
+    private static final int THREAD_CACHE_MAX_CLASS = 13;
+
+    /** One lock-free stack of buffers per size class. */
+    private final AtomicReference<Node>[] mClasses;
+
+    /** Buffers and hit counts kept by each thread. */
+    private final ThreadLocal<ThreadCache> mThreadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            ThreadCache cache = new ThreadCache();
+            mThreadCacheHitCounts.add(cache.hits);
+            return cache;
+        }
+    };
+
+    /**
+     * The thread-cache hit count of every thread that has used the pool. Holds only the
+     * counters, so the buffers of threads that have exited can still be collected.
+     */
+    private final ConcurrentLinkedQueue<HitCount> mThreadCacheHitCounts =
+            new ConcurrentLinkedQueue<HitCount>();
+
+    /** The total size of the buffers in the shared stacks. */
+    private final AtomicInteger mCurrentSize = new AtomicInteger();
+
+    /** The maximum aggregate size of the buffers in the shared stacks. */
+    private final int mSizeLimit;
+
+    /** Hits served from the shared stacks; thread-cache hits are in mThreadCacheHitCounts. */
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    /** A hit count written only by its own thread and read by any. */
+    private static class HitCount {
+        volatile long count;
+    }
+
+    private static class ThreadCache {
+        /** One slot per size class up to THREAD_CACHE_MAX_CLASS. */
+        final byte[][] bufs = new byte[THREAD_CACHE_MAX_CLASS + 1][];
+        final HitCount hits = new HitCount();
+    }
+
+    private static class Node {
+        final byte[] buf;
+        Node next;
+
+        Node(byte[] buf) {
+            this.buf = buf;
+        }
+    }
+
+    /**
+     * @param sizeLimit the maximum size of the shared part of the pool, in bytes
+     */
+    @SuppressWarnings("unchecked")
+    public SizeClassByteArrayPool(int sizeLimit) {
+        super(sizeLimit);
+        mSizeLimit = sizeLimit;
+        mClasses = new AtomicReference[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            mClasses[i] = new AtomicReference<Node>();
+        }
+    }
+
+    /**
+     * Returns a buffer from the pool if one is available in the requested size class, or
+     * allocates a new one rounded up to the size class if not.
+     *
+     * @param len the minimum size, in bytes, of the requested buffer. The returned buffer may be
+     *        larger.
+     * @return a byte[] buffer is always returned.
+     */
+    @Override
+    public byte[] getBuf(int len) {
+        int sizeClass = classForRequest(len);
+        if (sizeClass <= THREAD_CACHE_MAX_CLASS) {
+            ThreadCache cache = mThreadCache.get();
+            byte[] buf = cache.bufs[sizeClass];
+            if (buf != null) {
+                cache.bufs[sizeClass] = null;
+                // Only this thread writes the count, so a plain read-modify-write is safe.
+                cache.hits.count++;
+                return buf;
+            }
+        }
+        // A buffer from a larger class would do, but only look one class up; beyond that the
+        // waste outweighs the allocation we save.
+        for (int i = sizeClass; i < CLASS_COUNT && i <= sizeClass + 1; i++) {
+            byte[] buf = pop(i);
+            if (buf != null) {
+                mCurrentSize.addAndGet(-buf.length);
+                mHitCount.incrementAndGet();
+                return buf;
+            }
+        }
+        mMissCount.incrementAndGet();
+        // Round up so the buffer can serve any request in its class once returned, unless
+        // that would push it past what the pool could ever hold.
+        int rounded = sizeClass < 31 ? 1 << sizeClass : Integer.MAX_VALUE;
+        return new byte[rounded <= Math.max(mSizeLimit, THREAD_CACHE_MAX_SIZE) ? rounded : len];
+    }
+
+    /**
+     * Returns a buffer to the pool, evicting buffers from the largest size classes if the pool
+     * would exceed its allotted size.
+     *
+     * @param buf the buffer to return to the pool.
+     */
+    @Override
+    public void returnBuf(byte[] buf) {
+        if (buf == null || buf.length < (1 << MIN_CLASS)) {
+            return;
+        }
+        int sizeClass = classForBuffer(buf.length);
+        if (sizeClass <= THREAD_CACHE_MAX_CLASS) {
+            byte[][] cache = mThreadCache.get().bufs;
+            if (cache[sizeClass] == null) {
+                cache[sizeClass] = buf;
+                return;
+            }
+        }
+        if (buf.length > mSizeLimit) {
+            return;
+        }
+        if (mCurrentSize.addAndGet(buf.length) > mSizeLimit && !trim(sizeClass)) {
+            mCurrentSize.addAndGet(-buf.length);
+            mEvictionCount.incrementAndGet();
+            return;
+        }
+        push(sizeClass, buf);
+    }
+
+    /** Returns the number of times {@link #getBuf} returned a pooled buffer. */
+    public long hitCount() {
+        long hits = mHitCount.get();
+        for (HitCount threadHits : mThreadCacheHitCounts) {
+            hits += threadHits.count;
+        }
+        return hits;
+    }
+
+    /** Returns the number of times {@link #getBuf} had to allocate a new buffer. */
+    public long missCount() {
+        return mMissCount.get();
+    }
+
+    /** Returns the number of buffers that were discarded to stay under the size limit. */
+    public long evictionCount() {
+        return mEvictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        long hits = hitCount();
+        long misses = mMissCount.get();
+        long accesses = hits + misses;
+        int hitPercent = accesses != 0 ? (int) (100 * hits / accesses) : 0;
+        return String.format("SizeClassByteArrayPool[size=%d,maxSize=%d,hits=%d,misses=%d,"
+                + "evictions=%d,hitRate=%d%%]", mCurrentSize.get(), mSizeLimit, hits,
+                misses, mEvictionCount.get(), hitPercent);
+    }
+
+    /**
+     * Evicts buffers, largest classes first, until the size reserved for a returned buffer
+     * fits. Never evicts from classes below {@code sizeClass}, which would throw away more
+     * buffers than the returned one is worth. Returns false if the reservation still does not
+     * fit.
+     */
+    private boolean trim(int sizeClass) {
+        for (int i = CLASS_COUNT - 1; i >= sizeClass; i--) {
+            byte[] victim;
+            while ((victim = pop(i)) != null) {
+                mEvictionCount.incrementAndGet();
+                if (mCurrentSize.addAndGet(-victim.length) <= mSizeLimit) {
+                    return true;
+                }
+            }
+        }
+        return mCurrentSize.get() <= mSizeLimit;
+    }
+
+    private void push(int sizeClass, byte[] buf) {
+        AtomicReference<Node> head = mClasses[sizeClass];
+        Node node = new Node(buf);
+        Node top;
+        do {
+            top = head.get();
+            node.next = top;
+        } while (!head.compareAndSet(top, node));
+    }
+
+    private byte[] pop(int sizeClass) {
+        AtomicReference<Node> head = mClasses[sizeClass];
+        Node top;
+        do {
+            top = head.get();
+            if (top == null) {
+                return null;
+            }
+        } while (!head.compareAndSet(top, top.next));
+        return top.buf;
+    }
+
+    /** Smallest class whose buffers are all at least {@code len} bytes: ceil(log2(len)). */
+    private static int classForRequest(int len) {
+        if (len <= (1 << MIN_CLASS)) {
+            return MIN_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(len - 1);
+    }
+
+    /** Largest class that a buffer of {@code len} bytes can serve: floor(log2(len)). */
+    private static int classForBuffer(int len) {
+        return 31 - Integer.numberOfLeadingZeros(len);
+    }
+}
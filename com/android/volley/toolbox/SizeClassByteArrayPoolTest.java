@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SizeClassByteArrayPoolTest {
+    @Test public void roundsUpToSizeClass() {
+        SizeClassByteArrayPool pool = new SizeClassByteArrayPool(1 << 20);
+        assertEquals(64, pool.getBuf(1).length);
+        assertEquals(1024, pool.getBuf(1000).length);
+        assertEquals(1024, pool.getBuf(1024).length);
+        assertEquals(2048, pool.getBuf(1025).length);
+    }
+
+    @Test public void reusesBufferFromThreadCache() {
+        SizeClassByteArrayPool pool = new SizeClassByteArrayPool(0);
+        byte[] buf1 = pool.getBuf(100);
+        pool.returnBuf(buf1);
+        assertSame(buf1, pool.getBuf(120));
+        assertEquals(1, pool.hitCount());
+        assertEquals(1, pool.missCount());
+    }
+
+    @Test public void countsThreadCacheHitsOfEveryThread() throws Exception {
+        final SizeClassByteArrayPool pool = new SizeClassByteArrayPool(0);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        pool.returnBuf(pool.getBuf(100));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Each thread misses once and then keeps hitting its own cache.
+        assertEquals(4 * 999, pool.hitCount());
+        assertEquals(4, pool.missCount());
+    }
+
+    @Test public void reusesBufferFromSharedClass() {
+        SizeClassByteArrayPool pool = new SizeClassByteArrayPool(1 << 20);
+        byte[] buf1 = pool.getBuf(16 * 1024);
+        byte[] buf2 = pool.getBuf(16 * 1024);
+        pool.returnBuf(buf1);
+        pool.returnBuf(buf2);
+
+        byte[] buf3 = pool.getBuf(16 * 1024);
+        byte[] buf4 = pool.getBuf(16 * 1024);
+        assertTrue(buf3 == buf1 || buf3 == buf2);
+        assertTrue(buf4 == buf1 || buf4 == buf2);
+        assertTrue(buf3 != buf4);
+    }
+
+    @Test public void neverReturnsSmallerBuffer() {
+        SizeClassByteArrayPool pool = new SizeClassByteArrayPool(1 << 20);
+        byte[] odd = new byte[20000];
+        pool.returnBuf(odd);
+        // 20000 bytes can serve requests up to 16K but not above.
+        assertNotSame(odd, pool.getBuf(20000));
+        assertSame(odd, pool.getBuf(16 * 1024));
+    }
+
+    @Test public void obeysSizeLimit() {
+        SizeClassByteArrayPool pool = new SizeClassByteArrayPool(32 * 1024);
+        byte[] buf1 = pool.getBuf(16 * 1024);
+        byte[] buf2 = pool.getBuf(16 * 1024);
+        byte[] buf3 = pool.getBuf(16 * 1024);
+        pool.returnBuf(buf1);
+        pool.returnBuf(buf2);
+        pool.returnBuf(buf3);
+        assertEquals(1, pool.evictionCount());
+
+        byte[] buf4 = pool.getBuf(16 * 1024);
+        byte[] buf5 = pool.getBuf(16 * 1024);
+        byte[] buf6 = pool.getBuf(16 * 1024);
+        assertTrue(buf4 != buf5);
+        assertTrue(buf6 != buf4 && buf6 != buf5);
+        assertEquals(2, pool.hitCount());
+    }
+
+    @Test public void worksAsByteArrayPool() throws Exception {
+        ByteArrayPool pool = new SizeClassByteArrayPool(32768);
+        PoolingByteArrayOutputStream os = new PoolingByteArrayOutputStream(pool);
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        os.write(data);
+        assertArrayEquals(data, os.toByteArray());
+        os.close();
+    }
+}
@@ -23,6 +23,9 @@ import com.android.volley.Response.ErrorListener;
 import com.android.volley.Response.Listener;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 /**
  * A canned request for retrieving the response body at a given URL as a String.
@@ -60,8 +63,16 @@ public class StringRequest extends Request<String> {
         mListener.onResponse(response);
     }
 
+    @Override
+    public boolean acceptsDataBuffer() {
+        return true;
+    }
+
     @Override
     protected Response<String> parseNetworkResponse(NetworkResponse response) {
+        if (response.data == null && response.dataBuffer != null) {
+            return Response.success(decode(response), HttpHeaderParser.parseCacheHeaders(response));
+        }
         String parsed;
         try {
             parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
@@ -70,4 +81,20 @@ public class StringRequest extends Request<String> {
         }
         return Response.success(parsed, HttpHeaderParser.parseCacheHeaders(response));
     }
+
+    /**
+     * Decodes a buffer-backed response straight from the buffer, without first copying the
+     * body into a byte array.
+     */
+    private static String decode(NetworkResponse response) {
+        Charset charset;
+        try {
+            charset = Charset.forName(HttpHeaderParser.parseCharset(response.headers));
+        } catch (IllegalCharsetNameException e) {
+            charset = Charset.defaultCharset();
+        } catch (UnsupportedCharsetException e) {
+            charset = Charset.defaultCharset();
+        }
+        return charset.decode(response.getDataBuffer()).toString();
+    }
 }
@@ -22,9 +22,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -160,6 +170,125 @@ public final class StrictJarFile {
         return is;
     }
 
+    /**
+     * Verifies the manifest digest of every signed entry of this jar, hashing the
+     * entries concurrently on {@code executor}. The entries are split into about as
+     * many groups as {@code executor} has threads (the parallelism of a
+     * {@link ForkJoinPool}, or the number of processors otherwise), balanced by size.
+     * Each group reads its entries with positional reads and hashes them with its own
+     * {@code MessageDigest} instances.
+     *
+     * <p>After this returns, {@link #getCertificateChains} returns the certificate
+     * chains of every entry that verified, without having to read its stream.
+     *
+     * @return the entries that failed verification, mapped to the {@code IOException}
+     *         or {@code SecurityException} that describes the failure. A signed entry
+     *         that is missing from the archive fails with a {@code SecurityException}.
+     *         Empty if all entries verified, or if this jar isn't signed.
+     * @throws InterruptedException if interrupted while waiting for {@code executor}.
+     */
+    public Map<String, Exception> verifyAllEntries(ExecutorService executor)
+            throws InterruptedException {
+        HashMap<String, Exception> failures = new HashMap<String, Exception>();
+        if (!isSigned) {
+            return failures;
+        }
+
+        List<EntryVerification> verifications = new ArrayList<EntryVerification>();
+        for (String name : manifest.getEntries().keySet()) {
+            JarVerifier.VerifierEntry verifierEntry = verifier.initEntry(name);
+            if (verifierEntry == null) {
+                continue;
+            }
+            ZipEntry zipEntry = findEntry(name);
+            if (zipEntry == null) {
+                // Signed, but removed from the archive since.
+                failures.put(name, new SecurityException(
+                        JarFile.MANIFEST_NAME + " has a signed entry for missing " + name));
+                continue;
+            }
+            verifications.add(new EntryVerification(zipEntry, verifierEntry));
+        }
+        if (verifications.isEmpty()) {
+            return failures;
+        }
+
+        // Largest entries first, each into the group with the fewest bytes so far.
+        Collections.sort(verifications, new Comparator<EntryVerification>() {
+            @Override public int compare(EntryVerification lhs, EntryVerification rhs) {
+                return Long.compare(rhs.zipEntry.getSize(), lhs.zipEntry.getSize());
+            }
+        });
+        int parallelism = (executor instanceof ForkJoinPool)
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        int groupCount = Math.max(1, Math.min(parallelism, verifications.size()));
+        List<List<EntryVerification>> groups = new ArrayList<List<EntryVerification>>();
+        long[] groupSizes = new long[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            groups.add(new ArrayList<EntryVerification>());
+        }
+        for (EntryVerification verification : verifications) {
+            int smallest = 0;
+            for (int i = 1; i < groupCount; i++) {
+                if (groupSizes[i] < groupSizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            groups.get(smallest).add(verification);
+            groupSizes[smallest] += verification.zipEntry.getSize();
+        }
+
+        List<Future<Map<String, Exception>>> futures =
+                new ArrayList<Future<Map<String, Exception>>>(groupCount);
+        try {
+            for (final List<EntryVerification> group : groups) {
+                futures.add(executor.submit(new Callable<Map<String, Exception>>() {
+                    @Override public Map<String, Exception> call() {
+                        return verifyEntries(group);
+                    }
+                }));
+            }
+            for (Future<Map<String, Exception>> future : futures) {
+                failures.putAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new AssertionError(cause);
+        } finally {
+            for (Future<Map<String, Exception>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return failures;
+    }
+
+    private Map<String, Exception> verifyEntries(List<EntryVerification> group) {
+        HashMap<String, Exception> failures = new HashMap<String, Exception>();
+        byte[] buffer = new byte[8192];
+        for (EntryVerification verification : group) {
+            ZipEntry ze = verification.zipEntry;
+            InputStream is = getZipInputStream(ze, true);
+            try {
+                int count;
+                while ((count = is.read(buffer)) != -1) {
+                    verification.verifierEntry.write(buffer, 0, count);
+                }
+                verification.verifierEntry.verify();
+            } catch (IOException | SecurityException e) {
+                failures.put(ze.getName(), e);
+            } finally {
+                IoUtils.closeQuietly(is);
+            }
+        }
+        return failures;
+    }
+
     public void close() throws IOException {
         if (!closed) {
             guard.close();
@@ -171,12 +300,20 @@ public final class StrictJarFile {
     }
 
     private InputStream getZipInputStream(ZipEntry ze) {
+        return getZipInputStream(ze, false);
+    }
+
+    /**
+     * @param positional whether to read with positional reads, which don't lock
+     *        {@code raf} and so can run concurrently.
+     */
+    private InputStream getZipInputStream(ZipEntry ze, boolean positional) {
         if (ze.getMethod() == ZipEntry.STORED) {
             return new ZipFile.RAFStream(raf, ze.getDataOffset(),
-                    ze.getDataOffset() + ze.getSize());
+                    ze.getDataOffset() + ze.getSize(), positional);
         } else {
-            final ZipFile.RAFStream wrapped = new ZipFile.RAFStream(
-                    raf, ze.getDataOffset(), ze.getDataOffset() + ze.getCompressedSize());
+            final ZipFile.RAFStream wrapped = new ZipFile.RAFStream(raf, ze.getDataOffset(),
+                    ze.getDataOffset() + ze.getCompressedSize(), positional);
 
             int bufSize = Math.max(1024, (int) Math.min(ze.getSize(), 65535L));
             return new ZipFile.ZipInflaterInputStream(wrapped, new Inflater(true), bufSize, ze);
@@ -220,6 +357,19 @@ public final class StrictJarFile {
         }
     }
 
+    /**
+     * A signed entry together with the {@code VerifierEntry} that hashes it.
+     */
+    private static final class EntryVerification {
+        final ZipEntry zipEntry;
+        final JarVerifier.VerifierEntry verifierEntry;
+
+        EntryVerification(ZipEntry zipEntry, JarVerifier.VerifierEntry verifierEntry) {
+            this.zipEntry = zipEntry;
+            this.verifierEntry = verifierEntry;
+        }
+    }
+
     private HashMap<String, byte[]> getMetaEntries() throws IOException {
         HashMap<String, byte[]> metaEntries = new HashMap<String, byte[]>();
 
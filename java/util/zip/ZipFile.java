@@ -17,22 +17,28 @@
 
 package java.util.zip;
 
+import android.system.ErrnoException;
 import dalvik.system.CloseGuard;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
 import libcore.io.BufferIterator;
 import libcore.io.HeapBufferIterator;
 import libcore.io.IoUtils;
+import libcore.io.Libcore;
 import libcore.io.Streams;
 
 /**
@@ -95,14 +101,28 @@ public class ZipFile implements Closeable, ZipConstants {
      */
     public static final int OPEN_DELETE = 4;
 
+    /**
+     * Map the central directory instead of reading it into {@code ZipEntry} objects, and
+     * read entry data without holding a lock on the file. Entries are created on lookup.
+     * May be combined with {@code OPEN_READ} and {@code OPEN_DELETE}.
+     *
+     * @hide
+     */
+    public static final int OPEN_MAPPED = 8;
+
     private final String filename;
 
+    private final boolean mapped;
+
     private File fileToDeleteOnClose;
 
     private RandomAccessFile raf;
 
     private final LinkedHashMap<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();
 
+    /** The central directory index when opened with {@code OPEN_MAPPED}, or null. */
+    private MappedCentralDir mappedCentralDir;
+
     private String comment;
 
     private final CloseGuard guard = CloseGuard.get();
@@ -156,9 +176,11 @@ public class ZipFile implements Closeable, ZipConstants {
      */
     public ZipFile(File file, int mode) throws IOException {
         filename = file.getPath();
-        if (mode != OPEN_READ && mode != (OPEN_READ | OPEN_DELETE)) {
+        int openMode = mode & ~OPEN_MAPPED;
+        if (openMode != OPEN_READ && openMode != (OPEN_READ | OPEN_DELETE)) {
             throw new IllegalArgumentException("Bad mode: " + mode);
         }
+        mapped = (mode & OPEN_MAPPED) != 0;
 
         if ((mode & OPEN_DELETE) != 0) {
             fileToDeleteOnClose = file;
@@ -240,6 +262,26 @@ public class ZipFile implements Closeable, ZipConstants {
      */
     public Enumeration<? extends ZipEntry> entries() {
         checkNotClosed();
+        final MappedCentralDir centralDir = mappedCentralDir;
+        if (centralDir != null) {
+            return new Enumeration<ZipEntry>() {
+                private int next;
+
+                public boolean hasMoreElements() {
+                    checkNotClosed();
+                    return next < centralDir.size();
+                }
+
+                public ZipEntry nextElement() {
+                    checkNotClosed();
+                    if (next >= centralDir.size()) {
+                        throw new NoSuchElementException();
+                    }
+                    return centralDir.entryAt(next++);
+                }
+            };
+        }
+
         final Iterator<ZipEntry> iterator = entries.values().iterator();
 
         return new Enumeration<ZipEntry>() {
@@ -278,6 +320,15 @@ public class ZipFile implements Closeable, ZipConstants {
             throw new NullPointerException("entryName == null");
         }
 
+        MappedCentralDir centralDir = mappedCentralDir;
+        if (centralDir != null) {
+            int index = centralDir.find(entryName);
+            if (index == -1) {
+                index = centralDir.find(entryName + "/");
+            }
+            return (index == -1) ? null : centralDir.entryAt(index);
+        }
+
         ZipEntry ze = entries.get(entryName);
         if (ze == null) {
             ze = entries.get(entryName + "/");
@@ -302,46 +353,57 @@ public class ZipFile implements Closeable, ZipConstants {
             return null;
         }
 
-        // Create an InputStream at the right part of the file.
+        // Create an InputStream at the right part of the file. Files opened with
+        // OPEN_MAPPED only use positional reads, so they don't need the lock.
         RandomAccessFile localRaf = raf;
+        if (mapped) {
+            return openInputStream(localRaf, entry, true);
+        }
         synchronized (localRaf) {
-            // We don't know the entry data's start position. All we have is the
-            // position of the entry's local header.
-            // http://www.pkware.com/documents/casestudies/APPNOTE.TXT
-            RAFStream rafStream = new RAFStream(localRaf, entry.localHeaderRelOffset);
-            DataInputStream is = new DataInputStream(rafStream);
-
-            final int localMagic = Integer.reverseBytes(is.readInt());
-            if (localMagic != LOCSIG) {
-                throwZipException("Local File Header", localMagic);
-            }
+            return openInputStream(localRaf, entry, false);
+        }
+    }
 
-            is.skipBytes(2);
+    private static InputStream openInputStream(RandomAccessFile raf, ZipEntry entry,
+            boolean positional) throws IOException {
+        // We don't know the entry data's start position. All we have is the
+        // position of the entry's local header.
+        // http://www.pkware.com/documents/casestudies/APPNOTE.TXT
+        RAFStream rafStream = new RAFStream(raf, entry.localHeaderRelOffset, raf.length(),
+                positional);
+        byte[] localHeader = new byte[LOCHDR];
+        Streams.readFully(rafStream, localHeader, 0, LOCHDR);
+        BufferIterator it = HeapBufferIterator.iterator(localHeader, 0, LOCHDR,
+                ByteOrder.LITTLE_ENDIAN);
+
+        final int localMagic = it.readInt();
+        if (localMagic != LOCSIG) {
+            throwZipException("Local File Header", localMagic);
+        }
 
-            // At position 6 we find the General Purpose Bit Flag.
-            int gpbf = Short.reverseBytes(is.readShort()) & 0xffff;
-            if ((gpbf & ZipFile.GPBF_UNSUPPORTED_MASK) != 0) {
-                throw new ZipException("Invalid General Purpose Bit Flag: " + gpbf);
-            }
+        // At position 6 we find the General Purpose Bit Flag.
+        it.seek(LOCFLG);
+        int gpbf = it.readShort() & 0xffff;
+        if ((gpbf & ZipFile.GPBF_UNSUPPORTED_MASK) != 0) {
+            throw new ZipException("Invalid General Purpose Bit Flag: " + gpbf);
+        }
 
-            // Offset 26 has the file name length, and offset 28 has the extra field length.
-            // These lengths can differ from the ones in the central header.
-            is.skipBytes(18);
-            int fileNameLength = Short.reverseBytes(is.readShort()) & 0xffff;
-            int extraFieldLength = Short.reverseBytes(is.readShort()) & 0xffff;
-            is.close();
+        // Offset 26 has the file name length, and offset 28 has the extra field length.
+        // These lengths can differ from the ones in the central header.
+        it.seek(LOCNAM);
+        int fileNameLength = it.readShort() & 0xffff;
+        int extraFieldLength = it.readShort() & 0xffff;
 
-            // Skip the variable-size file name and extra field data.
-            rafStream.skip(fileNameLength + extraFieldLength);
+        // Skip the variable-size file name and extra field data.
+        rafStream.skip(fileNameLength + extraFieldLength);
 
-            if (entry.compressionMethod == ZipEntry.STORED) {
-                rafStream.endOffset = rafStream.offset + entry.size;
-                return rafStream;
-            } else {
-                rafStream.endOffset = rafStream.offset + entry.compressedSize;
-                int bufSize = Math.max(1024, (int) Math.min(entry.getSize(), 65535L));
-                return new ZipInflaterInputStream(rafStream, new Inflater(true), bufSize, entry);
-            }
+        if (entry.compressionMethod == ZipEntry.STORED) {
+            rafStream.endOffset = rafStream.offset + entry.size;
+            return rafStream;
+        } else {
+            rafStream.endOffset = rafStream.offset + entry.compressedSize;
+            int bufSize = Math.max(1024, (int) Math.min(entry.getSize(), 65535L));
+            return new ZipInflaterInputStream(rafStream, new Inflater(true), bufSize, entry);
         }
     }
 
@@ -362,7 +424,8 @@ public class ZipFile implements Closeable, ZipConstants {
      */
     public int size() {
         checkNotClosed();
-        return entries.size();
+        MappedCentralDir centralDir = mappedCentralDir;
+        return (centralDir != null) ? centralDir.size() : entries.size();
     }
 
     /**
@@ -434,6 +497,19 @@ public class ZipFile implements Closeable, ZipConstants {
             record = Zip64.parseZip64EocdRecord(raf, zip64EocdRecordOffset, record.commentLength);
         }
 
+        // With OPEN_MAPPED, only index the entry names now and create the ZipEntry objects
+        // on lookup. Zip64 archives are always read eagerly below.
+        final long centralDirSize = eocdOffset - record.centralDirOffset;
+        if (mapped && zip64EocdRecordOffset == -1
+                && centralDirSize >= 0 && centralDirSize <= Integer.MAX_VALUE) {
+            ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    record.centralDirOffset, centralDirSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            mappedCentralDir = new MappedCentralDir(buffer, (int) record.numEntries,
+                    record.centralDirOffset);
+            return;
+        }
+
         // Seek to the first CDE and read all entries.
         // We have to do this now (from the constructor) rather than lazily because the
         // public API doesn't allow us to throw IOException except from the constructor
@@ -498,10 +574,185 @@ public class ZipFile implements Closeable, ZipConstants {
         throw new ZipException(msg + " signature not found; was " + hexString);
     }
 
+    /**
+     * An index of a central directory mapped into memory, used by {@code OPEN_MAPPED}.
+     * Names are hashed into an open-addressed table of entry indexes when the file is
+     * opened, and {@code ZipEntry} objects are only created by {@link #entryAt}. The
+     * buffer is only read with absolute gets, so lookups can run concurrently.
+     */
+    static final class MappedCentralDir {
+        private final ByteBuffer buffer;
+        /** The offset of each entry's header in {@code buffer}. */
+        private final int[] offsets;
+        /** The {@code String.hashCode} of each entry's name. */
+        private final int[] hashes;
+        /** The decoded name of each entry whose name isn't ASCII, null otherwise. */
+        private final String[] names;
+        /** Entry index + 1 for each slot of the hash table, 0 for empty slots. */
+        private final int[] table;
+
+        MappedCentralDir(ByteBuffer buffer, int numEntries, long centralDirOffset)
+                throws ZipException {
+            this.buffer = buffer;
+            offsets = new int[numEntries];
+            hashes = new int[numEntries];
+            names = new String[numEntries];
+            // A power of two at least twice the number of entries, to keep probes short.
+            table = new int[Integer.highestOneBit(Math.max(2 * numEntries - 1, 1)) << 1];
+
+            final int limit = buffer.limit();
+            int offset = 0;
+            for (int i = 0; i < numEntries; i++) {
+                if (offset > limit - CENHDR) {
+                    throw new ZipException("Central Directory Entry truncated");
+                }
+                int sig = buffer.getInt(offset);
+                if (sig != CENSIG) {
+                    throwZipException("Central Directory Entry", sig);
+                }
+                int gpbf = buffer.getShort(offset + CENFLG) & 0xffff;
+                if ((gpbf & GPBF_UNSUPPORTED_MASK) != 0) {
+                    throw new ZipException("Invalid General Purpose Bit Flag: " + gpbf);
+                }
+                long localHeaderRelOffset = ((long) buffer.getInt(offset + CENOFF)) & 0xffffffffL;
+                if (localHeaderRelOffset >= centralDirOffset) {
+                    throw new ZipException("Local file header offset is after central directory");
+                }
+                int nameLength = buffer.getShort(offset + CENNAM) & 0xffff;
+                int extraLength = buffer.getShort(offset + CENEXT) & 0xffff;
+                int commentLength = buffer.getShort(offset + CENCOM) & 0xffff;
+                int nameOffset = offset + CENHDR;
+                int next = nameOffset + nameLength + extraLength + commentLength;
+                if (next > limit) {
+                    throw new ZipException("Central Directory Entry truncated");
+                }
+
+                // Entry names are always decoded as UTF-8, so the hash of an ASCII name
+                // can be computed from its bytes.
+                int hash = 0;
+                boolean ascii = true;
+                for (int j = nameOffset; j < nameOffset + nameLength; j++) {
+                    byte b = buffer.get(j);
+                    if (b == 0) {
+                        byte[] nameBytes = copyBytes(nameOffset, nameLength);
+                        throw new ZipException("Filename contains NUL byte: "
+                                + Arrays.toString(nameBytes));
+                    }
+                    ascii &= b > 0;
+                    hash = 31 * hash + b;
+                }
+                if (!ascii) {
+                    names[i] = new String(copyBytes(nameOffset, nameLength),
+                            StandardCharsets.UTF_8);
+                    hash = names[i].hashCode();
+                }
+                offsets[i] = offset;
+                hashes[i] = hash;
+                insert(i);
+                offset = next;
+            }
+        }
+
+        private void insert(int index) throws ZipException {
+            final int mask = table.length - 1;
+            final int hash = hashes[index];
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                int other = table[slot] - 1;
+                if (other == -1) {
+                    table[slot] = index + 1;
+                    return;
+                }
+                if (hashes[other] == hash && nameAt(other).equals(nameAt(index))) {
+                    throw new ZipException("Duplicate entry name: " + nameAt(index));
+                }
+            }
+        }
+
+        /**
+         * Returns the index of the entry called {@code name}, or -1.
+         */
+        int find(String name) {
+            final int mask = table.length - 1;
+            final int hash = name.hashCode();
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                int index = table[slot] - 1;
+                if (index == -1) {
+                    return -1;
+                }
+                if (hashes[index] == hash && nameEquals(index, name)) {
+                    return index;
+                }
+            }
+        }
+
+        /**
+         * Returns a new {@code ZipEntry} for the entry at {@code index}.
+         */
+        ZipEntry entryAt(int index) {
+            int offset = offsets[index];
+            int length = CENHDR
+                    + (buffer.getShort(offset + CENNAM) & 0xffff)
+                    + (buffer.getShort(offset + CENEXT) & 0xffff)
+                    + (buffer.getShort(offset + CENCOM) & 0xffff);
+            try {
+                return new ZipEntry(new byte[CENHDR],
+                        new ByteArrayInputStream(copyBytes(offset, length)),
+                        StandardCharsets.UTF_8, false /* isZip64 */);
+            } catch (IOException e) {
+                // The entry was validated when it was indexed.
+                throw new AssertionError(e);
+            }
+        }
+
+        int size() {
+            return offsets.length;
+        }
+
+        private String nameAt(int index) {
+            if (names[index] != null) {
+                return names[index];
+            }
+            int offset = offsets[index];
+            byte[] nameBytes = copyBytes(offset + CENHDR, buffer.getShort(offset + CENNAM) & 0xffff);
+            return new String(nameBytes, StandardCharsets.US_ASCII);
+        }
+
+        private boolean nameEquals(int index, String name) {
+            if (names[index] != null) {
+                return names[index].equals(name);
+            }
+            int offset = offsets[index];
+            int nameLength = buffer.getShort(offset + CENNAM) & 0xffff;
+            if (nameLength != name.length()) {
+                return false;
+            }
+            int nameOffset = offset + CENHDR;
+            for (int i = 0; i < nameLength; i++) {
+                if (buffer.get(nameOffset + i) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte[] copyBytes(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
     /**
      * Wrap a stream around a RandomAccessFile.  The RandomAccessFile is shared
      * among all streams returned by getInputStream(), so we have to synchronize
-     * access to it.  (We can optimize this by adding buffering here to reduce
+     * access to it, unless the stream uses positional reads, which don't move the
+     * file's position.  (We can optimize this by adding buffering here to reduce
      * collisions.)
      *
      * <p>We could support mark/reset, but we don't currently need them.
@@ -510,14 +761,21 @@ public class ZipFile implements Closeable, ZipConstants {
      */
     public static class RAFStream extends InputStream {
         private final RandomAccessFile sharedRaf;
+        private final boolean positional;
         private long endOffset;
         private long offset;
+        private byte[] fillBuffer;
 
-
-        public RAFStream(RandomAccessFile raf, long initialOffset, long endOffset) {
+        public RAFStream(RandomAccessFile raf, long initialOffset, long endOffset,
+                boolean positional) {
             sharedRaf = raf;
             offset = initialOffset;
             this.endOffset = endOffset;
+            this.positional = positional;
+        }
+
+        public RAFStream(RandomAccessFile raf, long initialOffset, long endOffset) {
+            this(raf, initialOffset, endOffset, false);
         }
 
         public RAFStream(RandomAccessFile raf, long initialOffset) throws IOException {
@@ -533,6 +791,22 @@ public class ZipFile implements Closeable, ZipConstants {
         }
 
         @Override public int read(byte[] buffer, int byteOffset, int byteCount) throws IOException {
+            if (positional) {
+                final long length = endOffset - offset;
+                if (byteCount > length) {
+                    byteCount = (int) length;
+                }
+                if (byteCount == 0) {
+                    return -1;
+                }
+                int count = pread(buffer, byteOffset, byteCount);
+                if (count > 0) {
+                    offset += count;
+                    return count;
+                } else {
+                    return -1;
+                }
+            }
             synchronized (sharedRaf) {
                 final long length = endOffset - offset;
                 if (byteCount > length) {
@@ -558,6 +832,18 @@ public class ZipFile implements Closeable, ZipConstants {
         }
 
         public int fill(Inflater inflater, int nativeEndBufSize) throws IOException {
+            if (positional) {
+                // Inflater.setFileInput reads through the file's position, so feed the
+                // inflater from our own buffer instead.
+                if (fillBuffer == null) {
+                    fillBuffer = new byte[nativeEndBufSize];
+                }
+                int count = read(fillBuffer, 0, fillBuffer.length);
+                if (count > 0) {
+                    inflater.setInput(fillBuffer, 0, count);
+                }
+                return count;
+            }
             synchronized (sharedRaf) {
                 int len = Math.min((int) (endOffset - offset), nativeEndBufSize);
                 int cnt = inflater.setFileInput(sharedRaf.getFD(), offset, nativeEndBufSize);
@@ -567,6 +853,14 @@ public class ZipFile implements Closeable, ZipConstants {
                 return len;
             }
         }
+
+        private int pread(byte[] buffer, int byteOffset, int byteCount) throws IOException {
+            try {
+                return Libcore.os.pread(sharedRaf.getFD(), buffer, byteOffset, byteCount, offset);
+            } catch (ErrnoException e) {
+                throw e.rethrowAsIOException();
+            }
+        }
     }
 
     /** @hide */
@@ -0,0 +1,742 @@
+/*
+ * Written by Doug Lea with assistance from members of JCP JSR-166
+ * Expert Group and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package jsr166;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class CompletableFutureTest extends JSR166TestCase {
+    // android-note: Removed because the CTS runner does a bad job of
+    // retrying tests that have suite() declarations.
+    //
+    // public static void main(String[] args) {
+    //     main(suite(), args);
+    // }
+    // public static Test suite() {
+    //     return new TestSuite(...);
+    // }
+
+    static class CFException extends RuntimeException {}
+
+    void checkIncomplete(CompletableFuture<?> f) {
+        assertFalse(f.isDone());
+        assertFalse(f.isCancelled());
+        assertTrue(f.toString().contains("[Not completed"));
+        try {
+            assertNull(f.getNow(null));
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+        try {
+            f.get(0L, MILLISECONDS);
+            shouldThrow();
+        }
+        catch (TimeoutException success) {}
+        catch (Throwable fail) { threadUnexpectedException(fail); }
+    }
+
+    <T> void checkCompletedNormally(CompletableFuture<T> f, T value) {
+        try {
+            assertEquals(value, f.get(LONG_DELAY_MS, MILLISECONDS));
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+        try {
+            assertEquals(value, f.join());
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+        try {
+            assertEquals(value, f.getNow(null));
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+        try {
+            assertEquals(value, f.get());
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+        assertTrue(f.isDone());
+        assertFalse(f.isCancelled());
+        assertFalse(f.isCompletedExceptionally());
+        assertTrue(f.toString().contains("[Completed normally]"));
+    }
+
+    /**
+     * Checks that f completed with ex itself (if f was completed
+     * directly) or with a CompletionException wrapping ex (if f is a
+     * dependent of a future that completed with ex).
+     */
+    void checkCompletedWithException(CompletableFuture<?> f,
+                                     Throwable ex, boolean wrapped) {
+        final AtomicReference<Throwable> seen = new AtomicReference<Throwable>();
+        f.whenComplete(new BiConsumer<Object, Throwable>() {
+            public void accept(Object result, Throwable t) {
+                seen.set(t);
+            }});
+        if (wrapped) {
+            assertTrue(seen.get() instanceof CompletionException);
+            assertSame(ex, seen.get().getCause());
+        } else {
+            assertSame(ex, seen.get());
+        }
+
+        try {
+            f.get(LONG_DELAY_MS, MILLISECONDS);
+            shouldThrow();
+        } catch (ExecutionException success) {
+            assertSame(ex, success.getCause());
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        try {
+            f.join();
+            shouldThrow();
+        } catch (CompletionException success) {
+            assertSame(ex, success.getCause());
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        try {
+            f.getNow(null);
+            shouldThrow();
+        } catch (CompletionException success) {
+            assertSame(ex, success.getCause());
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        assertTrue(f.isDone());
+        assertFalse(f.isCancelled());
+        assertTrue(f.isCompletedExceptionally());
+        assertTrue(f.toString().contains("[Completed exceptionally"));
+    }
+
+    void checkCancelled(CompletableFuture<?> f) {
+        try {
+            f.get(LONG_DELAY_MS, MILLISECONDS);
+            shouldThrow();
+        } catch (CancellationException success) {
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        try {
+            f.join();
+            shouldThrow();
+        } catch (CancellationException success) {}
+        try {
+            f.getNow(null);
+            shouldThrow();
+        } catch (CancellationException success) {}
+        try {
+            f.get();
+            shouldThrow();
+        } catch (CancellationException success) {
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        assertTrue(f.isDone());
+        assertTrue(f.isCompletedExceptionally());
+        assertTrue(f.isCancelled());
+        assertTrue(f.toString().contains("[Completed exceptionally"));
+    }
+
+    /**
+     * Checks that f is a dependent of a cancelled future, and so
+     * completed with a CompletionException wrapping the
+     * CancellationException.
+     */
+    void checkCompletedWithWrappedCancellationException(CompletableFuture<?> f) {
+        try {
+            f.join();
+            shouldThrow();
+        } catch (CompletionException success) {
+            assertTrue(success.getCause() instanceof CancellationException);
+        }
+        try {
+            f.get();
+            shouldThrow();
+        } catch (ExecutionException success) {
+            assertTrue(success.getCause() instanceof CancellationException);
+        } catch (Throwable fail) { threadUnexpectedException(fail); }
+
+        assertTrue(f.isDone());
+        assertTrue(f.isCompletedExceptionally());
+        assertFalse(f.isCancelled());
+    }
+
+    static final class IncFunction implements Function<Integer,Integer> {
+        final AtomicInteger invocationCount = new AtomicInteger();
+        public Integer apply(Integer x) {
+            invocationCount.incrementAndGet();
+            return x + 1;
+        }
+    }
+
+    static final class FailingFunction implements Function<Integer,Integer> {
+        final CFException ex = new CFException();
+        public Integer apply(Integer x) {
+            throw ex;
+        }
+    }
+
+    static final class ThreadRecordingSupplier implements Supplier<Thread> {
+        public Thread get() {
+            return Thread.currentThread();
+        }
+    }
+
+    /**
+     * A newly constructed CompletableFuture is incomplete, as
+     * indicated by methods isDone, isCancelled, and getNow
+     */
+    public void testConstructor() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        checkIncomplete(f);
+    }
+
+    /**
+     * complete completes normally, as indicated by methods isDone,
+     * isCancelled, join, get, and getNow
+     */
+    public void testComplete() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        checkIncomplete(f);
+        assertTrue(f.complete(one));
+        checkCompletedNormally(f, one);
+        assertFalse(f.complete(two));
+        assertFalse(f.completeExceptionally(new CFException()));
+        assertFalse(f.cancel(true));
+        checkCompletedNormally(f, one);
+    }
+
+    /**
+     * completeExceptionally completes exceptionally, as indicated by
+     * methods isDone, isCancelled, join, get, and getNow
+     */
+    public void testCompleteExceptionally() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CFException ex = new CFException();
+        checkIncomplete(f);
+        assertTrue(f.completeExceptionally(ex));
+        checkCompletedWithException(f, ex, false);
+        assertFalse(f.complete(one));
+        checkCompletedWithException(f, ex, false);
+    }
+
+    /**
+     * cancel completes exceptionally and reports cancelled, as indicated by
+     * methods isDone, isCancelled, join, get, and getNow
+     */
+    public void testCancel() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        checkIncomplete(f);
+        assertTrue(f.cancel(true));
+        checkCancelled(f);
+        assertTrue(f.cancel(false));
+        assertFalse(f.complete(one));
+        checkCancelled(f);
+    }
+
+    /**
+     * obtrudeValue forces completion with given value
+     */
+    public void testObtrudeValue() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        checkIncomplete(f);
+        assertTrue(f.complete(one));
+        checkCompletedNormally(f, one);
+        f.obtrudeValue(three);
+        checkCompletedNormally(f, three);
+        f.obtrudeValue(two);
+        checkCompletedNormally(f, two);
+        f = new CompletableFuture<Integer>();
+        f.obtrudeValue(three);
+        checkCompletedNormally(f, three);
+        f.obtrudeValue(null);
+        checkCompletedNormally(f, null);
+        f = new CompletableFuture<Integer>();
+        CFException ex = new CFException();
+        f.completeExceptionally(ex);
+        f.obtrudeValue(four);
+        checkCompletedNormally(f, four);
+    }
+
+    /**
+     * getNumberOfDependents returns number of dependent tasks
+     */
+    public void testGetNumberOfDependents() {
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        assertEquals(0, f.getNumberOfDependents());
+        CompletableFuture<Integer> g = f.thenApply(new IncFunction());
+        assertEquals(1, f.getNumberOfDependents());
+        assertEquals(0, g.getNumberOfDependents());
+        CompletableFuture<Integer> h = f.thenApply(new IncFunction());
+        assertEquals(2, f.getNumberOfDependents());
+        assertTrue(f.complete(1));
+        checkCompletedNormally(g, two);
+        checkCompletedNormally(h, two);
+        assertEquals(0, f.getNumberOfDependents());
+        assertEquals(0, g.getNumberOfDependents());
+    }
+
+    /**
+     * thenApply result completes normally after normal completion of
+     * source, whether the source completes before or after the
+     * dependent is created
+     */
+    public void testThenApply_normalCompletion() {
+        IncFunction r = new IncFunction();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenApply(r);
+        checkIncomplete(g);
+        assertTrue(f.complete(one));
+        checkCompletedNormally(g, two);
+        checkCompletedNormally(f.thenApply(r), two);
+        assertEquals(2, r.invocationCount.get());
+    }
+
+    /**
+     * thenApply result completes exceptionally after exceptional
+     * completion of source, without invoking the function
+     */
+    public void testThenApply_exceptionalCompletion() {
+        IncFunction r = new IncFunction();
+        CFException ex = new CFException();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenApply(r);
+        f.completeExceptionally(ex);
+        checkCompletedWithException(g, ex, true);
+        checkCompletedWithException(f.thenApply(r), ex, true);
+        checkCompletedWithException(f, ex, false);
+        assertEquals(0, r.invocationCount.get());
+    }
+
+    /**
+     * thenApply result completes exceptionally if the function throws
+     */
+    public void testThenApply_functionThrows() {
+        FailingFunction r = new FailingFunction();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenApply(r);
+        f.complete(one);
+        checkCompletedWithException(g, r.ex, true);
+        checkCompletedNormally(f, one);
+    }
+
+    /**
+     * thenApply result completes exceptionally if the source is
+     * cancelled
+     */
+    public void testThenApply_sourceCancelled() {
+        IncFunction r = new IncFunction();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenApply(r);
+        assertTrue(f.cancel(true));
+        checkCompletedWithWrappedCancellationException(g);
+        checkCancelled(f);
+        assertEquals(0, r.invocationCount.get());
+    }
+
+    /**
+     * thenApply chains run in order, each seeing its predecessor's result
+     */
+    public void testThenApply_chain() {
+        IncFunction r = new IncFunction();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f;
+        for (int i = 0; i < 1000; i++)
+            g = g.thenApply(r);
+        f.complete(0);
+        checkCompletedNormally(g, 1000);
+        assertEquals(1000, r.invocationCount.get());
+    }
+
+    /**
+     * thenCompose result completes normally with the result of the
+     * stage returned by the function
+     */
+    public void testThenCompose_normalCompletion() {
+        final CompletableFuture<Integer> inner = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenCompose(
+            new Function<Integer, CompletableFuture<Integer>>() {
+                public CompletableFuture<Integer> apply(Integer x) {
+                    return inner.thenApply(new IncFunction());
+                }});
+        f.complete(one);
+        checkIncomplete(g);
+        inner.complete(two);
+        checkCompletedNormally(g, three);
+
+        CompletableFuture<Integer> h = f.thenCompose(
+            new Function<Integer, CompletableFuture<Integer>>() {
+                public CompletableFuture<Integer> apply(Integer x) {
+                    return CompletableFuture.completedFuture(x + 5);
+                }});
+        checkCompletedNormally(h, six);
+    }
+
+    /**
+     * thenCompose result completes exceptionally after exceptional
+     * completion of the source, or of the stage returned by the function
+     */
+    public void testThenCompose_exceptionalCompletion() {
+        final CFException ex = new CFException();
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Integer, CompletableFuture<Integer>> fn =
+            new Function<Integer, CompletableFuture<Integer>>() {
+                public CompletableFuture<Integer> apply(Integer x) {
+                    calls.incrementAndGet();
+                    CompletableFuture<Integer> inner =
+                        new CompletableFuture<Integer>();
+                    inner.completeExceptionally(ex);
+                    return inner;
+                }};
+
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenCompose(fn);
+        f.completeExceptionally(ex);
+        checkCompletedWithException(g, ex, true);
+        assertEquals(0, calls.get());
+
+        f = new CompletableFuture<Integer>();
+        g = f.thenCompose(fn);
+        f.complete(one);
+        checkCompletedWithException(g, ex, true);
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * thenCompose result completes exceptionally if the function throws
+     */
+    public void testThenCompose_functionThrows() {
+        final CFException ex = new CFException();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.thenCompose(
+            new Function<Integer, CompletableFuture<Integer>>() {
+                public CompletableFuture<Integer> apply(Integer x) {
+                    throw ex;
+                }});
+        f.complete(one);
+        checkCompletedWithException(g, ex, true);
+    }
+
+    /**
+     * allOf(no component futures) returns a future completed normally
+     * with the value null
+     */
+    public void testAllOf_empty() throws Exception {
+        CompletableFuture<Void> f = CompletableFuture.allOf();
+        checkCompletedNormally(f, null);
+    }
+
+    /**
+     * allOf returns a future completed normally with the value null
+     * when all components complete normally
+     */
+    public void testAllOf_normal() throws Exception {
+        for (int k = 1; k < 20; k++) {
+            CompletableFuture<Integer>[] fs = newFutures(k);
+            CompletableFuture<Void> f = CompletableFuture.allOf(fs);
+            for (int i = 0; i < k; i++) {
+                checkIncomplete(f);
+                checkIncomplete(CompletableFuture.allOf(fs));
+                fs[i].complete(one);
+            }
+            checkCompletedNormally(f, null);
+            checkCompletedNormally(CompletableFuture.allOf(fs), null);
+        }
+    }
+
+    /**
+     * allOf completes exceptionally once all components are done if
+     * any of them completed exceptionally
+     */
+    public void testAllOf_exceptional() throws Exception {
+        for (int k = 1; k < 20; k++) {
+            CompletableFuture<Integer>[] fs = newFutures(k);
+            CFException ex = new CFException();
+            CompletableFuture<Void> f = CompletableFuture.allOf(fs);
+            for (int i = 0; i < k; i++) {
+                checkIncomplete(f);
+                if (i == k / 2)
+                    fs[i].completeExceptionally(ex);
+                else
+                    fs[i].complete(one);
+            }
+            checkCompletedWithException(f, ex, true);
+            checkCompletedWithException(CompletableFuture.allOf(fs), ex, true);
+        }
+    }
+
+    /**
+     * anyOf(no component futures) returns an incomplete future
+     */
+    public void testAnyOf_empty() throws Exception {
+        CompletableFuture<Object> f = CompletableFuture.anyOf();
+        checkIncomplete(f);
+    }
+
+    /**
+     * anyOf returns a future completed normally with a value when
+     * a component future does
+     */
+    public void testAnyOf_normal() throws Exception {
+        for (int k = 1; k < 20; k++) {
+            CompletableFuture<Integer>[] fs = newFutures(k);
+            CompletableFuture<Object> f = CompletableFuture.anyOf(fs);
+            checkIncomplete(f);
+            for (int i = 0; i < k; i++) {
+                fs[i].complete(i);
+                checkCompletedNormally(f, (Object) 0);
+                checkCompletedNormally(CompletableFuture.anyOf(fs), (Object) 0);
+            }
+        }
+    }
+
+    /**
+     * anyOf result completes exceptionally when the first component
+     * to complete does so exceptionally
+     */
+    public void testAnyOf_exceptional() throws Exception {
+        for (int k = 1; k < 20; k++) {
+            CompletableFuture<Integer>[] fs = newFutures(k);
+            CFException ex = new CFException();
+            CompletableFuture<Object> f = CompletableFuture.anyOf(fs);
+            checkIncomplete(f);
+            fs[k - 1].completeExceptionally(ex);
+            for (int i = 0; i < k - 1; i++)
+                fs[i].complete(i);
+            checkCompletedWithException(f, ex, true);
+        }
+    }
+
+    /**
+     * allOf and anyOf reject null arrays and null elements
+     */
+    public void testAllOfAnyOf_null() {
+        CompletableFuture<?>[] withNull = { new CompletableFuture<Integer>(), null };
+        try {
+            CompletableFuture.allOf((CompletableFuture<?>[]) null);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+        try {
+            CompletableFuture.allOf(withNull);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+        try {
+            CompletableFuture.anyOf((CompletableFuture<?>[]) null);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+        try {
+            CompletableFuture.anyOf(withNull);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+    }
+
+    /**
+     * exceptionally action is invoked only for exceptional completion,
+     * and its result replaces the exception
+     */
+    public void testExceptionally() {
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Throwable, Integer> recover = new Function<Throwable, Integer>() {
+            public Integer apply(Throwable t) {
+                calls.incrementAndGet();
+                return three;
+            }};
+
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.exceptionally(recover);
+        f.complete(one);
+        checkCompletedNormally(g, one);
+        assertEquals(0, calls.get());
+
+        f = new CompletableFuture<Integer>();
+        g = f.exceptionally(recover);
+        f.completeExceptionally(new CFException());
+        checkCompletedNormally(g, three);
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * handle is invoked with the result or the exception of the source
+     */
+    public void testHandle() {
+        BiFunction<Integer, Throwable, Integer> fn =
+            new BiFunction<Integer, Throwable, Integer>() {
+                public Integer apply(Integer x, Throwable t) {
+                    return (t == null) ? x : m1;
+                }};
+
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> g = f.handle(fn);
+        f.complete(one);
+        checkCompletedNormally(g, one);
+
+        f = new CompletableFuture<Integer>();
+        g = f.handle(fn);
+        assertTrue(f.cancel(true));
+        checkCompletedNormally(g, m1);
+    }
+
+    /**
+     * supplyAsync and the other default async methods run on the
+     * common pool when it supports parallelism, and otherwise each on
+     * a new thread
+     */
+    public void testDefaultExecutor() throws Exception {
+        boolean useCommonPool = ForkJoinPool.getCommonPoolParallelism() > 1;
+        Set<Thread> threads = new HashSet<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread t = CompletableFuture.supplyAsync(new ThreadRecordingSupplier())
+                .get(LONG_DELAY_MS, MILLISECONDS);
+            checkDefaultExecutorThread(useCommonPool, t);
+            assertTrue(useCommonPool || threads.add(t));
+        }
+
+        final CompletableFuture<Thread> g = new CompletableFuture<Thread>();
+        CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+        CompletableFuture<Void> h = f.thenAcceptAsync(new Consumer<Integer>() {
+            public void accept(Integer x) {
+                g.complete(Thread.currentThread());
+            }});
+        f.complete(one);
+        checkCompletedNormally(h, null);
+        checkDefaultExecutorThread(useCommonPool, g.join());
+    }
+
+    /**
+     * an explicit ForkJoinPool.commonPool() argument is replaced by the
+     * default executor when the common pool cannot support parallelism
+     */
+    public void testCommonPoolArgumentIsScreened() throws Exception {
+        boolean useCommonPool = ForkJoinPool.getCommonPoolParallelism() > 1;
+        Thread t = CompletableFuture.supplyAsync(new ThreadRecordingSupplier(),
+                                                 ForkJoinPool.commonPool())
+            .get(LONG_DELAY_MS, MILLISECONDS);
+        checkDefaultExecutorThread(useCommonPool, t);
+
+        try {
+            CompletableFuture.supplyAsync(new ThreadRecordingSupplier(), null);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+    }
+
+    void checkDefaultExecutorThread(boolean useCommonPool, Thread t) {
+        assertNotSame(Thread.currentThread(), t);
+        if (useCommonPool) {
+            assertTrue(t instanceof ForkJoinWorkerThread);
+            assertSame(ForkJoinPool.commonPool(),
+                       ((ForkJoinWorkerThread) t).getPool());
+        } else {
+            assertFalse(t instanceof ForkJoinWorkerThread);
+        }
+    }
+
+    /**
+     * dependents pushed while the source is being completed in
+     * another thread are all triggered exactly once
+     */
+    public void testCompleteRacesWithDependentPush() throws Throwable {
+        final int n = 100000;
+        final CompletableFuture<Integer>[] fs = newFutures(n);
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<Integer>[] applied =
+            (CompletableFuture<Integer>[]) new CompletableFuture<?>[n];
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger pushing = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread completer = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                await(start);
+                for (int i = 0; i < n; i++) {
+                    // Keep in step with the pusher to widen the window.
+                    while (pushing.get() < i) {}
+                    assertTrue(fs[i].complete(i));
+                }
+            }});
+        Thread pusher = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                IncFunction inc = new IncFunction();
+                await(start);
+                for (int i = 0; i < n; i++) {
+                    pushing.set(i);
+                    applied[i] = fs[i].thenApply(inc);
+                }
+            }});
+        Thread acceptor = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                Consumer<Integer> count = new Consumer<Integer>() {
+                    public void accept(Integer x) {
+                        accepted.incrementAndGet();
+                    }};
+                await(start);
+                for (int i = 0; i < n; i++)
+                    fs[i].thenAccept(count);
+            }});
+
+        start.countDown();
+        awaitTermination(completer);
+        awaitTermination(pusher);
+        awaitTermination(acceptor);
+
+        // Every dependent must have been fired by whichever of the
+        // completing and pushing threads finished last, so none may
+        // still be waiting.
+        for (int i = 0; i < n; i++) {
+            assertTrue(applied[i].isDone());
+            assertEquals(i + 1, (int) applied[i].getNow(null));
+            assertEquals(0, fs[i].getNumberOfDependents());
+        }
+        assertEquals(n, accepted.get());
+    }
+
+    /**
+     * many threads racing to complete the same future yield exactly
+     * one success, seen by every dependent
+     */
+    public void testConcurrentCompletion() throws Throwable {
+        final int nthreads = 4;
+        for (int round = 0; round < 100; round++) {
+            final CompletableFuture<Integer> f = new CompletableFuture<Integer>();
+            final CompletableFuture<Integer> g = f.thenApply(new IncFunction());
+            final AtomicInteger successes = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[nthreads];
+            for (int i = 0; i < nthreads; i++) {
+                final int value = i;
+                threads[i] = newStartedThread(new CheckedRunnable() {
+                    public void realRun() throws InterruptedException {
+                        await(start);
+                        if (f.complete(value))
+                            successes.incrementAndGet();
+                    }});
+            }
+            start.countDown();
+            for (Thread t : threads)
+                awaitTermination(t);
+            assertEquals(1, successes.get());
+            checkCompletedNormally(g, f.join() + 1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static CompletableFuture<Integer>[] newFutures(int n) {
+        CompletableFuture<Integer>[] fs =
+            (CompletableFuture<Integer>[]) new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++)
+            fs[i] = new CompletableFuture<Integer>();
+        return fs;
+    }
+
+}
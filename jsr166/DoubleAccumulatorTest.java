@@ -0,0 +1,225 @@
+/*
+ * Written by Doug Lea with assistance from members of JCP JSR-166
+ * Expert Group and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package jsr166;
+
+import java.io.Serializable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.DoubleBinaryOperator;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class DoubleAccumulatorTest extends JSR166TestCase {
+    // android-note: Removed because the CTS runner does a bad job of
+    // retrying tests that have suite() declarations.
+    //
+    // public static void main(String[] args) {
+    //     main(suite(), args);
+    // }
+    // public static Test suite() {
+    //     return new TestSuite(...);
+    // }
+
+    static final class Max implements DoubleBinaryOperator, Serializable {
+        public double applyAsDouble(double x, double y) { return Math.max(x, y); }
+    }
+
+    static final class Sum implements DoubleBinaryOperator, Serializable {
+        public double applyAsDouble(double x, double y) { return x + y; }
+    }
+
+    /**
+     * default constructed initializes to identity
+     */
+    public void testConstructor() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        assertEquals(Double.NEGATIVE_INFINITY, ai.get());
+    }
+
+    /**
+     * constructor throws NullPointerException for a null function
+     */
+    public void testConstructorNullFunction() {
+        try {
+            new DoubleAccumulator(null, 0.0);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+    }
+
+    /**
+     * accumulate accumulates given value to current, and get returns current value
+     */
+    public void testAccumulateAndGet() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        ai.accumulate(2.0);
+        assertEquals(2.0, ai.get());
+        ai.accumulate(-4.0);
+        assertEquals(2.0, ai.get());
+        ai.accumulate(4.0);
+        assertEquals(4.0, ai.get());
+    }
+
+    /**
+     * reset() causes subsequent get() to return identity
+     */
+    public void testReset() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        ai.accumulate(2.0);
+        assertEquals(2.0, ai.get());
+        ai.reset();
+        assertEquals(Double.NEGATIVE_INFINITY, ai.get());
+    }
+
+    /**
+     * getThenReset() returns current value; subsequent get() returns identity
+     */
+    public void testGetThenReset() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        ai.accumulate(2.0);
+        assertEquals(2.0, ai.get());
+        assertEquals(2.0, ai.getThenReset());
+        assertEquals(Double.NEGATIVE_INFINITY, ai.get());
+    }
+
+    /**
+     * a deserialized serialized accumulator holds same value and
+     * function
+     */
+    public void testSerialization() throws Exception {
+        DoubleAccumulator x = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        DoubleAccumulator y = serialClone(x);
+        assertNotSame(x, y);
+        x.accumulate(-22.0);
+        DoubleAccumulator z = serialClone(x);
+        assertNotSame(y, z);
+        assertEquals(-22.0, x.get());
+        assertEquals(Double.NEGATIVE_INFINITY, y.get());
+        assertEquals(-22.0, z.get());
+        z.accumulate(-23.0);
+        assertEquals(-22.0, z.get());
+        z.reset();
+        assertEquals(Double.NEGATIVE_INFINITY, z.get());
+    }
+
+    /**
+     * toString returns current value.
+     */
+    public void testToString() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), 0.0);
+        assertEquals("0.0", ai.toString());
+        ai.accumulate(1.0);
+        assertEquals(Double.toString(1.0), ai.toString());
+    }
+
+    /**
+     * intValue returns current value.
+     */
+    public void testIntValue() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), 0.0);
+        assertEquals(0, ai.intValue());
+        ai.accumulate(1.0);
+        assertEquals(1, ai.intValue());
+    }
+
+    /**
+     * longValue returns current value.
+     */
+    public void testLongValue() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), 0.0);
+        assertEquals(0, ai.longValue());
+        ai.accumulate(1.0);
+        assertEquals(1, ai.longValue());
+    }
+
+    /**
+     * floatValue returns current value.
+     */
+    public void testFloatValue() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), 0.0);
+        assertEquals(0.0f, ai.floatValue());
+        ai.accumulate(1.0);
+        assertEquals(1.0f, ai.floatValue());
+    }
+
+    /**
+     * doubleValue returns current value.
+     */
+    public void testDoubleValue() {
+        DoubleAccumulator ai = new DoubleAccumulator(new Max(), 0.0);
+        assertEquals(0.0, ai.doubleValue());
+        ai.accumulate(1.0);
+        assertEquals(1.0, ai.doubleValue());
+    }
+
+    /**
+     * accumulates by multiple threads produce correct result
+     */
+    public void testAccumulateAndGetMT() throws Throwable {
+        final int incs = 1000000;
+        final int nthreads = 4;
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        DoubleAccumulator a = new DoubleAccumulator(new Max(), Double.NEGATIVE_INFINITY);
+        CyclicBarrier barrier = new CyclicBarrier(nthreads + 1);
+        for (int i = 0; i < nthreads; ++i)
+            pool.execute(new AccTask(a, barrier, incs));
+        barrier.await();
+        barrier.await();
+        assertEquals((double)incs - 1, a.get());
+        joinPool(pool);
+    }
+
+    /**
+     * getThenReset by a quiescent owner observes every contended
+     * accumulate exactly once
+     */
+    public void testGetThenResetMT() throws Throwable {
+        final int incs = 100000;
+        final int nthreads = 4;
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        DoubleAccumulator a = new DoubleAccumulator(new Sum(), 0.0);
+        CyclicBarrier barrier = new CyclicBarrier(nthreads + 1);
+        double total = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < nthreads; ++i)
+                pool.execute(new AccTask(a, barrier, incs));
+            barrier.await();
+            barrier.await();
+            total += a.getThenReset();
+            assertEquals(0.0, a.get());
+        }
+        double expected = (long)incs * (incs - 1) / 2;
+        assertEquals(3 * nthreads * expected, total);
+        joinPool(pool);
+    }
+
+    static final class AccTask implements Runnable {
+        final DoubleAccumulator acc;
+        final CyclicBarrier barrier;
+        final int incs;
+        volatile double result;
+        AccTask(DoubleAccumulator acc, CyclicBarrier barrier, int incs) {
+            this.acc = acc;
+            this.barrier = barrier;
+            this.incs = incs;
+        }
+
+        public void run() {
+            try {
+                barrier.await();
+                DoubleAccumulator a = acc;
+                for (int i = 0; i < incs; ++i)
+                    a.accumulate(i);
+                result = a.get();
+                barrier.await();
+            } catch (Throwable t) { throw new Error(t); }
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Written by Doug Lea with assistance from members of JCP JSR-166
+ * Expert Group and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package jsr166;
+
+import java.io.Serializable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class LongAccumulatorTest extends JSR166TestCase {
+    // android-note: Removed because the CTS runner does a bad job of
+    // retrying tests that have suite() declarations.
+    //
+    // public static void main(String[] args) {
+    //     main(suite(), args);
+    // }
+    // public static Test suite() {
+    //     return new TestSuite(...);
+    // }
+
+    static final class Max implements LongBinaryOperator, Serializable {
+        public long applyAsLong(long x, long y) { return Math.max(x, y); }
+    }
+
+    static final class Sum implements LongBinaryOperator, Serializable {
+        public long applyAsLong(long x, long y) { return x + y; }
+    }
+
+    /**
+     * default constructed initializes to identity
+     */
+    public void testConstructor() {
+        LongAccumulator ai = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, ai.get());
+    }
+
+    /**
+     * constructor throws NullPointerException for a null function
+     */
+    public void testConstructorNullFunction() {
+        try {
+            new LongAccumulator(null, 0L);
+            shouldThrow();
+        } catch (NullPointerException success) {}
+    }
+
+    /**
+     * accumulate accumulates given value to current, and get returns current value
+     */
+    public void testAccumulateAndGet() {
+        LongAccumulator ai = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        ai.accumulate(2);
+        assertEquals(2, ai.get());
+        ai.accumulate(-4);
+        assertEquals(2, ai.get());
+        ai.accumulate(4);
+        assertEquals(4, ai.get());
+    }
+
+    /**
+     * reset() causes subsequent get() to return identity
+     */
+    public void testReset() {
+        LongAccumulator ai = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        ai.accumulate(2);
+        assertEquals(2, ai.get());
+        ai.reset();
+        assertEquals(Long.MIN_VALUE, ai.get());
+    }
+
+    /**
+     * getThenReset() returns current value; subsequent get() returns identity
+     */
+    public void testGetThenReset() {
+        LongAccumulator ai = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        ai.accumulate(2);
+        assertEquals(2, ai.get());
+        assertEquals(2, ai.getThenReset());
+        assertEquals(Long.MIN_VALUE, ai.get());
+    }
+
+    /**
+     * a deserialized serialized accumulator holds same value and
+     * function
+     */
+    public void testSerialization() throws Exception {
+        LongAccumulator x = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        LongAccumulator y = serialClone(x);
+        assertNotSame(x, y);
+        x.accumulate(-22);
+        LongAccumulator z = serialClone(x);
+        assertNotSame(y, z);
+        assertEquals(-22, x.get());
+        assertEquals(Long.MIN_VALUE, y.get());
+        assertEquals(-22, z.get());
+        z.accumulate(-23);
+        assertEquals(-22, z.get());
+        z.reset();
+        assertEquals(Long.MIN_VALUE, z.get());
+    }
+
+    /**
+     * toString returns current value.
+     */
+    public void testToString() {
+        LongAccumulator ai = new LongAccumulator(new Max(), 0L);
+        assertEquals("0", ai.toString());
+        ai.accumulate(1);
+        assertEquals(Long.toString(1), ai.toString());
+    }
+
+    /**
+     * intValue returns current value.
+     */
+    public void testIntValue() {
+        LongAccumulator ai = new LongAccumulator(new Max(), 0L);
+        assertEquals(0, ai.intValue());
+        ai.accumulate(1);
+        assertEquals(1, ai.intValue());
+    }
+
+    /**
+     * longValue returns current value.
+     */
+    public void testLongValue() {
+        LongAccumulator ai = new LongAccumulator(new Max(), 0L);
+        assertEquals(0, ai.longValue());
+        ai.accumulate(1);
+        assertEquals(1, ai.longValue());
+    }
+
+    /**
+     * floatValue returns current value.
+     */
+    public void testFloatValue() {
+        LongAccumulator ai = new LongAccumulator(new Max(), 0L);
+        assertEquals(0.0f, ai.floatValue());
+        ai.accumulate(1);
+        assertEquals(1.0f, ai.floatValue());
+    }
+
+    /**
+     * doubleValue returns current value.
+     */
+    public void testDoubleValue() {
+        LongAccumulator ai = new LongAccumulator(new Max(), 0L);
+        assertEquals(0.0, ai.doubleValue());
+        ai.accumulate(1);
+        assertEquals(1.0, ai.doubleValue());
+    }
+
+    /**
+     * accumulates by multiple threads produce correct result
+     */
+    public void testAccumulateAndGetMT() throws Throwable {
+        final int incs = 1000000;
+        final int nthreads = 4;
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        LongAccumulator a = new LongAccumulator(new Max(), Long.MIN_VALUE);
+        CyclicBarrier barrier = new CyclicBarrier(nthreads + 1);
+        for (int i = 0; i < nthreads; ++i)
+            pool.execute(new AccTask(a, barrier, incs));
+        barrier.await();
+        barrier.await();
+        assertEquals(incs - 1, a.get());
+        joinPool(pool);
+    }
+
+    /**
+     * getThenReset by a quiescent owner observes every contended
+     * accumulate exactly once
+     */
+    public void testGetThenResetMT() throws Throwable {
+        final int incs = 100000;
+        final int nthreads = 4;
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        LongAccumulator a = new LongAccumulator(new Sum(), 0L);
+        CyclicBarrier barrier = new CyclicBarrier(nthreads + 1);
+        long total = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < nthreads; ++i)
+                pool.execute(new AccTask(a, barrier, incs));
+            barrier.await();
+            barrier.await();
+            total += a.getThenReset();
+            assertEquals(0, a.get());
+        }
+        long expected = (long)incs * (incs - 1) / 2;
+        assertEquals(3 * nthreads * expected, total);
+        joinPool(pool);
+    }
+
+    static final class AccTask implements Runnable {
+        final LongAccumulator acc;
+        final CyclicBarrier barrier;
+        final int incs;
+        volatile long result;
+        AccTask(LongAccumulator acc, CyclicBarrier barrier, int incs) {
+            this.acc = acc;
+            this.barrier = barrier;
+            this.incs = incs;
+        }
+
+        public void run() {
+            try {
+                barrier.await();
+                LongAccumulator a = acc;
+                for (int i = 0; i < incs; ++i)
+                    a.accumulate(i);
+                result = a.get();
+                barrier.await();
+            } catch (Throwable t) { throw new Error(t); }
+        }
+    }
+
+}
@@ -0,0 +1,781 @@
+/*
+ * Written by Doug Lea with assistance from members of JCP JSR-166
+ * Expert Group and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+package jsr166;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class StampedLockTest extends JSR166TestCase {
+    // android-note: Removed because the CTS runner does a bad job of
+    // retrying tests that have suite() declarations.
+    //
+    // public static void main(String[] args) {
+    //     main(suite(), args);
+    // }
+    // public static Test suite() {
+    //     return new TestSuite(...);
+    // }
+
+    /**
+     * More read locks than fit in the reader bits of the state, so
+     * that some are counted by the overflow field.
+     */
+    static final int OVERFLOW_READERS = 300;
+
+    /**
+     * A runnable calling writeLockInterruptibly
+     */
+    class InterruptibleLockRunnable extends CheckedRunnable {
+        final StampedLock lock;
+        InterruptibleLockRunnable(StampedLock l) { lock = l; }
+        public void realRun() throws InterruptedException {
+            lock.unlockWrite(lock.writeLockInterruptibly());
+        }
+    }
+
+    /**
+     * A runnable calling writeLockInterruptibly that expects to be
+     * interrupted
+     */
+    class InterruptedLockRunnable extends CheckedInterruptedRunnable {
+        final StampedLock lock;
+        InterruptedLockRunnable(StampedLock l) { lock = l; }
+        public void realRun() throws InterruptedException {
+            lock.writeLockInterruptibly();
+        }
+    }
+
+    /**
+     * constructed StampedLock is in unlocked state
+     */
+    public void testConstructor() {
+        StampedLock lock = new StampedLock();
+        assertFalse(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+        assertEquals(0, lock.getReadLockCount());
+    }
+
+    /**
+     * write-locking and read-locking an unlocked lock succeed
+     */
+    public void testLock() {
+        StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        assertTrue(s != 0L);
+        assertTrue(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+        assertEquals(0, lock.getReadLockCount());
+        lock.unlockWrite(s);
+        assertFalse(lock.isWriteLocked());
+
+        s = lock.readLock();
+        assertTrue(s != 0L);
+        assertFalse(lock.isWriteLocked());
+        assertTrue(lock.isReadLocked());
+        assertEquals(1, lock.getReadLockCount());
+        lock.unlockRead(s);
+        assertFalse(lock.isReadLocked());
+        assertEquals(0, lock.getReadLockCount());
+    }
+
+    /**
+     * unlock releases either a read or write lock
+     */
+    public void testUnlock() {
+        StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        lock.unlock(s);
+        assertFalse(lock.isWriteLocked());
+        s = lock.readLock();
+        lock.unlock(s);
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * unlockRead and unlockWrite throw IllegalMonitorStateException
+     * for stamps of the wrong mode, and unlock for stale stamps
+     */
+    public void testUnlock_IMSE() {
+        StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        try {
+            lock.unlockRead(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+        lock.unlockWrite(s);
+        try {
+            lock.unlockWrite(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+        try {
+            lock.unlock(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+
+        s = lock.readLock();
+        try {
+            lock.unlockWrite(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+        lock.unlockRead(s);
+        try {
+            lock.unlockRead(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+
+        s = lock.tryOptimisticRead();
+        try {
+            lock.unlock(s);
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+    }
+
+    /**
+     * tryUnlockWrite and tryUnlockRead release locks held without
+     * stamps, and fail if none are held
+     */
+    public void testTryUnlock() {
+        StampedLock lock = new StampedLock();
+        assertFalse(lock.tryUnlockWrite());
+        assertFalse(lock.tryUnlockRead());
+        lock.writeLock();
+        assertFalse(lock.tryUnlockRead());
+        assertTrue(lock.tryUnlockWrite());
+        assertFalse(lock.isWriteLocked());
+        lock.readLock();
+        lock.readLock();
+        assertFalse(lock.tryUnlockWrite());
+        assertTrue(lock.tryUnlockRead());
+        assertTrue(lock.tryUnlockRead());
+        assertFalse(lock.tryUnlockRead());
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * tryWriteLock and tryReadLock fail while write-locked
+     */
+    public void testTryLockWhenWriteLocked() {
+        StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        assertEquals(0L, lock.tryWriteLock());
+        assertEquals(0L, lock.tryReadLock());
+        assertEquals(0L, lock.tryOptimisticRead());
+        lock.unlockWrite(s);
+        assertTrue((s = lock.tryWriteLock()) != 0L);
+        lock.unlockWrite(s);
+        assertTrue((s = lock.tryReadLock()) != 0L);
+        lock.unlockRead(s);
+    }
+
+    /**
+     * tryWriteLock fails while read-locked, but tryReadLock succeeds
+     */
+    public void testTryLockWhenReadLocked() {
+        StampedLock lock = new StampedLock();
+        long rs = lock.readLock();
+        assertEquals(0L, lock.tryWriteLock());
+        long s = lock.tryReadLock();
+        assertTrue(s != 0L);
+        assertEquals(2, lock.getReadLockCount());
+        lock.unlockRead(s);
+        lock.unlockRead(rs);
+    }
+
+    /**
+     * an optimistic read stamp validates until a write lock is
+     * acquired, and never validates again after one is
+     */
+    public void testValidate() {
+        StampedLock lock = new StampedLock();
+        long s = lock.tryOptimisticRead();
+        assertTrue(s != 0L);
+        assertTrue(lock.validate(s));
+
+        long rs = lock.readLock();
+        assertTrue(lock.validate(s));
+        assertTrue(lock.validate(rs));
+        lock.unlockRead(rs);
+        assertTrue(lock.validate(s));
+
+        long ws = lock.writeLock();
+        assertFalse(lock.validate(s));
+        assertTrue(lock.validate(ws));
+        lock.unlockWrite(ws);
+        assertFalse(lock.validate(s));
+        assertFalse(lock.validate(ws));
+
+        long s2 = lock.tryOptimisticRead();
+        assertTrue(s2 != s);
+        assertTrue(lock.validate(s2));
+    }
+
+    /**
+     * a write by another thread invalidates an optimistic read stamp
+     */
+    public void testValidateAfterWriteInOtherThread() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        final long s = lock.tryOptimisticRead();
+        Thread t = newStartedThread(new CheckedRunnable() {
+            public void realRun() {
+                lock.unlockWrite(lock.writeLock());
+            }});
+
+        awaitTermination(t);
+        assertFalse(lock.validate(s));
+        assertTrue(lock.validate(lock.tryOptimisticRead()));
+    }
+
+    /**
+     * validate(0) always fails
+     */
+    public void testValidateZero() {
+        StampedLock lock = new StampedLock();
+        assertFalse(lock.validate(0L));
+        long s = lock.writeLock();
+        assertFalse(lock.validate(0L));
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * tryConvertToWriteLock returns a write stamp given a write stamp,
+     * an optimistic stamp of an unlocked lock, or a stamp of the only
+     * read lock
+     */
+    public void testTryConvertToWriteLock() {
+        StampedLock lock = new StampedLock();
+
+        long s = lock.writeLock();
+        assertEquals(s, lock.tryConvertToWriteLock(s));
+        lock.unlockWrite(s);
+
+        s = lock.tryOptimisticRead();
+        long ws = lock.tryConvertToWriteLock(s);
+        assertTrue(ws != 0L);
+        assertTrue(lock.isWriteLocked());
+        assertFalse(lock.validate(s));
+        lock.unlockWrite(ws);
+
+        s = lock.readLock();
+        ws = lock.tryConvertToWriteLock(s);
+        assertTrue(ws != 0L);
+        assertTrue(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+        lock.unlockWrite(ws);
+    }
+
+    /**
+     * tryConvertToWriteLock fails if other readers or a writer hold
+     * the lock, or if the stamp is stale
+     */
+    public void testTryConvertToWriteLock_fails() {
+        StampedLock lock = new StampedLock();
+
+        long s = lock.readLock();
+        long rs = lock.readLock();
+        assertEquals(0L, lock.tryConvertToWriteLock(s));
+        assertEquals(2, lock.getReadLockCount());
+        lock.unlockRead(rs);
+        lock.unlockRead(s);
+
+        s = lock.tryOptimisticRead();
+        rs = lock.readLock();
+        assertEquals(0L, lock.tryConvertToWriteLock(s));
+        lock.unlockRead(rs);
+
+        long ws = lock.writeLock();
+        assertEquals(0L, lock.tryConvertToWriteLock(s));
+        lock.unlockWrite(ws);
+        assertEquals(0L, lock.tryConvertToWriteLock(s));
+        assertEquals(0L, lock.tryConvertToWriteLock(ws));
+        assertFalse(lock.isWriteLocked());
+    }
+
+    /**
+     * tryConvertToReadLock returns a read stamp given a read stamp, a
+     * write stamp (releasing the write lock), or an optimistic stamp
+     * of an unlocked lock
+     */
+    public void testTryConvertToReadLock() {
+        StampedLock lock = new StampedLock();
+
+        long s = lock.readLock();
+        assertEquals(s, lock.tryConvertToReadLock(s));
+        assertEquals(1, lock.getReadLockCount());
+        lock.unlockRead(s);
+
+        s = lock.writeLock();
+        long rs = lock.tryConvertToReadLock(s);
+        assertTrue(rs != 0L);
+        assertFalse(lock.isWriteLocked());
+        assertEquals(1, lock.getReadLockCount());
+        lock.unlockRead(rs);
+
+        s = lock.tryOptimisticRead();
+        rs = lock.tryConvertToReadLock(s);
+        assertTrue(rs != 0L);
+        assertEquals(1, lock.getReadLockCount());
+        assertTrue(lock.validate(s));
+        lock.unlockRead(rs);
+    }
+
+    /**
+     * tryConvertToReadLock fails given a stale stamp or while another
+     * thread holds the write lock
+     */
+    public void testTryConvertToReadLock_fails() {
+        StampedLock lock = new StampedLock();
+        long s = lock.tryOptimisticRead();
+        long ws = lock.writeLock();
+        assertEquals(0L, lock.tryConvertToReadLock(s));
+        lock.unlockWrite(ws);
+        assertEquals(0L, lock.tryConvertToReadLock(s));
+        assertEquals(0L, lock.tryConvertToReadLock(ws));
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * tryConvertToOptimisticRead releases a read or write lock, and
+     * returns a valid optimistic stamp given a valid one
+     */
+    public void testTryConvertToOptimisticRead() {
+        StampedLock lock = new StampedLock();
+
+        long s = lock.tryOptimisticRead();
+        assertEquals(s, lock.tryConvertToOptimisticRead(s));
+        assertTrue(lock.validate(s));
+
+        long ws = lock.writeLock();
+        s = lock.tryConvertToOptimisticRead(ws);
+        assertTrue(s != 0L);
+        assertFalse(lock.isWriteLocked());
+        assertTrue(lock.validate(s));
+
+        long rs = lock.readLock();
+        s = lock.tryConvertToOptimisticRead(rs);
+        assertTrue(s != 0L);
+        assertFalse(lock.isReadLocked());
+        assertTrue(lock.validate(s));
+    }
+
+    /**
+     * tryConvertToOptimisticRead fails given a stale stamp
+     */
+    public void testTryConvertToOptimisticRead_fails() {
+        StampedLock lock = new StampedLock();
+        long s = lock.tryOptimisticRead();
+        long ws = lock.writeLock();
+        assertEquals(0L, lock.tryConvertToOptimisticRead(s));
+        lock.unlockWrite(ws);
+        assertEquals(0L, lock.tryConvertToOptimisticRead(s));
+        assertEquals(0L, lock.tryConvertToOptimisticRead(ws));
+
+        long rs = lock.readLock();
+        lock.unlockRead(rs);
+        assertEquals(0L, lock.tryConvertToOptimisticRead(rs));
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * read locks beyond the capacity of the reader bits are counted,
+     * converted and released correctly
+     */
+    public void testReaderOverflow() {
+        StampedLock lock = new StampedLock();
+        long[] stamps = new long[OVERFLOW_READERS];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = (i % 2 == 0) ? lock.readLock() : lock.tryReadLock();
+            assertTrue(stamps[i] != 0L);
+            assertEquals(i + 1, lock.getReadLockCount());
+        }
+        assertEquals(0L, lock.tryWriteLock());
+        assertTrue(lock.isReadLocked());
+
+        // A read stamp is already a read stamp, even when overflowed.
+        long last = stamps[stamps.length - 1];
+        assertEquals(last, lock.tryConvertToReadLock(last));
+        assertEquals(0L, lock.tryConvertToWriteLock(last));
+        assertEquals(OVERFLOW_READERS, lock.getReadLockCount());
+
+        long s = lock.tryConvertToOptimisticRead(last);
+        assertTrue(s != 0L);
+        assertTrue(lock.validate(s));
+        assertEquals(OVERFLOW_READERS - 1, lock.getReadLockCount());
+
+        for (int i = stamps.length - 2; i >= 0; i--) {
+            if (i % 3 == 0)
+                assertTrue(lock.tryUnlockRead());
+            else if (i % 3 == 1)
+                lock.unlock(stamps[i]);
+            else
+                lock.unlockRead(stamps[i]);
+            assertEquals(i, lock.getReadLockCount());
+        }
+        assertFalse(lock.isReadLocked());
+        assertTrue(lock.validate(s));
+
+        long ws = lock.tryWriteLock();
+        assertTrue(ws != 0L);
+        lock.unlockWrite(ws);
+    }
+
+    /**
+     * overflowed read locks held by several threads are all released
+     */
+    public void testReaderOverflowMultipleThreads() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        final int nthreads = 4;
+        final CountDownLatch locked = new CountDownLatch(nthreads);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread[] threads = new Thread[nthreads];
+        for (int i = 0; i < nthreads; i++) {
+            threads[i] = newStartedThread(new CheckedRunnable() {
+                public void realRun() throws InterruptedException {
+                    long[] stamps = new long[OVERFLOW_READERS];
+                    for (int j = 0; j < stamps.length; j++)
+                        stamps[j] = lock.readLock();
+                    locked.countDown();
+                    await(release);
+                    for (long stamp : stamps)
+                        lock.unlockRead(stamp);
+                }});
+        }
+        await(locked);
+        assertEquals(nthreads * OVERFLOW_READERS, lock.getReadLockCount());
+        assertEquals(0L, lock.tryWriteLock());
+        release.countDown();
+        for (Thread t : threads)
+            awaitTermination(t);
+        assertEquals(0, lock.getReadLockCount());
+        lock.unlockWrite(lock.writeLock());
+    }
+
+    /**
+     * writeLockInterruptibly is interruptible
+     */
+    public void testWriteLockInterruptibly_Interruptible()
+            throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new InterruptedLockRunnable(lock));
+
+        waitForThreadToEnterWaitState(t);
+        t.interrupt();
+        awaitTermination(t);
+        assertTrue(lock.isWriteLocked());
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * writeLockInterruptibly succeeds if not interrupted
+     */
+    public void testWriteLockInterruptibly() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLockInterruptibly();
+        lock.unlockWrite(s);
+        lock.unlockRead(lock.readLock());
+        Thread t = newStartedThread(new InterruptibleLockRunnable(lock));
+        awaitTermination(t);
+        assertFalse(lock.isWriteLocked());
+    }
+
+    /**
+     * readLockInterruptibly is interruptible
+     */
+    public void testReadLockInterruptibly_Interruptible()
+            throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new CheckedInterruptedRunnable() {
+            public void realRun() throws InterruptedException {
+                lock.readLockInterruptibly();
+            }});
+
+        waitForThreadToEnterWaitState(t);
+        t.interrupt();
+        awaitTermination(t);
+        assertFalse(lock.isReadLocked());
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * interruptible acquires throw InterruptedException if the
+     * thread is already interrupted
+     */
+    public void testInterruptibleLock_alreadyInterrupted() {
+        final StampedLock lock = new StampedLock();
+        Thread.currentThread().interrupt();
+        try {
+            lock.writeLockInterruptibly();
+            shouldThrow();
+        } catch (InterruptedException success) {}
+        assertFalse(Thread.interrupted());
+        Thread.currentThread().interrupt();
+        try {
+            lock.readLockInterruptibly();
+            shouldThrow();
+        } catch (InterruptedException success) {}
+        assertFalse(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * timed tryWriteLock is interruptible
+     */
+    public void testWriteTryLock_Interruptible() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long s = lock.readLock();
+        Thread t = newStartedThread(new CheckedInterruptedRunnable() {
+            public void realRun() throws InterruptedException {
+                lock.tryWriteLock(2 * LONG_DELAY_MS, MILLISECONDS);
+            }});
+
+        waitForThreadToEnterWaitState(t);
+        t.interrupt();
+        awaitTermination(t);
+        lock.unlockRead(s);
+    }
+
+    /**
+     * timed tryReadLock is interruptible
+     */
+    public void testReadTryLock_Interruptible() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new CheckedInterruptedRunnable() {
+            public void realRun() throws InterruptedException {
+                lock.tryReadLock(2 * LONG_DELAY_MS, MILLISECONDS);
+            }});
+
+        waitForThreadToEnterWaitState(t);
+        t.interrupt();
+        awaitTermination(t);
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * timed tryWriteLock times out if locked
+     */
+    public void testWriteTryLock_Timeout() {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                long startTime = System.nanoTime();
+                long timeoutMillis = 10;
+                assertEquals(0L, lock.tryWriteLock(timeoutMillis, MILLISECONDS));
+                assertTrue(millisElapsedSince(startTime) >= timeoutMillis);
+            }});
+
+        awaitTermination(t);
+        assertTrue(lock.isWriteLocked());
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * timed tryReadLock times out if write-locked
+     */
+    public void testReadTryLock_Timeout() {
+        final StampedLock lock = new StampedLock();
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                long startTime = System.nanoTime();
+                long timeoutMillis = 10;
+                assertEquals(0L, lock.tryReadLock(timeoutMillis, MILLISECONDS));
+                assertTrue(millisElapsedSince(startTime) >= timeoutMillis);
+            }});
+
+        awaitTermination(t);
+        assertTrue(lock.isWriteLocked());
+        lock.unlockWrite(s);
+    }
+
+    /**
+     * timed tryLocks succeed once the lock is released
+     */
+    public void testTimedTryLock_succeedsAfterRelease() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        final CountDownLatch waiting = new CountDownLatch(1);
+        long s = lock.writeLock();
+        Thread t = newStartedThread(new CheckedRunnable() {
+            public void realRun() throws InterruptedException {
+                waiting.countDown();
+                long rs = lock.tryReadLock(LONG_DELAY_MS, MILLISECONDS);
+                assertTrue(rs != 0L);
+                lock.unlockRead(rs);
+                long ws = lock.tryWriteLock(LONG_DELAY_MS, MILLISECONDS);
+                assertTrue(ws != 0L);
+                lock.unlockWrite(ws);
+            }});
+
+        await(waiting);
+        waitForThreadToEnterWaitState(t);
+        lock.unlockWrite(s);
+        awaitTermination(t);
+        assertFalse(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * a writer waiting for readers acquires the lock once they release
+     */
+    public void testWriteAfterReadLock() throws InterruptedException {
+        final StampedLock lock = new StampedLock();
+        long rs = lock.readLock();
+        Thread t = newStartedThread(new CheckedRunnable() {
+            public void realRun() {
+                long s = lock.writeLock();
+                lock.unlockWrite(s);
+            }});
+
+        waitForThreadToEnterWaitState(t);
+        assertFalse(lock.isWriteLocked());
+        lock.unlockRead(rs);
+        awaitTermination(t);
+        assertFalse(lock.isWriteLocked());
+    }
+
+    /**
+     * asReadLock locks and unlocks the read lock without stamps
+     */
+    public void testAsReadLock() throws InterruptedException {
+        StampedLock sl = new StampedLock();
+        Lock lock = sl.asReadLock();
+        assertSame(lock, sl.asReadLock());
+        lock.lock();
+        assertTrue(sl.isReadLocked());
+        assertTrue(lock.tryLock());
+        assertTrue(lock.tryLock(SHORT_DELAY_MS, MILLISECONDS));
+        lock.lockInterruptibly();
+        assertEquals(4, sl.getReadLockCount());
+        assertEquals(0L, sl.tryWriteLock());
+        for (int i = 0; i < 4; i++)
+            lock.unlock();
+        assertFalse(sl.isReadLocked());
+        try {
+            lock.unlock();
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+
+        long s = sl.writeLock();
+        assertFalse(lock.tryLock());
+        assertFalse(lock.tryLock(10, MILLISECONDS));
+        sl.unlockWrite(s);
+    }
+
+    /**
+     * asWriteLock locks and unlocks the write lock without stamps
+     */
+    public void testAsWriteLock() throws InterruptedException {
+        StampedLock sl = new StampedLock();
+        Lock lock = sl.asWriteLock();
+        assertSame(lock, sl.asWriteLock());
+        lock.lock();
+        assertTrue(sl.isWriteLocked());
+        assertFalse(lock.tryLock());
+        assertFalse(lock.tryLock(10, MILLISECONDS));
+        lock.unlock();
+        assertFalse(sl.isWriteLocked());
+        try {
+            lock.unlock();
+            shouldThrow();
+        } catch (IllegalMonitorStateException success) {}
+
+        assertTrue(lock.tryLock());
+        lock.unlock();
+        assertTrue(lock.tryLock(SHORT_DELAY_MS, MILLISECONDS));
+        lock.unlock();
+        lock.lockInterruptibly();
+        assertTrue(sl.isWriteLocked());
+        lock.unlock();
+
+        long s = sl.readLock();
+        assertFalse(lock.tryLock());
+        sl.unlockRead(s);
+    }
+
+    /**
+     * asWriteLock().lockInterruptibly is interruptible
+     */
+    public void testAsWriteLock_lockInterruptibly_Interruptible()
+            throws InterruptedException {
+        final StampedLock sl = new StampedLock();
+        final Lock lock = sl.asWriteLock();
+        lock.lock();
+        Thread t = newStartedThread(new CheckedInterruptedRunnable() {
+            public void realRun() throws InterruptedException {
+                lock.lockInterruptibly();
+            }});
+
+        waitForThreadToEnterWaitState(t);
+        t.interrupt();
+        awaitTermination(t);
+        assertTrue(sl.isWriteLocked());
+        lock.unlock();
+    }
+
+    /**
+     * asReadWriteLock returns views of the same lock
+     */
+    public void testAsReadWriteLock() {
+        StampedLock sl = new StampedLock();
+        ReadWriteLock rwl = sl.asReadWriteLock();
+        assertSame(rwl, sl.asReadWriteLock());
+        Lock r = rwl.readLock();
+        Lock w = rwl.writeLock();
+
+        w.lock();
+        assertTrue(sl.isWriteLocked());
+        assertFalse(r.tryLock());
+        w.unlock();
+
+        r.lock();
+        assertTrue(sl.isReadLocked());
+        assertFalse(w.tryLock());
+        r.unlock();
+        assertFalse(sl.isReadLocked());
+        assertFalse(sl.isWriteLocked());
+    }
+
+    /**
+     * the lock views do not support conditions
+     */
+    public void testNewCondition() {
+        StampedLock sl = new StampedLock();
+        Lock[] locks = { sl.asReadLock(), sl.asWriteLock(),
+                         sl.asReadWriteLock().readLock(),
+                         sl.asReadWriteLock().writeLock() };
+        for (Lock lock : locks) {
+            try {
+                lock.newCondition();
+                shouldThrow();
+            } catch (UnsupportedOperationException success) {}
+        }
+    }
+
+    /**
+     * toString indicates current lock state
+     */
+    public void testToString() {
+        StampedLock lock = new StampedLock();
+        assertTrue(lock.toString().contains("Unlocked"));
+        long s = lock.writeLock();
+        assertTrue(lock.toString().contains("Write-locked"));
+        lock.unlockWrite(s);
+        s = lock.readLock();
+        assertTrue(lock.toString().contains("Read-locks"));
+        lock.unlockRead(s);
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.harmony.tests.java.util.jar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.StrictJarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import libcore.io.Streams;
+import junit.framework.TestCase;
+import tests.support.resource.Support_Resources;
+
+public class StrictJarFileTest extends TestCase {
+    private static final String[] SIGNED_JARS = {
+        "hyts_signed.jar",
+        "hyts_signed_sha256withrsa.jar",
+        "hyts_signed_sha256digest_sha256withrsa.jar",
+        "hyts_signed_sha512digest_sha512withecdsa.jar",
+        "hyts_signed_sha256digest_sha256withecdsa.jar",
+    };
+
+    private File resources;
+
+    @Override
+    protected void setUp() {
+        resources = Support_Resources.createTempFolder();
+    }
+
+    public void testVerifyAllEntries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (String jarName : SIGNED_JARS) {
+                assertVerifiesAllEntries(jarName, executor);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testVerifyAllEntries_forkJoinPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (String jarName : SIGNED_JARS) {
+                assertVerifiesAllEntries(jarName, pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testVerifyAllEntries_setsCertificateChains() throws Exception {
+        Support_Resources.copyFile(resources, null, "hyts_signed.jar");
+        StrictJarFile jarFile = new StrictJarFile(
+                new File(resources, "hyts_signed.jar").getAbsolutePath());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ZipEntry entry = jarFile.findEntry("coucou/FileAccess.class");
+            // Nothing has read the entry yet.
+            assertNull(jarFile.getCertificateChains(entry));
+
+            assertTrue(jarFile.verifyAllEntries(executor).isEmpty());
+            assertNotNull(jarFile.getCertificateChains(entry));
+        } finally {
+            executor.shutdown();
+            jarFile.close();
+        }
+    }
+
+    public void testVerifyAllEntries_tamperedEntry() throws Exception {
+        File jar = rewriteSignedJar("coucou/FileAccess.class", new byte[] { 1, 2, 3 });
+        assertFailsOnlyWithSecurityException(jar, "coucou/FileAccess.class");
+    }
+
+    public void testVerifyAllEntries_missingEntry() throws Exception {
+        File jar = rewriteSignedJar("coucou/FileAccess.class", null);
+        assertFailsOnlyWithSecurityException(jar, "coucou/FileAccess.class");
+    }
+
+    private void assertFailsOnlyWithSecurityException(File jar, String entryName)
+            throws Exception {
+        StrictJarFile jarFile = new StrictJarFile(jar.getAbsolutePath());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Map<String, Exception> failures = jarFile.verifyAllEntries(executor);
+            assertEquals(failures.toString(), 1, failures.size());
+            assertTrue(failures.get(entryName) instanceof SecurityException);
+        } finally {
+            executor.shutdown();
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Copies hyts_signed.jar, replacing the contents of {@code entryName}, or
+     * dropping it if {@code contents} is null. The signature files are kept.
+     */
+    private File rewriteSignedJar(String entryName, byte[] contents) throws Exception {
+        Support_Resources.copyFile(resources, null, "hyts_signed.jar");
+        File original = new File(resources, "hyts_signed.jar");
+        File rewritten = new File(resources, "hyts_signed_rewritten.jar");
+        ZipInputStream in = new ZipInputStream(new FileInputStream(original));
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(rewritten));
+        try {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                boolean replaced = entry.getName().equals(entryName);
+                if (replaced && contents == null) {
+                    continue;
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                if (replaced) {
+                    out.write(contents);
+                } else {
+                    Streams.copy(in, out);
+                }
+                out.closeEntry();
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        return rewritten;
+    }
+
+    private void assertVerifiesAllEntries(String jarName, ExecutorService executor)
+            throws Exception {
+        Support_Resources.copyFile(resources, null, jarName);
+        StrictJarFile jarFile = new StrictJarFile(new File(resources, jarName).getAbsolutePath());
+        try {
+            Map<String, Exception> failures = jarFile.verifyAllEntries(executor);
+            assertTrue(jarName + ": " + failures, failures.isEmpty());
+        } finally {
+            jarFile.close();
+        }
+    }
+}
@@ -22,7 +22,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -396,6 +403,99 @@ public class ZipFileTest extends junit.framework.TestCase {
         is.close();
     }
 
+    public void test_mappedMode() throws IOException {
+        ZipFile mapped = new ZipFile(new File(tempFileName),
+                ZipFile.OPEN_READ | ZipFile.OPEN_MAPPED);
+        try {
+            assertEquals(zfile.size(), mapped.size());
+            Enumeration<? extends ZipEntry> expected = zfile.entries();
+            Enumeration<? extends ZipEntry> actual = mapped.entries();
+            while (expected.hasMoreElements()) {
+                ZipEntry expectedEntry = expected.nextElement();
+                ZipEntry actualEntry = actual.nextElement();
+                assertEquals(expectedEntry.getName(), actualEntry.getName());
+                assertEquals(expectedEntry.getSize(), actualEntry.getSize());
+                assertEquals(expectedEntry.getCompressedSize(), actualEntry.getCompressedSize());
+                assertEquals(expectedEntry.getCrc(), actualEntry.getCrc());
+                assertEquals(expectedEntry.getMethod(), actualEntry.getMethod());
+
+                ZipEntry lookedUp = mapped.getEntry(expectedEntry.getName());
+                assertEquals(expectedEntry.getName(), lookedUp.getName());
+                assertTrue(Arrays.equals(
+                        Streams.readFully(zfile.getInputStream(expectedEntry)),
+                        Streams.readFully(mapped.getInputStream(lookedUp))));
+            }
+            assertFalse(actual.hasMoreElements());
+
+            assertEquals("testdir1/", mapped.getEntry("testdir1").getName());
+            assertNull(mapped.getEntry("File1.tx"));
+            assertNull(mapped.getEntry("File1.txt/"));
+        } finally {
+            mapped.close();
+        }
+    }
+
+    public void test_mappedMode_closed() throws IOException {
+        ZipFile mapped = new ZipFile(new File(tempFileName),
+                ZipFile.OPEN_READ | ZipFile.OPEN_MAPPED);
+        Enumeration<? extends ZipEntry> enumeration = mapped.entries();
+        mapped.close();
+        try {
+            enumeration.nextElement();
+            fail("did not detect closed file");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            mapped.getEntry("File1.txt");
+            fail("did not detect closed file");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            mapped.size();
+            fail("did not detect closed file");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void test_mappedMode_concurrentReads() throws Exception {
+        final ZipFile mapped = new ZipFile(new File(tempFileName),
+                ZipFile.OPEN_READ | ZipFile.OPEN_MAPPED);
+        final List<String> names = new ArrayList<String>();
+        final List<byte[]> contents = new ArrayList<byte[]>();
+        for (Enumeration<? extends ZipEntry> e = zfile.entries(); e.hasMoreElements(); ) {
+            ZipEntry entry = e.nextElement();
+            names.add(entry.getName());
+            contents.add(Streams.readFully(zfile.getInputStream(entry)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override public Boolean call() throws Exception {
+                        for (int rep = 0; rep < 50; rep++) {
+                            for (int i = 0; i < names.size(); i++) {
+                                ZipEntry entry = mapped.getEntry(names.get(i));
+                                byte[] read = Streams.readFully(mapped.getInputStream(entry));
+                                if (!Arrays.equals(contents.get(i), read)) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+            mapped.close();
+        }
+    }
+
     @Override
     protected void setUp() throws IOException {
         // Create a local copy of the file since some tests want to alter information.
@@ -17,10 +17,8 @@
 package org.json;
 
 import java.lang.reflect.Array;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 
 // Note: this class was written without inspecting the non-free org.json sourcecode.
 
@@ -48,13 +46,13 @@ import java.util.List;
  */
 public class JSONArray {
 
-    private final List<Object> values;
+    private final ValueList values;
 
     /**
      * Creates a {@code JSONArray} with no values.
      */
     public JSONArray() {
-        values = new ArrayList<Object>();
+        values = new ValueList();
     }
 
     /**
@@ -116,7 +114,23 @@ public class JSONArray {
             throw new JSONException("Not a primitive array: " + array.getClass());
         }
         final int length = Array.getLength(array);
-        values = new ArrayList<Object>(length);
+        values = new ValueList(length);
+        if (array instanceof int[]) {
+            for (int value : (int[]) array) {
+                values.addInt(value);
+            }
+            return;
+        } else if (array instanceof long[]) {
+            for (long value : (long[]) array) {
+                values.addLong(value);
+            }
+            return;
+        } else if (array instanceof double[]) {
+            for (double value : (double[]) array) {
+                values.addDouble(value);
+            }
+            return;
+        }
         for (int i = 0; i < length; ++i) {
             put(JSONObject.wrap(Array.get(array, i)));
         }
@@ -147,7 +161,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(double value) throws JSONException {
-        values.add(JSON.checkDouble(value));
+        values.addDouble(JSON.checkDouble(value));
         return this;
     }
 
@@ -157,7 +171,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(int value) {
-        values.add(value);
+        values.addInt(value);
         return this;
     }
 
@@ -167,7 +181,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(long value) {
-        values.add(value);
+        values.addLong(value);
         return this;
     }
 
@@ -284,7 +298,7 @@ public class JSONArray {
      */
     public Object get(int index) throws JSONException {
         try {
-            Object value = values.get(index);
+            Object value = resolved(index);
             if (value == null) {
                 throw new JSONException("Value at " + index + " is null.");
             }
@@ -302,7 +316,28 @@ public class JSONArray {
         if (index < 0 || index >= values.size()) {
             return null;
         }
-        return values.get(index);
+        return resolved(index);
+    }
+
+    /**
+     * Returns the value at {@code index}, first parsing it if it was left
+     * unparsed by {@link JSONReader#readLazyValue}.
+     */
+    private Object resolved(int index) {
+        Object value = values.get(index);
+        if (value instanceof JSONReader.LazyValue) {
+            value = JSONReader.resolve(value);
+            values.set(index, value);
+        }
+        return value;
+    }
+
+    /**
+     * Appends a value that {@link JSONReader#readLazyValue} has located but
+     * not yet parsed.
+     */
+    void putLazy(Object value) {
+        values.add(value);
     }
 
     /**
@@ -313,7 +348,7 @@ public class JSONArray {
         if (index < 0 || index >= values.size()) {
             return null;
         }
-        return values.remove(index);
+        return JSONReader.resolve(values.remove(index));
     }
 
     /**
@@ -358,7 +393,13 @@ public class JSONArray {
      *     cannot be coerced to a double.
      */
     public double getDouble(int index) throws JSONException {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.doubleAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "double");
@@ -379,7 +420,13 @@ public class JSONArray {
      * be coerced to a double. Returns {@code fallback} otherwise.
      */
     public double optDouble(int index, double fallback) {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.doubleAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         return result != null ? result : fallback;
     }
@@ -392,7 +439,13 @@ public class JSONArray {
      *     cannot be coerced to a int.
      */
     public int getInt(int index) throws JSONException {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.intAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "int");
@@ -413,7 +466,13 @@ public class JSONArray {
      * can be coerced to an int. Returns {@code fallback} otherwise.
      */
     public int optInt(int index, int fallback) {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.intAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         return result != null ? result : fallback;
     }
@@ -426,7 +485,13 @@ public class JSONArray {
      *     cannot be coerced to a long.
      */
     public long getLong(int index) throws JSONException {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.longAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "long");
@@ -447,7 +512,13 @@ public class JSONArray {
      * can be coerced to a long. Returns {@code fallback} otherwise.
      */
     public long optLong(int index, long fallback) {
+        if (values.isPacked() && index >= 0 && index < values.size()) {
+            return values.longAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         return result != null ? result : fallback;
     }
@@ -569,7 +640,7 @@ public class JSONArray {
             if (i > 0) {
                 stringer.out.append(separator);
             }
-            stringer.value(values.get(i));
+            stringer.value(resolved(i));
         }
         stringer.close(JSONStringer.Scope.NULL, JSONStringer.Scope.NULL, "");
         return stringer.out.toString();
@@ -609,18 +680,38 @@ public class JSONArray {
 
     void writeTo(JSONStringer stringer) throws JSONException {
         stringer.array();
-        for (Object value : values) {
-            stringer.value(value);
+        int kind = values.kind();
+        for (int i = 0, size = values.size(); i < size; i++) {
+            if (kind == ValueList.DOUBLES) {
+                stringer.value(values.doubleAt(i));
+            } else if (kind == ValueList.INTS || kind == ValueList.LONGS) {
+                stringer.value(values.longAt(i));
+            } else {
+                stringer.value(resolved(i));
+            }
         }
         stringer.endArray();
     }
 
     @Override public boolean equals(Object o) {
-        return o instanceof JSONArray && ((JSONArray) o).values.equals(values);
+        if (!(o instanceof JSONArray)) {
+            return false;
+        }
+        JSONArray other = (JSONArray) o;
+        resolveAll();
+        other.resolveAll();
+        return other.values.equals(values);
     }
 
     @Override public int hashCode() {
         // diverge from the original, which doesn't implement hashCode
+        resolveAll();
         return values.hashCode();
     }
+
+    private void resolveAll() {
+        for (int i = 0, size = values.size(); i < size; i++) {
+            resolved(i);
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of numeric JSONArrays, such as time series and coordinates, and
+ * a rough measure of their heap footprint. Run {@link #main} to print the
+ * footprint before the timings.
+ */
+public class JSONArrayBenchmark extends SimpleBenchmark {
+
+    @Param({"1000", "100000"}) int length;
+
+    private JSONArray doubles;
+    private JSONArray longs;
+    private String doublesJson;
+
+    @Override protected void setUp() throws Exception {
+        doubles = newDoubles(length);
+        longs = newLongs(length);
+        doublesJson = doubles.toString();
+    }
+
+    public int timePutDouble(int reps) throws JSONException {
+        int result = 0;
+        for (int i = 0; i < reps; i++) {
+            result += newDoubles(length).length();
+        }
+        return result;
+    }
+
+    public double timeGetDouble(int reps) throws JSONException {
+        double sum = 0;
+        for (int i = 0; i < reps; i++) {
+            for (int j = 0; j < length; j++) {
+                sum += doubles.getDouble(j);
+            }
+        }
+        return sum;
+    }
+
+    public long timeOptLong(int reps) {
+        long sum = 0;
+        for (int i = 0; i < reps; i++) {
+            for (int j = 0; j < length; j++) {
+                sum += longs.optLong(j);
+            }
+        }
+        return sum;
+    }
+
+    public int timeToStringDoubles(int reps) {
+        int result = 0;
+        for (int i = 0; i < reps; i++) {
+            result += doubles.toString().length();
+        }
+        return result;
+    }
+
+    public int timeToStringLongs(int reps) {
+        int result = 0;
+        for (int i = 0; i < reps; i++) {
+            result += longs.toString().length();
+        }
+        return result;
+    }
+
+    public int timeParseDoubles(int reps) throws JSONException {
+        int result = 0;
+        for (int i = 0; i < reps; i++) {
+            result += new JSONArray(doublesJson).length();
+        }
+        return result;
+    }
+
+    private static JSONArray newDoubles(int length) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < length; i++) {
+            array.put(i * 0.25);
+        }
+        return array;
+    }
+
+    private static JSONArray newLongs(int length) {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < length; i++) {
+            array.put(1400000000000L + i);
+        }
+        return array;
+    }
+
+    /**
+     * Prints the approximate retained heap per element of packed arrays and
+     * of arrays that hold the same numbers boxed.
+     */
+    static void printFootprint() throws JSONException {
+        int arrays = 100;
+        int elements = 10000;
+        List<JSONArray> retained = new ArrayList<JSONArray>();
+
+        long before = usedMemory();
+        for (int i = 0; i < arrays; i++) {
+            retained.add(newDoubles(elements));
+        }
+        long packed = usedMemory() - before;
+
+        retained.clear();
+        before = usedMemory();
+        for (int i = 0; i < arrays; i++) {
+            JSONArray array = new JSONArray();
+            array.put("boxed"); // a non-numeric value forces boxed storage
+            for (int j = 0; j < elements; j++) {
+                array.put(j * 0.25);
+            }
+            retained.add(array);
+        }
+        long boxed = usedMemory() - before;
+
+        System.out.printf("packed: %.1f bytes/element, boxed: %.1f bytes/element%n",
+                (double) packed / (arrays * elements), (double) boxed / (arrays * elements));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws JSONException {
+        printFootprint();
+        Runner.main(JSONArrayBenchmark.class, args);
+    }
+}
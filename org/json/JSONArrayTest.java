@@ -564,4 +564,35 @@ public class JSONArrayTest extends TestCase {
         JSONArray a2 = new JSONArray(MyEnum.values());
         assertEquals("[null,null,null]", a2.toString());
     }
+
+    public void testPackedNumbersKeepTheirTypes() throws JSONException {
+        JSONArray ints = new JSONArray().put(1).put(2);
+        JSONArray longs = new JSONArray().put(1L).put(2L);
+        assertEquals(Integer.valueOf(1), ints.get(0));
+        assertEquals(Long.valueOf(1), longs.get(0));
+        assertFalse(ints.equals(longs));
+        assertEquals(new JSONArray("[1,2]"), ints);
+        assertEquals(2.0, ints.getDouble(1));
+        assertEquals(2L, ints.optLong(1));
+        assertEquals(0, ints.optInt(2));
+    }
+
+    public void testPackedNumbersInflateOnOtherTypes() throws JSONException {
+        JSONArray array = new JSONArray().put(1.5).put(2.5);
+        array.put("three");
+        array.put(4.5);
+        assertEquals("[1.5,2.5,\"three\",4.5]", array.toString());
+        assertEquals(Double.valueOf(2.5), array.get(1));
+        array.put(1, 7);
+        assertEquals(Integer.valueOf(7), array.get(1));
+        assertEquals(1.5, array.remove(0));
+        assertEquals(3, array.length());
+    }
+
+    public void testPackedNumbersFromPrimitiveArrays() throws JSONException {
+        JSONArray array = new JSONArray(new double[] { -0d, 1.0, 0.1, 1e20 });
+        assertEquals("[-0,1,0.1,1.0E20]", array.toString());
+        assertEquals(new JSONArray(new int[] { 3, 4 }), new JSONArray("[3, 4]"));
+        assertEquals(Long.MAX_VALUE, new JSONArray(new long[] { Long.MAX_VALUE }).getLong(0));
+    }
 }
@@ -297,7 +297,7 @@ public class JSONObject {
     // TODO: Change {@code append) to {@link #append} when append is
     // unhidden.
     public JSONObject accumulate(String name, Object value) throws JSONException {
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = resolved(checkName(name));
         if (current == null) {
             return put(name, value);
         }
@@ -326,7 +326,7 @@ public class JSONObject {
      * @hide
      */
     public JSONObject append(String name, Object value) throws JSONException {
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = resolved(checkName(name));
 
         final JSONArray array;
         if (current instanceof JSONArray) {
@@ -358,7 +358,7 @@ public class JSONObject {
      *     no such mapping.
      */
     public Object remove(String name) {
-        return nameValuePairs.remove(name);
+        return JSONReader.resolve(nameValuePairs.remove(name));
     }
 
     /**
@@ -384,7 +384,7 @@ public class JSONObject {
      * @throws JSONException if no such mapping exists.
      */
     public Object get(String name) throws JSONException {
-        Object result = nameValuePairs.get(name);
+        Object result = resolved(name);
         if (result == null) {
             throw new JSONException("No value for " + name);
         }
@@ -396,7 +396,28 @@ public class JSONObject {
      * exists.
      */
     public Object opt(String name) {
-        return nameValuePairs.get(name);
+        return resolved(name);
+    }
+
+    /**
+     * Returns the value mapped by {@code name}, first parsing it if it was
+     * left unparsed by {@link JSONReader#readLazyValue}.
+     */
+    private Object resolved(String name) {
+        Object value = nameValuePairs.get(name);
+        if (value instanceof JSONReader.LazyValue) {
+            value = JSONReader.resolve(value);
+            nameValuePairs.put(name, value);
+        }
+        return value;
+    }
+
+    /**
+     * Maps {@code name} to a value that {@link JSONReader#readLazyValue} has
+     * located but not yet parsed.
+     */
+    void putLazy(String name, Object value) {
+        nameValuePairs.put(name, value);
     }
 
     /**
@@ -442,6 +463,9 @@ public class JSONObject {
      */
     public double getDouble(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "double");
@@ -463,6 +487,9 @@ public class JSONObject {
      */
     public double optDouble(String name, double fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         return result != null ? result : fallback;
     }
@@ -476,6 +503,9 @@ public class JSONObject {
      */
     public int getInt(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "int");
@@ -497,6 +527,9 @@ public class JSONObject {
      */
     public int optInt(String name, int fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         return result != null ? result : fallback;
     }
@@ -512,6 +545,9 @@ public class JSONObject {
      */
     public long getLong(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "long");
@@ -536,6 +572,9 @@ public class JSONObject {
      */
     public long optLong(String name, long fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         return result != null ? result : fallback;
     }
@@ -717,7 +756,12 @@ public class JSONObject {
     void writeTo(JSONStringer stringer) throws JSONException {
         stringer.object();
         for (Map.Entry<String, Object> entry : nameValuePairs.entrySet()) {
-            stringer.key(entry.getKey()).value(entry.getValue());
+            Object value = entry.getValue();
+            if (value instanceof JSONReader.LazyValue) {
+                value = JSONReader.resolve(value);
+                entry.setValue(value);
+            }
+            stringer.key(entry.getKey()).value(value);
         }
         stringer.endObject();
     }
@@ -0,0 +1,828 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
+ * encoded document as a stream of {@link Event events}, without first reading
+ * the whole document into memory. Use this instead of {@link JSONTokener} for
+ * documents too large to hold as a single string, or when only part of a
+ * document is needed. Example usage: <pre>
+ * JSONReader reader = new JSONReader(new InputStreamReader(in, "UTF-8"));
+ * reader.next(); // START_OBJECT
+ * while (reader.next() == JSONReader.Event.NAME) {
+ *     if (reader.getString().equals("locations")) {
+ *         reader.next(); // START_ARRAY
+ *         while (reader.next() == JSONReader.Event.NUMBER) {
+ *             handleLocation(reader.getInt());
+ *         }
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }</pre>
+ *
+ * <p>Strings and numbers are decoded into a reused buffer, and are only
+ * converted to a {@code String} or boxed when requested. {@link #getLong} and
+ * {@link #getDouble} parse numbers without allocating. Use {@link #readValue}
+ * to materialize a single value, such as one element of a huge array, as a
+ * {@link JSONObject} or {@link JSONArray}.
+ *
+ * <p>When created from a {@link CharSequence} such as a {@link
+ * java.nio.CharBuffer}, {@link #readLazyValue} returns objects and arrays
+ * whose members are only parsed when they are first accessed. Those lazy
+ * views refer to the source, which must not be modified while they are in
+ * use.
+ *
+ * <p>Unlike {@link JSONTokener}, this reader is strict: it rejects comments,
+ * unquoted or single-quoted strings, and the other extensions that {@code
+ * JSONTokener} tolerates. It does accept a sequence of top-level values, as
+ * used by streaming APIs that write one document per line.
+ *
+ * <p>Instances of this class are not thread safe.
+ */
+public final class JSONReader {
+
+    /**
+     * The kinds of token returned by {@link JSONReader#next}.
+     */
+    public enum Event {
+        START_OBJECT,
+        END_OBJECT,
+        START_ARRAY,
+        END_ARRAY,
+        /** An object member's name. Use {@link JSONReader#getString} to read it. */
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        /** The input has been exhausted. */
+        END_DOCUMENT
+    }
+
+    /* Scopes, pushed on the stack as containers are entered. */
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    /** Non-null when reading from a stream. */
+    private final Reader reader;
+
+    /** Non-null when reading from an in-memory sequence of characters. */
+    private final CharSequence source;
+    private int sourcePos;
+    private final int sourceEnd;
+
+    private final char[] buffer;
+    private int pos;
+    private int limit;
+
+    /** The position in the input of {@code buffer[0]}. */
+    private int bufferOffset;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    private Event event;
+
+    /** The position in the input of the first character of the current token. */
+    private int tokenStart;
+
+    /** The decoded characters of the current name, string or number. */
+    private char[] token = new char[64];
+    private int tokenLength;
+    private String tokenString;
+    private boolean tokenIntegral;
+    private boolean tokenBoolean;
+
+    /**
+     * Creates a reader that consumes characters from {@code in}. The caller
+     * should wrap byte streams in a {@link java.io.InputStreamReader} but need
+     * not buffer them; this reader does its own buffering.
+     */
+    public JSONReader(Reader in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.reader = in;
+        this.source = null;
+        this.sourceEnd = 0;
+        this.buffer = new char[8192];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a reader over the characters of {@code in}, which is read in
+     * place rather than copied.
+     */
+    public JSONReader(CharSequence in) {
+        this(in, 0, in.length());
+    }
+
+    /**
+     * Creates a reader over the characters of {@code in} from {@code start}
+     * to {@code end}. Positions reported by this reader are indices into
+     * {@code in}.
+     */
+    JSONReader(CharSequence in, int start, int end) {
+        this.reader = null;
+        this.source = in;
+        this.sourcePos = start;
+        this.sourceEnd = end;
+        this.bufferOffset = start;
+        // Lazy values are often tiny; don't allocate more than they can fill.
+        this.buffer = new char[Math.max(1, Math.min(8192, end - start))];
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Advances to the next token and returns its kind.
+     *
+     * @throws JSONException if the input is malformed or cannot be read.
+     */
+    public Event next() throws JSONException {
+        tokenString = null;
+        int c;
+        switch (stack[stackSize - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace();
+                if (c == -1) {
+                    throw syntaxError("End of input");
+                }
+                return readValue(c);
+
+            case NONEMPTY_DOCUMENT:
+                c = nextNonWhitespace();
+                if (c == -1) {
+                    return event = Event.END_DOCUMENT;
+                }
+                return readValue(c);
+
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    stackSize--;
+                    return event = Event.END_ARRAY;
+                }
+                return readValue(c);
+
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    stackSize--;
+                    return event = Event.END_ARRAY;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated array");
+                }
+                return readValue(nextNonWhitespace());
+
+            case EMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    stackSize--;
+                    return event = Event.END_OBJECT;
+                }
+                return readName(c);
+
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    stackSize--;
+                    return event = Event.END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return readName(nextNonWhitespace());
+
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':' after " + getString());
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return readValue(nextNonWhitespace());
+
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * Returns the kind of the current token, or null if {@link #next} hasn't
+     * been called.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Returns the current name or string, or the text of the current number.
+     *
+     * @throws JSONException if the current token is not a name, string or
+     *     number.
+     */
+    public String getString() throws JSONException {
+        if (event != Event.NAME && event != Event.STRING && event != Event.NUMBER) {
+            throw typeMismatch("String");
+        }
+        if (tokenString == null) {
+            tokenString = new String(token, 0, tokenLength);
+        }
+        return tokenString;
+    }
+
+    /**
+     * Returns the current boolean.
+     *
+     * @throws JSONException if the current token is not a boolean.
+     */
+    public boolean getBoolean() throws JSONException {
+        if (event != Event.BOOLEAN) {
+            throw typeMismatch("boolean");
+        }
+        return tokenBoolean;
+    }
+
+    /**
+     * Returns the current number as a double.
+     *
+     * @throws JSONException if the current token is not a number.
+     */
+    public double getDouble() throws JSONException {
+        if (event != Event.NUMBER) {
+            throw typeMismatch("double");
+        }
+        if (tokenIntegral && tokenLength <= 18) {
+            // Converting a long rounds the same way parsing the text would.
+            return parseShortIntegral();
+        }
+        return Double.parseDouble(getString());
+    }
+
+    /**
+     * Returns the current number as a long. Numbers that are not integral
+     * or are out of range are converted like {@link JSONObject#getLong}.
+     *
+     * @throws JSONException if the current token is not a number.
+     */
+    public long getLong() throws JSONException {
+        if (event != Event.NUMBER) {
+            throw typeMismatch("long");
+        }
+        if (tokenIntegral && tokenLength <= 18) {
+            return parseShortIntegral();
+        }
+        if (tokenIntegral) {
+            try {
+                return Long.parseLong(getString());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return (long) Double.parseDouble(getString());
+    }
+
+    /**
+     * Returns the current number as an int. Numbers that are not integral
+     * or are out of range are converted like {@link JSONObject#getInt}.
+     *
+     * @throws JSONException if the current token is not a number.
+     */
+    public int getInt() throws JSONException {
+        if (event != Event.NUMBER) {
+            throw typeMismatch("int");
+        }
+        if (tokenIntegral) {
+            return (int) getLong();
+        }
+        return (int) Double.parseDouble(getString());
+    }
+
+    /**
+     * Skips the current value. If the current token is a name, this skips
+     * the value that follows it. If it is the start of an object or array,
+     * this skips past the matching end. Otherwise this does nothing.
+     */
+    public void skipValue() throws JSONException {
+        if (event == Event.NAME) {
+            next();
+        }
+        if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+            int depth = stackSize - 1;
+            do {
+                next();
+            } while (stackSize > depth);
+        }
+    }
+
+    /**
+     * Returns the current value as a {@link JSONObject}, {@link JSONArray},
+     * String, Boolean, Integer, Long, Double or {@link JSONObject#NULL}, like
+     * {@link JSONTokener#nextValue}. If the current token is the start of an
+     * object or array, this consumes it up to and including its matching end.
+     *
+     * @throws JSONException if the input is malformed or the current token
+     *     does not start a value.
+     */
+    public Object readValue() throws JSONException {
+        switch (event) {
+            case START_OBJECT:
+                JSONObject object = new JSONObject();
+                while (next() == Event.NAME) {
+                    String name = getString();
+                    next();
+                    object.put(name, readValue());
+                }
+                return object;
+
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (next() != Event.END_ARRAY) {
+                    array.put(readValue());
+                }
+                return array;
+
+            default:
+                return scalarValue();
+        }
+    }
+
+    /**
+     * Like {@link #readValue}, but objects and arrays are returned as lazy
+     * views. Their names, or for arrays their lengths, are known immediately,
+     * but each value is only parsed the first time it is accessed.
+     *
+     * @throws JSONException if the input is malformed or the current token
+     *     does not start a value.
+     * @throws IllegalStateException if this reader was not created from a
+     *     {@link CharSequence}.
+     */
+    public Object readLazyValue() throws JSONException {
+        if (source == null) {
+            throw new IllegalStateException("Lazy values need a CharSequence source");
+        }
+        switch (event) {
+            case START_OBJECT:
+                JSONObject object = new JSONObject();
+                while (next() == Event.NAME) {
+                    String name = getString();
+                    object.putLazy(name, lazyValue(next()));
+                }
+                return object;
+
+            case START_ARRAY:
+                JSONArray array = new JSONArray();
+                while (next() != Event.END_ARRAY) {
+                    array.putLazy(lazyValue(event));
+                }
+                return array;
+
+            default:
+                return scalarValue();
+        }
+    }
+
+    /**
+     * Closes the underlying reader, if any.
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns an exception containing the given message plus the current
+     * position.
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + this);
+    }
+
+    /**
+     * Returns the current position.
+     */
+    @Override public String toString() {
+        return " at character " + position();
+    }
+
+    /**
+     * Returns {@code value}, replacing it with the value it stands for if it
+     * is a placeholder created by {@link #readLazyValue}.
+     */
+    static Object resolve(Object value) {
+        if (value instanceof LazyValue) {
+            return ((LazyValue) value).materialize();
+        }
+        return value;
+    }
+
+    private Object lazyValue(Event valueEvent) throws JSONException {
+        switch (valueEvent) {
+            case BOOLEAN:
+                return tokenBoolean;
+            case NULL:
+                return JSONObject.NULL;
+            case START_OBJECT:
+            case START_ARRAY:
+                int start = tokenStart;
+                skipValue();
+                return new LazyValue(source, start, position());
+            default:
+                return new LazyValue(source, tokenStart, position());
+        }
+    }
+
+    private Object scalarValue() throws JSONException {
+        switch (event) {
+            case STRING:
+                return getString();
+            case NUMBER:
+                if (tokenIntegral) {
+                    try {
+                        long longValue = tokenLength <= 18
+                                ? parseShortIntegral()
+                                : Long.parseLong(getString());
+                        if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                            return (int) longValue;
+                        } else {
+                            return longValue;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Integral numbers greater than Long.MAX_VALUE fall through to Double.
+                    }
+                }
+                return Double.valueOf(getString());
+            case BOOLEAN:
+                return tokenBoolean;
+            case NULL:
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Expected a value but was " + event);
+        }
+    }
+
+    private Event readName(int c) throws JSONException {
+        tokenStart = position() - 1;
+        if (c != '"') {
+            throw syntaxError("Expected name");
+        }
+        readString();
+        return event = Event.NAME;
+    }
+
+    private Event readValue(int c) throws JSONException {
+        tokenStart = position() - 1;
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return event = Event.START_OBJECT;
+
+            case '[':
+                push(EMPTY_ARRAY);
+                return event = Event.START_ARRAY;
+
+            case '"':
+                readString();
+                return event = Event.STRING;
+
+            case 't':
+            case 'f':
+            case 'n':
+                return event = readKeyword((char) c);
+
+            case -1:
+                throw syntaxError("End of input");
+
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber((char) c);
+                    return event = Event.NUMBER;
+                }
+                throw syntaxError("Unexpected character " + (char) c);
+        }
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private Event readKeyword(char first) throws JSONException {
+        tokenLength = 0;
+        appendToken(first);
+        while (true) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if (c < 'a' || c > 'z') {
+                break;
+            }
+            appendToken(c);
+            pos++;
+        }
+        if (tokenEquals("true")) {
+            tokenBoolean = true;
+            return Event.BOOLEAN;
+        } else if (tokenEquals("false")) {
+            tokenBoolean = false;
+            return Event.BOOLEAN;
+        } else if (tokenEquals("null")) {
+            return Event.NULL;
+        }
+        throw syntaxError("Unexpected literal " + new String(token, 0, tokenLength));
+    }
+
+    private boolean tokenEquals(String s) {
+        if (tokenLength != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a number into the token buffer, validating it against the JSON
+     * grammar. This doesn't consume the character following the number.
+     */
+    private void readNumber(char first) throws JSONException {
+        tokenLength = 0;
+        tokenIntegral = true;
+        appendToken(first);
+        while (true) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if (c == '.' || c == 'e' || c == 'E') {
+                tokenIntegral = false;
+            } else if ((c < '0' || c > '9') && c != '-' && c != '+') {
+                break;
+            }
+            appendToken(c);
+            pos++;
+        }
+
+        int i = token[0] == '-' ? 1 : 0;
+        int integerStart = i;
+        while (i < tokenLength && isDigit(token[i])) {
+            i++;
+        }
+        boolean valid = i > integerStart
+                && (token[integerStart] != '0' || i == integerStart + 1);
+        if (valid && i < tokenLength && token[i] == '.') {
+            int fractionStart = ++i;
+            while (i < tokenLength && isDigit(token[i])) {
+                i++;
+            }
+            valid = i > fractionStart;
+        }
+        if (valid && i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+            i++;
+            if (i < tokenLength && (token[i] == '+' || token[i] == '-')) {
+                i++;
+            }
+            int exponentStart = i;
+            while (i < tokenLength && isDigit(token[i])) {
+                i++;
+            }
+            valid = i > exponentStart;
+        }
+        if (!valid || i != tokenLength) {
+            throw syntaxError("Invalid number " + new String(token, 0, tokenLength));
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Parses the current integral token, which must have at most 18 digits. */
+    private long parseShortIntegral() {
+        boolean negative = token[0] == '-';
+        long result = 0;
+        for (int i = negative ? 1 : 0; i < tokenLength; i++) {
+            result = result * 10 + (token[i] - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Reads a string into the token buffer, unescaping any character escape
+     * sequences encountered along the way. The opening quote should have
+     * already been read. This consumes the closing quote.
+     */
+    private void readString() throws JSONException {
+        tokenLength = 0;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            appendToken(buffer, start, pos - start);
+
+            if (pos == limit) {
+                if (!fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                continue;
+            }
+
+            if (buffer[pos++] == '"') {
+                return;
+            }
+            appendToken(readEscapeCharacter());
+        }
+    }
+
+    /**
+     * Unescapes the character identified by the character or characters that
+     * immediately follow a backslash. The backslash '\' should have already
+     * been read.
+     */
+    private char readEscapeCharacter() throws JSONException {
+        char escaped = readChar();
+        switch (escaped) {
+            case 'u':
+                int result = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = JSONTokener.dehexchar(readChar());
+                    if (digit == -1) {
+                        throw syntaxError("Invalid escape sequence");
+                    }
+                    result = (result << 4) + digit;
+                }
+                return (char) result;
+
+            case 't':
+                return '\t';
+
+            case 'b':
+                return '\b';
+
+            case 'n':
+                return '\n';
+
+            case 'r':
+                return '\r';
+
+            case 'f':
+                return '\f';
+
+            case '"':
+            case '\\':
+            case '/':
+                return escaped;
+
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    private char readChar() throws JSONException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace() throws JSONException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private void appendToken(char c) {
+        if (tokenLength == token.length) {
+            growToken(1);
+        }
+        token[tokenLength++] = c;
+    }
+
+    private void appendToken(char[] chars, int offset, int count) {
+        if (tokenLength + count > token.length) {
+            growToken(count);
+        }
+        System.arraycopy(chars, offset, token, tokenLength, count);
+        tokenLength += count;
+    }
+
+    private void growToken(int extra) {
+        char[] newToken = new char[Math.max(token.length * 2, tokenLength + extra)];
+        System.arraycopy(token, 0, newToken, 0, tokenLength);
+        token = newToken;
+    }
+
+    /**
+     * Refills the buffer once it has been consumed. Returns false if the input
+     * is exhausted.
+     */
+    private boolean fill() throws JSONException {
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        if (source != null) {
+            int count = Math.min(buffer.length, sourceEnd - sourcePos);
+            if (source instanceof String) {
+                ((String) source).getChars(sourcePos, sourcePos + count, buffer, 0);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[i] = source.charAt(sourcePos + i);
+                }
+            }
+            sourcePos += count;
+            limit = count;
+        } else {
+            try {
+                int count = reader.read(buffer, 0, buffer.length);
+                if (count > 0) {
+                    limit = count;
+                }
+            } catch (IOException e) {
+                JSONException exception = syntaxError("Read failed");
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+        // consume an optional byte order mark (BOM) if it exists
+        if (bufferOffset == 0 && limit > 0 && buffer[0] == '\ufeff') {
+            pos++;
+            return pos < limit || fill();
+        }
+        return limit > 0;
+    }
+
+    private int position() {
+        return bufferOffset + pos;
+    }
+
+    private JSONException typeMismatch(String requiredType) {
+        return new JSONException("Expected " + requiredType + " but was " + event + this);
+    }
+
+    /**
+     * A value that {@link #readLazyValue} has located but not yet parsed.
+     */
+    static final class LazyValue {
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        LazyValue(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        Object materialize() {
+            try {
+                JSONReader reader = new JSONReader(source, start, end);
+                reader.next();
+                return reader.readLazyValue();
+            } catch (JSONException e) {
+                // The value was already checked when it was skipped.
+                throw new IllegalStateException("JSON source was modified", e);
+            }
+        }
+    }
+}
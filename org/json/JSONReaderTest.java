@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json;
+
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import junit.framework.TestCase;
+
+public class JSONReaderTest extends TestCase {
+
+    public void testEvents() throws JSONException {
+        JSONReader reader = new JSONReader(new StringReader(
+                "{\"a\": [1, -2.5e3, \"x\\ty\"], \"b\": {\"c\": true, \"d\": null}}"));
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.NAME, reader.next());
+        assertEquals("a", reader.getString());
+        assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.NUMBER, reader.next());
+        assertEquals(1, reader.getInt());
+        assertEquals(JSONReader.Event.NUMBER, reader.next());
+        assertEquals(-2500.0, reader.getDouble());
+        assertEquals(-2500L, reader.getLong());
+        assertEquals(JSONReader.Event.STRING, reader.next());
+        assertEquals("x\ty", reader.getString());
+        assertEquals(JSONReader.Event.END_ARRAY, reader.next());
+        assertEquals(JSONReader.Event.NAME, reader.next());
+        assertEquals("b", reader.getString());
+        assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.NAME, reader.next());
+        assertEquals(JSONReader.Event.BOOLEAN, reader.next());
+        assertTrue(reader.getBoolean());
+        assertEquals(JSONReader.Event.NAME, reader.next());
+        assertEquals(JSONReader.Event.NULL, reader.next());
+        assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        assertEquals(JSONReader.Event.END_DOCUMENT, reader.next());
+    }
+
+    public void testSkipValue() throws JSONException {
+        JSONReader reader = new JSONReader("{\"skip\": {\"a\": [1, [2]]}, \"keep\": 3}");
+        reader.next();
+        reader.next();
+        reader.skipValue();
+        assertEquals(JSONReader.Event.NAME, reader.next());
+        assertEquals("keep", reader.getString());
+        reader.next();
+        assertEquals(3, reader.getInt());
+    }
+
+    public void testReadValueMatchesTokener() throws JSONException {
+        String json = "{\"a\":[1,2147483648,1.5,\"s\",true,null,{}],\"b\":{\"c\":\"\\u00e9\"}}";
+        JSONReader reader = new JSONReader(new StringReader(json));
+        reader.next();
+        Object streamed = reader.readValue();
+        Object tokenized = new JSONTokener(json).nextValue();
+        assertEquals(tokenized.toString(), streamed.toString());
+        JSONArray array = ((JSONObject) streamed).getJSONArray("a");
+        assertEquals(Integer.class, array.get(0).getClass());
+        assertEquals(Long.class, array.get(1).getClass());
+        assertEquals(Double.class, array.get(2).getClass());
+    }
+
+    public void testElementsOfLargeArrayOneAtATime() throws JSONException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+        }
+        json.append(']');
+        JSONReader reader = new JSONReader(new StringReader(json.toString()));
+        reader.next();
+        int sum = 0;
+        while (reader.next() != JSONReader.Event.END_ARRAY) {
+            sum += ((JSONObject) reader.readValue()).getInt("id");
+        }
+        assertEquals(5000 * 4999 / 2, sum);
+    }
+
+    public void testLazyValues() throws JSONException {
+        String json = "{\"name\": \"pizza\", \"nested\": {\"x\": [1, 2, 3]}, \"n\": 7}";
+        JSONReader reader = new JSONReader(CharBuffer.wrap(json));
+        reader.next();
+        JSONObject object = (JSONObject) reader.readLazyValue();
+        assertEquals(3, object.length());
+        assertTrue(object.has("nested"));
+        assertEquals(7, object.getInt("n"));
+        assertEquals(2, object.getJSONObject("nested").getJSONArray("x").getInt(1));
+        assertEquals(new JSONObject(json).toString(), object.toString());
+    }
+
+    public void testLazyArrayEquality() throws JSONException {
+        JSONReader reader = new JSONReader("[1, \"two\", [3]]");
+        reader.next();
+        JSONArray lazy = (JSONArray) reader.readLazyValue();
+        assertEquals(3, lazy.length());
+        assertEquals(new JSONArray("[1, \"two\", [3]]").toString(), lazy.toString());
+        assertEquals("two", lazy.remove(1));
+    }
+
+    public void testLazyValuesNeedCharSequence() throws JSONException {
+        JSONReader reader = new JSONReader(new StringReader("{}"));
+        reader.next();
+        try {
+            reader.readLazyValue();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testMultipleTopLevelValues() throws JSONException {
+        JSONReader reader = new JSONReader("{\"a\":1}\n{\"a\":2}\n");
+        int count = 0;
+        while (reader.next() != JSONReader.Event.END_DOCUMENT) {
+            count += ((JSONObject) reader.readValue()).getInt("a");
+        }
+        assertEquals(3, count);
+    }
+
+    public void testLongStringsSpanBuffers() throws JSONException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        JSONReader reader = new JSONReader(new StringReader("[\"" + value + "\"]"));
+        reader.next();
+        reader.next();
+        assertEquals(value.toString(), reader.getString());
+    }
+
+    public void testByteOrderMark() throws JSONException {
+        JSONReader reader = new JSONReader("\ufeff[]");
+        assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+    }
+
+    public void testStrictness() {
+        assertMalformed("{'a':1}");
+        assertMalformed("[1,]");
+        assertMalformed("[01]");
+        assertMalformed("[1.]");
+        assertMalformed("[tru]");
+        assertMalformed("{\"a\" 1}");
+        assertMalformed("[\"\\x\"]");
+        assertMalformed("[// comment\n]");
+        assertMalformed("[");
+    }
+
+    public void testTypeMismatch() throws JSONException {
+        JSONReader reader = new JSONReader("[true]");
+        reader.next();
+        reader.next();
+        try {
+            reader.getString();
+            fail();
+        } catch (JSONException expected) {
+        }
+    }
+
+    private void assertMalformed(String json) {
+        JSONReader reader = new JSONReader(json);
+        try {
+            while (reader.next() != JSONReader.Event.END_DOCUMENT) {
+            }
+            fail(json);
+        } catch (JSONException expected) {
+        }
+    }
+}
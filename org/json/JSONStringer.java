@@ -245,6 +245,12 @@ public class JSONStringer {
                 || value == JSONObject.NULL) {
             out.append(value);
 
+        } else if (value instanceof Double) {
+            appendNumber((Double) value);
+
+        } else if (value instanceof Integer || value instanceof Long) {
+            out.append(((Number) value).longValue());
+
         } else if (value instanceof Number) {
             out.append(JSONObject.numberToString((Number) value));
 
@@ -281,10 +287,28 @@ public class JSONStringer {
             throw new JSONException("Nesting problem");
         }
         beforeValue();
-        out.append(JSONObject.numberToString(value));
+        appendNumber(value);
         return this;
     }
 
+    /**
+     * Appends {@code value} in the same form as {@link
+     * JSONObject#numberToString}, but without boxing it or creating an
+     * intermediate string.
+     */
+    private void appendNumber(double value) throws JSONException {
+        JSON.checkDouble(value);
+        long longValue = (long) value;
+        if (value != (double) longValue) {
+            out.append(value);
+        } else if (longValue == 0 && Double.doubleToRawLongBits(value) != 0) {
+            // the original returns "-0" instead of "-0.0" for negative zero
+            out.append("-0");
+        } else {
+            out.append(longValue);
+        }
+    }
+
     /**
      * Encodes {@code value} to this stringer.
      *
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.json;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The values of a {@link JSONArray}. While every value is an Integer, every
+ * value is a Long or every value is a Double, they are stored unboxed in a
+ * primitive array and boxed only when read as objects. The first value of
+ * any other type converts the list to an array of objects for good.
+ *
+ * <p>Boxed values keep their original type, so a list of ints and a list of
+ * longs with the same values are still unequal, as they would be in an
+ * {@code ArrayList}.
+ */
+final class ValueList extends AbstractList<Object> implements RandomAccess {
+
+    static final int EMPTY = 0;
+    static final int INTS = 1;
+    static final int LONGS = 2;
+    static final int DOUBLES = 3;
+    static final int OBJECTS = 4;
+
+    private int kind = EMPTY;
+    private int size;
+
+    /* At most one of these is non-null, depending on kind. */
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+
+    /** The capacity to allocate when the first value is added. */
+    private final int initialCapacity;
+
+    ValueList() {
+        this(10);
+    }
+
+    ValueList(int initialCapacity) {
+        this.initialCapacity = Math.max(initialCapacity, 1);
+    }
+
+    /** Returns true if every value is stored unboxed. False for empty lists. */
+    boolean isPacked() {
+        return kind == INTS || kind == LONGS || kind == DOUBLES;
+    }
+
+    int kind() {
+        return kind;
+    }
+
+    /** Returns the packed value at {@code index}. Requires {@link #isPacked}. */
+    double doubleAt(int index) {
+        checkIndex(index);
+        switch (kind) {
+            case INTS:
+                return ints[index];
+            case LONGS:
+                return longs[index];
+            default:
+                return doubles[index];
+        }
+    }
+
+    /**
+     * Returns the packed value at {@code index}, converted like {@link
+     * Number#longValue}. Requires {@link #isPacked}.
+     */
+    long longAt(int index) {
+        checkIndex(index);
+        switch (kind) {
+            case INTS:
+                return ints[index];
+            case LONGS:
+                return longs[index];
+            default:
+                return (long) doubles[index];
+        }
+    }
+
+    /**
+     * Returns the packed value at {@code index}, converted like {@link
+     * Number#intValue}. Requires {@link #isPacked}.
+     */
+    int intAt(int index) {
+        checkIndex(index);
+        switch (kind) {
+            case INTS:
+                return ints[index];
+            case LONGS:
+                return (int) longs[index];
+            default:
+                return (int) doubles[index];
+        }
+    }
+
+    void addInt(int value) {
+        if (kind == EMPTY) {
+            kind = INTS;
+            ints = new int[initialCapacity];
+        }
+        if (kind != INTS) {
+            add((Object) value);
+            return;
+        }
+        if (size == ints.length) {
+            int[] newInts = new int[newCapacity()];
+            System.arraycopy(ints, 0, newInts, 0, size);
+            ints = newInts;
+        }
+        ints[size++] = value;
+        modCount++;
+    }
+
+    void addLong(long value) {
+        if (kind == EMPTY) {
+            kind = LONGS;
+            longs = new long[initialCapacity];
+        }
+        if (kind != LONGS) {
+            add((Object) value);
+            return;
+        }
+        if (size == longs.length) {
+            long[] newLongs = new long[newCapacity()];
+            System.arraycopy(longs, 0, newLongs, 0, size);
+            longs = newLongs;
+        }
+        longs[size++] = value;
+        modCount++;
+    }
+
+    void addDouble(double value) {
+        if (kind == EMPTY) {
+            kind = DOUBLES;
+            doubles = new double[initialCapacity];
+        }
+        if (kind != DOUBLES) {
+            add((Object) value);
+            return;
+        }
+        if (size == doubles.length) {
+            double[] newDoubles = new double[newCapacity()];
+            System.arraycopy(doubles, 0, newDoubles, 0, size);
+            doubles = newDoubles;
+        }
+        doubles[size++] = value;
+        modCount++;
+    }
+
+    @Override public boolean add(Object value) {
+        if (kind != OBJECTS) {
+            if (value instanceof Integer && (kind == EMPTY || kind == INTS)) {
+                addInt((Integer) value);
+                return true;
+            } else if (value instanceof Long && (kind == EMPTY || kind == LONGS)) {
+                addLong((Long) value);
+                return true;
+            } else if (value instanceof Double && (kind == EMPTY || kind == DOUBLES)) {
+                addDouble((Double) value);
+                return true;
+            }
+            inflate();
+        }
+        if (size == objects.length) {
+            Object[] newObjects = new Object[newCapacity()];
+            System.arraycopy(objects, 0, newObjects, 0, size);
+            objects = newObjects;
+        }
+        objects[size++] = value;
+        modCount++;
+        return true;
+    }
+
+    @Override public void add(int index, Object value) {
+        if (index == size) {
+            add(value);
+            return;
+        }
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        inflate();
+        add(value); // grows the array
+        System.arraycopy(objects, index, objects, index + 1, size - index - 1);
+        objects[index] = value;
+    }
+
+    @Override public Object get(int index) {
+        checkIndex(index);
+        switch (kind) {
+            case INTS:
+                return ints[index];
+            case LONGS:
+                return longs[index];
+            case DOUBLES:
+                return doubles[index];
+            default:
+                return objects[index];
+        }
+    }
+
+    @Override public Object set(int index, Object value) {
+        checkIndex(index);
+        Object previous = get(index);
+        if (kind == INTS && value instanceof Integer) {
+            ints[index] = (Integer) value;
+        } else if (kind == LONGS && value instanceof Long) {
+            longs[index] = (Long) value;
+        } else if (kind == DOUBLES && value instanceof Double) {
+            doubles[index] = (Double) value;
+        } else {
+            inflate();
+            objects[index] = value;
+        }
+        return previous;
+    }
+
+    @Override public Object remove(int index) {
+        Object previous = get(index);
+        int moved = size - index - 1;
+        switch (kind) {
+            case INTS:
+                System.arraycopy(ints, index + 1, ints, index, moved);
+                break;
+            case LONGS:
+                System.arraycopy(longs, index + 1, longs, index, moved);
+                break;
+            case DOUBLES:
+                System.arraycopy(doubles, index + 1, doubles, index, moved);
+                break;
+            default:
+                System.arraycopy(objects, index + 1, objects, index, moved);
+                objects[size - 1] = null;
+                break;
+        }
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    /**
+     * Converts this list to boxed storage. This is permanent: later values of
+     * the original type are not repacked.
+     */
+    private void inflate() {
+        if (kind == OBJECTS) {
+            return;
+        }
+        Object[] boxed = new Object[Math.max(size, kind == EMPTY ? initialCapacity : 1)];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = get(i);
+        }
+        objects = boxed;
+        ints = null;
+        longs = null;
+        doubles = null;
+        kind = OBJECTS;
+    }
+
+    private int newCapacity() {
+        return size + Math.max(size >> 1, 4);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import libcore.internal.StringPool;
@@ -143,6 +145,14 @@ public class KXmlParser implements XmlPullParser, Closeable {
     private int position = 0;
     private int limit = 0;
 
+    /**
+     * The offset of the first character that {@link #fillBuffer} must retain,
+     * or -1 to retain only the characters from {@code position} on. While a
+     * start tag is being parsed and until the following call to next(), this
+     * is the offset of its '<' so that lazy attribute values stay valid.
+     */
+    private int pinStart = -1;
+
     /*
      * Track the number of newlines and columns preceding the current buffer. To
      * compute the line and column of a position in the buffer, compute the line
@@ -175,6 +185,15 @@ public class KXmlParser implements XmlPullParser, Closeable {
      */
     private String[] attributes = new String[16];
 
+    /*
+     * The buffer offset and length of each attribute value, arranged in pairs.
+     * This is only meaningful when the corresponding value in attributes is
+     * null, in which case the value hasn't been materialized as a string yet.
+     */
+    private int[] attributeValueSlices = new int[8];
+    private int valueSliceStart;
+    private int valueSliceLength;
+
     private String error;
 
     private boolean unresolved;
@@ -234,6 +253,12 @@ public class KXmlParser implements XmlPullParser, Closeable {
                             attributes,
                             i,
                             ((--attributeCount) << 2) - i);
+                    System.arraycopy(
+                            attributeValueSlices,
+                            (i >> 1) + 2,
+                            attributeValueSlices,
+                            i >> 1,
+                            (attributeCount << 1) - (i >> 1));
 
                     i -= 4;
                 }
@@ -291,6 +316,15 @@ public class KXmlParser implements XmlPullParser, Closeable {
         return any;
     }
 
+    private int[] ensureCapacity(int[] arr, int required) {
+        if (arr.length >= required) {
+            return arr;
+        }
+        int[] bigger = new int[required + 8];
+        System.arraycopy(arr, 0, bigger, 0, arr.length);
+        return bigger;
+    }
+
     private String[] ensureCapacity(String[] arr, int required) {
         if (arr.length >= required) {
             return arr;
@@ -326,6 +360,9 @@ public class KXmlParser implements XmlPullParser, Closeable {
             depth--;
         }
 
+        // lazy attribute values of the previous start tag are no longer needed
+        pinStart = -1;
+
         // degenerated needs to be handled before error because of possible
         // processor expectations(!)
 
@@ -1053,6 +1090,11 @@ public class KXmlParser implements XmlPullParser, Closeable {
     private void parseStartTag(boolean xmldecl, boolean throwOnResolveFailure)
             throws IOException, XmlPullParserException {
         if (!xmldecl) {
+            // Attribute values of ordinary tags are kept as slices of the
+            // buffer; entity content buffers are too short-lived for that.
+            if (nextContentSource == null) {
+                pinStart = position;
+            }
             read('<');
         }
         name = readName();
@@ -1091,6 +1133,7 @@ public class KXmlParser implements XmlPullParser, Closeable {
 
             int i = (attributeCount++) * 4;
             attributes = ensureCapacity(attributes, i + 4);
+            attributeValueSlices = ensureCapacity(attributeValueSlices, (i >> 1) + 2);
             attributes[i] = "";
             attributes[i + 1] = null;
             attributes[i + 2] = attrName;
@@ -1119,8 +1162,16 @@ public class KXmlParser implements XmlPullParser, Closeable {
                     throw new XmlPullParserException("attr value delimiter missing!", this, null);
                 }
 
-                attributes[i + 3] = readValue(delimiter, true, throwOnResolveFailure,
+                String value = readValue(delimiter, true, throwOnResolveFailure,
                         ValueContext.ATTRIBUTE);
+                attributes[i + 3] = value;
+                if (value == null) {
+                    attributeValueSlices[i >> 1] = valueSliceStart;
+                    attributeValueSlices[(i >> 1) + 1] = valueSliceLength;
+                    if (attrName.startsWith("xmlns")) {
+                        materializeAttributeValue(i >> 2); // needed by adjustNsp()
+                    }
+                }
 
                 if (delimiter != ' ' && peekCharacter() == delimiter) {
                     position++; // end quote
@@ -1304,6 +1355,9 @@ public class KXmlParser implements XmlPullParser, Closeable {
      *
      * @param delimiter {@code <} for text, {@code "} and {@code '} for quoted
      *     attributes, or a space for unquoted attributes.
+     * @return the value, or null if it is an attribute value of a start tag
+     *     that is a single slice of the buffer. In that case its offset and
+     *     length are stored in valueSliceStart and valueSliceLength.
      */
     private String readValue(char delimiter, boolean resolveEntities, boolean throwOnResolveFailure,
             ValueContext valueContext) throws IOException, XmlPullParserException {
@@ -1347,6 +1401,14 @@ public class KXmlParser implements XmlPullParser, Closeable {
              * to the slow path string builder first.
              */
             if (position >= limit) {
+                if (result == null && valueContext == ValueContext.ATTRIBUTE && pinStart >= 0) {
+                    // the tag is pinned, so the slice survives the refill
+                    start = fillBufferKeeping(start);
+                    if (position >= limit) {
+                        break;
+                    }
+                    continue;
+                }
                 if (start < position) {
                     if (result == null) {
                         result = new StringBuilder();
@@ -1429,6 +1491,11 @@ public class KXmlParser implements XmlPullParser, Closeable {
         }
 
         if (result == null) {
+            if (valueContext == ValueContext.ATTRIBUTE && pinStart >= 0) {
+                valueSliceStart = start;
+                valueSliceLength = position - start;
+                return null;
+            }
             return stringPool.get(buffer, start, position - start);
         } else {
             result.append(buffer, start, position - start);
@@ -1489,8 +1556,10 @@ public class KXmlParser implements XmlPullParser, Closeable {
             }
         }
 
+        int keep = (pinStart >= 0) ? pinStart : position;
+
         // Before clobbering the old characters, update where buffer starts
-        for (int i = 0; i < position; i++) {
+        for (int i = 0; i < keep; i++) {
             if (buffer[i] == '\n') {
                 bufferStartLine++;
                 bufferStartColumn = 0;
@@ -1500,17 +1569,27 @@ public class KXmlParser implements XmlPullParser, Closeable {
         }
 
         if (bufferCapture != null) {
-            bufferCapture.append(buffer, 0, position);
+            bufferCapture.append(buffer, 0, keep);
         }
 
-        if (limit != position) {
-            limit -= position;
-            System.arraycopy(buffer, position, buffer, 0, limit);
+        if (limit != keep) {
+            limit -= keep;
+            System.arraycopy(buffer, keep, buffer, 0, limit);
         } else {
             limit = 0;
         }
 
-        position = 0;
+        position -= keep;
+        if (pinStart >= 0) {
+            pinStart = 0;
+            for (int i = 0; i < attributeCount; i++) {
+                attributeValueSlices[i << 1] -= keep;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
         int total;
         while ((total = reader.read(buffer, limit, buffer.length - limit)) != -1) {
             limit += total;
@@ -1521,6 +1600,26 @@ public class KXmlParser implements XmlPullParser, Closeable {
         return false;
     }
 
+    /**
+     * Refills the buffer without discarding the characters from {@code start}
+     * on, so that a token straddling the end of the buffer stays a single
+     * slice. Returns the token's new start; if the data is exhausted, {@code
+     * position >= limit} afterwards. This must not be called while reading
+     * entity content.
+     */
+    private int fillBufferKeeping(int start) throws IOException, XmlPullParserException {
+        int savedPinStart = pinStart;
+        if (savedPinStart < 0) {
+            pinStart = start;
+        }
+        int before = position;
+        fillBuffer(1);
+        if (savedPinStart < 0) {
+            pinStart = -1;
+        }
+        return start - (before - position);
+    }
+
     /**
      * Returns an element or attribute name. This is always non-empty for
      * non-relaxed parsers.
@@ -1551,10 +1650,18 @@ public class KXmlParser implements XmlPullParser, Closeable {
         while (true) {
             /*
              * Make sure we have at least a single character to read from the
-             * buffer. This mutates the buffer, so save the partial result
-             * to the slow path string builder first.
+             * buffer. Keep the partial name in the buffer so it can be pooled;
+             * entity content can't be kept, so save the partial result to the
+             * slow path string builder instead.
              */
             if (position >= limit) {
+                if (result == null && nextContentSource == null) {
+                    start = fillBufferKeeping(start);
+                    if (position >= limit) {
+                        return stringPool.get(buffer, start, position - start);
+                    }
+                    continue;
+                }
                 if (result == null) {
                     result = new StringBuilder();
                 }
@@ -1603,6 +1710,7 @@ public class KXmlParser implements XmlPullParser, Closeable {
 
     public void setInput(Reader reader) throws XmlPullParserException {
         this.reader = reader;
+        pinStart = -1;
 
         type = START_DOCUMENT;
         name = null;
@@ -1750,6 +1858,22 @@ public class KXmlParser implements XmlPullParser, Closeable {
         }
     }
 
+    /**
+     * Sets the input to the UTF-8 encoded bytes between the position and the
+     * limit of {@code input}, which may be a {@link java.nio.MappedByteBuffer}.
+     * The bytes are decoded straight into the parser's read buffer, without
+     * the intermediate byte array and charset decoder of {@link
+     * #setInput(InputStream, String)}. A leading byte order mark is skipped,
+     * and the position of {@code input} is not changed.
+     */
+    public void setInput(ByteBuffer input) throws XmlPullParserException {
+        if (input == null) {
+            throw new IllegalArgumentException("input == null");
+        }
+        setInput(new Utf8Reader(input.duplicate()));
+        encoding = "UTF-8";
+    }
+
     public void close() throws IOException {
         if (reader != null) {
             reader.close();
@@ -1887,7 +2011,7 @@ public class KXmlParser implements XmlPullParser, Closeable {
                 if (attributes[i + 1] != null) {
                     buf.append("{" + attributes[i] + "}" + attributes[i + 1] + ":");
                 }
-                buf.append(attributes[i + 2] + "='" + attributes[i + 3] + "'");
+                buf.append(attributes[i + 2] + "='" + materializeAttributeValue(i >> 2) + "'");
             }
 
             buf.append('>');
@@ -2024,20 +2148,52 @@ public class KXmlParser implements XmlPullParser, Closeable {
         if (index >= attributeCount) {
             throw new IndexOutOfBoundsException();
         }
-        return attributes[(index * 4) + 3];
+        return materializeAttributeValue(index);
+    }
+
+    /**
+     * Returns the value of the attribute at {@code index} without necessarily
+     * copying it into a string. The returned characters may be a view of the
+     * parser's read buffer, which is only valid until the next call to {@link
+     * #next} or {@link #nextToken}; call {@code toString()} to keep them.
+     */
+    public CharSequence getAttributeValueChars(int index) {
+        if (index >= attributeCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        String value = attributes[(index * 4) + 3];
+        if (value != null) {
+            return value;
+        }
+        return new BufferSlice(buffer, attributeValueSlices[index * 2],
+                attributeValueSlices[(index * 2) + 1]);
     }
 
     public String getAttributeValue(String namespace, String name) {
         for (int i = (attributeCount * 4) - 4; i >= 0; i -= 4) {
             if (attributes[i + 2].equals(name)
                     && (namespace == null || attributes[i].equals(namespace))) {
-                return attributes[i + 3];
+                return materializeAttributeValue(i / 4);
             }
         }
 
         return null;
     }
 
+    /**
+     * Returns the value of the attribute at {@code index}, interning it from
+     * its buffer slice if that hasn't happened yet.
+     */
+    private String materializeAttributeValue(int index) {
+        String value = attributes[(index * 4) + 3];
+        if (value == null) {
+            value = stringPool.get(buffer, attributeValueSlices[index * 2],
+                    attributeValueSlices[(index * 2) + 1]);
+            attributes[(index * 4) + 3] = value;
+        }
+        return value;
+    }
+
     public int getEventType() throws XmlPullParserException {
         return type;
     }
@@ -2173,4 +2329,154 @@ public class KXmlParser implements XmlPullParser, Closeable {
         limit = nextContentSource.limit;
         nextContentSource = nextContentSource.next;
     }
+
+    /**
+     * A read-only view of characters in the read buffer.
+     */
+    static final class BufferSlice implements CharSequence {
+        private final char[] buffer;
+        private final int offset;
+        private final int length;
+
+        BufferSlice(char[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+            }
+            return buffer[offset + index];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException(
+                        "start=" + start + " end=" + end + " length=" + length);
+            }
+            return new BufferSlice(buffer, offset + start, end - start);
+        }
+
+        @Override public String toString() {
+            return new String(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 from a byte buffer. ASCII, which is most of a typical
+     * document, is copied a byte at a time; malformed input is replaced with
+     * U+FFFD like {@link InputStreamReader} does.
+     */
+    static final class Utf8Reader extends Reader {
+        private final ByteBuffer bytes;
+        private int position;
+        private final int limit;
+
+        /** The second half of a surrogate pair that didn't fit, or 0. */
+        private char pendingLowSurrogate;
+
+        Utf8Reader(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.position = bytes.position();
+            this.limit = bytes.limit();
+            if (limit - position >= 3
+                    && (bytes.get(position) & 0xff) == 0xef
+                    && (bytes.get(position + 1) & 0xff) == 0xbb
+                    && (bytes.get(position + 2) & 0xff) == 0xbf) {
+                position += 3; // byte order mark
+            }
+        }
+
+        @Override public int read(char[] chars, int offset, int count) {
+            int out = offset;
+            int end = offset + count;
+            if (pendingLowSurrogate != 0 && out < end) {
+                chars[out++] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+            }
+
+            while (out < end && position < limit) {
+                int b = bytes.get(position);
+                if (b >= 0) {
+                    chars[out++] = (char) b;
+                    position++;
+                    continue;
+                }
+
+                int codePoint = decodeMultiByte(b & 0xff);
+                if (codePoint < 0x10000) {
+                    chars[out++] = (char) codePoint;
+                } else {
+                    chars[out++] = Character.highSurrogate(codePoint);
+                    char low = Character.lowSurrogate(codePoint);
+                    if (out < end) {
+                        chars[out++] = low;
+                    } else {
+                        pendingLowSurrogate = low;
+                    }
+                }
+            }
+
+            int total = out - offset;
+            return (total == 0 && count > 0) ? -1 : total;
+        }
+
+        /**
+         * Decodes the sequence starting with the lead byte {@code b} at
+         * position and advances past it. Returns U+FFFD and advances by a
+         * single byte if the sequence is malformed.
+         */
+        private int decodeMultiByte(int b) {
+            int length;
+            int min;
+            int codePoint;
+            if (b >= 0xc2 && b <= 0xdf) {
+                length = 2;
+                min = 0x80;
+                codePoint = b & 0x1f;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                length = 3;
+                min = 0x800;
+                codePoint = b & 0x0f;
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                length = 4;
+                min = 0x10000;
+                codePoint = b & 0x07;
+            } else {
+                position++;
+                return 0xfffd;
+            }
+
+            if (position + length > limit) {
+                position++;
+                return 0xfffd;
+            }
+            for (int i = 1; i < length; i++) {
+                int continuation = bytes.get(position + i) & 0xff;
+                if ((continuation & 0xc0) != 0x80) {
+                    position++;
+                    return 0xfffd;
+                }
+                codePoint = (codePoint << 6) | (continuation & 0x3f);
+            }
+            if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE
+                            && codePoint <= Character.MAX_SURROGATE)) {
+                position++;
+                return 0xfffd;
+            }
+            position += length;
+            return codePoint;
+        }
+
+        @Override public void close() {
+            position = limit;
+        }
+    }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kxml2.io;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import junit.framework.TestCase;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Checks that {@link KXmlParser#setInput(ByteBuffer)} and lazily materialized
+ * attribute values produce the same events as parsing from a {@link Reader}.
+ */
+public final class KXmlParserTest extends TestCase {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Larger than the parser's 8192 char read buffer, so every document needs refills. */
+    private static final int LONG = 9000;
+
+    public void testByteBufferMatchesReader() throws Exception {
+        String xml = "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<!DOCTYPE root [<!ENTITY e 'entity \u00e9'>]>\n"
+                + "<root xmlns:n='urn:n' a='1' n:b=\"two &amp; &e;\">\n"
+                + "  <n:child c='\u4e2d\u6587'>text &lt;&#65;&#x1F600;&gt; \ud83d\ude00</n:child>\n"
+                + "  <!-- comment --><![CDATA[<cdata>]]><?pi data?>\n"
+                + "  <empty/>\n"
+                + "</root>";
+        assertSameEvents(xml);
+    }
+
+    public void testMultiByteCharactersSplitAcrossRefills() throws Exception {
+        // Slide two-, three- and four-byte sequences (the last one a surrogate
+        // pair in the char buffer) over the end of the first buffer fill, both
+        // in text and in attribute values.
+        for (int pad = 8170; pad < 8200; pad++) {
+            String filler = repeat('x', pad);
+            assertSameEvents("<r>" + filler + "\u00e9\u4e2d\ud83d\ude00\ud83d\ude00</r>");
+            assertSameEvents("<r a='" + filler + "\ud83d\ude00\u00e9\u4e2d'/>");
+            assertSameEvents("<d>" + filler.substring(0, 4000) + "<r b='\u00e9' a='"
+                    + filler.substring(4000) + "\ud83d\ude00\u00e9\u4e2d'/></d>");
+            assertSameEvents("<r " + filler.substring(0, pad - 8)
+                    + "='v' \u00e9\u4e2d\ud83d\ude00='w'/>");
+        }
+    }
+
+    public void testUtf8ReaderSplitsSurrogatePairAcrossReads() throws Exception {
+        String text = "a\ud83d\ude00\u00e9\u4e2d\ud83d\ude01";
+        Reader reader = new KXmlParser.Utf8Reader(ByteBuffer.wrap(text.getBytes(UTF_8)));
+        StringBuilder decoded = new StringBuilder();
+        char[] chars = new char[1];
+        int count;
+        while ((count = reader.read(chars, 0, 1)) != -1) {
+            assertEquals(1, count);
+            decoded.append(chars[0]);
+        }
+        assertEquals(text, decoded.toString());
+    }
+
+    public void testByteOrderMarkIsSkipped() throws Exception {
+        byte[] body = "<r a='\u00e9'/>".getBytes(UTF_8);
+        byte[] bytes = new byte[body.length + 3];
+        bytes[0] = (byte) 0xef;
+        bytes[1] = (byte) 0xbb;
+        bytes[2] = (byte) 0xbf;
+        System.arraycopy(body, 0, bytes, 3, body.length);
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(ByteBuffer.wrap(bytes));
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("\u00e9", parser.getAttributeValue(null, "a"));
+    }
+
+    public void testEntitiesInLazyAttributeValues() throws Exception {
+        String xml = "<!DOCTYPE r [<!ENTITY e 'ent'>]>"
+                + "<r plain='abc' amp='a&amp;b' chars='&#65;&#x1F600;' named='&e;!'"
+                + " apos=\"it&apos;s\" empty=''/>";
+        KXmlParser parser = parseBytes(xml);
+        while (parser.next() != XmlPullParser.START_TAG) {
+        }
+        assertEquals("abc", parser.getAttributeValueChars(0).toString());
+        assertEquals("a&b", parser.getAttributeValueChars(1).toString());
+        assertEquals("A\ud83d\ude00", parser.getAttributeValueChars(2).toString());
+        assertEquals("ent!", parser.getAttributeValueChars(3).toString());
+        assertEquals("it's", parser.getAttributeValue(null, "apos"));
+        assertEquals("", parser.getAttributeValue(5));
+        assertEquals("abc", parser.getAttributeValue(0));
+        assertEquals("a&b", parser.getAttributeValue(null, "amp"));
+    }
+
+    public void testLongLazyAttributeValuesSurviveRefills() throws Exception {
+        String first = repeat('a', LONG);
+        String second = repeat('b', LONG) + "&amp;" + repeat('c', 10);
+        // Start the tag well into the buffer so the refills have to move the
+        // earlier attribute slices.
+        String xml = "<doc>" + repeat('p', 5000)
+                + "<r short='s' first='" + first + "' second='" + second + "' third='t'>x</r></doc>";
+        KXmlParser parser = parseBytes(xml);
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("r", parser.getName());
+        assertEquals("s", parser.getAttributeValueChars(0).toString());
+        CharSequence chars = parser.getAttributeValueChars(1);
+        assertEquals(LONG, chars.length());
+        assertEquals('a', chars.charAt(LONG - 1));
+        assertEquals(first, chars.toString());
+        assertEquals(repeat('b', LONG) + "&" + repeat('c', 10), parser.getAttributeValue(2));
+        assertEquals("t", parser.getAttributeValue(null, "third"));
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("x", parser.getText());
+    }
+
+    public void testMalformedUtf8IsReplaced() throws Exception {
+        assertDecodes("a\ufffdb", 'a', 0xc3, 'b'); // truncated two-byte sequence
+        assertDecodes("\ufffd\ufffd", 0xc0, 0xaf); // overlong '/'
+        assertDecodes("\ufffd\ufffd\ufffd", 0xed, 0xa0, 0x80); // encoded surrogate
+        assertDecodes("\ufffd\ufffd", 0xf5, 0x80); // beyond U+10FFFF
+        assertDecodes("\ufffd", 0x80); // stray continuation byte
+        assertDecodes("x\ufffd\ufffd", 'x', 0xe4, 0xb8); // truncated at end of input
+    }
+
+    public void testMalformedUtf8InDocument() throws Exception {
+        byte[] prefix = "<r a='".getBytes(UTF_8);
+        byte[] suffix = "'>\u00e9</r>".getBytes(UTF_8);
+        byte[] bytes = new byte[prefix.length + 2 + suffix.length];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        bytes[prefix.length] = (byte) 0xe4;
+        bytes[prefix.length + 1] = (byte) 'z';
+        System.arraycopy(suffix, 0, bytes, prefix.length + 2, suffix.length);
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(ByteBuffer.wrap(bytes));
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("\ufffdz", parser.getAttributeValue(0));
+        assertEquals(XmlPullParser.TEXT, parser.next());
+        assertEquals("\u00e9", parser.getText());
+    }
+
+    public void testDirectBufferAndPositionAreRespected() throws Exception {
+        byte[] body = "junk<r a='\u00e9'/>".getBytes(UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.length);
+        direct.put(body);
+        direct.position(4);
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(direct);
+        assertEquals(4, direct.position());
+        assertEquals(XmlPullParser.START_TAG, parser.next());
+        assertEquals("r", parser.getName());
+        assertEquals("\u00e9", parser.getAttributeValue(0));
+    }
+
+    private static void assertDecodes(String expected, int... bytes) throws Exception {
+        byte[] input = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            input[i] = (byte) bytes[i];
+        }
+        Reader reader = new KXmlParser.Utf8Reader(ByteBuffer.wrap(input));
+        char[] chars = new char[16];
+        int count = reader.read(chars, 0, chars.length);
+        assertEquals(expected, new String(chars, 0, count));
+        assertEquals(-1, reader.read(chars, 0, chars.length));
+    }
+
+    private static void assertSameEvents(String xml) throws Exception {
+        KXmlParser fromReader = newParser();
+        fromReader.setInput(new StringReader(xml));
+        KXmlParser fromBytes = newParser();
+        fromBytes.setInput(ByteBuffer.wrap(xml.getBytes(UTF_8)));
+        assertEquals(describeAll(fromReader), describeAll(fromBytes));
+    }
+
+    private static KXmlParser newParser() throws Exception {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_DOCDECL, true);
+        return parser;
+    }
+
+    private static KXmlParser parseBytes(String xml) throws Exception {
+        KXmlParser parser = newParser();
+        parser.setInput(ByteBuffer.wrap(xml.getBytes(UTF_8)));
+        return parser;
+    }
+
+    /** Returns every token of the document, including each attribute's lazy chars. */
+    private static String describeAll(KXmlParser parser) throws Exception {
+        StringBuilder out = new StringBuilder();
+        int type;
+        while ((type = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+            out.append(XmlPullParser.TYPES[type]).append(' ')
+                    .append(parser.getNamespace()).append(':').append(parser.getName())
+                    .append(" text=").append(parser.getText());
+            if (type == XmlPullParser.START_TAG) {
+                for (int i = 0; i < parser.getAttributeCount(); i++) {
+                    String chars = parser.getAttributeValueChars(i).toString();
+                    out.append(' ').append(parser.getAttributeNamespace(i))
+                            .append(':').append(parser.getAttributeName(i))
+                            .append('=').append(chars);
+                    assertEquals(chars, parser.getAttributeValue(i));
+                }
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder result = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            result.append(c);
+        }
+        return result.toString();
+    }
+}